@@ -26,6 +26,7 @@ import android.content.Context
 import android.net.ConnectivityManager
 import android.os.Build
 import com.nextcloud.client.account.UserAccountManagerImpl
+import com.nextcloud.client.core.ClockImpl
 import com.nextcloud.client.network.ConnectivityServiceImpl.GetRequestBuilder
 import com.owncloud.android.AbstractOnServerIT
 import org.junit.Assert.assertFalse
@@ -46,6 +47,7 @@ class ConnectivityServiceImplIT : AbstractOnServerIT() {
             userAccountManager,
             clientFactory,
             requestBuilder,
+            ClockImpl(),
             Build.VERSION.SDK_INT
         )
 
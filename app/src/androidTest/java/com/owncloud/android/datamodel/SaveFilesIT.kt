@@ -0,0 +1,79 @@
+/*
+ *
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel
+
+import com.owncloud.android.AbstractIT
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+/**
+ * Saves gallery search results with [FileDataStorageManager.saveFiles].
+ */
+class SaveFilesIT : AbstractIT() {
+
+    companion object {
+        private const val PAGE_SIZE = 300
+    }
+
+    private fun createImage(path: String, etag: String = "etag"): OCFile {
+        return OCFile(path).apply {
+            mimeType = "image/jpeg"
+            modificationTimestamp = System.currentTimeMillis()
+            this.etag = etag
+        }
+    }
+
+    @Test
+    fun filesAreInsertedUpdatedAndRemoved() {
+        val sut = storageManager
+        val kept = createImage("/saveFiles/kept.jpg")
+        val removed = createImage("/saveFiles/removed.jpg")
+        sut.saveFile(kept)
+        sut.saveFile(removed)
+
+        // as found by a search: the stored file is only known by its path
+        val updated = createImage("/saveFiles/kept.jpg", "changed")
+        val added = createImage("/saveFiles/added.jpg")
+        sut.saveFiles(listOf(updated, added), listOf(removed))
+
+        assertEquals(kept.fileId, updated.fileId)
+        assertNotEquals(-1, added.fileId)
+        assertEquals("changed", sut.getFileByPath("/saveFiles/kept.jpg")?.etag)
+        assertEquals(added.fileId, sut.getFileByPath("/saveFiles/added.jpg")?.fileId)
+        assertNull(sut.getFileByPath("/saveFiles/removed.jpg"))
+    }
+
+    @Test
+    fun secondPageUpdatesStoredFiles() {
+        val sut = storageManager
+
+        val batch = (1..PAGE_SIZE).map { createImage("/batch/image$it.jpg") }
+        sut.saveFiles(batch, emptyList())
+
+        // a second page updating every file
+        val refreshed = (1..PAGE_SIZE).map { createImage("/batch/image$it.jpg", "changed") }
+        sut.saveFiles(refreshed, emptyList())
+
+        assertEquals(batch.map { it.fileId }, refreshed.map { it.fileId })
+        assertEquals("changed", sut.getFileByPath("/batch/image$PAGE_SIZE.jpg")?.etag)
+    }
+}
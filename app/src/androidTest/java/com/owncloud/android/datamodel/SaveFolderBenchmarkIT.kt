@@ -0,0 +1,75 @@
+/*
+ *
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel
+
+import com.owncloud.android.AbstractIT
+import com.owncloud.android.lib.common.utils.Log_OC
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/**
+ * Measures [FileDataStorageManager.saveFolder] for growing folder sizes, once for the initial insert and once for a
+ * refresh updating every child.
+ */
+class SaveFolderBenchmarkIT : AbstractIT() {
+
+    companion object {
+        private const val TAG = "SaveFolderBenchmark"
+        private val FOLDER_SIZES = listOf(100, 1000, 5000, 10000)
+    }
+
+    @Test
+    fun refreshTimeAgainstFolderSize() {
+        val sut = storageManager
+        val root = sut.getFileByDecryptedRemotePath("/")!!
+
+        FOLDER_SIZES.forEach { size ->
+            val folder = OCFile("/benchmark$size/").apply {
+                setFolder()
+                parentId = root.fileId
+            }
+            sut.saveFile(folder)
+
+            val children = (1..size).map { createChild(folder, it) }
+
+            val insertStart = System.currentTimeMillis()
+            sut.saveFolder(folder, children, emptyList())
+            val insertTime = System.currentTimeMillis() - insertStart
+
+            // simulate a refresh where the remote listing does not know the local ids yet
+            val refreshed = (1..size).map { createChild(folder, it) }
+
+            val refreshStart = System.currentTimeMillis()
+            sut.saveFolder(folder, refreshed, emptyList())
+            val refreshTime = System.currentTimeMillis() - refreshStart
+
+            Log_OC.d(TAG, "$size children: insert $insertTime ms, refresh $refreshTime ms")
+            assertEquals(size, sut.getFolderContent(folder, false).size)
+        }
+    }
+
+    private fun createChild(folder: OCFile, index: Int): OCFile {
+        return OCFile("${folder.remotePath}file$index.txt").apply {
+            parentId = folder.fileId
+            mimeType = "text/plain"
+            fileLength = index.toLong()
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ *
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel
+
+import com.owncloud.android.AbstractIT
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/**
+ * Saves large folders with [FileDataStorageManager.saveFolder], once for the initial insert and once for a refresh
+ * updating every child.
+ */
+class SaveFolderIT : AbstractIT() {
+
+    companion object {
+        private const val FOLDER_SIZE = 1000
+    }
+
+    @Test
+    fun refreshUpdatesEveryChildInPlace() {
+        val sut = storageManager
+        val root = sut.getFileByDecryptedRemotePath("/")!!
+        val folder = OCFile("/saveFolder/").apply {
+            setFolder()
+            parentId = root.fileId
+        }
+        sut.saveFile(folder)
+
+        val children = (1..FOLDER_SIZE).map { createChild(folder, it) }
+        sut.saveFolder(folder, children, emptyList())
+        val ids = sut.getFolderContent(folder, false).map { it.fileId }.sorted()
+
+        // simulate a refresh where the remote listing does not know the local ids yet
+        val refreshed = (1..FOLDER_SIZE).map { createChild(folder, it) }
+        sut.saveFolder(folder, refreshed, emptyList())
+
+        val content = sut.getFolderContent(folder, false)
+        assertEquals(FOLDER_SIZE, content.size)
+        assertEquals(ids, content.map { it.fileId }.sorted())
+    }
+
+    private fun createChild(folder: OCFile, index: Int): OCFile {
+        return OCFile("${folder.remotePath}file$index.txt").apply {
+            parentId = folder.fileId
+            mimeType = "text/plain"
+            fileLength = index.toLong()
+        }
+    }
+}
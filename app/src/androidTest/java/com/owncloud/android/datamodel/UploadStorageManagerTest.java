@@ -111,6 +111,33 @@ public class UploadStorageManagerTest extends AbstractIT {
         }
     }
 
+    @Test
+    public void largeBatchTest() {
+        int size = 3000;
+        ArrayList<OCUpload> uploads = new ArrayList<>();
+
+        deleteAllUploads();
+        assertEquals(0, uploadsStorageManager.getAllStoredUploads().length);
+
+        for (int i = 0; i < size; i++) {
+            uploads.add(createUpload(account));
+        }
+        long[] ids = uploadsStorageManager.storeUploads(uploads);
+
+        assertEquals(size, ids.length);
+        for (int i = 0; i < size; i++) {
+            assertTrue(ids[i] > 0);
+            assertEquals(ids[i], uploads.get(i).getUploadId());
+        }
+
+        OCUpload[] storedUploads = uploadsStorageManager.getAllStoredUploads();
+        assertEquals(size, storedUploads.length);
+
+        for (int i = 0; i < size; i++) {
+            assertTrue(contains(uploads, storedUploads[i]));
+        }
+    }
+
     @Test
     public void testIsSame() {
         OCUpload upload1 = new OCUpload("/test", "/test", account.name);
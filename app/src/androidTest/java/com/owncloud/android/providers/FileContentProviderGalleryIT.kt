@@ -0,0 +1,176 @@
+/*
+ *
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.providers
+
+import android.content.ContentValues
+import android.database.sqlite.SQLiteDatabase
+import com.owncloud.android.db.ProviderMeta.ProviderTableMeta
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.util.Calendar
+
+/**
+ * Reads the gallery page by page and checks that the pages together hold every image and video exactly once.
+ */
+class FileContentProviderGalleryIT {
+
+    companion object {
+        private const val ACCOUNT = "test@https://nextcloud.localhost"
+        private const val OTHER_ACCOUNT = "other@https://nextcloud.localhost"
+        private const val DAY = 24 * 60 * 60 * 1000L
+    }
+
+    private data class Row(val path: String, val modified: Long, val month: Long)
+
+    private lateinit var db: SQLiteDatabase
+
+    @Before
+    fun setUp() {
+        db = SQLiteDatabase.create(null)
+        FileContentProvider.createFilesTable(db)
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+    }
+
+    private fun insert(path: String, modified: Long, mimeType: String = "image/jpeg", account: String = ACCOUNT) {
+        val values = ContentValues().apply {
+            put(ProviderTableMeta.FILE_NAME, path.substringAfterLast('/'))
+            put(ProviderTableMeta.FILE_PATH, path)
+            put(ProviderTableMeta.FILE_PATH_DECRYPTED, path)
+            put(ProviderTableMeta.FILE_MODIFIED, modified)
+            put(ProviderTableMeta.FILE_CONTENT_TYPE, mimeType)
+            put(ProviderTableMeta.FILE_ACCOUNT_OWNER, account)
+        }
+        db.insert(ProviderTableMeta.FILE_TABLE_NAME, null, values)
+    }
+
+    private fun page(
+        remotePath: String = "/",
+        images: Boolean = true,
+        videos: Boolean = true,
+        after: Pair<Long, Long>? = null,
+        limit: Int = 100
+    ): List<Pair<Row, Long>> {
+        val rows = mutableListOf<Pair<Row, Long>>()
+        FileContentProvider.queryGalleryPage(
+            db,
+            null,
+            ACCOUNT,
+            remotePath,
+            images,
+            videos,
+            after?.first ?: Long.MAX_VALUE,
+            after?.second ?: Long.MAX_VALUE,
+            limit
+        ).use { cursor ->
+            while (cursor.moveToNext()) {
+                val row = Row(
+                    cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_PATH)),
+                    cursor.getLong(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_MODIFIED)),
+                    cursor.getLong(cursor.getColumnIndexOrThrow(FileContentProvider.GALLERY_MONTH))
+                )
+                rows.add(row to cursor.getLong(cursor.getColumnIndexOrThrow(ProviderTableMeta._ID)))
+            }
+        }
+        return rows
+    }
+
+    private fun allPages(pageSize: Int): List<String> {
+        val paths = mutableListOf<String>()
+        var after: Pair<Long, Long>? = null
+        do {
+            val rows = page(after = after, limit = pageSize)
+            paths.addAll(rows.map { it.first.path })
+            after = rows.lastOrNull()?.let { it.first.modified to it.second }
+        } while (rows.size == pageSize)
+        return paths
+    }
+
+    @Test
+    fun pagesHoldEveryFileOnceNewestFirst() {
+        // several files share a modification time, the id has to keep them apart
+        (1..25).forEach { insert("/photo$it.jpg", 1000L + it / 3) }
+
+        val paths = allPages(pageSize = 4)
+
+        assertEquals(25, paths.size)
+        assertEquals(25, paths.toSet().size)
+        assertEquals(page(limit = 25).map { it.first.path }, paths)
+        assertEquals("/photo25.jpg", paths.first())
+    }
+
+    @Test
+    fun onlyMediaOfAccountInFolderIsRead() {
+        insert("/Photos/a.jpg", 1000)
+        insert("/Photos/b.mp4", 2000, "video/mp4")
+        insert("/Photos/c.txt", 3000, "text/plain")
+        insert("/Photos2/d.jpg", 4000)
+        insert("/e.jpg", 5000)
+        insert("/Photos/f.jpg", 6000, account = OTHER_ACCOUNT)
+
+        assertEquals(listOf("/Photos/b.mp4", "/Photos/a.jpg"), page("/Photos/").map { it.first.path })
+        assertEquals(listOf("/Photos/a.jpg"), page("/Photos/", videos = false).map { it.first.path })
+        assertEquals(listOf("/Photos/b.mp4"), page("/Photos/", images = false).map { it.first.path })
+        assertEquals(4, page("/").size)
+    }
+
+    @Test
+    fun monthIsTheFirstMillisecondOfTheMonthInLocalTime() {
+        val modified = Calendar.getInstance().apply {
+            set(2022, Calendar.APRIL, 30, 23, 59, 30)
+        }.timeInMillis
+        insert("/late.jpg", modified)
+
+        val expected = Calendar.getInstance().apply {
+            clear()
+            set(2022, Calendar.APRIL, 1)
+        }.timeInMillis
+
+        assertEquals(expected, page().single().first.month)
+    }
+
+    @Test
+    fun largeGalleryIsReadInDefaultPages() {
+        val pageSize = FileContentProvider.DEFAULT_GALLERY_PAGE_SIZE
+        val count = 2 * pageSize + pageSize / 2
+        db.beginTransaction()
+        try {
+            (1..count).forEach { insert("/folder${it % 100}/photo$it.jpg", it * DAY / 100) }
+            db.setTransactionSuccessful()
+        } finally {
+            db.endTransaction()
+        }
+
+        val first = page(limit = pageSize)
+        val last = first.last()
+        val second = page(after = last.first.modified to last.second, limit = pageSize)
+
+        assertEquals(pageSize, first.size)
+        assertEquals(pageSize, second.size)
+        assertEquals("/folder${count % 100}/photo$count.jpg", first.first().first.path)
+        assertEquals(emptySet<String>(), first.map { it.first.path }.intersect(second.map { it.first.path }))
+        assertEquals(count, allPages(pageSize).size)
+    }
+}
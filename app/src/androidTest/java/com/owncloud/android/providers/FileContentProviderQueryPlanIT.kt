@@ -0,0 +1,166 @@
+/*
+ *
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.providers
+
+import android.database.sqlite.SQLiteDatabase
+import android.database.sqlite.SQLiteQueryBuilder
+import com.owncloud.android.datamodel.FileDataStorageManager
+import com.owncloud.android.db.ProviderMeta.ProviderTableMeta
+import org.junit.After
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Runs EXPLAIN QUERY PLAN on every query shape issued against the files table and fails if one of them falls back
+ * to a full table scan.
+ *
+ * Selections and orders are the ones of [FileDataStorageManager] and [FileContentProvider], and queries are built
+ * like the provider builds them, with the same connection settings.
+ */
+class FileContentProviderQueryPlanIT {
+
+    /**
+     * @param parent true for queries on a folder URI, to which the provider adds the parent of the listed files
+     */
+    private data class QueryShape(
+        val name: String,
+        val selection: String,
+        val args: Array<String>,
+        val order: String = ProviderTableMeta.FILE_DEFAULT_SORT_ORDER,
+        val parent: Boolean = false
+    )
+
+    companion object {
+        private const val ACCOUNT = "test@https://nextcloud.localhost"
+
+        private val SHAPES = listOf(
+            QueryShape(
+                "file by encrypted path",
+                FileDataStorageManager.fileByColumnSelection(ProviderTableMeta.FILE_PATH),
+                arrayOf("/folder/file.txt", ACCOUNT)
+            ),
+            QueryShape(
+                "file by decrypted path",
+                FileDataStorageManager.fileByColumnSelection(ProviderTableMeta.FILE_PATH_DECRYPTED),
+                arrayOf("/folder/file.txt", ACCOUNT)
+            ),
+            QueryShape(
+                "file by id",
+                FileDataStorageManager.fileByColumnSelection(ProviderTableMeta._ID),
+                arrayOf("1", ACCOUNT)
+            ),
+            QueryShape(
+                "file by local path",
+                FileDataStorageManager.fileByColumnSelection(ProviderTableMeta.FILE_STORAGE_PATH),
+                arrayOf("/storage/emulated/0/file.txt", ACCOUNT)
+            ),
+            QueryShape(
+                "file by remote id",
+                FileDataStorageManager.fileByColumnSelection(ProviderTableMeta.FILE_REMOTE_ID),
+                arrayOf("00000001oc", ACCOUNT)
+            ),
+            QueryShape(
+                "file of account by path",
+                FileDataStorageManager.FILE_BY_PATH_SELECTION,
+                arrayOf(ACCOUNT, "/folder/file.txt")
+            ),
+            QueryShape(
+                "folder content",
+                FileDataStorageManager.FOLDER_CONTENT_SELECTION,
+                arrayOf("1", "1"),
+                parent = true
+            ),
+            QueryShape(
+                "reset share flags in folder",
+                FileDataStorageManager.ACCOUNT_FOLDER_CONTENT_SELECTION,
+                arrayOf(ACCOUNT, "1")
+            ),
+            QueryShape(
+                "descendants for move",
+                FileDataStorageManager.DESCENDANTS_SELECTION,
+                arrayOf(ACCOUNT, "/folder/%"),
+                FileDataStorageManager.DESCENDANTS_ORDER
+            ),
+            QueryShape(
+                "gallery items",
+                FileDataStorageManager.GALLERY_ITEMS_SELECTION,
+                arrayOf(ACCOUNT, "0", Long.MAX_VALUE.toString(), "image/%", "video/%")
+            ),
+            QueryShape(
+                "gallery page",
+                FileContentProvider.gallerySelection(true, true),
+                arrayOf(ACCOUNT, "1000", "1000", "10", "1", "/"),
+                FileContentProvider.GALLERY_ORDER
+            ),
+            QueryShape(
+                "all files of account",
+                FileDataStorageManager.ACCOUNT_SELECTION,
+                arrayOf(ACCOUNT)
+            )
+        )
+    }
+
+    private lateinit var db: SQLiteDatabase
+
+    @Before
+    fun setUp() {
+        db = SQLiteDatabase.create(null)
+        FileContentProvider.createFilesTable(db)
+        FileContentProvider.applyQueryPragmas(db)
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+    }
+
+    @Test
+    fun noQueryFallsBackToFullTableScan() {
+        SHAPES.forEach { shape ->
+            val plan = explain(shape)
+            val fullScan = plan.any { it.startsWith("SCAN") && it.contains(ProviderTableMeta.FILE_TABLE_NAME) }
+            assertTrue("Full scan for \"${shape.name}\": $plan", !fullScan)
+        }
+    }
+
+    @Test
+    fun indexesAreCreatedIdempotently() {
+        FileContentProvider.createFilesTableIndexes(db)
+        FileContentProvider.createFilesTableIndexes(db)
+    }
+
+    private fun explain(shape: QueryShape): List<String> {
+        val query = SQLiteQueryBuilder()
+        query.tables = ProviderTableMeta.FILE_TABLE_NAME
+        if (shape.parent) {
+            query.appendWhere(ProviderTableMeta.FILE_PARENT + "=?")
+        }
+        val sql = "EXPLAIN QUERY PLAN " + query.buildQuery(null, shape.selection, null, null, shape.order, null)
+        val plan = mutableListOf<String>()
+        db.rawQuery(sql, shape.args).use { cursor ->
+            val detail = cursor.getColumnIndexOrThrow("detail")
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detail))
+            }
+        }
+        return plan
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ *
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.providers
+
+import android.content.ContentValues
+import android.database.sqlite.SQLiteDatabase
+import com.owncloud.android.db.ProviderMeta.ProviderTableMeta
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Searches the full text index of the files table, which has to follow every change of the table.
+ */
+class FileContentProviderSearchIT {
+
+    companion object {
+        private const val ACCOUNT = "test@https://nextcloud.localhost"
+        private const val OTHER_ACCOUNT = "other@https://nextcloud.localhost"
+        private const val LIMIT = 100
+        private const val MANY_FILES = 1000
+    }
+
+    private lateinit var db: SQLiteDatabase
+
+    @Before
+    fun setUp() {
+        db = SQLiteDatabase.create(null)
+        FileContentProvider.createFilesTable(db)
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+    }
+
+    private fun insert(path: String, account: String = ACCOUNT): Long {
+        val values = ContentValues().apply {
+            put(ProviderTableMeta.FILE_NAME, path.trimEnd('/').substringAfterLast('/'))
+            put(ProviderTableMeta.FILE_PATH, path)
+            put(ProviderTableMeta.FILE_PATH_DECRYPTED, path)
+            put(ProviderTableMeta.FILE_ACCOUNT_OWNER, account)
+        }
+        return db.insert(ProviderTableMeta.FILE_TABLE_NAME, null, values)
+    }
+
+    private fun search(query: String, account: String = ACCOUNT, limit: Int = LIMIT): List<String> {
+        val paths = mutableListOf<String>()
+        FileContentProvider.searchFiles(db, null, account, query, limit).use { cursor ->
+            val path = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_PATH_DECRYPTED)
+            while (cursor.moveToNext()) {
+                paths.add(cursor.getString(path))
+            }
+        }
+        return paths
+    }
+
+    @Test
+    fun wordsAreFoundByPrefix() {
+        insert("/Photos/Holidays 2022.jpg")
+        insert("/Photos/birthday.jpg")
+        insert("/Documents/holiday plan.odt")
+
+        assertEquals(
+            listOf("/Photos/Holidays 2022.jpg", "/Documents/holiday plan.odt"),
+            search("holi")
+        )
+        assertEquals(listOf("/Photos/Holidays 2022.jpg"), search("holi pho"))
+        assertEquals(emptyList<String>(), search("olid"))
+    }
+
+    @Test
+    fun namesStartingWithQueryComeFirst() {
+        insert("/report/archive/summary.pdf")
+        insert("/notes/annual report.txt")
+        insert("/report.txt")
+
+        assertEquals(
+            listOf("/report.txt", "/notes/annual report.txt", "/report/archive/summary.pdf"),
+            search("report")
+        )
+    }
+
+    @Test
+    fun renamedAndRemovedFilesAreUpdated() {
+        val id = insert("/draft.txt")
+        assertEquals(listOf("/draft.txt"), search("draft"))
+
+        val values = ContentValues().apply {
+            put(ProviderTableMeta.FILE_NAME, "final.txt")
+            put(ProviderTableMeta.FILE_PATH_DECRYPTED, "/final.txt")
+        }
+        db.update(ProviderTableMeta.FILE_TABLE_NAME, values, ProviderTableMeta._ID + "=?", arrayOf(id.toString()))
+        assertEquals(emptyList<String>(), search("draft"))
+        assertEquals(listOf("/final.txt"), search("final"))
+
+        // changes of other columns leave the index as it is
+        val etag = ContentValues().apply { put(ProviderTableMeta.FILE_ETAG, "etag") }
+        db.update(ProviderTableMeta.FILE_TABLE_NAME, etag, ProviderTableMeta._ID + "=?", arrayOf(id.toString()))
+        assertEquals(listOf("/final.txt"), search("final"))
+
+        db.delete(ProviderTableMeta.FILE_TABLE_NAME, ProviderTableMeta._ID + "=?", arrayOf(id.toString()))
+        assertEquals(emptyList<String>(), search("final"))
+    }
+
+    @Test
+    fun filesOfOtherAccountsAreNotFound() {
+        insert("/secret.txt", OTHER_ACCOUNT)
+
+        assertEquals(emptyList<String>(), search("secret"))
+        assertEquals(listOf("/secret.txt"), search("secret", OTHER_ACCOUNT))
+    }
+
+    @Test
+    fun querySyntaxIsTakenLiterally() {
+        insert("/budget-2022 (final).xlsx")
+
+        assertEquals(listOf("/budget-2022 (final).xlsx"), search("budget-2022 (fin"))
+        assertEquals(listOf("/budget-2022 (final).xlsx"), search("\"budget\" -final*"))
+        assertEquals(listOf("/budget-2022 (final).xlsx"), search("budget_%"))
+        assertEquals(emptyList<String>(), search("  -*()\" "))
+    }
+
+    @Test
+    fun searchTableIsCreatedIdempotently() {
+        insert("/file.txt")
+
+        FileContentProvider.createFilesSearchTable(db)
+        FileContentProvider.createFilesSearchTable(db)
+
+        assertEquals(listOf("/file.txt"), search("file"))
+    }
+
+    @Test
+    fun bestMatchIsFirstAmongManyFiles() {
+        db.beginTransaction()
+        try {
+            for (i in 0 until MANY_FILES) {
+                insert("/folder${i % 100}/document $i.txt")
+            }
+            db.setTransactionSuccessful()
+        } finally {
+            db.endTransaction()
+        }
+
+        val found = search("document 42", limit = 500)
+
+        assertTrue(found.isNotEmpty())
+        assertEquals("/folder42/document 42.txt", found[0])
+    }
+}
@@ -23,6 +23,7 @@
 package com.owncloud.android.ui.fragment
 
 import androidx.test.espresso.intent.rule.IntentsTestRule
+import androidx.test.platform.app.InstrumentationRegistry
 import com.nextcloud.client.GrantStoragePermissionRule
 import com.nextcloud.client.TestActivity
 import com.owncloud.android.AbstractIT
@@ -34,6 +35,8 @@ import com.owncloud.android.utils.ScreenshotTest
 import org.junit.Assert
 import org.junit.Rule
 import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
 
 class OCFileListFragmentStaticServerIT : AbstractIT() {
     @get:Rule
@@ -307,24 +310,43 @@ class OCFileListFragmentStaticServerIT : AbstractIT() {
         activity.addFragment(sut)
         val testFolder: OCFile = activity.storageManager.getFileByEncryptedRemotePath("/test/")
 
-        activity.runOnUiThread {
-            // richWorkspace is not set
-            Assert.assertFalse(sut.adapter.shouldShowHeader())
+        // richWorkspace is not set
+        runOnMainSync { Assert.assertFalse(sut.adapter.shouldShowHeader()) }
 
-            testFolder.richWorkspace = " "
-            activity.storageManager.saveFile(testFolder)
-            sut.adapter.swapDirectory(user, testFolder, activity.storageManager, false, "")
-            Assert.assertFalse(sut.adapter.shouldShowHeader())
+        testFolder.richWorkspace = " "
+        activity.storageManager.saveFile(testFolder)
+        swapDirectoryAndWait(activity, sut, testFolder)
+        runOnMainSync { Assert.assertFalse(sut.adapter.shouldShowHeader()) }
 
-            testFolder.richWorkspace = null
-            activity.storageManager.saveFile(testFolder)
-            sut.adapter.swapDirectory(user, testFolder, activity.storageManager, false, "")
-            Assert.assertFalse(sut.adapter.shouldShowHeader())
+        testFolder.richWorkspace = null
+        activity.storageManager.saveFile(testFolder)
+        swapDirectoryAndWait(activity, sut, testFolder)
+        runOnMainSync { Assert.assertFalse(sut.adapter.shouldShowHeader()) }
 
-            testFolder.richWorkspace = "1"
-            activity.storageManager.saveFile(testFolder)
+        testFolder.richWorkspace = "1"
+        activity.storageManager.saveFile(testFolder)
+        runOnMainSync {
             sut.adapter.setCurrentDirectory(testFolder)
             Assert.assertTrue(sut.adapter.shouldShowHeader())
         }
     }
+
+    /**
+     * Lists a folder and waits until the listing, loaded in background, is applied to the adapter.
+     */
+    private fun swapDirectoryAndWait(activity: TestActivity, sut: OCFileListFragment, folder: OCFile) {
+        val listed = CountDownLatch(1)
+        runOnMainSync {
+            sut.adapter.swapDirectory(user, folder, activity.storageManager, false, "") { listed.countDown() }
+        }
+        Assert.assertTrue("folder was not listed", listed.await(LISTING_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+    }
+
+    private fun runOnMainSync(block: () -> Unit) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync { block() }
+    }
+
+    companion object {
+        private const val LISTING_TIMEOUT_SECONDS = 10L
+    }
 }
@@ -117,6 +117,9 @@ class AccountRemovalWork(
         arbitraryDataProvider.deleteKeyForAccount(user.accountName, EncryptionUtils.PUBLIC_KEY)
         arbitraryDataProvider.deleteKeyForAccount(user.accountName, EncryptionUtils.MNEMONIC)
 
+        // forget cached folder layouts and sort orders
+        preferences.clearFolderPreferenceCache(user)
+
         // unset default account, if needed
         if (preferences.currentAccountName.equals(user.accountName)) {
             preferences.currentAccountName = ""
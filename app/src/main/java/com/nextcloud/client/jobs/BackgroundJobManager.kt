@@ -19,6 +19,7 @@
  */
 package com.nextcloud.client.jobs
 
+import android.net.Uri
 import android.os.Build
 import androidx.annotation.RequiresApi
 import androidx.lifecycle.LiveData
@@ -131,6 +132,14 @@ interface BackgroundJobManager {
 
     fun schedulePeriodicFilesSyncJob()
     fun startImmediateFilesSyncJob(skipCustomFolders: Boolean = false, overridePowerSaving: Boolean = false)
+
+    /**
+     * Start files sync job storing only media changed since its last run, without scanning custom folders.
+     *
+     * @param changedContentUris MediaStore uris reported as changed
+     */
+    fun startIncrementalFilesSyncJob(changedContentUris: Collection<Uri>)
+
     fun scheduleOfflineSync()
 
     fun scheduleMediaFoldersDetectionJob()
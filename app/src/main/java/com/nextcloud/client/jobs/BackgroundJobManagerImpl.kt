@@ -19,6 +19,7 @@
  */
 package com.nextcloud.client.jobs
 
+import android.net.Uri
 import android.os.Build
 import android.provider.MediaStore
 import androidx.annotation.RequiresApi
@@ -84,6 +85,7 @@ internal class BackgroundJobManagerImpl(
         const val JOB_TEST = "test_job"
 
         const val MAX_CONTENT_TRIGGER_DELAY_MS = 1500L
+        const val MAX_CHANGED_CONTENT_URIS = 100
 
         const val TAG_PREFIX_NAME = "name"
         const val TAG_PREFIX_USER = "user"
@@ -388,6 +390,28 @@ internal class BackgroundJobManagerImpl(
         workManager.enqueueUniqueWork(JOB_IMMEDIATE_FILES_SYNC, ExistingWorkPolicy.KEEP, request)
     }
 
+    override fun startIncrementalFilesSyncJob(changedContentUris: Collection<Uri>) {
+        // input data size is limited, so all media is queried if too many uris changed at once
+        val uris = if (changedContentUris.size <= MAX_CHANGED_CONTENT_URIS) {
+            changedContentUris.map { it.toString() }.toTypedArray()
+        } else {
+            emptyArray()
+        }
+        val arguments = Data.Builder()
+            .putBoolean(FilesSyncWork.SKIP_CUSTOM, true)
+            .putStringArray(FilesSyncWork.CHANGED_CONTENT_URIS, uris)
+            .build()
+
+        val request = oneTimeRequestBuilder(
+            jobClass = FilesSyncWork::class,
+            jobName = JOB_IMMEDIATE_FILES_SYNC
+        )
+            .setInputData(arguments)
+            .build()
+
+        workManager.enqueueUniqueWork(JOB_IMMEDIATE_FILES_SYNC, ExistingWorkPolicy.KEEP, request)
+    }
+
     override fun scheduleOfflineSync() {
         val constrains = Constraints.Builder()
             .setRequiredNetworkType(NetworkType.UNMETERED)
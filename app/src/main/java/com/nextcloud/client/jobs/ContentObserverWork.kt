@@ -20,6 +20,7 @@
 package com.nextcloud.client.jobs
 
 import android.content.Context
+import android.net.Uri
 import android.os.Build
 import androidx.annotation.RequiresApi
 import androidx.work.Worker
@@ -30,7 +31,7 @@ import com.owncloud.android.datamodel.SyncedFolderProvider
 /**
  * This work is triggered when OS detects change in media folders.
  *
- * It fires media detection job and sync job and finishes immediately.
+ * It fires media detection job and sync job storing only the changed media, and finishes immediately.
  *
  * This job must not be started on API < 24.
  */
@@ -45,7 +46,7 @@ class ContentObserverWork(
 
     override fun doWork(): Result {
         if (params.triggeredContentUris.size > 0) {
-            checkAndStartFileSyncJob()
+            checkAndStartFileSyncJob(params.triggeredContentUris)
             backgroundJobManager.startMediaFoldersDetectionJob()
         }
         recheduleSelf()
@@ -56,10 +57,10 @@ class ContentObserverWork(
         backgroundJobManager.scheduleContentObserverJob()
     }
 
-    private fun checkAndStartFileSyncJob() {
+    private fun checkAndStartFileSyncJob(changedContentUris: List<Uri>) {
         val syncFolders = syncerFolderProvider.countEnabledSyncedFolders() > 0
         if (!powerManagementService.isPowerSavingEnabled && syncFolders) {
-            backgroundJobManager.startImmediateFilesSyncJob(true, false)
+            backgroundJobManager.startIncrementalFilesSyncJob(changedContentUris)
         }
     }
 }
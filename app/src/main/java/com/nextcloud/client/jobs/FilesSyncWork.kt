@@ -74,6 +74,8 @@ class FilesSyncWork(
         const val TAG = "FilesSyncJob"
         const val SKIP_CUSTOM = "skipCustom"
         const val OVERRIDE_POWER_SAVING = "overridePowerSaving"
+        const val CHANGED_CONTENT_URIS = "changedContentUris"
+        private const val UPLOAD_BATCH_SIZE = 200
         private const val WAKELOCK_TAG_SEPARATION = ":"
         private const val WAKELOCK_ACQUIRE_TIMEOUT_MS = 10L * 60L * 1000L
     }
@@ -95,7 +97,12 @@ class FilesSyncWork(
             connectivityService,
             powerManagementService
         )
-        FilesSyncHelper.insertAllDBEntries(preferences, clock, skipCustom)
+        val changedContentUris = inputData.getStringArray(CHANGED_CONTENT_URIS)
+        if (changedContentUris != null) {
+            FilesSyncHelper.insertChangedDBEntries(preferences, clock, changedContentUris)
+        } else {
+            FilesSyncHelper.insertAllDBEntries(preferences, clock, skipCustom)
+        }
         // Create all the providers we'll needq
         val filesystemDataProvider = FilesystemDataProvider(contentResolver)
         val syncedFolderProvider = SyncedFolderProvider(contentResolver, preferences, clock)
@@ -129,72 +136,73 @@ class FilesSyncWork(
         sFormatter: SimpleDateFormat,
         syncedFolder: SyncedFolder
     ) {
-        var remotePath: String?
-        var subfolderByDate: Boolean
-        var uploadAction: Int?
-        var needsCharging: Boolean
-        var needsWifi: Boolean
-        var file: File
+        val remotePath: String?
+        val subfolderByDate: Boolean
+        val uploadAction: Int?
+        val needsCharging: Boolean
+        val needsWifi: Boolean
         val accountName = syncedFolder.account
         val optionalUser = userAccountManager.getUser(accountName)
         if (!optionalUser.isPresent) {
             return
         }
         val user = optionalUser.get()
-        val arbitraryDataProvider = if (lightVersion) {
-            ArbitraryDataProvider(contentResolver)
+        if (lightVersion) {
+            val arbitraryDataProvider = ArbitraryDataProvider(contentResolver)
+            needsCharging = resources.getBoolean(R.bool.syncedFolder_light_on_charging)
+            needsWifi = arbitraryDataProvider.getBooleanValue(
+                accountName,
+                SettingsActivity.SYNCED_FOLDER_LIGHT_UPLOAD_ON_WIFI
+            )
+            val uploadActionString = resources.getString(R.string.syncedFolder_light_upload_behaviour)
+            uploadAction = getUploadAction(uploadActionString)
+            subfolderByDate = resources.getBoolean(R.bool.syncedFolder_light_use_subfolders)
+            remotePath = resources.getString(R.string.syncedFolder_remote_folder)
         } else {
-            null
+            needsCharging = syncedFolder.isChargingOnly
+            needsWifi = syncedFolder.isWifiOnly
+            uploadAction = syncedFolder.uploadAction
+            subfolderByDate = syncedFolder.isSubfolderByDate
+            remotePath = syncedFolder.remotePath
         }
+        val syncedFolderId = java.lang.Long.toString(syncedFolder.id)
         val paths = filesystemDataProvider.getFilesForUpload(
             syncedFolder.localPath,
-            java.lang.Long.toString(syncedFolder.id)
+            syncedFolderId
         )
-        for (path in paths) {
-            file = File(path)
-            val lastModificationTime = calculateLastModificationTime(file, syncedFolder, sFormatter)
-            val mimeType = MimeTypeUtil.getBestMimeTypeByFilename(file.absolutePath)
-            if (lightVersion) {
-                needsCharging = resources.getBoolean(R.bool.syncedFolder_light_on_charging)
-                needsWifi = arbitraryDataProvider!!.getBooleanValue(
-                    accountName,
-                    SettingsActivity.SYNCED_FOLDER_LIGHT_UPLOAD_ON_WIFI
-                )
-                val uploadActionString = resources.getString(R.string.syncedFolder_light_upload_behaviour)
-                uploadAction = getUploadAction(uploadActionString)
-                subfolderByDate = resources.getBoolean(R.bool.syncedFolder_light_use_subfolders)
-                remotePath = resources.getString(R.string.syncedFolder_remote_folder)
-            } else {
-                needsCharging = syncedFolder.isChargingOnly
-                needsWifi = syncedFolder.isWifiOnly
-                uploadAction = syncedFolder.uploadAction
-                subfolderByDate = syncedFolder.isSubfolderByDate
-                remotePath = syncedFolder.remotePath
-            }
-            FileUploader.uploadNewFile(
-                context,
-                user,
-                file.absolutePath,
-                FileStorageUtils.getInstantUploadFilePath(
+        // all files of a folder share the upload settings, so they are handed to the uploader in few requests
+        for (chunk in paths.chunked(UPLOAD_BATCH_SIZE)) {
+            val localPaths = arrayOfNulls<String>(chunk.size)
+            val remotePaths = arrayOfNulls<String>(chunk.size)
+            val mimeTypes = arrayOfNulls<String>(chunk.size)
+            chunk.forEachIndexed { i, path ->
+                val file = File(path)
+                val lastModificationTime = calculateLastModificationTime(file, syncedFolder, sFormatter)
+                localPaths[i] = file.absolutePath
+                remotePaths[i] = FileStorageUtils.getInstantUploadFilePath(
                     file,
                     currentLocale,
                     remotePath,
                     syncedFolder.localPath,
                     lastModificationTime,
                     subfolderByDate
-                ),
+                )
+                mimeTypes[i] = MimeTypeUtil.getBestMimeTypeByFilename(file.absolutePath)
+            }
+            FileUploader.uploadNewFile(
+                context,
+                user,
+                localPaths,
+                remotePaths,
+                mimeTypes,
                 uploadAction!!,
-                mimeType,
                 true, // create parent folder if not existent
                 UploadFileOperation.CREATED_AS_INSTANT_PICTURE,
                 needsWifi,
                 needsCharging,
                 syncedFolder.nameCollisionPolicy
             )
-            filesystemDataProvider.updateFilesystemFileAsSentForUpload(
-                path,
-                java.lang.Long.toString(syncedFolder.id)
-            )
+            filesystemDataProvider.updateFilesystemFilesAsSentForUpload(chunk, syncedFolderId)
         }
     }
 
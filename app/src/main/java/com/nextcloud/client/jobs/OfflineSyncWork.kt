@@ -35,8 +35,10 @@ import com.owncloud.android.lib.common.operations.RemoteOperationResult.ResultCo
 import com.owncloud.android.lib.common.utils.Log_OC
 import com.owncloud.android.lib.resources.files.CheckEtagRemoteOperation
 import com.owncloud.android.operations.SynchronizeFileOperation
+import com.owncloud.android.syncadapter.FolderTreeWalker
 import com.owncloud.android.utils.FileStorageUtils
 import java.io.File
+import java.util.concurrent.ConcurrentHashMap
 
 @Suppress("LongParameterList") // Legacy code
 class OfflineSyncWork constructor(
@@ -61,22 +63,52 @@ class OfflineSyncWork constructor(
                 if (ocRoot.storagePath == null) {
                     break
                 }
-                recursive(File(ocRoot.storagePath), storageManager, user)
+                syncFolders(File(ocRoot.storagePath), storageManager, user)
             }
         }
         return Result.success()
     }
 
-    private fun recursive(folder: File, storageManager: FileDataStorageManager, user: User) {
-        val downloadFolder = FileStorageUtils.getSavePath(user.accountName)
-        val folderName = folder.absolutePath.replaceFirst(downloadFolder.toRegex(), "") + OCFile.PATH_SEPARATOR
+    /**
+     * Synchronizes the downloaded files below [root], several folders at the same time. Folders whose eTag did not
+     * change are skipped with their whole subtree. The new eTag of a folder is stored once its subtree is done, so an
+     * interrupted run checks the folder again next time.
+     */
+    private fun syncFolders(root: File, storageManager: FileDataStorageManager, user: User) {
+        val updatedEtags = ConcurrentHashMap<File, String>()
+        val walker = FolderTreeWalker<File>(FolderTreeWalker.DEFAULT_PARALLELISM)
+        walker.walk(
+            root,
+            object : FolderTreeWalker.FolderVisitor<File> {
+                override fun visitFolder(folder: File): List<File> {
+                    return syncFolder(folder, storageManager, user, updatedEtags)
+                }
+
+                override fun onSubtreeDone(folder: File) {
+                    val updatedEtag = updatedEtags.remove(folder) ?: return
+                    updateEtag(folder, updatedEtag, storageManager, user)
+                }
+            }
+        ) { isStopped }
+    }
+
+    /**
+     * @return subfolders to synchronize, empty if the eTag of [folder] did not change
+     */
+    private fun syncFolder(
+        folder: File,
+        storageManager: FileDataStorageManager,
+        user: User,
+        updatedEtags: MutableMap<File, String>
+    ): List<File> {
+        val folderName = getFolderName(folder, user)
         Log_OC.d(TAG, "$folderName: enter")
         // exit
         if (folder.listFiles() == null) {
-            return
+            return emptyList()
         }
 
-        val updatedEtag = checkEtagChanged(folderName, storageManager, user) ?: return
+        val updatedEtag = checkEtagChanged(folderName, storageManager, user) ?: return emptyList()
 
         // iterate over downloaded files
         val files = folder.listFiles { obj: File -> obj.isFile }
@@ -93,17 +125,16 @@ class OfflineSyncWork constructor(
                 synchronizeFileOperation.execute(context)
             }
         }
-        // recursive into folder
+        updatedEtags[folder] = updatedEtag
+        // walk into subfolders
         val subfolders = folder.listFiles { obj: File -> obj.isDirectory }
-        if (subfolders != null) {
-            for (subfolder in subfolders) {
-                recursive(subfolder, storageManager, user)
-            }
-        }
-        // update eTag
+        return subfolders?.toList() ?: emptyList()
+    }
+
+    private fun updateEtag(folder: File, updatedEtag: String, storageManager: FileDataStorageManager, user: User) {
         @Suppress("TooGenericExceptionCaught") // legacy code
         try {
-            val ocFolder = storageManager.getFileByPath(folderName)
+            val ocFolder = storageManager.getFileByPath(getFolderName(folder, user))
             ocFolder.etagOnServer = updatedEtag
             storageManager.saveFile(ocFolder)
         } catch (e: Exception) {
@@ -111,6 +142,11 @@ class OfflineSyncWork constructor(
         }
     }
 
+    private fun getFolderName(folder: File, user: User): String {
+        val downloadFolder = FileStorageUtils.getSavePath(user.accountName)
+        return folder.absolutePath.replaceFirst(downloadFolder.toRegex(), "") + OCFile.PATH_SEPARATOR
+    }
+
     /**
      * @return new etag if changed, `null` otherwise
      */
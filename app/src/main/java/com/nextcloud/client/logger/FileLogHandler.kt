@@ -132,4 +132,21 @@ internal class FileLogHandler(private val logDir: File, private val logFilename:
         }
         return RawLogs(lines = allLines, logSize = size)
     }
+
+    /**
+     * Open log files for reading page by page, newest entries first.
+     *
+     * @param rotated number of rotated files to include, as in [loadLogFiles]
+     */
+    fun openLogReader(rotated: Int = ROTATED_LOGS_COUNT): LogFileReader {
+        if (rotated < 0) {
+            throw IllegalArgumentException("Negative index")
+        }
+        val files = rotationList
+            .take(Math.min(rotated, rotationList.size - 1) + 1)
+            .map { File(logDir, it) }
+            .filter { it.exists() }
+            .reversed()
+        return LogFileReader(files)
+    }
 }
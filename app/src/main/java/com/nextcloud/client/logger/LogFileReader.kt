@@ -0,0 +1,196 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.logger
+
+import java.io.BufferedReader
+import java.io.Closeable
+import java.io.File
+import java.io.FileNotFoundException
+import java.io.InputStream
+import java.io.InputStreamReader
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * Reads log files page by page, from the newest line backwards.
+ *
+ * Files are opened when the reader is created and only read up to their size at that moment, so log writes and
+ * rotations happening while reading do not shift the pages. Lines are returned raw; parsing them is left to the
+ * caller, which only has to parse the pages it shows.
+ *
+ * Reads use absolute file positions, so pages can be read from several threads at once.
+ *
+ * @param files log files, newest first
+ */
+class LogFileReader internal constructor(files: List<File>) : Closeable {
+
+    /**
+     * Lines before [offset] in the file at [file] are still to be read.
+     */
+    class Position internal constructor(internal val file: Int, internal val offset: Long)
+
+    /**
+     * @param lines read lines, newest first
+     * @param next position of the next, older page; null once the oldest line is read
+     */
+    class Page(val lines: List<String>, val next: Position?)
+
+    private companion object {
+        const val BLOCK_SIZE = 64 * 1024
+        const val LINE_FEED: Byte = 10 // '\n'
+        const val BYTE_MASK = 0xFF
+    }
+
+    private val channels: List<FileChannel> = files.mapNotNull {
+        try {
+            RandomAccessFile(it, "r").channel
+        } catch (ex: FileNotFoundException) {
+            // rotated away in the meantime
+            null
+        }
+    }
+    private val sizes = channels.map { it.size() }
+
+    /**
+     * Total size of the logs, in bytes.
+     */
+    val size: Long = sizes.sum()
+
+    /**
+     * Position of the newest page; null if there are no logs.
+     */
+    val tail: Position? = skipEmptyFiles(Position(0, sizes.firstOrNull() ?: 0L))
+
+    /**
+     * Read lines older than a position.
+     *
+     * @param from [tail] or [Page.next] of the previous page
+     * @param maxLines maximum number of lines to read
+     */
+    fun read(from: Position, maxLines: Int): Page {
+        val lines = ArrayList<String>(maxLines)
+        var position: Position? = from
+        while (position != null && lines.size < maxLines) {
+            val offset = readLines(position.file, position.offset, maxLines, lines)
+            position = skipEmptyFiles(Position(position.file, offset))
+        }
+        return Page(lines, position)
+    }
+
+    private fun skipEmptyFiles(position: Position): Position? {
+        var file = position.file
+        var offset = position.offset
+        while (offset == 0L) {
+            file++
+            if (file >= channels.size) {
+                return null
+            }
+            offset = sizes[file]
+        }
+        return Position(file, offset)
+    }
+
+    /**
+     * Reads lines of a file backwards, block by block. Lines longer than a block are read with larger blocks.
+     *
+     * @return offset of the oldest line read
+     */
+    private fun readLines(file: Int, end: Long, maxLines: Int, lines: MutableList<String>): Long {
+        var position = end
+        var blockSize = BLOCK_SIZE
+        while (position > 0 && lines.size < maxLines) {
+            val blockStart = maxOf(0L, position - blockSize)
+            val bytes = readBlock(file, blockStart, (position - blockStart).toInt())
+
+            // the line feed before the position ends the line read next, it is not part of it
+            var lineEnd = if (bytes.last() == LINE_FEED) bytes.size - 1 else bytes.size
+            var i = lineEnd - 1
+            var lineFound = false
+            while (lines.size < maxLines) {
+                while (i >= 0 && bytes[i] != LINE_FEED) {
+                    i--
+                }
+                if (i < 0 && blockStart > 0) {
+                    // the line starts before the block
+                    break
+                }
+                lines.add(String(bytes, i + 1, lineEnd - i - 1, Charsets.UTF_8))
+                lineFound = true
+                position = blockStart + i + 1
+                if (i < 0) {
+                    break
+                }
+                lineEnd = i
+                i--
+            }
+            if (!lineFound) {
+                blockSize *= 2
+            }
+        }
+        return position
+    }
+
+    private fun readBlock(file: Int, start: Long, length: Int): ByteArray {
+        val buffer = ByteBuffer.allocate(length)
+        while (buffer.hasRemaining() && channels[file].read(buffer, start + buffer.position()) >= 0) {
+            // keep reading
+        }
+        return buffer.array()
+    }
+
+    /**
+     * Lazily read all lines, oldest first.
+     */
+    fun lines(): Sequence<String> = sequence {
+        for (file in channels.indices.reversed()) {
+            BufferedReader(InputStreamReader(SnapshotInputStream(file), Charsets.UTF_8)).useLines {
+                yieldAll(it)
+            }
+        }
+    }
+
+    override fun close() {
+        channels.forEach { it.close() }
+    }
+
+    /**
+     * Reads a log file up to its size when the reader was created.
+     */
+    private inner class SnapshotInputStream(private val file: Int) : InputStream() {
+        private var position = 0L
+
+        override fun read(): Int {
+            val byte = ByteArray(1)
+            return if (read(byte, 0, 1) < 0) -1 else byte[0].toInt() and BYTE_MASK
+        }
+
+        override fun read(b: ByteArray, off: Int, len: Int): Int {
+            val remaining = sizes[file] - position
+            if (remaining <= 0) {
+                return -1
+            }
+            val count = channels[file].read(ByteBuffer.wrap(b, off, minOf(len.toLong(), remaining).toInt()), position)
+            if (count > 0) {
+                position += count
+            }
+            return count
+        }
+    }
+}
@@ -38,6 +38,7 @@ internal class LoggerImpl(
 ) : Logger, LogsRepository {
 
     data class Load(val onResult: (List<LogEntry>, Long) -> Unit)
+    data class Open(val onResult: (LogFileReader) -> Unit)
     class Delete
 
     private val looper = ThreadLoop()
@@ -96,6 +97,10 @@ internal class LoggerImpl(
         eventQueue.put(Load(onLoaded))
     }
 
+    override fun open(onOpened: OnLogsOpened) {
+        eventQueue.put(Open(onOpened))
+    }
+
     override fun deleteAll() {
         eventQueue.put(Delete())
     }
@@ -146,6 +151,13 @@ internal class LoggerImpl(
                             event.onResult(entries, loaded.logSize)
                         }
                     }
+                    is Open -> {
+                        // files are opened between writes, so no rotation is in progress
+                        val reader = handler.openLogReader()
+                        mainThreadHandler.post {
+                            event.onResult(reader)
+                        }
+                    }
                     is Delete -> handler.deleteAll()
                 }
             }
@@ -20,6 +20,7 @@
 package com.nextcloud.client.logger
 
 typealias OnLogsLoaded = (entries: List<LogEntry>, totalLogSize: Long) -> Unit
+typealias OnLogsOpened = (reader: LogFileReader) -> Unit
 
 /**
  * This interface provides safe, read only access to application
@@ -43,6 +44,16 @@ interface LogsRepository {
      */
     fun load(onLoaded: OnLogsLoaded)
 
+    /**
+     * Asynchronously open available logs for reading page by page, starting with the
+     * newest entry. Unlike [load], nothing is read until pages are requested.
+     *
+     * The reader is not affected by entries logged after opening. Caller must close it.
+     *
+     * @param onOpened: Callback with logs reader; called on main thread
+     */
+    fun open(onOpened: OnLogsOpened)
+
     /**
      * Asynchronously delete logs.
      */
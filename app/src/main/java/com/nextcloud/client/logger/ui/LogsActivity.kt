@@ -38,6 +38,10 @@ import javax.inject.Inject
 
 class LogsActivity : ToolbarActivity() {
 
+    private companion object {
+        const val LOAD_MORE_THRESHOLD = 50
+    }
+
     @Inject
     protected lateinit var viewModelFactory: ViewModelFactory
     @Inject
@@ -57,6 +61,15 @@ class LogsActivity : ToolbarActivity() {
         }
     }
 
+    private val loadMoreListener = object : RecyclerView.OnScrollListener() {
+        override fun onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int) {
+            val layoutManager = recyclerView.layoutManager as LinearLayoutManager
+            if (layoutManager.findLastVisibleItemPosition() >= layoutManager.itemCount - LOAD_MORE_THRESHOLD) {
+                vm.loadMore()
+            }
+        }
+    }
+
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         vm = ViewModelProvider(this, viewModelFactory).get(LogsViewModel::class.java)
@@ -73,6 +86,7 @@ class LogsActivity : ToolbarActivity() {
         findViewById<RecyclerView>(R.id.logsList).apply {
             layoutManager = LinearLayoutManager(this@LogsActivity)
             adapter = logsAdapter
+            addOnScrollListener(loadMoreListener)
         }
 
         vm.entries.observe(this, Observer { logsAdapter.entries = it })
@@ -43,7 +43,7 @@ class LogsEmailSender(private val context: Context, private val clock: Clock, pr
 
     private class Task(
         private val context: Context,
-        private val logs: List<LogEntry>,
+        private val logs: Sequence<LogEntry>,
         private val file: File,
         private val tz: TimeZone
     ) : Function0<Uri?> {
@@ -63,6 +63,13 @@ class LogsEmailSender(private val context: Context, private val clock: Clock, pr
     private var task: Cancellable? = null
 
     fun send(logs: List<LogEntry>) {
+        send(logs.asSequence())
+    }
+
+    /**
+     * Send logs read lazily, so that they do not have to be loaded in memory at once.
+     */
+    fun send(logs: Sequence<LogEntry>) {
         if (task == null) {
             val outFile = File(context.cacheDir, "attachments/logs.txt")
             task = runner.postQuickTask(Task(context, logs, outFile, clock.tz), onResult = { task = null; send(it) })
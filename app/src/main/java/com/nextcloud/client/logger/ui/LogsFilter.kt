@@ -0,0 +1,174 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.logger.ui
+
+import com.nextcloud.client.core.AsyncRunner
+import com.nextcloud.client.core.Cancellable
+import com.nextcloud.client.logger.LogEntry
+import com.nextcloud.client.logger.LogFileReader
+
+/**
+ * This utility class allows implementation of as-you-type filtering of logs too large to be kept in memory.
+ *
+ * Logs are scanned in background from the newest entry backwards, one page per task, and matching entries are
+ * delivered on the main thread while the scan goes on. Only lines containing the query are parsed.
+ *
+ * If a new filter request is posted while a page is scanned, the current scan stops after that page and the new
+ * request is handled. If the new query narrows the previous one (ex. the user typed one more letter), only the
+ * previous matches are checked again and the scan resumes where the previous one stopped.
+ */
+class LogsFilter(private val asyncRunner: AsyncRunner, private val time: () -> Long = System::currentTimeMillis) {
+
+    companion object {
+        const val PAGE_SIZE = 5000
+        const val PROGRESS_INTERVAL_MS = 250L
+
+        private fun matches(entry: LogEntry, query: String): Boolean {
+            return entry.tag.contains(query, true) || entry.message.contains(query, true)
+        }
+    }
+
+    /**
+     * Scan of a log for a query, possibly incomplete.
+     *
+     * @param matches matching entries, newest first; only appended by the running scan task
+     * @param scanned number of scanned lines
+     * @param next position of the next page to scan, null if all lines were scanned
+     */
+    private class Scan(
+        val reader: LogFileReader,
+        val query: String,
+        val matches: ArrayList<LogEntry>,
+        var scanned: Int,
+        var next: LogFileReader.Position?
+    )
+
+    /**
+     * @param matches matching entries, oldest first
+     * @param scanned number of log lines scanned so far
+     * @param isComplete true if all lines were scanned
+     * @param durationMs time since the query was posted
+     */
+    class Result(val matches: List<LogEntry>, val scanned: Int, val isComplete: Boolean, val durationMs: Long)
+
+    private var scan: Scan? = null
+    private var scanTask: Cancellable? = null
+    private var pendingRequest: (() -> Unit)? = null
+    private val isRunning get() = scanTask != null
+    private var startTime = 0L
+    private var lastResultTime = 0L
+
+    /**
+     * Schedule filtering request.
+     *
+     * @param reader logs to filter
+     * @param query text to find in tags and messages, ignoring case
+     * @param onResult result callback called on the main thread, repeatedly until the scan is complete
+     */
+    fun filter(reader: LogFileReader, query: String, onResult: (Result) -> Unit) {
+        pendingRequest = {
+            start(reader, query, onResult)
+        }
+        if (!isRunning) {
+            runPendingRequest()
+        }
+    }
+
+    /**
+     * Stop filtering. No further results are delivered.
+     */
+    fun cancel() {
+        scanTask?.cancel()
+        scanTask = null
+        pendingRequest = null
+        scan = null
+    }
+
+    private fun runPendingRequest() {
+        val request = pendingRequest
+        pendingRequest = null
+        request?.invoke()
+    }
+
+    private fun start(reader: LogFileReader, query: String, onResult: (Result) -> Unit) {
+        startTime = time.invoke()
+        lastResultTime = 0L
+
+        val previous = scan
+        val next = if (previous != null && previous.reader === reader && query.contains(previous.query, true)) {
+            val matches = previous.matches.filterTo(ArrayList()) { matches(it, query) }
+            Scan(reader, query, matches, previous.scanned, previous.next)
+        } else {
+            Scan(reader, query, ArrayList(), 0, reader.tail)
+        }
+        scan = next
+
+        if (next.next == null) {
+            deliver(next, onResult)
+        } else {
+            scanAsync(next, onResult)
+        }
+    }
+
+    private fun scanAsync(scan: Scan, onResult: (Result) -> Unit) {
+        val position = scan.next ?: return
+        scanTask = asyncRunner.postQuickTask(
+            task = {
+                val page = scan.reader.read(position, PAGE_SIZE)
+                page.lines.forEach { line ->
+                    if (line.contains(scan.query, true)) {
+                        LogEntry.parse(line)?.takeIf { matches(it, scan.query) }?.let { scan.matches.add(it) }
+                    }
+                }
+                page
+            },
+            onResult = { page: LogFileReader.Page ->
+                scanTask = null
+                scan.scanned += page.lines.size
+                scan.next = page.next
+                onPageScanned(scan, onResult)
+            },
+            onError = {
+                scanTask = null
+                runPendingRequest()
+            }
+        )
+    }
+
+    private fun onPageScanned(scan: Scan, onResult: (Result) -> Unit) {
+        if (pendingRequest != null) {
+            runPendingRequest()
+            return
+        }
+
+        val isComplete = scan.next == null
+        if (isComplete || time.invoke() - lastResultTime >= PROGRESS_INTERVAL_MS) {
+            deliver(scan, onResult)
+        }
+        if (!isComplete) {
+            scanAsync(scan, onResult)
+        }
+    }
+
+    private fun deliver(scan: Scan, onResult: (Result) -> Unit) {
+        val now = time.invoke()
+        lastResultTime = now
+        onResult.invoke(Result(scan.matches.reversed(), scan.scanned, scan.next == null, now - startTime))
+    }
+}
@@ -20,31 +20,43 @@
 package com.nextcloud.client.logger.ui
 
 import android.content.Context
+import androidx.annotation.VisibleForTesting
 import androidx.lifecycle.LiveData
 import androidx.lifecycle.MutableLiveData
 import androidx.lifecycle.ViewModel
 import com.nextcloud.client.core.AsyncRunner
+import com.nextcloud.client.core.Cancellable
 import com.nextcloud.client.core.Clock
 import com.nextcloud.client.logger.LogEntry
+import com.nextcloud.client.logger.LogFileReader
 import com.nextcloud.client.logger.LogsRepository
 import com.owncloud.android.R
 import javax.inject.Inject
 
+@Suppress("TooManyFunctions")
 class LogsViewModel @Inject constructor(
     private val context: Context,
     clock: Clock,
-    asyncRunner: AsyncRunner,
+    private val asyncRunner: AsyncRunner,
     private val logsRepository: LogsRepository
 ) : ViewModel() {
 
-    private companion object {
-        const val KILOBYTE = 1024L
+    companion object {
+        private const val KILOBYTE = 1024L
+
+        @VisibleForTesting
+        const val PAGE_SIZE = 500
     }
 
-    private val asyncFilter = AsyncFilter(asyncRunner)
+    private val logsFilter = LogsFilter(asyncRunner)
     private val sender = LogsEmailSender(context, clock, asyncRunner)
+    private var reader: LogFileReader? = null
+    private var nextPage: LogFileReader.Position? = null
+    private var pageTask: Cancellable? = null
     private var allEntries = emptyList<LogEntry>()
     private var logsSize = -1L
+    private var pattern = ""
+    private var scannedEntries = 0
     private var filterDurationMs = 0L
     private var isFiltered = false
 
@@ -54,58 +66,126 @@ class LogsViewModel @Inject constructor(
     val status: LiveData<String> = MutableLiveData<String>().apply { value = "" }
 
     fun send() {
-        entries.value?.let {
-            sender.send(it)
+        val reader = reader
+        if (!isFiltered && reader != null) {
+            // only the newest pages are loaded; stream all of them instead
+            sender.send(reader.lines().mapNotNull { LogEntry.parse(it) })
+        } else {
+            entries.value?.let {
+                sender.send(it)
+            }
         }
     }
 
     fun load() {
         if (isLoading.value != true) {
-            logsRepository.load(this::onLoaded)
+            close()
+            logsRepository.open(this::onOpened)
             (isLoading as MutableLiveData).value = true
         }
     }
 
-    private fun onLoaded(entries: List<LogEntry>, logsSize: Long) {
+    private fun onOpened(reader: LogFileReader) {
+        this.reader = reader
+        this.nextPage = reader.tail
+        this.allEntries = emptyList()
+        this.logsSize = reader.size
+        loadPage(reader)
+    }
+
+    /**
+     * Load older entries, if any. Entries are loaded page by page as the user scrolls,
+     * unless a filter is applied.
+     */
+    fun loadMore() {
+        val reader = reader
+        if (reader != null && nextPage != null && !isFiltered && pageTask == null && isLoading.value != true) {
+            loadPage(reader)
+        }
+    }
+
+    private fun loadPage(reader: LogFileReader) {
+        val position = nextPage
+        if (position == null) {
+            onPageLoaded(emptyList(), null)
+            return
+        }
+        pageTask = asyncRunner.postQuickTask(
+            task = {
+                val page = reader.read(position, PAGE_SIZE)
+                Pair(page.lines.asReversed().mapNotNull { LogEntry.parse(it) }, page.next)
+            },
+            onResult = { (olderEntries, next) ->
+                pageTask = null
+                onPageLoaded(olderEntries, next)
+            },
+            onError = {
+                pageTask = null
+                onPageLoaded(emptyList(), null)
+            }
+        )
+    }
+
+    private fun onPageLoaded(olderEntries: List<LogEntry>, nextPage: LogFileReader.Position?) {
         this.entries as MutableLiveData
         this.isLoading as MutableLiveData
         this.status as MutableLiveData
 
-        this.entries.value = entries
-        this.allEntries = entries
-        this.logsSize = logsSize
-        isLoading.value = false
+        this.allEntries = olderEntries + allEntries
+        this.nextPage = nextPage
+        if (isLoading.value == true) {
+            isLoading.value = false
+            if (isFiltered) {
+                filter(pattern)
+            }
+        }
+        if (!isFiltered) {
+            this.entries.value = allEntries
+        }
         this.status.value = formatStatus()
     }
 
     fun deleteAll() {
+        close()
         logsRepository.deleteAll()
+        allEntries = emptyList()
         (entries as MutableLiveData).value = emptyList()
     }
 
     fun filter(pattern: String) {
         if (isLoading.value == false) {
+            this.pattern = pattern
             isFiltered = pattern.isNotEmpty()
-            val predicate = when (isFiltered) {
-                true -> { it: LogEntry -> it.tag.contains(pattern, true) || it.message.contains(pattern, true) }
-                false -> { _ -> true }
+            val reader = reader
+            if (isFiltered && reader != null) {
+                logsFilter.filter(reader, pattern, this::onFiltered)
+            } else {
+                logsFilter.cancel()
+                (entries as MutableLiveData).value = allEntries
+                (status as MutableLiveData).value = formatStatus()
             }
-            asyncFilter.filter(
-                collection = allEntries,
-                predicate = predicate,
-                onResult = this::onFiltered
-            )
         }
     }
 
     override fun onCleared() {
         super.onCleared()
         sender.stop()
+        close()
+    }
+
+    private fun close() {
+        logsFilter.cancel()
+        pageTask?.cancel()
+        pageTask = null
+        reader?.close()
+        reader = null
+        nextPage = null
     }
 
-    private fun onFiltered(filtered: List<LogEntry>, filterDurationMs: Long) {
-        (entries as MutableLiveData).value = filtered
-        this.filterDurationMs = filterDurationMs
+    private fun onFiltered(result: LogsFilter.Result) {
+        (entries as MutableLiveData).value = result.matches
+        this.scannedEntries = result.scanned
+        this.filterDurationMs = result.durationMs
         (status as MutableLiveData).value = formatStatus()
     }
 
@@ -118,7 +198,7 @@ class LogsViewModel @Inject constructor(
                 R.string.logs_status_filtered,
                 sizeKb,
                 displayedEntries,
-                allEntries.size,
+                scannedEntries,
                 filterDurationMs
             )
             !isFiltered -> context.getString(R.string.logs_status_not_filtered, sizeKb)
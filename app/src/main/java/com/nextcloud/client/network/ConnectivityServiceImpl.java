@@ -24,27 +24,57 @@ import android.net.ConnectivityManager;
 import android.net.Network;
 import android.net.NetworkCapabilities;
 import android.net.NetworkInfo;
+import android.net.NetworkRequest;
 
 import com.nextcloud.client.account.Server;
 import com.nextcloud.client.account.UserAccountManager;
+import com.nextcloud.client.core.Clock;
 import com.nextcloud.common.PlainClient;
 import com.nextcloud.operations.GetMethod;
 import com.owncloud.android.lib.common.utils.Log_OC;
 
 import org.apache.commons.httpclient.HttpStatus;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 import androidx.core.net.ConnectivityManagerCompat;
 import kotlin.jvm.functions.Function1;
 
 class ConnectivityServiceImpl implements ConnectivityService {
 
     private static final String TAG = "ConnectivityServiceImpl";
+
+    /**
+     * How long a walled garden check result is reused for the same network and server.
+     */
+    @VisibleForTesting
+    static final long WALLED_CHECK_TTL_MILLIS = 30 * 1000;
+
     private final ConnectivityManager platformConnectivityManager;
     private final UserAccountManager accountManager;
     private final ClientFactory clientFactory;
     private final GetRequestBuilder requestBuilder;
+    private final Clock clock;
     private final int sdkVersion;
 
+    private final Object walledCheckLock = new Object();
+    private WalledCheck lastWalledCheck;
+    /**
+     * Walled garden checks in flight, by server address. Guarded by {@link #walledCheckLock}.
+     */
+    private final Map<String, FutureTask<Boolean>> runningWalledChecks = new HashMap<>();
+    private long walledCheckGeneration;
+
+    @VisibleForTesting
+    final ConnectivityManager.NetworkCallback networkCallback = new NetworkChangeCallback();
+
     static class GetRequestBuilder implements Function1<String, GetMethod> {
         @Override
         public GetMethod invoke(String url) {
@@ -56,14 +86,27 @@ class ConnectivityServiceImpl implements ConnectivityService {
                             UserAccountManager accountManager,
                             ClientFactory clientFactory,
                             GetRequestBuilder requestBuilder,
+                            Clock clock,
                             int sdkVersion) {
         this.platformConnectivityManager = platformConnectivityManager;
         this.accountManager = accountManager;
         this.clientFactory = clientFactory;
         this.requestBuilder = requestBuilder;
+        this.clock = clock;
         this.sdkVersion = sdkVersion;
+
+        try {
+            platformConnectivityManager.registerNetworkCallback(new NetworkRequest.Builder().build(), networkCallback);
+        } catch (RuntimeException e) {
+            Log_OC.e(TAG, "Cannot observe network changes, walled garden checks expire by time only", e);
+        }
     }
 
+    /**
+     * Result of a walled garden check is reused until {@link #WALLED_CHECK_TTL_MILLIS} passed, the active network
+     * changed or the server of the current account changed. Concurrent callers checking the same server share one
+     * request.
+     */
     @Override
     public boolean isInternetWalled() {
         Connectivity c = getConnectivity();
@@ -75,21 +118,84 @@ class ConnectivityServiceImpl implements ConnectivityService {
                 return true;
             }
 
-            GetMethod get = requestBuilder.invoke(baseServerAddress + "/index.php/204");
-            PlainClient client = clientFactory.createPlainClient();
+            Network network = platformConnectivityManager.getActiveNetwork();
+            FutureTask<Boolean> check;
+            boolean owner = false;
+            long generation;
 
-            int status = get.execute(client);
+            synchronized (walledCheckLock) {
+                if (lastWalledCheck != null && lastWalledCheck.isValidFor(network, baseServerAddress,
+                                                                          clock.getCurrentTime())) {
+                    return lastWalledCheck.walled;
+                }
 
-            // Content-Length is not available when using chunked transfer encoding, so check for -1 as well
-            boolean result = !(status == HttpStatus.SC_NO_CONTENT && get.getResponseContentLength() <= 0);
-            get.releaseConnection();
+                generation = walledCheckGeneration;
+                check = runningWalledChecks.get(baseServerAddress);
+                if (check == null) {
+                    check = new FutureTask<>(() -> requestWalledStatus(baseServerAddress));
+                    runningWalledChecks.put(baseServerAddress, check);
+                    owner = true;
+                }
+            }
+
+            if (owner) {
+                check.run();
+            }
 
-            return result;
+            boolean walled = getWalledStatus(check);
+
+            if (owner) {
+                synchronized (walledCheckLock) {
+                    runningWalledChecks.remove(baseServerAddress);
+                    // a network change during the request makes its result stale
+                    if (generation == walledCheckGeneration) {
+                        lastWalledCheck = new WalledCheck(network, baseServerAddress, walled, clock.getCurrentTime());
+                    }
+                }
+            }
+
+            return walled;
         } else {
             return !c.isConnected();
         }
     }
 
+    private boolean requestWalledStatus(String baseServerAddress) {
+        GetMethod get = requestBuilder.invoke(baseServerAddress + "/index.php/204");
+        PlainClient client = clientFactory.createPlainClient();
+
+        int status = get.execute(client);
+
+        // Content-Length is not available when using chunked transfer encoding, so check for -1 as well
+        boolean result = !(status == HttpStatus.SC_NO_CONTENT && get.getResponseContentLength() <= 0);
+        get.releaseConnection();
+
+        return result;
+    }
+
+    private static boolean getWalledStatus(FutureTask<Boolean> check) {
+        try {
+            return check.get();
+        } catch (ExecutionException e) {
+            Log_OC.e(TAG, "Walled garden check failed", e.getCause());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        }
+    }
+
+    /**
+     * Forgets the last walled garden check, so the next call to {@link #isInternetWalled()} sends a request.
+     */
+    @VisibleForTesting
+    void invalidateWalledCheck() {
+        synchronized (walledCheckLock) {
+            lastWalledCheck = null;
+            walledCheckGeneration++;
+        }
+    }
+
     @Override
     public Connectivity getConnectivity() {
         NetworkInfo networkInfo;
@@ -135,4 +241,54 @@ class ConnectivityServiceImpl implements ConnectivityService {
         }
         return false;
     }
+
+    private static final class WalledCheck {
+        private final Network network;
+        private final String serverAddress;
+        private final boolean walled;
+        private final long checkedAt;
+
+        private WalledCheck(Network network, String serverAddress, boolean walled, long checkedAt) {
+            this.network = network;
+            this.serverAddress = serverAddress;
+            this.walled = walled;
+            this.checkedAt = checkedAt;
+        }
+
+        private boolean isValidFor(Network network, String serverAddress, long now) {
+            return Objects.equals(this.network, network) &&
+                this.serverAddress.equals(serverAddress) &&
+                now - checkedAt >= 0 &&
+                now - checkedAt < WALLED_CHECK_TTL_MILLIS;
+        }
+    }
+
+    /**
+     * Invalidates the walled garden check when networks come and go or a network passes or fails system validation,
+     * e.g. after signing in to a captive portal.
+     */
+    private class NetworkChangeCallback extends ConnectivityManager.NetworkCallback {
+        private final Map<Network, Boolean> validated = new ConcurrentHashMap<>();
+
+        @Override
+        public void onAvailable(@NonNull Network network) {
+            invalidateWalledCheck();
+        }
+
+        @Override
+        public void onLost(@NonNull Network network) {
+            validated.remove(network);
+            invalidateWalledCheck();
+        }
+
+        @Override
+        public void onCapabilitiesChanged(@NonNull Network network, @NonNull NetworkCapabilities capabilities) {
+            boolean isValidated = capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED) &&
+                !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_CAPTIVE_PORTAL);
+            Boolean previous = validated.put(network, isValidated);
+            if (previous != null && previous != isValidated) {
+                invalidateWalledCheck();
+            }
+        }
+    }
 }
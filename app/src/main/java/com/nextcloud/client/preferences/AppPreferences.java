@@ -20,6 +20,7 @@
 
 package com.nextcloud.client.preferences;
 
+import com.nextcloud.client.account.User;
 import com.owncloud.android.datamodel.OCFile;
 import com.owncloud.android.utils.FileSortOrder;
 
@@ -32,6 +33,9 @@ import androidx.annotation.Nullable;
  */
 public interface AppPreferences {
 
+    int MAX_CONCURRENT_UPLOADS = 6;
+    int MAX_CONCURRENT_DOWNLOADS = 6;
+
     /**
      * Preferences listener. Callbacks should be invoked on main thread.
      *
@@ -241,6 +245,13 @@ public interface AppPreferences {
     FileSortOrder getSortOrderByType(FileSortOrder.Type type, FileSortOrder defaultOrder);
     FileSortOrder getSortOrderByType(FileSortOrder.Type type);
 
+    /**
+     * Drops the cached folder layouts and sort orders of a removed account.
+     *
+     * @param user removed account
+     */
+    void clearFolderPreferenceCache(User user);
+
 
     /**
      * Gets the legacy cleaning flag last set.
@@ -268,6 +279,13 @@ public interface AppPreferences {
     boolean isShowMediaScanNotifications();
     void setShowMediaScanNotifications(boolean showMediaScanNotification);
 
+    /**
+     * Large files are downloaded over several connections at once.
+     *
+     * @return true if segmented downloads are enabled
+     */
+    boolean isSegmentedDownloadEnabled();
+
     /**
      * Gets the uploader behavior which the user has set last.
      *
@@ -377,4 +395,31 @@ public interface AppPreferences {
     boolean isStoragePermissionRequested();
 
     void setStoragePermissionRequested(boolean value);
+
+    /**
+     * Gets the number of uploads run in parallel by the uploader; 1 uploads one file after the other.
+     *
+     * @return number of upload workers, between 1 and {@link #MAX_CONCURRENT_UPLOADS}
+     */
+    int getMaxConcurrentUploads();
+
+    void setMaxConcurrentUploads(int maxConcurrentUploads);
+
+    /**
+     * Gets the number of uploads of a single account that may run at the same time.
+     *
+     * @return number of upload workers per account, between 1 and {@link #getMaxConcurrentUploads()}
+     */
+    int getMaxConcurrentUploadsPerAccount();
+
+    void setMaxConcurrentUploadsPerAccount(int maxConcurrentUploadsPerAccount);
+
+    /**
+     * Gets the number of downloads run in parallel by the downloader; 1 downloads one file after the other.
+     *
+     * @return number of download workers, between 1 and {@link #MAX_CONCURRENT_DOWNLOADS}
+     */
+    int getMaxConcurrentDownloads();
+
+    void setMaxConcurrentDownloads(int maxConcurrentDownloads);
 }
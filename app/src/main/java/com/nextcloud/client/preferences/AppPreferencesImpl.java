@@ -29,7 +29,6 @@ import com.nextcloud.client.account.CurrentAccountProvider;
 import com.nextcloud.client.account.User;
 import com.nextcloud.client.account.UserAccountManagerImpl;
 import com.owncloud.android.datamodel.ArbitraryDataProvider;
-import com.owncloud.android.datamodel.FileDataStorageManager;
 import com.owncloud.android.datamodel.OCFile;
 import com.owncloud.android.ui.activity.PassCodeActivity;
 import com.owncloud.android.ui.activity.SettingsActivity;
@@ -84,6 +83,7 @@ public final class AppPreferencesImpl implements AppPreferences {
 
     private static final String PREF__LOCK_TIMESTAMP = "lock_timestamp";
     private static final String PREF__SHOW_MEDIA_SCAN_NOTIFICATIONS = "show_media_scan_notifications";
+    private static final String PREF__SEGMENTED_DOWNLOADS = "segmented_downloads";
     private static final String PREF__LOCK = SettingsActivity.PREFERENCE_LOCK;
     private static final String PREF__SELECTED_ACCOUNT_NAME = "select_oc_account";
     private static final String PREF__MIGRATED_USER_ID = "migrated_user_id";
@@ -99,6 +99,15 @@ public final class AppPreferencesImpl implements AppPreferences {
 
     private static final String PREF__STORAGE_PERMISSION_REQUESTED = "storage_permission_requested";
 
+    private static final String PREF__MAX_CONCURRENT_UPLOADS = "max_concurrent_uploads";
+    private static final String PREF__MAX_CONCURRENT_UPLOADS_PER_ACCOUNT = "max_concurrent_uploads_per_account";
+    private static final int DEFAULT_MAX_CONCURRENT_UPLOADS = 3;
+    private static final int DEFAULT_MAX_CONCURRENT_UPLOADS_PER_ACCOUNT = 2;
+    private static final String PREF__MAX_CONCURRENT_DOWNLOADS = "max_concurrent_downloads";
+    private static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 3;
+
+    private static FolderPreferenceCache folderPreferenceCache;
+
     private final Context context;
     private final SharedPreferences preferences;
     private final CurrentAccountProvider currentAccountProvider;
@@ -503,6 +512,11 @@ public final class AppPreferencesImpl implements AppPreferences {
         preferences.edit().putBoolean(PREF__SHOW_MEDIA_SCAN_NOTIFICATIONS, value).apply();
     }
 
+    @Override
+    public boolean isSegmentedDownloadEnabled() {
+        return preferences.getBoolean(PREF__SEGMENTED_DOWNLOADS, false);
+    }
+
     @Override
     public void removeLegacyPreferences() {
         preferences.edit()
@@ -606,16 +620,7 @@ public final class AppPreferencesImpl implements AppPreferences {
             return defaultValue;
         }
 
-        ArbitraryDataProvider dataProvider = new ArbitraryDataProvider(context.getContentResolver());
-        FileDataStorageManager storageManager = new FileDataStorageManager(user, context.getContentResolver());
-
-        String value = dataProvider.getValue(user.getAccountName(), getKeyFromFolder(preferenceName, folder));
-        OCFile prefFolder = folder;
-        while (prefFolder != null && value.isEmpty()) {
-            prefFolder = storageManager.getFileById(prefFolder.getParentId());
-            value = dataProvider.getValue(user.getAccountName(), getKeyFromFolder(preferenceName, prefFolder));
-        }
-        return value.isEmpty() ? defaultValue : value;
+        return getFolderPreferenceCache(context).get(user, preferenceName, folder, defaultValue);
     }
 
     /**
@@ -631,15 +636,22 @@ public final class AppPreferencesImpl implements AppPreferences {
                                             final String preferenceName,
                                             @Nullable final OCFile folder,
                                             final String value) {
-        ArbitraryDataProvider dataProvider = new ArbitraryDataProvider(context.getContentResolver());
-        dataProvider.storeOrUpdateKeyValue(user.getAccountName(), getKeyFromFolder(preferenceName, folder), value);
+        getFolderPreferenceCache(context).set(user, preferenceName, folder, value);
     }
 
-    private static String getKeyFromFolder(String preferenceName, @Nullable OCFile folder) {
-        final String folderIdString = String.valueOf(folder != null ? folder.getFileId() :
-            FileDataStorageManager.ROOT_PARENT_ID);
+    @Override
+    public void clearFolderPreferenceCache(User user) {
+        getFolderPreferenceCache(context).remove(user);
+    }
 
-        return preferenceName + "_" + folderIdString;
+    /**
+     * Folder preferences are shared by all instances, see {@link #fromContext(Context)}.
+     */
+    private static synchronized FolderPreferenceCache getFolderPreferenceCache(Context context) {
+        if (folderPreferenceCache == null) {
+            folderPreferenceCache = FolderPreferenceCache.create(context.getApplicationContext().getContentResolver());
+        }
+        return folderPreferenceCache;
     }
 
     @Override
@@ -708,6 +720,40 @@ public final class AppPreferencesImpl implements AppPreferences {
         preferences.edit().putBoolean(PREF__STORAGE_PERMISSION_REQUESTED, value).apply();
     }
 
+    @Override
+    public int getMaxConcurrentUploads() {
+        int uploads = preferences.getInt(PREF__MAX_CONCURRENT_UPLOADS, DEFAULT_MAX_CONCURRENT_UPLOADS);
+        return Math.max(1, Math.min(uploads, MAX_CONCURRENT_UPLOADS));
+    }
+
+    @Override
+    public void setMaxConcurrentUploads(int maxConcurrentUploads) {
+        preferences.edit().putInt(PREF__MAX_CONCURRENT_UPLOADS, maxConcurrentUploads).apply();
+    }
+
+    @Override
+    public int getMaxConcurrentUploadsPerAccount() {
+        int uploads = preferences.getInt(PREF__MAX_CONCURRENT_UPLOADS_PER_ACCOUNT,
+                                         DEFAULT_MAX_CONCURRENT_UPLOADS_PER_ACCOUNT);
+        return Math.max(1, Math.min(uploads, getMaxConcurrentUploads()));
+    }
+
+    @Override
+    public void setMaxConcurrentUploadsPerAccount(int maxConcurrentUploadsPerAccount) {
+        preferences.edit().putInt(PREF__MAX_CONCURRENT_UPLOADS_PER_ACCOUNT, maxConcurrentUploadsPerAccount).apply();
+    }
+
+    @Override
+    public int getMaxConcurrentDownloads() {
+        int downloads = preferences.getInt(PREF__MAX_CONCURRENT_DOWNLOADS, DEFAULT_MAX_CONCURRENT_DOWNLOADS);
+        return Math.max(1, Math.min(downloads, MAX_CONCURRENT_DOWNLOADS));
+    }
+
+    @Override
+    public void setMaxConcurrentDownloads(int maxConcurrentDownloads) {
+        preferences.edit().putInt(PREF__MAX_CONCURRENT_DOWNLOADS, maxConcurrentDownloads).apply();
+    }
+
     @VisibleForTesting
     public int computeBruteForceDelay(int count) {
         return (int) Math.min(count / 3d, 10);
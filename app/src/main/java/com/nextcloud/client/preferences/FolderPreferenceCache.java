@@ -0,0 +1,209 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.preferences;
+
+import android.content.ContentResolver;
+
+import com.nextcloud.client.account.User;
+import com.owncloud.android.datamodel.ArbitraryDataProvider;
+import com.owncloud.android.datamodel.FileDataStorageManager;
+import com.owncloud.android.datamodel.OCFile;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Write-through cache of per folder preferences, e.g. layout and sort order, stored in {@link ArbitraryDataProvider}
+ * under keys like {@code folder_layout_<file id>}.
+ * <p>
+ * All values of a preference are loaded with one query per account. A folder without a value of its own inherits the
+ * value of its nearest ancestor, resolved in memory. Parent ids of ancestors are read from the database once and
+ * remembered; the parent id of the folder asked for is taken from the folder itself, which keeps the remembered
+ * hierarchy up to date when folders are moved and browsed.
+ */
+final class FolderPreferenceCache {
+
+    /**
+     * Guards against cycles in a corrupted hierarchy.
+     */
+    private static final int MAX_DEPTH = 256;
+
+    interface Storage {
+        /**
+         * @return values of the account with keys starting with the given prefix, by key
+         */
+        Map<String, String> loadValues(User user, String keyPrefix);
+
+        void storeValue(User user, String key, String value);
+
+        /**
+         * @return parent id of the folder, or null if the folder is unknown
+         */
+        @Nullable
+        Long getParentId(User user, long folderId);
+    }
+
+    private final Storage storage;
+    private final Map<String, AccountPreferences> accounts = new HashMap<>();
+
+    FolderPreferenceCache(Storage storage) {
+        this.storage = storage;
+    }
+
+    static FolderPreferenceCache create(ContentResolver contentResolver) {
+        return new FolderPreferenceCache(new ProviderStorage(contentResolver));
+    }
+
+    /**
+     * @param folder folder to look up, or null for the default of the account
+     * @return value of the folder or its nearest ancestor, default value if none is set
+     */
+    synchronized String get(User user, String preferenceName, @Nullable OCFile folder, String defaultValue) {
+        AccountPreferences account = getAccount(user);
+        Map<Long, String> values = account.getValues(user, preferenceName);
+        if (values.isEmpty()) {
+            return defaultValue;
+        }
+
+        long folderId;
+        Long parentId;
+        if (folder == null) {
+            folderId = FileDataStorageManager.ROOT_PARENT_ID;
+            parentId = null;
+        } else {
+            folderId = folder.getFileId();
+            parentId = folder.getParentId();
+            account.parentIds.put(folderId, parentId);
+        }
+
+        for (int depth = 0; depth < MAX_DEPTH; depth++) {
+            String value = values.get(folderId);
+            if (value != null && !value.isEmpty()) {
+                return value;
+            }
+
+            if (folderId == FileDataStorageManager.ROOT_PARENT_ID) {
+                break;
+            }
+
+            if (parentId == null) {
+                parentId = account.getParentId(user, folderId);
+            }
+            folderId = parentId != null ? parentId : FileDataStorageManager.ROOT_PARENT_ID;
+            parentId = null;
+        }
+
+        return defaultValue;
+    }
+
+    synchronized void set(User user, String preferenceName, @Nullable OCFile folder, String value) {
+        storage.storeValue(user, getKey(preferenceName, folder), value);
+
+        AccountPreferences account = getAccount(user);
+        Map<Long, String> values = account.values.get(preferenceName);
+        if (values != null) {
+            values.put(getFolderId(folder), value);
+        }
+    }
+
+    /**
+     * Forgets values and hierarchy of an account, e.g. once it is removed. Folder ids of an account added again under
+     * the same name have nothing to do with the old ones.
+     */
+    synchronized void remove(User user) {
+        accounts.remove(user.getAccountName());
+    }
+
+    static String getKey(String preferenceName, @Nullable OCFile folder) {
+        return preferenceName + "_" + getFolderId(folder);
+    }
+
+    private static long getFolderId(@Nullable OCFile folder) {
+        return folder != null ? folder.getFileId() : FileDataStorageManager.ROOT_PARENT_ID;
+    }
+
+    private AccountPreferences getAccount(User user) {
+        AccountPreferences account = accounts.get(user.getAccountName());
+        if (account == null) {
+            account = new AccountPreferences();
+            accounts.put(user.getAccountName(), account);
+        }
+        return account;
+    }
+
+    private class AccountPreferences {
+        private final Map<String, Map<Long, String>> values = new HashMap<>();
+        private final Map<Long, Long> parentIds = new HashMap<>();
+
+        private Map<Long, String> getValues(User user, String preferenceName) {
+            Map<Long, String> preferenceValues = values.get(preferenceName);
+            if (preferenceValues == null) {
+                preferenceValues = new HashMap<>();
+                String keyPrefix = preferenceName + "_";
+                for (Map.Entry<String, String> entry : storage.loadValues(user, keyPrefix).entrySet()) {
+                    try {
+                        long folderId = Long.parseLong(entry.getKey().substring(keyPrefix.length()));
+                        preferenceValues.put(folderId, entry.getValue());
+                    } catch (NumberFormatException e) {
+                        // other preference sharing the prefix, e.g. sort order by type
+                    }
+                }
+                values.put(preferenceName, preferenceValues);
+            }
+            return preferenceValues;
+        }
+
+        @Nullable
+        private Long getParentId(User user, long folderId) {
+            if (parentIds.containsKey(folderId)) {
+                return parentIds.get(folderId);
+            }
+            Long parentId = storage.getParentId(user, folderId);
+            parentIds.put(folderId, parentId);
+            return parentId;
+        }
+    }
+
+    private static final class ProviderStorage implements Storage {
+        private final ContentResolver contentResolver;
+
+        private ProviderStorage(ContentResolver contentResolver) {
+            this.contentResolver = contentResolver;
+        }
+
+        @Override
+        public Map<String, String> loadValues(User user, String keyPrefix) {
+            return new ArbitraryDataProvider(contentResolver).getValuesByKeyPrefix(user.getAccountName(), keyPrefix);
+        }
+
+        @Override
+        public void storeValue(User user, String key, String value) {
+            new ArbitraryDataProvider(contentResolver).storeOrUpdateKeyValue(user.getAccountName(), key, value);
+        }
+
+        @Nullable
+        @Override
+        public Long getParentId(User user, long folderId) {
+            OCFile folder = new FileDataStorageManager(user, contentResolver).getFileById(folderId);
+            return folder != null ? folder.getParentId() : null;
+        }
+    }
+}
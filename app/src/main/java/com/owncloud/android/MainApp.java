@@ -836,6 +836,12 @@ public class MainApp extends MultiDexApplication implements HasAndroidInjector {
         return dispatchingAndroidInjector;
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        ThumbnailsCacheManager.onTrimMemory(level);
+    }
+
 
     public static void setAppTheme(DarkMode mode) {
         switch (mode) {
@@ -29,6 +29,9 @@ import com.nextcloud.client.account.User;
 import com.owncloud.android.db.ProviderMeta;
 import com.owncloud.android.lib.common.utils.Log_OC;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
@@ -118,7 +121,7 @@ public class ArbitraryDataProvider {
         }
     }
 
-    Long getLongValue(String accountName, String key) {
+    public Long getLongValue(String accountName, String key) {
         String value = getValue(accountName, key);
 
         if (value.isEmpty()) {
@@ -198,6 +201,42 @@ public class ArbitraryDataProvider {
         return "";
     }
 
+    /**
+     * Returns all values of an account whose key starts with the given prefix, in a single query.
+     *
+     * @return map of key to value, empty if nothing is found
+     */
+    @NonNull
+    public Map<String, String> getValuesByKeyPrefix(String accountName, String keyPrefix) {
+        Map<String, String> values = new HashMap<>();
+        Cursor cursor = contentResolver.query(
+            ProviderMeta.ProviderTableMeta.CONTENT_URI_ARBITRARY_DATA,
+            null,
+            ProviderMeta.ProviderTableMeta.ARBITRARY_DATA_CLOUD_ID + " = ? and " +
+                ProviderMeta.ProviderTableMeta.ARBITRARY_DATA_KEY + " LIKE ?",
+            new String[]{accountName, keyPrefix + "%"},
+            null
+                                             );
+
+        if (cursor != null) {
+            int keyIndex = cursor.getColumnIndexOrThrow(ProviderMeta.ProviderTableMeta.ARBITRARY_DATA_KEY);
+            int valueIndex = cursor.getColumnIndexOrThrow(ProviderMeta.ProviderTableMeta.ARBITRARY_DATA_VALUE);
+            while (cursor.moveToNext()) {
+                String key = cursor.getString(keyIndex);
+                String value = cursor.getString(valueIndex);
+                // LIKE treats '_' as wildcard
+                if (key != null && value != null && key.startsWith(keyPrefix)) {
+                    values.put(key, value);
+                }
+            }
+            cursor.close();
+        } else {
+            Log_OC.e(TAG, "DB error restoring arbitrary values.");
+        }
+
+        return values;
+    }
+
     private ArbitraryDataSet getArbitraryDataSet(String accountName, String key) {
         Cursor cursor = contentResolver.query(
                 ProviderMeta.ProviderTableMeta.CONTENT_URI_ARBITRARY_DATA,
@@ -39,11 +39,9 @@ import android.provider.MediaStore;
 import android.text.TextUtils;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
 import com.nextcloud.client.account.User;
 import com.owncloud.android.MainApp;
 import com.owncloud.android.db.ProviderMeta.ProviderTableMeta;
-import com.owncloud.android.lib.common.network.WebdavEntry;
 import com.owncloud.android.lib.common.operations.RemoteOperationResult;
 import com.owncloud.android.lib.common.utils.Log_OC;
 import com.owncloud.android.lib.resources.files.ReadFileRemoteOperation;
@@ -51,10 +49,10 @@ import com.owncloud.android.lib.resources.files.model.FileLockType;
 import com.owncloud.android.lib.resources.files.model.RemoteFile;
 import com.owncloud.android.lib.resources.shares.OCShare;
 import com.owncloud.android.lib.resources.shares.ShareType;
-import com.owncloud.android.lib.resources.shares.ShareeUser;
 import com.owncloud.android.lib.resources.status.CapabilityBooleanType;
 import com.owncloud.android.lib.resources.status.OCCapability;
 import com.owncloud.android.operations.RemoteOperationFailedException;
+import com.owncloud.android.providers.FileContentProvider;
 import com.owncloud.android.utils.FileStorageUtils;
 import com.owncloud.android.utils.MimeType;
 import com.owncloud.android.utils.MimeTypeUtil;
@@ -64,10 +62,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
 import androidx.annotation.NonNull;
@@ -83,10 +83,37 @@ public class FileDataStorageManager {
     private static final String FAILED_TO_INSERT_MSG = "Fail to insert insert file to database ";
     private static final String SENDING_TO_FILECONTENTPROVIDER_MSG = "Sending %d operations to FileContentProvider";
     private static final String EXCEPTION_MSG = "Exception in batch of operations ";
+    private static final int MAX_PATHS_PER_QUERY = 500;
 
     public static final int ROOT_PARENT_ID = 0;
     public static final String NULL_STRING = "null";
 
+    /**
+     * Selections of the files table, shared with the query plan test so that the plans checked are the ones of the
+     * queries issued here.
+     */
+    @VisibleForTesting
+    public static final String ACCOUNT_SELECTION = ProviderTableMeta.FILE_ACCOUNT_OWNER + "=?";
+    @VisibleForTesting
+    public static final String FILE_BY_PATH_SELECTION =
+        ProviderTableMeta.FILE_ACCOUNT_OWNER + AND + ProviderTableMeta.FILE_PATH + "=?";
+    @VisibleForTesting
+    public static final String DESCENDANTS_SELECTION =
+        ProviderTableMeta.FILE_ACCOUNT_OWNER + AND + ProviderTableMeta.FILE_PATH + " LIKE ?";
+    @VisibleForTesting
+    public static final String DESCENDANTS_ORDER = ProviderTableMeta.FILE_PATH + " ASC";
+    @VisibleForTesting
+    public static final String FOLDER_CONTENT_SELECTION = ProviderTableMeta.FILE_PARENT + "=?";
+    @VisibleForTesting
+    public static final String ACCOUNT_FOLDER_CONTENT_SELECTION =
+        ProviderTableMeta.FILE_ACCOUNT_OWNER + AND + ProviderTableMeta.FILE_PARENT + "=?";
+    @VisibleForTesting
+    public static final String GALLERY_ITEMS_SELECTION = ProviderTableMeta.FILE_ACCOUNT_OWNER + AND +
+        ProviderTableMeta.FILE_MODIFIED + ">=? AND " +
+        ProviderTableMeta.FILE_MODIFIED + "<? AND (" +
+        ProviderTableMeta.FILE_CONTENT_TYPE + " LIKE ? OR " +
+        ProviderTableMeta.FILE_CONTENT_TYPE + " LIKE ? )";
+
     private final ContentResolver contentResolver;
     private final ContentProviderClient contentProviderClient;
     private final User user;
@@ -193,6 +220,47 @@ public class FileDataStorageManager {
     }
 
 
+    /**
+     * Finds files and folders of the account by name in the local database, without asking the server.
+     *
+     * @param query words the names or paths of the files start with, e.g. "holi pho"
+     * @param limit maximum number of files returned
+     * @return found files, best matches first
+     */
+    public List<OCFile> searchFiles(String query, int limit) {
+        List<OCFile> files = new ArrayList<>();
+
+        Uri requestURI = ProviderTableMeta.CONTENT_URI_FILE_SEARCH.buildUpon()
+            .appendQueryParameter(FileContentProvider.LIMIT_PARAMETER, String.valueOf(limit))
+            .build();
+        String[] selectionArgs = new String[]{user.getAccountName(), query};
+        Cursor cursor;
+
+        if (getContentProviderClient() != null) {
+            try {
+                cursor = getContentProviderClient().query(requestURI, null, null, selectionArgs, null);
+            } catch (RemoteException e) {
+                Log_OC.e(TAG, e.getMessage(), e);
+                return files;
+            }
+        } else {
+            cursor = getContentResolver().query(requestURI, null, null, selectionArgs, null);
+        }
+
+        if (cursor != null) {
+            if (cursor.moveToFirst()) {
+                OCFileCursorMapper mapper = createFileMapper(cursor);
+                do {
+                    files.add(mapper.map(cursor));
+                } while (cursor.moveToNext());
+            }
+            cursor.close();
+        }
+
+        return files;
+    }
+
+
     public List<OCFile> getFolderImages(OCFile folder, boolean onlyOnDevice) {
         List<OCFile> imageList = new ArrayList<>();
 
@@ -215,6 +283,9 @@ public class FileDataStorageManager {
         final ContentValues cv = createContentValuesForFile(ocFile);
         if (ocFile.isFolder()) {
             cv.remove(ProviderTableMeta.FILE_STORAGE_PATH);
+        } else {
+            // the local copy may have been downloaded, uploaded or removed
+            LocalAvailabilityIndex.getInstance().invalidate(ocFile.getStoragePath());
         }
 
         boolean sameRemotePath = fileExists(ocFile.getRemotePath());
@@ -337,18 +408,32 @@ public class FileDataStorageManager {
 
         ArrayList<ContentProviderOperation> operations = new ArrayList<>(updatedFiles.size());
 
+        // resolve already stored children in a single query instead of one per file
+        Map<String, Long> existingChildren = getFolderChildrenIds(folder.getFileId());
+        Set<Long> existingIds = new HashSet<>(existingChildren.values());
+
         // prepare operations to insert or update files to save in the given folder
         for (OCFile ocFile : updatedFiles) {
             ContentValues contentValues = createContentValuesForFile(ocFile);
             contentValues.put(ProviderTableMeta.FILE_PARENT, folder.getFileId());
 
-            if (fileExists(ocFile.getFileId()) || fileExists(ocFile.getRemotePath())) {
-                long fileId;
-                if (ocFile.getFileId() != -1) {
-                    fileId = ocFile.getFileId();
-                } else {
-                    fileId = getFileByPath(ocFile.getRemotePath()).getFileId();
+            long fileId = -1;
+            if (ocFile.getFileId() != -1 && existingIds.contains(ocFile.getFileId())) {
+                fileId = ocFile.getFileId();
+            } else if (existingChildren.containsKey(ocFile.getRemotePath())) {
+                fileId = existingChildren.get(ocFile.getRemotePath());
+            } else if (ocFile.getFileId() != -1 && fileExists(ocFile.getFileId())) {
+                // known file moved in from another folder
+                fileId = ocFile.getFileId();
+            } else {
+                // same path may still be stored under another parent, e.g. after a server side move
+                OCFile storedFile = getFileByEncryptedRemotePath(ocFile.getRemotePath());
+                if (storedFile != null) {
+                    fileId = storedFile.getFileId();
                 }
+            }
+
+            if (fileId != -1) {
                 // updating an existing file
                 operations.add(ContentProviderOperation.newUpdate(ProviderTableMeta.CONTENT_URI)
                                    .withValues(contentValues)
@@ -363,7 +448,7 @@ public class FileDataStorageManager {
         }
 
         // prepare operations to remove files in the given folder
-        String where = ProviderTableMeta.FILE_ACCOUNT_OWNER + AND + ProviderTableMeta.FILE_PATH + " = ?";
+        String where = FILE_BY_PATH_SELECTION;
         String[] whereArgs = new String[2];
         whereArgs[0] = user.getAccountName();
         for (OCFile ocFile : filesToRemove) {
@@ -377,6 +462,7 @@ public class FileDataStorageManager {
                     File localFolder = new File(FileStorageUtils.getDefaultSavePathFor(user.getAccountName(), ocFile));
                     if (localFolder.exists()) {
                         removeLocalFolder(localFolder);
+                        LocalAvailabilityIndex.getInstance().invalidateTree(localFolder.getAbsolutePath());
                     }
                 } else {
                     operations.add(ContentProviderOperation.newDelete(
@@ -388,6 +474,7 @@ public class FileDataStorageManager {
                         if (new File(path).delete() && MimeTypeUtil.isMedia(ocFile.getMimeType())) {
                             triggerMediaScan(path, ocFile); // notify MediaScanner about removed file
                         }
+                        LocalAvailabilityIndex.getInstance().invalidate(path);
                     }
                 }
             }
@@ -438,6 +525,155 @@ public class FileDataStorageManager {
         }
     }
 
+    /**
+     * Inserts, updates and removes files of different folders in a single batch, e.g. the results of a search.
+     * Files are matched with stored ones by id, else by remote path, like {@link #saveFile(OCFile)} does.
+     *
+     * @param files         files to insert or update; new files get their id set
+     * @param filesToRemove files to remove, together with their local copies
+     */
+    public void saveFiles(List<OCFile> files, Collection<OCFile> filesToRemove) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(files.size() + filesToRemove.size());
+
+        // resolve stored files in a single query instead of one per file
+        List<String> unknownPaths = new ArrayList<>();
+        for (OCFile ocFile : files) {
+            if (ocFile.getFileId() == -1) {
+                unknownPaths.add(ocFile.getRemotePath());
+            }
+        }
+        Map<String, Long> existingFiles = getFileIdsByPaths(unknownPaths);
+
+        for (OCFile ocFile : files) {
+            ContentValues contentValues = createContentValuesForFile(ocFile);
+            if (ocFile.isFolder()) {
+                contentValues.remove(ProviderTableMeta.FILE_STORAGE_PATH);
+            } else {
+                LocalAvailabilityIndex.getInstance().invalidate(ocFile.getStoragePath());
+            }
+
+            Long fileId = ocFile.getFileId() != -1 ? Long.valueOf(ocFile.getFileId()) :
+                existingFiles.get(ocFile.getRemotePath());
+            if (fileId != null) {
+                ocFile.setFileId(fileId);
+                operations.add(ContentProviderOperation.newUpdate(ProviderTableMeta.CONTENT_URI)
+                                   .withValues(contentValues)
+                                   .withSelection(ProviderTableMeta._ID + " = ?", new String[]{String.valueOf(fileId)})
+                                   .build());
+            } else {
+                operations.add(ContentProviderOperation.newInsert(ProviderTableMeta.CONTENT_URI_FILE)
+                                   .withValues(contentValues)
+                                   .build());
+            }
+        }
+
+        String where = FILE_BY_PATH_SELECTION;
+        for (OCFile ocFile : filesToRemove) {
+            Uri uri = ContentUris.withAppendedId(ocFile.isFolder() ? ProviderTableMeta.CONTENT_URI_DIR :
+                                                     ProviderTableMeta.CONTENT_URI_FILE, ocFile.getFileId());
+            operations.add(ContentProviderOperation.newDelete(uri)
+                               .withSelection(where, new String[]{user.getAccountName(), ocFile.getRemotePath()})
+                               .build());
+        }
+
+        ContentProviderResult[] results = null;
+        Log_OC.d(TAG, String.format(Locale.ENGLISH, SENDING_TO_FILECONTENTPROVIDER_MSG, operations.size()));
+
+        try {
+            if (getContentResolver() != null) {
+                results = getContentResolver().applyBatch(MainApp.getAuthority(), operations);
+            } else {
+                results = getContentProviderClient().applyBatch(operations);
+            }
+        } catch (OperationApplicationException | RemoteException e) {
+            Log_OC.e(TAG, EXCEPTION_MSG + e.getMessage(), e);
+        }
+
+        if (results == null) {
+            return;
+        }
+
+        // update new id in file objects for insertions; results are in the order of the operations
+        for (int i = 0; i < files.size() && i < results.length; i++) {
+            if (results[i].uri != null) {
+                files.get(i).setFileId(Long.parseLong(results[i].uri.getPathSegments().get(1)));
+            }
+        }
+
+        // local copies are removed only once the files are gone from the database
+        for (OCFile ocFile : filesToRemove) {
+            if (ocFile.isFolder()) {
+                removeLocalFolder(ocFile);
+            } else if (ocFile.isDown()) {
+                String path = ocFile.getStoragePath();
+                if (new File(path).delete()) {
+                    deleteFileInMediaScan(path);
+                    LocalFolderSizeCache.getInstance().invalidate(path);
+                }
+                LocalAvailabilityIndex.getInstance().invalidate(path);
+            }
+        }
+    }
+
+    /**
+     * Finds the ids of stored files of the account by their remote paths.
+     *
+     * @return ids by remote path, only for paths that are stored
+     */
+    private Map<String, Long> getFileIdsByPaths(List<String> remotePaths) {
+        Map<String, Long> ids = new HashMap<>();
+        String[] projection = new String[]{ProviderTableMeta._ID, ProviderTableMeta.FILE_PATH};
+
+        // stay below the limit of arguments of a single query
+        for (int start = 0; start < remotePaths.size(); start += MAX_PATHS_PER_QUERY) {
+            List<String> paths = remotePaths.subList(start, Math.min(start + MAX_PATHS_PER_QUERY, remotePaths.size()));
+
+            StringBuilder selection = new StringBuilder(ProviderTableMeta.FILE_ACCOUNT_OWNER + " = ? AND " +
+                                                            ProviderTableMeta.FILE_PATH + " IN (");
+            for (int i = 0; i < paths.size() - 1; i++) {
+                selection.append("?, ");
+            }
+            selection.append("?)");
+
+            String[] selectionArgs = new String[paths.size() + 1];
+            selectionArgs[0] = user.getAccountName();
+            for (int i = 0; i < paths.size(); i++) {
+                selectionArgs[i + 1] = paths.get(i);
+            }
+
+            Cursor cursor;
+            if (getContentProviderClient() != null) {
+                try {
+                    cursor = getContentProviderClient().query(ProviderTableMeta.CONTENT_URI,
+                                                              projection,
+                                                              selection.toString(),
+                                                              selectionArgs,
+                                                              null);
+                } catch (RemoteException e) {
+                    Log_OC.e(TAG, e.getMessage(), e);
+                    continue;
+                }
+            } else {
+                cursor = getContentResolver().query(ProviderTableMeta.CONTENT_URI,
+                                                    projection,
+                                                    selection.toString(),
+                                                    selectionArgs,
+                                                    null);
+            }
+
+            if (cursor != null) {
+                int idColumn = cursor.getColumnIndexOrThrow(ProviderTableMeta._ID);
+                int pathColumn = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_PATH);
+                while (cursor.moveToNext()) {
+                    ids.put(cursor.getString(pathColumn), cursor.getLong(idColumn));
+                }
+                cursor.close();
+            }
+        }
+
+        return ids;
+    }
+
     /**
      * Returns a {@link ContentValues} filled with values that are common to both files and folders
      * @see #createContentValuesForFile(OCFile)
@@ -525,7 +761,7 @@ public class FileDataStorageManager {
                     //Uri file_uri = Uri.withAppendedPath(ProviderTableMeta.CONTENT_URI_FILE,
                     // ""+file.getFileId());
                     Uri file_uri = ContentUris.withAppendedId(ProviderTableMeta.CONTENT_URI_FILE, ocFile.getFileId());
-                    String where = ProviderTableMeta.FILE_ACCOUNT_OWNER + AND + ProviderTableMeta.FILE_PATH + "=?";
+                    String where = FILE_BY_PATH_SELECTION;
 
                     String[] whereArgs = new String[]{user.getAccountName(), ocFile.getRemotePath()};
                     int deleted = 0;
@@ -546,6 +782,8 @@ public class FileDataStorageManager {
                     success = new File(localPath).delete();
                     if (success) {
                         deleteFileInMediaScan(localPath);
+                        LocalFolderSizeCache.getInstance().invalidate(localPath);
+                        LocalAvailabilityIndex.getInstance().invalidate(localPath);
                     }
 
                     if (success && !removeDBData) {
@@ -583,7 +821,7 @@ public class FileDataStorageManager {
     private boolean removeFolderInDb(OCFile folder) {
         Uri folderUri = Uri.withAppendedPath(ProviderTableMeta.CONTENT_URI_DIR, String.valueOf(folder.getFileId()));
         // for recursive deletion
-        String where = ProviderTableMeta.FILE_ACCOUNT_OWNER + AND + ProviderTableMeta.FILE_PATH + "=?";
+        String where = FILE_BY_PATH_SELECTION;
         String[] whereArgs = new String[]{user.getAccountName(), folder.getRemotePath()};
         int deleted = 0;
         if (getContentProviderClient() != null) {
@@ -625,6 +863,8 @@ public class FileDataStorageManager {
             // stage 2: remove the folder itself and any local file inside out of sync;
             //          for instance, after clearing the app cache or reinstalling
             success &= removeLocalFolder(localFolder);
+            LocalFolderSizeCache.getInstance().invalidate(localFolderPath);
+            LocalAvailabilityIndex.getInstance().invalidateTree(localFolderPath);
         }
 
         return success;
@@ -668,9 +908,9 @@ public class FileDataStorageManager {
                     cursor = getContentProviderClient().query(
                         ProviderTableMeta.CONTENT_URI,
                         null,
-                        ProviderTableMeta.FILE_ACCOUNT_OWNER + AND + ProviderTableMeta.FILE_PATH + " LIKE ? ",
+                        DESCENDANTS_SELECTION,
                         new String[]{user.getAccountName(), ocFile.getRemotePath() + "%"},
-                        ProviderTableMeta.FILE_PATH + " ASC "
+                        DESCENDANTS_ORDER
                     );
                 } catch (RemoteException e) {
                     Log_OC.e(TAG, e.getMessage(), e);
@@ -680,9 +920,9 @@ public class FileDataStorageManager {
                 cursor = getContentResolver().query(
                     ProviderTableMeta.CONTENT_URI,
                     null,
-                    ProviderTableMeta.FILE_ACCOUNT_OWNER + AND + ProviderTableMeta.FILE_PATH + " LIKE ? ",
+                    DESCENDANTS_SELECTION,
                     new String[]{user.getAccountName(), ocFile.getRemotePath() + "%"},
-                    ProviderTableMeta.FILE_PATH + " ASC "
+                    DESCENDANTS_ORDER
                 );
             }
 
@@ -695,9 +935,10 @@ public class FileDataStorageManager {
             if (cursor.moveToFirst()) {
                 int lengthOfOldPath = ocFile.getRemotePath().length();
                 int lengthOfOldStoragePath = defaultSavePath.length() + lengthOfOldPath;
+                OCFileCursorMapper mapper = createFileMapper(cursor);
                 do {
                     ContentValues contentValues = new ContentValues(); // keep construction in the loop
-                    OCFile childFile = createFileInstance(cursor);
+                    OCFile childFile = mapper.map(cursor);
                     contentValues.put(
                         ProviderTableMeta.FILE_PATH,
                         targetPath + childFile.getRemotePath().substring(lengthOfOldPath)
@@ -766,6 +1007,9 @@ public class FileDataStorageManager {
             }
 
             if (renamed) {
+                LocalAvailabilityIndex.getInstance().invalidateTree(originalLocalPath);
+                LocalAvailabilityIndex.getInstance().invalidateTree(targetLocalPath);
+
                 Iterator<String> pathIterator = originalPathsToTriggerMediaScan.iterator();
                 while (pathIterator.hasNext()) {
                     // Notify MediaScanner about removed file
@@ -794,6 +1038,7 @@ public class FileDataStorageManager {
                     Log_OC.e(TAG, "Unable to create parent folder " + targetFolder.getAbsolutePath());
                 }
                 copied = FileStorageUtils.copyFile(localFile, targetFile);
+                LocalAvailabilityIndex.getInstance().invalidateTree(targetFile.getAbsolutePath());
             }
             Log_OC.d(TAG, "Local file COPIED : " + copied);
         }
@@ -857,6 +1102,8 @@ public class FileDataStorageManager {
         } else {
             getContentProviderClient().applyBatch(operations);
         }
+        LocalAvailabilityIndex.getInstance().invalidateTree(sourcePath);
+        LocalAvailabilityIndex.getInstance().invalidateTree(destinationPath);
     }
 
     private List<OCFile> getFolderContent(long parentId, boolean onlyOnDevice) {
@@ -870,7 +1117,7 @@ public class FileDataStorageManager {
                 cursor = getContentProviderClient().query(
                     requestURI,
                     null,
-                    ProviderTableMeta.FILE_PARENT + "=?",
+                    FOLDER_CONTENT_SELECTION,
                     new String[]{String.valueOf(parentId)},
                     null
                 );
@@ -882,7 +1129,7 @@ public class FileDataStorageManager {
             cursor = getContentResolver().query(
                 requestURI,
                 null,
-                ProviderTableMeta.FILE_PARENT + "=?",
+                FOLDER_CONTENT_SELECTION,
                 new String[]{String.valueOf(parentId)},
                 null
                                                );
@@ -890,8 +1137,9 @@ public class FileDataStorageManager {
 
         if (cursor != null) {
             if (cursor.moveToFirst()) {
+                OCFileCursorMapper mapper = createFileMapper(cursor);
                 do {
-                    OCFile child = createFileInstance(cursor);
+                    OCFile child = mapper.map(cursor);
                     if (!onlyOnDevice || child.existsOnDevice()) {
                         folderContent.add(child);
                     }
@@ -904,6 +1152,42 @@ public class FileDataStorageManager {
     }
 
 
+    /**
+     * Loads remote path and id of all stored children of a folder with a single query.
+     *
+     * @param parentId id of the folder
+     * @return map of remote path to file id; empty if the folder has no stored children
+     */
+    private Map<String, Long> getFolderChildrenIds(long parentId) {
+        Map<String, Long> children = new HashMap<>();
+
+        Uri requestURI = Uri.withAppendedPath(ProviderTableMeta.CONTENT_URI_DIR, String.valueOf(parentId));
+        String[] projection = new String[]{ProviderTableMeta._ID, ProviderTableMeta.FILE_PATH};
+        Cursor cursor;
+
+        if (getContentProviderClient() != null) {
+            try {
+                cursor = getContentProviderClient().query(requestURI, projection, null, null, null);
+            } catch (RemoteException e) {
+                Log_OC.e(TAG, e.getMessage(), e);
+                return children;
+            }
+        } else {
+            cursor = getContentResolver().query(requestURI, projection, null, null, null);
+        }
+
+        if (cursor != null) {
+            int idColumn = cursor.getColumnIndexOrThrow(ProviderTableMeta._ID);
+            int pathColumn = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_PATH);
+            while (cursor.moveToNext()) {
+                children.put(cursor.getString(pathColumn), cursor.getLong(idColumn));
+            }
+            cursor.close();
+        }
+
+        return children;
+    }
+
     private OCFile createRootDir() {
         OCFile ocFile = new OCFile(OCFile.ROOT_PATH);
         ocFile.setMimeType(MimeType.DIRECTORY);
@@ -928,23 +1212,29 @@ public class FileDataStorageManager {
         return isExists;
     }
 
+    /**
+     * @param key column of the files table to match
+     * @return selection of files of an account by the value of a column
+     */
+    @VisibleForTesting
+    public static String fileByColumnSelection(String key) {
+        return key + AND + ProviderTableMeta.FILE_ACCOUNT_OWNER + "=?";
+    }
+
     private Cursor getFileCursorForValue(String key, String value) {
         Cursor cursor;
         if (getContentResolver() != null) {
             cursor = getContentResolver()
                 .query(ProviderTableMeta.CONTENT_URI,
                        null,
-                       key + AND
-                           + ProviderTableMeta.FILE_ACCOUNT_OWNER
-                           + "=?",
+                       fileByColumnSelection(key),
                        new String[]{value, user.getAccountName()}, null);
         } else {
             try {
                 cursor = getContentProviderClient().query(
                     ProviderTableMeta.CONTENT_URI,
                     null,
-                    key + AND + ProviderTableMeta.FILE_ACCOUNT_OWNER
-                        + "=?", new String[]{value, user.getAccountName()},
+                    fileByColumnSelection(key), new String[]{value, user.getAccountName()},
                     null);
             } catch (RemoteException e) {
                 Log_OC.e(TAG, "Could not get file details: " + e.getMessage(), e);
@@ -964,81 +1254,20 @@ public class FileDataStorageManager {
     private OCFile createFileInstance(Cursor cursor) {
         OCFile ocFile = null;
         if (cursor != null) {
-            ocFile = new OCFile(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_PATH)));
-            ocFile.setDecryptedRemotePath(getString(cursor, ProviderTableMeta.FILE_PATH_DECRYPTED));
-            ocFile.setFileId(cursor.getLong(cursor.getColumnIndexOrThrow(ProviderTableMeta._ID)));
-            ocFile.setParentId(cursor.getLong(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_PARENT)));
-            ocFile.setMimeType(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_CONTENT_TYPE)));
-            ocFile.setStoragePath(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_STORAGE_PATH)));
-            if (ocFile.getStoragePath() == null) {
-                // try to find existing file and bind it with current account;
-                // with the current update of SynchronizeFolderOperation, this won't be
-                // necessary anymore after a full synchronization of the account
-                File file = new File(FileStorageUtils.getDefaultSavePathFor(user.getAccountName(), ocFile));
-                if (file.exists()) {
-                    ocFile.setStoragePath(file.getAbsolutePath());
-                    ocFile.setLastSyncDateForData(file.lastModified());
-                }
-            }
-            ocFile.setFileLength(cursor.getLong(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_CONTENT_LENGTH)));
-            ocFile.setCreationTimestamp(cursor.getLong(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_CREATION)));
-            ocFile.setModificationTimestamp(cursor.getLong(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_MODIFIED)));
-            ocFile.setModificationTimestampAtLastSyncForData(cursor.getLong(
-                cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_MODIFIED_AT_LAST_SYNC_FOR_DATA)));
-            ocFile.setLastSyncDateForProperties(cursor.getLong(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LAST_SYNC_DATE)));
-            ocFile.setLastSyncDateForData(cursor.getLong(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LAST_SYNC_DATE_FOR_DATA)));
-            ocFile.setEtag(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_ETAG)));
-            ocFile.setEtagOnServer(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_ETAG_ON_SERVER)));
-            ocFile.setSharedViaLink(cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_SHARED_VIA_LINK)) == 1);
-            ocFile.setSharedWithSharee(cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_SHARED_WITH_SHAREE)) == 1);
-            ocFile.setPermissions(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_PERMISSIONS)));
-            ocFile.setRemoteId(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_REMOTE_ID)));
-            ocFile.setUpdateThumbnailNeeded(cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_UPDATE_THUMBNAIL)) == 1);
-            ocFile.setDownloading(cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_IS_DOWNLOADING)) == 1);
-            ocFile.setEtagInConflict(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_ETAG_IN_CONFLICT)));
-            ocFile.setFavorite(cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_FAVORITE)) == 1);
-            ocFile.setEncrypted(cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_IS_ENCRYPTED)) == 1);
-//            if (ocFile.isEncrypted()) {
-//                ocFile.setFileName(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_NAME)));
-//            }
-            ocFile.setMountType(WebdavEntry.MountType.values()[cursor.getInt(
-                cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_MOUNT_TYPE))]);
-            ocFile.setPreviewAvailable(cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_HAS_PREVIEW)) == 1);
-            ocFile.setUnreadCommentsCount(cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_UNREAD_COMMENTS_COUNT)));
-            ocFile.setOwnerId(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_OWNER_ID)));
-            ocFile.setOwnerDisplayName(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_OWNER_DISPLAY_NAME)));
-            ocFile.setNote(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_NOTE)));
-            ocFile.setRichWorkspace(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_RICH_WORKSPACE)));
-            ocFile.setLocked(cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCKED)) == 1);
-            final int lockTypeInt = cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_TYPE));
-            ocFile.setLockType(lockTypeInt != -1 ? FileLockType.fromValue(lockTypeInt) : null);
-            ocFile.setLockOwnerId(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_OWNER)));
-            ocFile.setLockOwnerDisplayName(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_OWNER_DISPLAY_NAME)));
-            ocFile.setLockOwnerEditor(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_OWNER_EDITOR)));
-            ocFile.setLockTimestamp(cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_TIMESTAMP)));
-            ocFile.setLockTimeout(cursor.getInt(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_TIMEOUT)));
-            ocFile.setLockToken(cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_TOKEN)));
-
-
-            String sharees = cursor.getString(cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_SHAREES));
-
-            if (sharees == null || NULL_STRING.equals(sharees) || sharees.isEmpty()) {
-                ocFile.setSharees(new ArrayList<>());
-            } else {
-                try {
-                    ShareeUser[] shareesArray = new Gson().fromJson(sharees, ShareeUser[].class);
-
-                    ocFile.setSharees(new ArrayList<>(Arrays.asList(shareesArray)));
-                } catch (JsonSyntaxException e) {
-                    // ignore saved value due to api change
-                    ocFile.setSharees(new ArrayList<>());
-                }
-            }
+            ocFile = createFileMapper(cursor).map(cursor);
         }
 
         return ocFile;
     }
 
+    /**
+     * Creates a mapper for the given cursor; use it for all rows of the cursor instead of
+     * {@link #createFileInstance(Cursor)} when reading many files.
+     */
+    private OCFileCursorMapper createFileMapper(Cursor cursor) {
+        return new OCFileCursorMapper(cursor, FileStorageUtils.getSavePath(user.getAccountName()));
+    }
+
     public boolean saveShare(OCShare share) {
         boolean overridden = false;
 
@@ -1297,7 +1526,7 @@ public class FileDataStorageManager {
         ContentValues cv = new ContentValues();
         cv.put(ProviderTableMeta.FILE_SHARED_VIA_LINK, Boolean.FALSE);
         cv.put(ProviderTableMeta.FILE_SHARED_WITH_SHAREE, Boolean.FALSE);
-        String where = ProviderTableMeta.FILE_ACCOUNT_OWNER + "=?";
+        String where = ACCOUNT_SELECTION;
         String[] whereArgs = new String[]{user.getAccountName()};
 
         if (getContentResolver() != null) {
@@ -1316,7 +1545,7 @@ public class FileDataStorageManager {
         ContentValues contentValues = new ContentValues();
         contentValues.put(ProviderTableMeta.FILE_SHARED_VIA_LINK, Boolean.FALSE);
         contentValues.put(ProviderTableMeta.FILE_SHARED_WITH_SHAREE, Boolean.FALSE);
-        String where = ProviderTableMeta.FILE_ACCOUNT_OWNER + AND + ProviderTableMeta.FILE_PARENT + " = ?";
+        String where = ACCOUNT_FOLDER_CONTENT_SELECTION;
         String[] whereArgs = new String[]{user.getAccountName(), String.valueOf(folder.getFileId())};
 
         if (getContentResolver() != null) {
@@ -1335,7 +1564,7 @@ public class FileDataStorageManager {
         ContentValues contentValues = new ContentValues();
         contentValues.put(ProviderTableMeta.FILE_SHARED_VIA_LINK, Boolean.FALSE);
         contentValues.put(ProviderTableMeta.FILE_SHARED_WITH_SHAREE, Boolean.FALSE);
-        String where = ProviderTableMeta.FILE_ACCOUNT_OWNER + AND + ProviderTableMeta.FILE_PATH + " = ?";
+        String where = FILE_BY_PATH_SELECTION;
         String[] whereArgs = new String[]{user.getAccountName(), filePath};
 
         if (getContentResolver() != null) {
@@ -2190,11 +2419,7 @@ public class FileDataStorageManager {
                 cursor = getContentProviderClient().query(
                     requestURI,
                     null,
-                    ProviderTableMeta.FILE_ACCOUNT_OWNER + AND +
-                        ProviderTableMeta.FILE_MODIFIED + ">=? AND " +
-                        ProviderTableMeta.FILE_MODIFIED + "<? AND (" +
-                        ProviderTableMeta.FILE_CONTENT_TYPE + " LIKE ? OR " +
-                        ProviderTableMeta.FILE_CONTENT_TYPE + " LIKE ? )",
+                    GALLERY_ITEMS_SELECTION,
                     new String[]{
                         user.getAccountName(),
                         String.valueOf(startDate),
@@ -2212,11 +2437,7 @@ public class FileDataStorageManager {
             cursor = getContentResolver().query(
                 requestURI,
                 null,
-                ProviderTableMeta.FILE_ACCOUNT_OWNER + AND +
-                    ProviderTableMeta.FILE_MODIFIED + ">=? AND " +
-                    ProviderTableMeta.FILE_MODIFIED + "<? AND (" +
-                    ProviderTableMeta.FILE_CONTENT_TYPE + " LIKE ? OR " +
-                    ProviderTableMeta.FILE_CONTENT_TYPE + " LIKE ? )",
+                GALLERY_ITEMS_SELECTION,
                 new String[]{
                     user.getAccountName(),
                     String.valueOf(startDate),
@@ -2230,8 +2451,9 @@ public class FileDataStorageManager {
 
         if (cursor != null) {
             if (cursor.moveToFirst()) {
+                OCFileCursorMapper mapper = createFileMapper(cursor);
                 do {
-                    OCFile child = createFileInstance(cursor);
+                    OCFile child = mapper.map(cursor);
                     files.add(child);
                 } while (cursor.moveToNext());
             }
@@ -2241,6 +2463,70 @@ public class FileDataStorageManager {
         return files;
     }
 
+    /**
+     * Reads a page of the gallery: images and videos in a folder, newest first, grouped by month.
+     *
+     * @param remotePath folder the files have to be in, e.g. "/" for all files
+     * @param images     'true' to include images
+     * @param videos     'true' to include videos
+     * @param after      last file of the page before; null for the first page
+     * @param limit      maximum number of files returned
+     * @return files of the page, grouped by the month they were modified in
+     */
+    public List<GalleryItems> getGalleryPage(String remotePath,
+                                             boolean images,
+                                             boolean videos,
+                                             @Nullable OCFile after,
+                                             int limit) {
+        List<GalleryItems> page = new ArrayList<>();
+
+        Uri requestURI = ProviderTableMeta.CONTENT_URI_GALLERY.buildUpon()
+            .appendQueryParameter(FileContentProvider.LIMIT_PARAMETER, String.valueOf(limit))
+            .build();
+        String[] selectionArgs = new String[]{
+            user.getAccountName(),
+            remotePath,
+            String.valueOf(images),
+            String.valueOf(videos),
+            String.valueOf(after == null ? Long.MAX_VALUE : after.getModificationTimestamp()),
+            String.valueOf(after == null ? Long.MAX_VALUE : after.getFileId())
+        };
+        Cursor cursor;
+
+        if (getContentProviderClient() != null) {
+            try {
+                cursor = getContentProviderClient().query(requestURI, null, null, selectionArgs, null);
+            } catch (RemoteException e) {
+                Log_OC.e(TAG, e.getMessage(), e);
+                return page;
+            }
+        } else {
+            cursor = getContentResolver().query(requestURI, null, null, selectionArgs, null);
+        }
+
+        if (cursor != null) {
+            if (cursor.moveToFirst()) {
+                OCFileCursorMapper mapper = createFileMapper(cursor);
+                int monthColumn = cursor.getColumnIndexOrThrow(FileContentProvider.GALLERY_MONTH);
+                long month = cursor.getLong(monthColumn);
+                List<OCFile> files = new ArrayList<>();
+                do {
+                    // rows come newest first, a new month starts a new group
+                    if (cursor.getLong(monthColumn) != month) {
+                        page.add(new GalleryItems(month, files));
+                        month = cursor.getLong(monthColumn);
+                        files = new ArrayList<>();
+                    }
+                    files.add(mapper.map(cursor));
+                } while (cursor.moveToNext());
+                page.add(new GalleryItems(month, files));
+            }
+            cursor.close();
+        }
+
+        return page;
+    }
+
     public List<OCFile> getVirtualFolderContent(VirtualFolderType type, boolean onlyImages) {
         List<OCFile> ocFiles = new ArrayList<>();
         Uri req_uri = ProviderTableMeta.CONTENT_URI_VIRTUAL;
@@ -2302,8 +2588,7 @@ public class FileDataStorageManager {
     }
 
     public void deleteAllFiles() {
-        String where = ProviderTableMeta.FILE_ACCOUNT_OWNER + "= ? AND " +
-            ProviderTableMeta.FILE_PATH + "= ?";
+        String where = FILE_BY_PATH_SELECTION;
         String[] whereArgs = new String[]{user.getAccountName(), OCFile.ROOT_PATH};
 
         if (getContentResolver() != null) {
@@ -2325,7 +2610,7 @@ public class FileDataStorageManager {
     }
 
     public List<OCFile> getAllFiles() {
-        String selection = ProviderTableMeta.FILE_ACCOUNT_OWNER + "= ? ";
+        String selection = ACCOUNT_SELECTION;
         String[] selectionArgs = new String[]{user.getAccountName()};
 
         List<OCFile> folderContent = new ArrayList<>();
@@ -2346,8 +2631,9 @@ public class FileDataStorageManager {
 
         if (cursor != null) {
             if (cursor.moveToFirst()) {
+                OCFileCursorMapper mapper = createFileMapper(cursor);
                 do {
-                    folderContent.add(createFileInstance(cursor));
+                    folderContent.add(mapper.map(cursor));
                 } while (cursor.moveToNext());
             }
             cursor.close();
@@ -19,24 +19,42 @@
  */
 package com.owncloud.android.datamodel;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
-import android.net.Uri;
+import android.os.RemoteException;
 
+import com.owncloud.android.MainApp;
 import com.owncloud.android.db.ProviderMeta;
 import com.owncloud.android.lib.common.utils.Log_OC;
 import com.owncloud.android.utils.SyncedFolderUtilss;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.CRC32;
 
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
 /**
  * Provider for stored filesystem data.
  */
@@ -44,6 +62,16 @@ public class FilesystemDataProvider {
 
     static private final String TAG = FilesystemDataProvider.class.getSimpleName();
 
+    /**
+     * Entries written per transaction, also bounds the number of arguments of the query for known files.
+     */
+    static final int BATCH_SIZE = 500;
+    static final int CHECKSUM_THREADS = 2;
+    private static final int CHECKSUM_BUFFER_SIZE = 64 * 1024;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final ExecutorService CHECKSUM_EXECUTOR = createChecksumExecutor();
+
     private ContentResolver contentResolver;
 
     public FilesystemDataProvider(ContentResolver contentResolver) {
@@ -53,6 +81,21 @@ public class FilesystemDataProvider {
         this.contentResolver = contentResolver;
     }
 
+    private static ExecutorService createChecksumExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(CHECKSUM_THREADS,
+                                                             CHECKSUM_THREADS,
+                                                             KEEP_ALIVE_SECONDS,
+                                                             TimeUnit.SECONDS,
+                                                             new LinkedBlockingQueue<>(),
+                                                             runnable -> {
+                                                                 Thread thread = new Thread(runnable, TAG);
+                                                                 thread.setPriority(Thread.MIN_PRIORITY);
+                                                                 return thread;
+                                                             });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     public int deleteAllEntriesForSyncedFolder(String syncedFolderId) {
         return contentResolver.delete(
                 ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM,
@@ -74,6 +117,97 @@ public class FilesystemDataProvider {
         );
     }
 
+    /**
+     * Marks many files of a synced folder as sent for upload, with one update per {@link #BATCH_SIZE} files. Files
+     * stored without checksum get it now, so that a later change of their modification time alone does not upload
+     * them again.
+     */
+    public void updateFilesystemFilesAsSentForUpload(Collection<String> paths, String syncedFolderId) {
+        ContentValues cv = new ContentValues();
+        cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD, 1);
+
+        List<String> pathList = new ArrayList<>(paths);
+        for (int start = 0; start < pathList.size(); start += BATCH_SIZE) {
+            List<String> chunk = pathList.subList(start, Math.min(start + BATCH_SIZE, pathList.size()));
+            String[] selectionArgs = new String[chunk.size() + 1];
+            selectionArgs[0] = syncedFolderId;
+            for (int i = 0; i < chunk.size(); i++) {
+                selectionArgs[i + 1] = chunk.get(i);
+            }
+
+            contentResolver.update(
+                    ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM,
+                    cv,
+                    ProviderMeta.ProviderTableMeta.FILESYSTEM_SYNCED_FOLDER_ID + " = ? and " +
+                            ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH + " IN (" +
+                            getPlaceholders(chunk.size()) + ")",
+                    selectionArgs
+            );
+
+            storeMissingChecksums(chunk, syncedFolderId);
+        }
+    }
+
+    private void storeMissingChecksums(List<String> paths, String syncedFolderId) {
+        String[] selectionArgs = new String[paths.size() + 1];
+        selectionArgs[0] = syncedFolderId;
+        for (int i = 0; i < paths.size(); i++) {
+            selectionArgs[i + 1] = paths.get(i);
+        }
+
+        List<String> pathsWithoutChecksum = new ArrayList<>();
+        Cursor cursor = contentResolver.query(
+                ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM,
+                new String[]{ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH},
+                ProviderMeta.ProviderTableMeta.FILESYSTEM_SYNCED_FOLDER_ID + " = ? and " +
+                        ProviderMeta.ProviderTableMeta.FILESYSTEM_CRC32 + " IS NULL and " +
+                        ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH + " IN (" +
+                        getPlaceholders(paths.size()) + ")",
+                selectionArgs,
+                null
+        );
+        if (cursor == null) {
+            Log_OC.e(TAG, "DB error reading files without checksum.");
+            return;
+        }
+        while (cursor.moveToNext()) {
+            pathsWithoutChecksum.add(cursor.getString(0));
+        }
+        cursor.close();
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(pathsWithoutChecksum.size());
+        for (Map.Entry<String, Long> checksum : getFileChecksums(pathsWithoutChecksum).entrySet()) {
+            if (checksum.getValue() == -1) {
+                continue;
+            }
+            operations.add(ContentProviderOperation
+                               .newUpdate(ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM)
+                               .withSelection(ProviderMeta.ProviderTableMeta.FILESYSTEM_SYNCED_FOLDER_ID + " = ? and " +
+                                                  ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH + " = ?",
+                                              new String[]{syncedFolderId, checksum.getKey()})
+                               .withValue(ProviderMeta.ProviderTableMeta.FILESYSTEM_CRC32,
+                                          Long.toString(checksum.getValue()))
+                               .build());
+        }
+        if (operations.isEmpty()) {
+            return;
+        }
+
+        try {
+            contentResolver.applyBatch(MainApp.getAuthority(), operations);
+        } catch (OperationApplicationException | RemoteException e) {
+            Log_OC.e(TAG, "Failed to store checksums of files sent for upload", e);
+        }
+    }
+
+    private static String getPlaceholders(int count) {
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            placeholders.append(i == 0 ? "?" : ",?");
+        }
+        return placeholders.toString();
+    }
+
     public Set<String> getFilesForUpload(String localPath, String syncedFolderId) {
         Set<String> localPathsToUpload = new HashSet<>();
 
@@ -118,116 +252,249 @@ public class FilesystemDataProvider {
     }
 
     public void storeOrUpdateFileValue(String localPath, long modifiedAt, boolean isFolder, SyncedFolder syncedFolder) {
-
-        FileSystemDataSet data = getFilesystemDataSet(localPath, syncedFolder);
-
-        int isFolderValue = 0;
-        if (isFolder) {
-            isFolderValue = 1;
+        try (Batch batch = startBatch(syncedFolder)) {
+            batch.storeOrUpdateFileValue(localPath, modifiedAt, isFolder);
         }
+    }
 
-        ContentValues cv = new ContentValues();
-        cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_FOUND_RECENTLY, System.currentTimeMillis());
-        cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_MODIFIED, modifiedAt);
+    /**
+     * Starts storing many files of a synced folder, e.g. while indexing it for auto upload. Files are written in
+     * transactions of {@link #BATCH_SIZE} entries; the batch must be closed to write the remaining ones.
+     */
+    public Batch startBatch(SyncedFolder syncedFolder) {
+        return new Batch(syncedFolder);
+    }
 
-        if (data == null) {
+    /**
+     * Files of a synced folder waiting to be stored.
+     * <p>
+     * Known files of each chunk are loaded with one query. The checksum of a file is computed only when its
+     * modification time changed since it was stored, on {@link #CHECKSUM_THREADS} threads; new files are stored without
+     * checksum, which is taken once they are sent for upload.
+     */
+    public final class Batch implements AutoCloseable {
+        private final SyncedFolder syncedFolder;
+        private final Map<String, Entry> pending = new LinkedHashMap<>();
+
+        private Batch(SyncedFolder syncedFolder) {
+            this.syncedFolder = syncedFolder;
+        }
 
-            cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH, localPath);
-            cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_IS_FOLDER, isFolderValue);
-            cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD, Boolean.FALSE);
-            cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_SYNCED_FOLDER_ID, syncedFolder.getId());
+        public void storeOrUpdateFileValue(String localPath, long modifiedAt, boolean isFolder) {
+            pending.put(localPath, new Entry(localPath, modifiedAt, isFolder));
+            if (pending.size() >= BATCH_SIZE) {
+                flush();
+            }
+        }
 
-            long newCrc32 = getFileChecksum(localPath);
-            if (newCrc32 != -1) {
-                cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_CRC32, Long.toString(newCrc32));
+        public void flush() {
+            if (pending.isEmpty()) {
+                return;
             }
 
-            Uri result = contentResolver.insert(ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM, cv);
+            List<Entry> entries = new ArrayList<>(pending.values());
+            pending.clear();
 
-            if (result == null) {
-                Log_OC.v(TAG, "Failed to insert filesystem data with local path: " + localPath);
-            }
-        } else {
+            Map<String, FileSystemDataSet> storedFiles = getFilesystemDataSets(entries, syncedFolder);
 
-            if (data.getModifiedAt() != modifiedAt) {
-                long newCrc32 = getFileChecksum(localPath);
-                if (data.getCrc32() == null || (newCrc32 != -1 && !data.getCrc32().equals(Long.toString(newCrc32)))) {
-                    cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_CRC32, Long.toString(newCrc32));
-                    cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD, 0);
+            List<String> changedFiles = new ArrayList<>();
+            for (Entry entry : entries) {
+                FileSystemDataSet data = storedFiles.get(entry.localPath);
+                if (data != null && !entry.isFolder && data.getModifiedAt() != entry.modifiedAt) {
+                    changedFiles.add(entry.localPath);
+                }
+            }
+            Map<String, Long> checksums = getFileChecksums(changedFiles);
+
+            ArrayList<ContentProviderOperation> operations = new ArrayList<>(entries.size());
+            long foundAt = System.currentTimeMillis();
+            for (Entry entry : entries) {
+                FileSystemDataSet data = storedFiles.get(entry.localPath);
+                if (data == null) {
+                    operations.add(ContentProviderOperation
+                                       .newInsert(ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM)
+                                       .withValues(getInsertValues(entry, foundAt))
+                                       .build());
+                } else {
+                    operations.add(ContentProviderOperation
+                                       .newUpdate(ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM)
+                                       .withSelection(ProviderMeta.ProviderTableMeta._ID + "=?",
+                                                      new String[]{String.valueOf(data.getId())})
+                                       .withValues(getUpdateValues(entry, data, checksums.get(entry.localPath),
+                                                                   foundAt))
+                                       .build());
                 }
             }
 
+            try {
+                contentResolver.applyBatch(MainApp.getAuthority(), operations);
+            } catch (OperationApplicationException | RemoteException e) {
+                Log_OC.e(TAG, "Failed to store filesystem data of synced folder " + syncedFolder.getLocalPath(), e);
+            }
+        }
+
+        @Override
+        public void close() {
+            flush();
+        }
 
-            int result = contentResolver.update(
-                    ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM,
-                    cv,
-                    ProviderMeta.ProviderTableMeta._ID + "=?",
-                    new String[]{String.valueOf(data.getId())}
-            );
+        private ContentValues getInsertValues(Entry entry, long foundAt) {
+            ContentValues cv = new ContentValues();
+            cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_FOUND_RECENTLY, foundAt);
+            cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_MODIFIED, entry.modifiedAt);
+            cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH, entry.localPath);
+            cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_IS_FOLDER, entry.isFolder ? 1 : 0);
+            cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD, Boolean.FALSE);
+            cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_SYNCED_FOLDER_ID, syncedFolder.getId());
+            return cv;
+        }
+
+        private ContentValues getUpdateValues(Entry entry, FileSystemDataSet data, @Nullable Long newCrc32,
+                                              long foundAt) {
+            ContentValues cv = new ContentValues();
+            cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_FOUND_RECENTLY, foundAt);
+            if (!entry.isFolder && data.getModifiedAt() != entry.modifiedAt && newCrc32 == null) {
+                // checksum was not taken, e.g. interrupted; keep the stored time so the file is checked again
+                return cv;
+            }
+            cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_MODIFIED, entry.modifiedAt);
 
-            if (result == 0) {
-                Log_OC.v(TAG, "Failed to update filesystem data with local path: " + localPath);
+            if (newCrc32 != null && isContentChanged(data.getCrc32(), newCrc32)) {
+                cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_CRC32, Long.toString(newCrc32));
+                cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD, 0);
             }
+            return cv;
+        }
+    }
+
+    private static final class Entry {
+        private final String localPath;
+        private final long modifiedAt;
+        private final boolean isFolder;
+
+        private Entry(String localPath, long modifiedAt, boolean isFolder) {
+            this.localPath = localPath;
+            this.modifiedAt = modifiedAt;
+            this.isFolder = isFolder;
         }
     }
 
-    private FileSystemDataSet getFilesystemDataSet(String localPathParam, SyncedFolder syncedFolder) {
+    /**
+     * @param storedCrc32 checksum stored with the file, null if it was never taken
+     * @param newCrc32    checksum of the file now, -1 if it could not be read
+     * @return true if the file has to be uploaded again
+     */
+    @VisibleForTesting
+    static boolean isContentChanged(@Nullable String storedCrc32, long newCrc32) {
+        return storedCrc32 == null || (newCrc32 != -1 && !storedCrc32.equals(Long.toString(newCrc32)));
+    }
+
+    private Map<String, FileSystemDataSet> getFilesystemDataSets(List<Entry> entries, SyncedFolder syncedFolder) {
+        Map<String, FileSystemDataSet> dataSets = new HashMap<>();
+
+        String[] selectionArgs = new String[entries.size() + 1];
+        selectionArgs[0] = Long.toString(syncedFolder.getId());
+        for (int i = 0; i < entries.size(); i++) {
+            selectionArgs[i + 1] = entries.get(i).localPath;
+        }
 
         Cursor cursor = contentResolver.query(
                 ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM,
                 null,
-                ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH + " = ? and " +
-                        ProviderMeta.ProviderTableMeta.FILESYSTEM_SYNCED_FOLDER_ID + " = ?",
-                new String[]{localPathParam, Long.toString(syncedFolder.getId())},
+                ProviderMeta.ProviderTableMeta.FILESYSTEM_SYNCED_FOLDER_ID + " = ? and " +
+                        ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH + " IN (" +
+                        getPlaceholders(entries.size()) + ")",
+                selectionArgs,
                 null
         );
 
-        FileSystemDataSet dataSet = null;
         if (cursor != null) {
-            if (cursor.moveToFirst()) {
-                int id = cursor.getInt(cursor.getColumnIndexOrThrow(ProviderMeta.ProviderTableMeta._ID));
-                String localPath = cursor.getString(cursor.getColumnIndexOrThrow(
-                        ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH));
-                long modifiedAt = cursor.getLong(cursor.getColumnIndexOrThrow(
-                        ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_MODIFIED));
-                boolean isFolder = false;
-                if (cursor.getInt(cursor.getColumnIndexOrThrow(
-                        ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_IS_FOLDER)) != 0) {
-                    isFolder = true;
+            while (cursor.moveToNext()) {
+                FileSystemDataSet dataSet = createFilesystemDataSet(cursor, syncedFolder);
+                if (dataSet != null) {
+                    dataSets.put(dataSet.getLocalPath(), dataSet);
                 }
-                long foundAt = cursor.getLong(cursor.getColumnIndexOrThrow(ProviderMeta.
-                        ProviderTableMeta.FILESYSTEM_FILE_FOUND_RECENTLY));
+            }
+            cursor.close();
+        } else {
+            Log_OC.e(TAG, "DB error restoring filesystem values.");
+        }
 
-                boolean isSentForUpload = false;
-                if (cursor.getInt(cursor.getColumnIndexOrThrow(
-                        ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD)) != 0) {
-                    isSentForUpload = true;
-                }
+        return dataSets;
+    }
 
-                String crc32 = cursor.getString(cursor.getColumnIndexOrThrow(ProviderMeta.ProviderTableMeta.FILESYSTEM_CRC32));
+    @Nullable
+    private FileSystemDataSet createFilesystemDataSet(Cursor cursor, SyncedFolder syncedFolder) {
+        int id = cursor.getInt(cursor.getColumnIndexOrThrow(ProviderMeta.ProviderTableMeta._ID));
+        String localPath = cursor.getString(cursor.getColumnIndexOrThrow(
+                ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH));
+        long modifiedAt = cursor.getLong(cursor.getColumnIndexOrThrow(
+                ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_MODIFIED));
+        boolean isFolder = false;
+        if (cursor.getInt(cursor.getColumnIndexOrThrow(
+                ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_IS_FOLDER)) != 0) {
+            isFolder = true;
+        }
+        long foundAt = cursor.getLong(cursor.getColumnIndexOrThrow(ProviderMeta.
+                ProviderTableMeta.FILESYSTEM_FILE_FOUND_RECENTLY));
 
-                if (id == -1) {
-                    Log_OC.e(TAG, "Arbitrary value could not be created from cursor");
-                } else {
-                    dataSet = new FileSystemDataSet(id, localPath, modifiedAt, isFolder, isSentForUpload, foundAt,
-                            syncedFolder.getId(), crc32);
+        boolean isSentForUpload = false;
+        if (cursor.getInt(cursor.getColumnIndexOrThrow(
+                ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD)) != 0) {
+            isSentForUpload = true;
+        }
+
+        String crc32 = cursor.getString(cursor.getColumnIndexOrThrow(ProviderMeta.ProviderTableMeta.FILESYSTEM_CRC32));
+
+        if (id == -1) {
+            Log_OC.e(TAG, "Arbitrary value could not be created from cursor");
+            return null;
+        }
+        return new FileSystemDataSet(id, localPath, modifiedAt, isFolder, isSentForUpload, foundAt,
+                                     syncedFolder.getId(), crc32);
+    }
+
+    /**
+     * Computes checksums of the given files in parallel, files that cannot be read are mapped to -1. If the thread is
+     * interrupted, files are missing from the result.
+     */
+    @VisibleForTesting
+    static Map<String, Long> getFileChecksums(List<String> filePaths) {
+        Map<String, Long> checksums = new HashMap<>();
+        if (filePaths.isEmpty()) {
+            return checksums;
+        }
+
+        List<Callable<Long>> tasks = new ArrayList<>(filePaths.size());
+        for (String filePath : filePaths) {
+            tasks.add(() -> getFileChecksum(filePath));
+        }
+
+        try {
+            List<Future<Long>> results = CHECKSUM_EXECUTOR.invokeAll(tasks);
+            for (int i = 0; i < filePaths.size(); i++) {
+                try {
+                    checksums.put(filePaths.get(i), results.get(i).get());
+                } catch (ExecutionException e) {
+                    checksums.put(filePaths.get(i), -1L);
                 }
             }
-            cursor.close();
-        } else {
-            Log_OC.e(TAG, "DB error restoring arbitrary values.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
 
-        return dataSet;
+        return checksums;
     }
 
-    private long getFileChecksum(String filepath) {
+    @VisibleForTesting
+    static long getFileChecksum(String filepath) {
 
-        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(filepath))){
+        try (InputStream inputStream = new FileInputStream(filepath)) {
             CRC32 crc = new CRC32();
+            byte[] buffer = new byte[CHECKSUM_BUFFER_SIZE];
             int cnt;
-            while ((cnt = inputStream.read()) != -1) {
-                crc.update(cnt);
+            while ((cnt = inputStream.read(buffer)) != -1) {
+                crc.update(buffer, 0, cnt);
             }
 
             return crc.getValue();
@@ -0,0 +1,150 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel;
+
+import com.nextcloud.client.core.Clock;
+import com.nextcloud.client.core.ClockImpl;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Remembers which local paths exist, so that {@link OCFile#isDown()} does not probe the file system on every call.
+ * <p>
+ * Local paths contain the folder of their account, so a single index serves all accounts. Paths are checked once and
+ * the answer is kept for {@link #RECONCILE_INTERVAL_MS}; after that the next access checks the file system again, which
+ * picks up changes made by other apps. Changes made by the app itself are reported with {@link #invalidate(String)}
+ * and {@link #invalidateTree(String)} when the local file is saved, moved or removed.
+ */
+public final class LocalAvailabilityIndex {
+
+    @VisibleForTesting
+    static final long RECONCILE_INTERVAL_MS = 30_000;
+
+    @VisibleForTesting
+    static final int MAX_ENTRIES = 20_000;
+
+    private static LocalAvailabilityIndex instance;
+
+    private static final class Entry {
+        private final boolean exists;
+        private final long checkedAt;
+
+        private Entry(boolean exists, long checkedAt) {
+            this.exists = exists;
+            this.checkedAt = checkedAt;
+        }
+    }
+
+    private final Clock clock;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @VisibleForTesting
+    LocalAvailabilityIndex(Clock clock) {
+        this.clock = clock;
+    }
+
+    public static synchronized LocalAvailabilityIndex getInstance() {
+        if (instance == null) {
+            instance = new LocalAvailabilityIndex(new ClockImpl());
+        }
+        return instance;
+    }
+
+    /**
+     * Tells if a local file or folder exists, checking the file system only if the path was not checked recently.
+     *
+     * @param path local path
+     * @return 'true' if the path exists
+     */
+    public boolean exists(String path) {
+        String key = getKey(path);
+        long now = clock.getMillisSinceBoot();
+        Entry entry = entries.get(key);
+        if (entry != null && now - entry.checkedAt < RECONCILE_INTERVAL_MS) {
+            return entry.exists;
+        }
+
+        boolean exists = new File(key).exists();
+        if (entries.size() >= MAX_ENTRIES) {
+            // checked again on next access
+            entries.clear();
+        }
+        entries.put(key, new Entry(exists, now));
+        return exists;
+    }
+
+    /**
+     * Forgets what is known about a local file, after it was downloaded, changed or removed.
+     *
+     * @param path local path, may be null
+     */
+    public void invalidate(@Nullable String path) {
+        if (path != null) {
+            entries.remove(getKey(path));
+        }
+    }
+
+    /**
+     * Forgets what is known about a local folder and everything below it, after it was moved or removed.
+     *
+     * @param path local path of the folder, may be null
+     */
+    public void invalidateTree(@Nullable String path) {
+        if (path == null) {
+            return;
+        }
+        String key = getKey(path);
+        String prefix = key + File.separator;
+        Iterator<String> iterator = entries.keySet().iterator();
+        while (iterator.hasNext()) {
+            String cachedPath = iterator.next();
+            if (cachedPath.equals(key) || cachedPath.startsWith(prefix)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Forgets everything, e.g. after the local files were moved to another storage.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    @VisibleForTesting
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Folder paths are stored with and without trailing separator, both must find the same entry.
+     */
+    private static String getKey(String path) {
+        if (path.length() > 1 && path.endsWith(File.separator)) {
+            return path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+}
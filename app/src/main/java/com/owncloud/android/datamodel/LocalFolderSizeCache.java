@@ -0,0 +1,235 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.owncloud.android.lib.common.utils.Log_OC;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Sizes of local folders, computed in background and cached by path.
+ * <p>
+ * A cached size is used as long as the modification time of the folder did not change and the folder was not
+ * invalidated. The modification time of a folder only changes when entries are added to or removed from it, so
+ * downloads and removals anywhere below a folder invalidate it with {@link #invalidate(String)}. Sizes of subfolders
+ * are cached as well, so after a change only the folders on the path to it are listed again.
+ */
+public final class LocalFolderSizeCache {
+
+    private static final String TAG = LocalFolderSizeCache.class.getSimpleName();
+
+    public static final long UNKNOWN_SIZE = -1;
+
+    @VisibleForTesting
+    static final int MAX_ENTRIES = 2000;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static LocalFolderSizeCache instance;
+
+    /**
+     * Receives the size of a folder requested with {@link #getSize(File, Listener)}.
+     */
+    public interface Listener {
+        void onFolderSize(File folder, long size);
+    }
+
+    private static final class Entry {
+        private final long lastModified;
+        private final long size;
+
+        private Entry(long lastModified, long size) {
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final Executor callbackExecutor;
+
+    /**
+     * Cached sizes by folder path, least recently used first. Guarded by itself.
+     */
+    private final Map<String, Entry> sizes = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * Listeners waiting for folders being computed, by folder path. Guarded by itself.
+     */
+    private final Map<String, List<Listener>> pending = new HashMap<>();
+
+    @VisibleForTesting
+    LocalFolderSizeCache(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(1,
+                                                                       1,
+                                                                       KEEP_ALIVE_SECONDS,
+                                                                       TimeUnit.SECONDS,
+                                                                       new LinkedBlockingQueue<>(),
+                                                                       runnable -> {
+                                                                           Thread thread = new Thread(runnable, TAG);
+                                                                           thread.setPriority(Thread.MIN_PRIORITY);
+                                                                           return thread;
+                                                                       });
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        executor = threadPoolExecutor;
+    }
+
+    public static synchronized LocalFolderSizeCache getInstance() {
+        if (instance == null) {
+            Handler mainHandler = new Handler(Looper.getMainLooper());
+            instance = new LocalFolderSizeCache(mainHandler::post);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the cached size of a folder. If there is none, the size is computed in background and handed to the
+     * listener on the main thread.
+     *
+     * @param folder   local folder
+     * @param listener notified once the size is known, if it is not cached
+     * @return size of the folder in bytes, or {@link #UNKNOWN_SIZE} if it is being computed
+     */
+    public long getSize(File folder, Listener listener) {
+        long size = getCachedSize(folder);
+        if (size != UNKNOWN_SIZE) {
+            return size;
+        }
+
+        String path = folder.getAbsolutePath();
+        synchronized (pending) {
+            List<Listener> listeners = pending.get(path);
+            if (listeners != null) {
+                listeners.add(listener);
+                return UNKNOWN_SIZE;
+            }
+            listeners = new ArrayList<>();
+            listeners.add(listener);
+            pending.put(path, listeners);
+        }
+
+        executor.execute(() -> {
+            long computedSize = computeSize(folder);
+            List<Listener> listeners;
+            synchronized (pending) {
+                listeners = pending.remove(path);
+            }
+            if (listeners != null) {
+                callbackExecutor.execute(() -> {
+                    for (Listener waiting : listeners) {
+                        waiting.onFolderSize(folder, computedSize);
+                    }
+                });
+            }
+        });
+        return UNKNOWN_SIZE;
+    }
+
+    /**
+     * Computes the size of a folder on the calling thread, reusing the cached sizes of unchanged subfolders. Must not
+     * be called on the main thread.
+     *
+     * @param folder local folder
+     * @return size of the folder in bytes, 0 if it does not exist or cannot be listed
+     */
+    public long computeSize(File folder) {
+        long cachedSize = getCachedSize(folder);
+        if (cachedSize != UNKNOWN_SIZE) {
+            return cachedSize;
+        }
+
+        long lastModified = folder.lastModified();
+        File[] files = folder.listFiles();
+
+        // missing or unreadable folders are cached as well, so they are not listed again on every bind
+        long size = 0;
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    size += computeSize(file);
+                } else {
+                    size += file.length();
+                }
+            }
+        }
+
+        synchronized (sizes) {
+            sizes.put(folder.getAbsolutePath(), new Entry(lastModified, size));
+        }
+        return size;
+    }
+
+    /**
+     * Drops the cached sizes affected by a change of a local file or folder: the sizes of all its parent folders, and
+     * of the folder itself and everything below it.
+     *
+     * @param path local path of the added, changed or removed file or folder
+     */
+    public void invalidate(String path) {
+        if (path == null) {
+            return;
+        }
+        String absolutePath = new File(path).getAbsolutePath();
+        synchronized (sizes) {
+            Iterator<String> iterator = sizes.keySet().iterator();
+            while (iterator.hasNext()) {
+                String cachedPath = iterator.next();
+                if (isSameOrBelow(absolutePath, cachedPath) || isSameOrBelow(cachedPath, absolutePath)) {
+                    iterator.remove();
+                }
+            }
+        }
+        Log_OC.v(TAG, "Invalidated folder sizes for " + absolutePath);
+    }
+
+    private long getCachedSize(File folder) {
+        Entry entry;
+        synchronized (sizes) {
+            entry = sizes.get(folder.getAbsolutePath());
+        }
+        if (entry != null && entry.lastModified == folder.lastModified()) {
+            return entry.size;
+        }
+        return UNKNOWN_SIZE;
+    }
+
+    private static boolean isSameOrBelow(String path, String folderPath) {
+        return path.equals(folderPath) || path.startsWith(folderPath + File.separator);
+    }
+}
@@ -74,6 +74,11 @@ public class OCFile implements Parcelable, Comparable<OCFile>, ServerFileInterfa
     private String remotePath;
     private String decryptedRemotePath;
     private String localPath;
+    /**
+     * Candidate local path that has not been checked for existence yet; see {@link #setUnresolvedStoragePath(String)}
+     */
+    @Nullable
+    private String unresolvedLocalPath;
     private String mimeType;
     private boolean needsUpdatingWhileSaving;
     private long lastSyncDateForProperties;
@@ -189,6 +194,7 @@ public class OCFile implements Parcelable, Comparable<OCFile>, ServerFileInterfa
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
+        resolveStoragePath();
         dest.writeLong(fileId);
         dest.writeLong(parentId);
         dest.writeLong(fileLength);
@@ -327,8 +333,9 @@ public class OCFile implements Parcelable, Comparable<OCFile>, ServerFileInterfa
      * @return true if it is
      */
     public boolean existsOnDevice() {
+        resolveStoragePath();
         if (!TextUtils.isEmpty(localPath)) {
-            return new File(localPath).exists();
+            return LocalAvailabilityIndex.getInstance().exists(localPath);
         }
         return false;
     }
@@ -339,6 +346,7 @@ public class OCFile implements Parcelable, Comparable<OCFile>, ServerFileInterfa
      * @return The local path to the file
      */
     public String getStoragePath() {
+        resolveStoragePath();
         return localPath;
     }
 
@@ -348,6 +356,7 @@ public class OCFile implements Parcelable, Comparable<OCFile>, ServerFileInterfa
      * @return A URI to the local copy of the file, or NULL if not stored in the device
      */
     public Uri getStorageUri() {
+        resolveStoragePath();
         if (TextUtils.isEmpty(localPath)) {
             return null;
         }
@@ -362,6 +371,7 @@ public class OCFile implements Parcelable, Comparable<OCFile>, ServerFileInterfa
 
 
     public Uri getLegacyExposedFileUri() {
+        resolveStoragePath();
         if (TextUtils.isEmpty(localPath)) {
             return null;
         }
@@ -377,6 +387,7 @@ public class OCFile implements Parcelable, Comparable<OCFile>, ServerFileInterfa
         Partly disabled because not all apps understand paths that we get via this method for now
      */
     public Uri getExposedFileUri(Context context) {
+        resolveStoragePath();
         if (TextUtils.isEmpty(localPath)) {
             return null;
         }
@@ -402,6 +413,7 @@ public class OCFile implements Parcelable, Comparable<OCFile>, ServerFileInterfa
      * @param storage_path to set
      */
     public void setStoragePath(String storage_path) {
+        unresolvedLocalPath = null;
         if (storage_path == null) {
             localPath = null;
         } else {
@@ -415,6 +427,26 @@ public class OCFile implements Parcelable, Comparable<OCFile>, ServerFileInterfa
         exposedFileUri = null;
     }
 
+    /**
+     * Sets a local path the file may have been downloaded to, without checking the file system. Existence is only
+     * checked on first access of the local path, so that listing many files does not probe the disk for each of them.
+     *
+     * @param storagePath candidate local path
+     */
+    void setUnresolvedStoragePath(@Nullable String storagePath) {
+        unresolvedLocalPath = storagePath;
+    }
+
+    private void resolveStoragePath() {
+        if (unresolvedLocalPath != null) {
+            File file = new File(unresolvedLocalPath);
+            unresolvedLocalPath = null;
+            if (LocalAvailabilityIndex.getInstance().exists(file.getAbsolutePath())) {
+                setStoragePath(file.getAbsolutePath());
+            }
+        }
+    }
+
     /**
      * Returns the decrypted filename and "/" for the root directory
      *
@@ -472,6 +504,7 @@ public class OCFile implements Parcelable, Comparable<OCFile>, ServerFileInterfa
         decryptedRemotePath = null;
         parentId = 0;
         localPath = null;
+        unresolvedLocalPath = null;
         mimeType = null;
         fileLength = 0;
         creationTimestamp = 0;
@@ -553,6 +586,7 @@ public class OCFile implements Parcelable, Comparable<OCFile>, ServerFileInterfa
     @NonNull
     @Override
     public String toString() {
+        resolveStoragePath();
         String asString = "[id=%s, name=%s, mime=%s, downloaded=%s, local=%s, remote=%s, " +
                 "parentId=%s, etag=%s, favourite=%s]";
         return String.format(asString,
@@ -576,6 +610,7 @@ public class OCFile implements Parcelable, Comparable<OCFile>, ServerFileInterfa
     }
 
     public long getLocalModificationTimestamp() {
+        resolveStoragePath();
         if (!TextUtils.isEmpty(localPath)) {
             File f = new File(localPath);
             return f.lastModified();
@@ -0,0 +1,200 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel;
+
+import android.database.Cursor;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.owncloud.android.db.ProviderMeta.ProviderTableMeta;
+import com.owncloud.android.lib.common.network.WebdavEntry;
+import com.owncloud.android.lib.resources.files.model.FileLockType;
+import com.owncloud.android.lib.resources.shares.ShareeUser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Hydrates {@link OCFile} instances from rows of the files table.
+ * <p>
+ * Column indexes are resolved once per cursor and a single {@link Gson} instance is shared for all rows. The lookup
+ * of a downloaded copy at the default save path is not done here, but deferred to the first access of the local
+ * path of the returned file.
+ */
+final class OCFileCursorMapper {
+
+    private static final Gson GSON = new Gson();
+    private static final WebdavEntry.MountType[] MOUNT_TYPES = WebdavEntry.MountType.values();
+
+    private final String savePath;
+
+    private final int path;
+    private final int pathDecrypted;
+    private final int id;
+    private final int parent;
+    private final int contentType;
+    private final int storagePath;
+    private final int contentLength;
+    private final int creation;
+    private final int modified;
+    private final int modifiedAtLastSyncForData;
+    private final int lastSyncDate;
+    private final int lastSyncDateForData;
+    private final int etag;
+    private final int etagOnServer;
+    private final int sharedViaLink;
+    private final int sharedWithSharee;
+    private final int permissions;
+    private final int remoteId;
+    private final int updateThumbnail;
+    private final int isDownloading;
+    private final int etagInConflict;
+    private final int favorite;
+    private final int isEncrypted;
+    private final int mountType;
+    private final int hasPreview;
+    private final int unreadCommentsCount;
+    private final int ownerId;
+    private final int ownerDisplayName;
+    private final int note;
+    private final int richWorkspace;
+    private final int locked;
+    private final int lockType;
+    private final int lockOwner;
+    private final int lockOwnerDisplayName;
+    private final int lockOwnerEditor;
+    private final int lockTimestamp;
+    private final int lockTimeout;
+    private final int lockToken;
+    private final int sharees;
+
+    /**
+     * @param cursor   cursor over the files table, including all columns
+     * @param savePath local folder downloads of the account are stored in, see
+     *                 {@link com.owncloud.android.utils.FileStorageUtils#getSavePath(String)}
+     */
+    OCFileCursorMapper(Cursor cursor, String savePath) {
+        this.savePath = savePath;
+
+        path = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_PATH);
+        pathDecrypted = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_PATH_DECRYPTED);
+        id = cursor.getColumnIndexOrThrow(ProviderTableMeta._ID);
+        parent = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_PARENT);
+        contentType = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_CONTENT_TYPE);
+        storagePath = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_STORAGE_PATH);
+        contentLength = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_CONTENT_LENGTH);
+        creation = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_CREATION);
+        modified = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_MODIFIED);
+        modifiedAtLastSyncForData = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_MODIFIED_AT_LAST_SYNC_FOR_DATA);
+        lastSyncDate = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LAST_SYNC_DATE);
+        lastSyncDateForData = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LAST_SYNC_DATE_FOR_DATA);
+        etag = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_ETAG);
+        etagOnServer = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_ETAG_ON_SERVER);
+        sharedViaLink = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_SHARED_VIA_LINK);
+        sharedWithSharee = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_SHARED_WITH_SHAREE);
+        permissions = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_PERMISSIONS);
+        remoteId = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_REMOTE_ID);
+        updateThumbnail = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_UPDATE_THUMBNAIL);
+        isDownloading = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_IS_DOWNLOADING);
+        etagInConflict = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_ETAG_IN_CONFLICT);
+        favorite = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_FAVORITE);
+        isEncrypted = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_IS_ENCRYPTED);
+        mountType = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_MOUNT_TYPE);
+        hasPreview = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_HAS_PREVIEW);
+        unreadCommentsCount = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_UNREAD_COMMENTS_COUNT);
+        ownerId = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_OWNER_ID);
+        ownerDisplayName = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_OWNER_DISPLAY_NAME);
+        note = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_NOTE);
+        richWorkspace = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_RICH_WORKSPACE);
+        locked = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCKED);
+        lockType = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_TYPE);
+        lockOwner = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_OWNER);
+        lockOwnerDisplayName = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_OWNER_DISPLAY_NAME);
+        lockOwnerEditor = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_OWNER_EDITOR);
+        lockTimestamp = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_TIMESTAMP);
+        lockTimeout = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_TIMEOUT);
+        lockToken = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_LOCK_TOKEN);
+        sharees = cursor.getColumnIndexOrThrow(ProviderTableMeta.FILE_SHAREES);
+    }
+
+    /**
+     * Creates an {@link OCFile} from the current row of the cursor.
+     */
+    OCFile map(Cursor cursor) {
+        OCFile ocFile = new OCFile(cursor.getString(path));
+        ocFile.setDecryptedRemotePath(cursor.getString(pathDecrypted));
+        ocFile.setFileId(cursor.getLong(id));
+        ocFile.setParentId(cursor.getLong(parent));
+        ocFile.setMimeType(cursor.getString(contentType));
+        ocFile.setStoragePath(cursor.getString(storagePath));
+        if (ocFile.getStoragePath() == null) {
+            // file may have been downloaded before the storage path was tracked; checked on first access
+            ocFile.setUnresolvedStoragePath(savePath + ocFile.getDecryptedRemotePath());
+        }
+        ocFile.setFileLength(cursor.getLong(contentLength));
+        ocFile.setCreationTimestamp(cursor.getLong(creation));
+        ocFile.setModificationTimestamp(cursor.getLong(modified));
+        ocFile.setModificationTimestampAtLastSyncForData(cursor.getLong(modifiedAtLastSyncForData));
+        ocFile.setLastSyncDateForProperties(cursor.getLong(lastSyncDate));
+        ocFile.setLastSyncDateForData(cursor.getLong(lastSyncDateForData));
+        ocFile.setEtag(cursor.getString(etag));
+        ocFile.setEtagOnServer(cursor.getString(etagOnServer));
+        ocFile.setSharedViaLink(cursor.getInt(sharedViaLink) == 1);
+        ocFile.setSharedWithSharee(cursor.getInt(sharedWithSharee) == 1);
+        ocFile.setPermissions(cursor.getString(permissions));
+        ocFile.setRemoteId(cursor.getString(remoteId));
+        ocFile.setUpdateThumbnailNeeded(cursor.getInt(updateThumbnail) == 1);
+        ocFile.setDownloading(cursor.getInt(isDownloading) == 1);
+        ocFile.setEtagInConflict(cursor.getString(etagInConflict));
+        ocFile.setFavorite(cursor.getInt(favorite) == 1);
+        ocFile.setEncrypted(cursor.getInt(isEncrypted) == 1);
+        ocFile.setMountType(MOUNT_TYPES[cursor.getInt(mountType)]);
+        ocFile.setPreviewAvailable(cursor.getInt(hasPreview) == 1);
+        ocFile.setUnreadCommentsCount(cursor.getInt(unreadCommentsCount));
+        ocFile.setOwnerId(cursor.getString(ownerId));
+        ocFile.setOwnerDisplayName(cursor.getString(ownerDisplayName));
+        ocFile.setNote(cursor.getString(note));
+        ocFile.setRichWorkspace(cursor.getString(richWorkspace));
+        ocFile.setLocked(cursor.getInt(locked) == 1);
+        final int lockTypeInt = cursor.getInt(lockType);
+        ocFile.setLockType(lockTypeInt != -1 ? FileLockType.fromValue(lockTypeInt) : null);
+        ocFile.setLockOwnerId(cursor.getString(lockOwner));
+        ocFile.setLockOwnerDisplayName(cursor.getString(lockOwnerDisplayName));
+        ocFile.setLockOwnerEditor(cursor.getString(lockOwnerEditor));
+        ocFile.setLockTimestamp(cursor.getInt(lockTimestamp));
+        ocFile.setLockTimeout(cursor.getInt(lockTimeout));
+        ocFile.setLockToken(cursor.getString(lockToken));
+
+        String shareesJson = cursor.getString(sharees);
+        if (shareesJson == null || FileDataStorageManager.NULL_STRING.equals(shareesJson) || shareesJson.isEmpty()) {
+            ocFile.setSharees(new ArrayList<>());
+        } else {
+            try {
+                ShareeUser[] shareesArray = GSON.fromJson(shareesJson, ShareeUser[].class);
+
+                ocFile.setSharees(new ArrayList<>(Arrays.asList(shareesArray)));
+            } catch (JsonSyntaxException e) {
+                // ignore saved value due to api change
+                ocFile.setSharees(new ArrayList<>());
+            }
+        }
+
+        return ocFile;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
+
+/**
+ * In-memory tier of the thumbnail cache, holding decoded bitmaps so that rebinding a list item does not decode the
+ * same JPEG from {@link com.owncloud.android.ui.adapter.DiskLruImageCache} again.
+ * <p>
+ * Size is accounted in bytes of bitmap memory. Bitmaps returned by this cache are shared and must not be recycled by
+ * callers.
+ */
+public final class ThumbnailMemoryCache {
+
+    private static final int BYTES_PER_MEGABYTE = 1024 * 1024;
+
+    /**
+     * Fraction of the per app memory class used for the cache.
+     */
+    private static final int MEMORY_CLASS_DIVIDER = 8;
+
+    private final LruCache<String, Bitmap> cache;
+
+    public ThumbnailMemoryCache(int maxSizeBytes) {
+        cache = new LruCache<String, Bitmap>(maxSizeBytes) {
+            @Override
+            protected int sizeOf(@NonNull String key, @NonNull Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+        };
+    }
+
+    /**
+     * @param memoryClassMegabytes memory class of the device, see
+     *                             {@link android.app.ActivityManager#getMemoryClass()}
+     * @return cache size in bytes
+     */
+    public static int computeMaxSize(int memoryClassMegabytes) {
+        return memoryClassMegabytes * BYTES_PER_MEGABYTE / MEMORY_CLASS_DIVIDER;
+    }
+
+    @Nullable
+    public Bitmap get(String key) {
+        Bitmap bitmap = cache.get(key);
+        if (bitmap != null && bitmap.isRecycled()) {
+            cache.remove(key);
+            return null;
+        }
+        return bitmap;
+    }
+
+    public void put(String key, @Nullable Bitmap bitmap) {
+        if (bitmap == null) {
+            cache.remove(key);
+        } else {
+            cache.put(key, bitmap);
+        }
+    }
+
+    public void remove(String key) {
+        cache.remove(key);
+    }
+
+    /**
+     * Releases memory according to a level passed to {@link ComponentCallbacks2#onTrimMemory(int)}: everything once
+     * the app is in background, half of the cache while the UI is hidden or the system runs low on memory.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            cache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            cache.trimToSize(cache.maxSize() / 2);
+        }
+    }
+
+    /**
+     * @return number of lookups answered from memory
+     */
+    public int getHitCount() {
+        return cache.hitCount();
+    }
+
+    /**
+     * @return number of lookups that had to go to the disk cache
+     */
+    public int getMissCount() {
+        return cache.missCount();
+    }
+
+    /**
+     * @return bytes of bitmap memory currently held
+     */
+    public int getSize() {
+        return cache.size();
+    }
+
+    public int getMaxSize() {
+        return cache.maxSize();
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+
+import com.nextcloud.client.account.User;
+import com.nextcloud.client.preferences.AppPreferencesImpl;
+import com.nextcloud.java.util.function.Predicate;
+import com.owncloud.android.lib.common.OwnCloudClient;
+import com.owncloud.android.lib.common.OwnCloudClientManagerFactory;
+import com.owncloud.android.lib.common.utils.Log_OC;
+import com.owncloud.android.utils.FileSortOrder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.annotation.VisibleForTesting;
+import androidx.core.net.ConnectivityManagerCompat;
+
+/**
+ * Warms the thumbnail cache for a folder that was just refreshed, so that the list does not start with a request
+ * per visible row.
+ * <p>
+ * Thumbnails of the first {@link #MAX_FILES} children in list order are fetched by {@link #CONNECTIONS} workers
+ * sharing the keep-alive connections of the account client, until {@link #BYTE_BUDGET} bytes were received. Nothing is
+ * fetched on metered networks. Starting a prefetch cancels the one still running for the previous folder.
+ */
+public final class ThumbnailPrefetcher {
+
+    private static final String TAG = ThumbnailPrefetcher.class.getSimpleName();
+
+    static final int MAX_FILES = 60;
+    static final long BYTE_BUDGET = 4 * 1024 * 1024;
+    static final int CONNECTIONS = 3;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static ThumbnailPrefetcher instance;
+
+    private final ExecutorService executor;
+    private final int connections;
+    private final long byteBudget;
+    private final AtomicReference<Job> currentJob = new AtomicReference<>();
+
+    /**
+     * Fetches the thumbnail of one file.
+     */
+    interface Loader {
+        /**
+         * @return number of bytes received
+         */
+        long load(OCFile file) throws Exception;
+    }
+
+    @VisibleForTesting
+    ThumbnailPrefetcher(int connections, long byteBudget) {
+        this.connections = connections;
+        this.byteBudget = byteBudget;
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(connections,
+                                                                       connections,
+                                                                       KEEP_ALIVE_SECONDS,
+                                                                       TimeUnit.SECONDS,
+                                                                       new LinkedBlockingQueue<>(),
+                                                                       runnable -> {
+                                                                           Thread thread = new Thread(runnable,
+                                                                                                      TAG);
+                                                                           thread.setPriority(Thread.MIN_PRIORITY);
+                                                                           return thread;
+                                                                       });
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        executor = threadPoolExecutor;
+    }
+
+    private static synchronized ThumbnailPrefetcher getInstance() {
+        if (instance == null) {
+            instance = new ThumbnailPrefetcher(CONNECTIONS, BYTE_BUDGET);
+        }
+        return instance;
+    }
+
+    /**
+     * Prefetches missing thumbnails of a refreshed folder in background.
+     *
+     * @param folder   refreshed folder, used for its sort order
+     * @param children content of the folder
+     */
+    public static void prefetchFolder(OCFile folder, List<OCFile> children, User user, Context context) {
+        if (children == null || children.isEmpty() || isActiveNetworkMetered(context)) {
+            return;
+        }
+
+        FileSortOrder sortOrder = AppPreferencesImpl.fromContext(context).getSortOrderByFolder(folder);
+        List<OCFile> sortedChildren = sortOrder.sortCloudFiles(new ArrayList<>(children));
+        List<OCFile> candidates = selectCandidates(sortedChildren, MAX_FILES, ThumbnailsCacheManager::containsBitmap);
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        OwnCloudClient client;
+        try {
+            client = OwnCloudClientManagerFactory.getDefaultSingleton().getClientFor(user.toOwnCloudAccount(),
+                                                                                     context);
+        } catch (Exception e) {
+            Log_OC.e(TAG, "Cannot prefetch thumbnails of " + folder.getRemotePath(), e);
+            return;
+        }
+
+        Log_OC.d(TAG, "Prefetching " + candidates.size() + " thumbnails of " + folder.getRemotePath());
+        getInstance().prefetch(candidates, file -> {
+            // the list may have asked for it meanwhile
+            if (ThumbnailsCacheManager.containsBitmap(ThumbnailsCacheManager.PREFIX_THUMBNAIL + file.getRemoteId())
+                && !file.isUpdateThumbnailNeeded()) {
+                return 0;
+            }
+            return ThumbnailsCacheManager.fetchThumbnail(client, file);
+        });
+    }
+
+    /**
+     * @param sortedChildren folder content in list order
+     * @param maxFiles       number of list positions considered
+     * @param isCached       tells if a thumbnail with the given key is cached
+     * @return files of the first list positions whose server side thumbnail is missing in the cache
+     */
+    @VisibleForTesting
+    static List<OCFile> selectCandidates(List<OCFile> sortedChildren, int maxFiles, Predicate<String> isCached) {
+        List<OCFile> candidates = new ArrayList<>();
+        int positions = Math.min(maxFiles, sortedChildren.size());
+
+        for (int i = 0; i < positions; i++) {
+            OCFile file = sortedChildren.get(i);
+
+            // thumbnails of downloaded files are generated locally
+            if (file.isFolder() || file.isEncrypted() || file.isDown() || !file.isPreviewAvailable()) {
+                continue;
+            }
+
+            String imageKey = ThumbnailsCacheManager.PREFIX_THUMBNAIL + file.getRemoteId();
+            if (file.isUpdateThumbnailNeeded() || !isCached.test(imageKey)) {
+                candidates.add(file);
+            }
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Starts fetching the given files and cancels the previous prefetch.
+     */
+    @VisibleForTesting
+    Job prefetch(List<OCFile> files, Loader loader) {
+        Job job = new Job(files, loader, byteBudget, connections);
+        Job previous = currentJob.getAndSet(job);
+        if (previous != null) {
+            previous.cancel();
+        }
+
+        for (int i = 0; i < connections; i++) {
+            executor.execute(job::work);
+        }
+        return job;
+    }
+
+    private static boolean isActiveNetworkMetered(Context context) {
+        ConnectivityManager connectivityManager =
+            (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        return connectivityManager == null || ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager);
+    }
+
+    /**
+     * Prefetch of one folder; its files are taken from a shared queue by all workers.
+     */
+    static final class Job {
+        private final Queue<OCFile> queue;
+        private final Loader loader;
+        private final long byteBudget;
+        private final CountDownLatch finished;
+        private final AtomicLong bytesFetched = new AtomicLong();
+        private final AtomicInteger filesFetched = new AtomicInteger();
+        private volatile boolean cancelled;
+
+        private Job(List<OCFile> files, Loader loader, long byteBudget, int workers) {
+            queue = new ConcurrentLinkedQueue<>(files);
+            this.loader = loader;
+            this.byteBudget = byteBudget;
+            finished = new CountDownLatch(workers);
+        }
+
+        private void work() {
+            try {
+                while (!cancelled && bytesFetched.get() < byteBudget) {
+                    OCFile file = queue.poll();
+                    if (file == null) {
+                        break;
+                    }
+
+                    try {
+                        long bytes = loader.load(file);
+                        if (bytes > 0) {
+                            bytesFetched.addAndGet(bytes);
+                            filesFetched.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        Log_OC.d(TAG, "Prefetching thumbnail of " + file.getRemotePath() + " failed", e);
+                    }
+                }
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            return finished.await(timeout, unit);
+        }
+
+        long getBytesFetched() {
+            return bytesFetched.get();
+        }
+
+        int getFilesFetched() {
+            return filesFetched.get();
+        }
+    }
+}
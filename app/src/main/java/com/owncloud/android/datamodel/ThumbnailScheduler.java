@@ -0,0 +1,139 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Executor shared by all thumbnail and preview generation tasks.
+ * <p>
+ * A bounded number of threads takes work last in, first out: while scrolling, the rows bound most recently are the
+ * visible ones and are served first, rows scrolled away are cancelled by their adapter before they get a thread.
+ * <p>
+ * {@link #coalesce(String, Callable)} makes concurrent requests for the same image key share one load.
+ */
+public final class ThumbnailScheduler implements Executor {
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentMap<String, FutureTask<?>> inFlight = new ConcurrentHashMap<>();
+
+    public ThumbnailScheduler(int threads) {
+        executor = new ThreadPoolExecutor(threads,
+                                          threads,
+                                          KEEP_ALIVE_SECONDS,
+                                          TimeUnit.SECONDS,
+                                          new LifoBlockingDeque<>(),
+                                          new NamedThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+        executor.execute(command);
+    }
+
+    /**
+     * Runs the loader, unless a load for the same key is already running; then waits for and returns its result.
+     *
+     * @param key    image key, e.g. {@link ThumbnailsCacheManager#PREFIX_THUMBNAIL} followed by the remote id
+     * @param loader loads the image, called at most once per key at a time
+     * @return result of the loader
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V coalesce(String key, Callable<V> loader) throws Exception {
+        FutureTask<V> own = new FutureTask<>(loader);
+        FutureTask<V> running = (FutureTask<V>) inFlight.putIfAbsent(key, own);
+
+        if (running == null) {
+            try {
+                own.run();
+            } finally {
+                inFlight.remove(key, own);
+            }
+            running = own;
+        }
+
+        try {
+            return running.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return number of tasks waiting for a thread
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Work queue handing out the newest task first.
+     */
+    private static class LifoBlockingDeque<E> extends LinkedBlockingDeque<E> {
+        @Override
+        public boolean offer(E e) {
+            return offerFirst(e);
+        }
+
+        @Override
+        public boolean add(E e) {
+            addFirst(e);
+            return true;
+        }
+
+        @Override
+        public void put(E e) throws InterruptedException {
+            putFirst(e);
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "Thumbnails-" + threadCount.incrementAndGet());
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+}
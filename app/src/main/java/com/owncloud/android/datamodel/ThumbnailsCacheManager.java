@@ -23,6 +23,7 @@
 
 package com.owncloud.android.datamodel;
 
+import android.app.ActivityManager;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
@@ -73,6 +74,7 @@ import org.apache.commons.httpclient.methods.GetMethod;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.lang.ref.WeakReference;
 import java.net.URLEncoder;
@@ -105,9 +107,16 @@ public final class ThumbnailsCacheManager {
     private static boolean mThumbnailCacheStarting = true;
 
     private static final int DISK_CACHE_SIZE = 1024 * 1024 * 200; // 200MB
+    private static final ThumbnailMemoryCache mMemoryCache =
+        new ThumbnailMemoryCache(ThumbnailMemoryCache.computeMaxSize(getMemoryClass()));
     private static final CompressFormat mCompressFormat = CompressFormat.JPEG;
     private static final int mCompressQuality = 70;
-    private static OwnCloudClient mClient;
+
+    /**
+     * Shared by all generation tasks, see {@link ThumbnailScheduler}.
+     */
+    public static final ThumbnailScheduler THUMBNAIL_SCHEDULER =
+        new ThumbnailScheduler(Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())));
 
     public static final Bitmap mDefaultImg = BitmapFactory.decodeResource(MainApp.getAppContext().getResources(),
             R.drawable.file_image);
@@ -161,6 +170,12 @@ public final class ThumbnailsCacheManager {
         }
     }
 
+    private static int getMemoryClass() {
+        ActivityManager activityManager =
+            (ActivityManager) MainApp.getAppContext().getSystemService(Context.ACTIVITY_SERVICE);
+        return activityManager.getMemoryClass();
+    }
+
     /**
      * Converts size of file icon from dp to pixel
      * @return int
@@ -207,6 +222,10 @@ public final class ThumbnailsCacheManager {
     }
 
     public static void addBitmapToCache(String key, Bitmap bitmap) {
+        if (isKeptInMemory(key)) {
+            mMemoryCache.put(key, bitmap);
+        }
+
         synchronized (mThumbnailsDiskCacheLock) {
             if (mThumbnailCache != null) {
                 mThumbnailCache.put(key, bitmap);
@@ -215,7 +234,9 @@ public final class ThumbnailsCacheManager {
     }
 
     public static boolean containsBitmap(String key) {
-        return mThumbnailCache.containsKey(key);
+        synchronized (mThumbnailsDiskCacheLock) {
+            return mThumbnailCache != null && mThumbnailCache.containsKey(key);
+        }
     }
 
     public static Bitmap getScaledBitmapFromDiskCache(String key, int width, int height) {
@@ -235,7 +256,19 @@ public final class ThumbnailsCacheManager {
         return null;
     }
 
+    /**
+     * Gets a thumbnail or resized image from memory, falling back to the disk cache.
+     */
     public static Bitmap getBitmapFromDiskCache(String key) {
+        boolean keptInMemory = isKeptInMemory(key);
+        if (keptInMemory) {
+            Bitmap bitmap = mMemoryCache.get(key);
+            if (bitmap != null) {
+                return bitmap;
+            }
+        }
+
+        Bitmap bitmap = null;
         synchronized (mThumbnailsDiskCacheLock) {
             // Wait while disk cache is started from background thread
             while (mThumbnailCacheStarting) {
@@ -246,10 +279,33 @@ public final class ThumbnailsCacheManager {
                 }
             }
             if (mThumbnailCache != null) {
-                return mThumbnailCache.getBitmap(key);
+                bitmap = mThumbnailCache.getBitmap(key);
             }
         }
-        return null;
+
+        if (keptInMemory && bitmap != null) {
+            mMemoryCache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    private static boolean isKeptInMemory(String key) {
+        return key != null && (key.startsWith(PREFIX_THUMBNAIL) || key.startsWith(PREFIX_RESIZED_IMAGE));
+    }
+
+    /**
+     * Releases memory of the in-memory tier, see {@link android.content.ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public static void onTrimMemory(int level) {
+        mMemoryCache.trimMemory(level);
+    }
+
+    public static int getMemoryCacheHitCount() {
+        return mMemoryCache.getHitCount();
+    }
+
+    public static int getMemoryCacheMissCount() {
+        return mMemoryCache.getMissCount();
     }
 
     public static class ResizedImageGenerationTask extends AsyncTask<Object, Void, Bitmap> {
@@ -261,7 +317,7 @@ public final class ThumbnailsCacheManager {
         private OCFile file;
         private final ConnectivityService connectivityService;
         private final int backgroundColor;
-
+        private OwnCloudClient mClient;
 
         public ResizedImageGenerationTask(FileFragment fileFragment,
                                           ImageView imageView,
@@ -289,7 +345,8 @@ public final class ThumbnailsCacheManager {
                 mClient = OwnCloudClientManagerFactory.getDefaultSingleton().getClientFor(user.toOwnCloudAccount(),
                                                                                           MainApp.getAppContext());
 
-                thumbnail = doResizedImageInBackground();
+                thumbnail = THUMBNAIL_SCHEDULER.coalesce(PREFIX_RESIZED_IMAGE + file.getRemoteId(),
+                                                         this::doResizedImageInBackground);
 
                 if (MimeTypeUtil.isVideo(file) && thumbnail != null) {
                     thumbnail = addVideoOverlay(thumbnail);
@@ -400,7 +457,7 @@ public final class ThumbnailsCacheManager {
                         }
                     }
                 } else {
-                    new Thread(() -> {
+                    THUMBNAIL_SCHEDULER.execute(() -> {
                         if (connectivityService.isInternetWalled()) {
                             if (fileFragment instanceof PreviewImageFragment) {
                                 ((PreviewImageFragment) fileFragment).setNoConnectionErrorMessage();
@@ -410,7 +467,7 @@ public final class ThumbnailsCacheManager {
                                 ((PreviewImageFragment) fileFragment).setErrorPreviewMessage();
                             }
                         }
-                    }).start();
+                    });
 
                 }
             }
@@ -445,6 +502,7 @@ public final class ThumbnailsCacheManager {
         private GetMethod getMethod;
         private Listener mListener;
         private boolean gridViewEnabled = false;
+        private OwnCloudClient mClient;
 
         public ThumbnailGenerationTask(ImageView imageView, FileDataStorageManager storageManager, User user)
                 throws IllegalArgumentException {
@@ -514,7 +572,9 @@ public final class ThumbnailsCacheManager {
                 mImageKey = object.getImageKey();
 
                 if (mFile instanceof ServerFileInterface) {
-                    thumbnail = doThumbnailFromOCFileInBackground();
+                    thumbnail = THUMBNAIL_SCHEDULER.coalesce(
+                        PREFIX_THUMBNAIL + ((ServerFileInterface) mFile).getRemoteId(),
+                        this::doThumbnailFromOCFileInBackground);
 
                     if (MimeTypeUtil.isVideo((ServerFileInterface) mFile) && thumbnail != null) {
                         thumbnail = addVideoOverlay(thumbnail);
@@ -578,6 +638,13 @@ public final class ThumbnailsCacheManager {
             }
         }
 
+        @Override
+        protected void onCancelled(Bitmap bitmap) {
+            if (mAsyncTasks != null) {
+                mAsyncTasks.remove(this);
+            }
+        }
+
         public void setListener(Listener listener){
             mListener = listener;
         }
@@ -782,10 +849,13 @@ public final class ThumbnailsCacheManager {
                         mImageKey = (String) params[1];
                     }
 
+                    String imageKey = mImageKey != null ? mImageKey : String.valueOf(mFile.hashCode());
                     if (MimeTypeUtil.isImage(mFile)) {
-                        thumbnail = doFileInBackground(mFile, Type.IMAGE);
+                        thumbnail = THUMBNAIL_SCHEDULER.coalesce(imageKey,
+                                                                 () -> doFileInBackground(mFile, Type.IMAGE));
                     } else if (MimeTypeUtil.isVideo(mFile)) {
-                        thumbnail = doFileInBackground(mFile, Type.VIDEO);
+                        thumbnail = THUMBNAIL_SCHEDULER.coalesce(imageKey,
+                                                                 () -> doFileInBackground(mFile, Type.VIDEO));
                     }
                 }
             } // the app should never break due to a problem with thumbnails
@@ -902,7 +972,7 @@ public final class ThumbnailsCacheManager {
         private final String displayName;
         private final String mServerName;
         private final Context mContext;
-
+        private OwnCloudClient mClient;
 
         public AvatarGenerationTask(AvatarGenerationListener avatarGenerationListener,
                                     Object callContext,
@@ -1069,12 +1139,12 @@ public final class ThumbnailsCacheManager {
     public static boolean cancelPotentialThumbnailWork(Object file, ImageView imageView) {
         final ThumbnailGenerationTask bitmapWorkerTask = getBitmapWorkerTask(imageView);
 
-        if (bitmapWorkerTask != null) {
+        if (bitmapWorkerTask != null && !bitmapWorkerTask.isCancelled()) {
             final Object bitmapData = bitmapWorkerTask.mFile;
             // If bitmapData is not yet set or it differs from the new data
             if (bitmapData == null || !bitmapData.equals(file)) {
-                // Cancel previous task
-                bitmapWorkerTask.cancel(true);
+                // Cancel previous task; a load already running completes and fills the cache
+                bitmapWorkerTask.cancel(false);
                 Log_OC.v(TAG, "Cancelled generation of thumbnail for a reused imageView");
             } else {
                 // The same work is already in progress
@@ -1085,6 +1155,18 @@ public final class ThumbnailsCacheManager {
         return true;
     }
 
+    /**
+     * Cancels thumbnail generation bound to an image view, e.g. when its list item is recycled. Generation that did
+     * not start yet is skipped once it reaches a thread of {@link #THUMBNAIL_SCHEDULER}.
+     */
+    public static void cancelThumbnailWork(ImageView imageView) {
+        final ThumbnailGenerationTask bitmapWorkerTask = getBitmapWorkerTask(imageView);
+
+        if (bitmapWorkerTask != null) {
+            bitmapWorkerTask.cancel(false);
+        }
+    }
+
     public static ThumbnailGenerationTask getBitmapWorkerTask(ImageView imageView) {
         if (imageView != null) {
             final Drawable drawable = imageView.getDrawable();
@@ -1244,43 +1326,53 @@ public final class ThumbnailsCacheManager {
     }
 
     public static void generateThumbnailFromOCFile(OCFile file, User user, Context context) {
+        try {
+            OwnCloudAccount ocAccount = user.toOwnCloudAccount();
+            OwnCloudClient client = OwnCloudClientManagerFactory.getDefaultSingleton().getClientFor(ocAccount, context);
+
+            fetchThumbnail(client, file);
+        } catch (Exception e) {
+            Log_OC.d(TAG, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Downloads the thumbnail of a file from the server and adds it to the cache.
+     *
+     * @return number of bytes received from the server
+     */
+    public static long fetchThumbnail(OwnCloudClient client, OCFile file) throws IOException {
         int pxW;
         int pxH;
         pxW = pxH = getThumbnailDimension();
         String imageKey = PREFIX_THUMBNAIL + file.getRemoteId();
 
-        GetMethod getMethod = null;
-
-        try {
-            Bitmap thumbnail = null;
-
-            OwnCloudClient client = mClient;
-            if (client == null) {
-                OwnCloudAccount ocAccount = user.toOwnCloudAccount();
-                client = OwnCloudClientManagerFactory.getDefaultSingleton().getClientFor(ocAccount, context);
-            }
-
-            String uri = client.getBaseUri() + "/index.php/apps/files/api/v1/thumbnail/" +
-                pxW + "/" + pxH + Uri.encode(file.getRemotePath(), "/");
+        String uri = client.getBaseUri() + "/index.php/apps/files/api/v1/thumbnail/" +
+            pxW + "/" + pxH + Uri.encode(file.getRemotePath(), "/");
 
-            Log_OC.d(TAG, "generate thumbnail: " + file.getFileName() + " URI: " + uri);
-            getMethod = new GetMethod(uri);
-            getMethod.setRequestHeader("Cookie", "nc_sameSiteCookielax=true;nc_sameSiteCookiestrict=true");
+        Log_OC.d(TAG, "generate thumbnail: " + file.getFileName() + " URI: " + uri);
+        GetMethod getMethod = new GetMethod(uri);
+        getMethod.setRequestHeader("Cookie", "nc_sameSiteCookielax=true;nc_sameSiteCookiestrict=true");
 
-            getMethod.setRequestHeader(RemoteOperation.OCS_API_HEADER,
-                                       RemoteOperation.OCS_API_HEADER_VALUE);
+        getMethod.setRequestHeader(RemoteOperation.OCS_API_HEADER,
+                                   RemoteOperation.OCS_API_HEADER_VALUE);
 
-            int status = client.executeMethod(getMethod);
-            if (status == HttpStatus.SC_OK) {
-                InputStream inputStream = getMethod.getResponseBodyAsStream();
-                Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-                thumbnail = ThumbnailUtils.extractThumbnail(bitmap, pxW, pxH);
-            } else {
+        try {
+            int status = client.executeMethod(getMethod, READ_TIMEOUT, CONNECTION_TIMEOUT);
+            if (status != HttpStatus.SC_OK) {
                 client.exhaustResponse(getMethod.getResponseBodyAsStream());
+                return 0;
+            }
+
+            byte[] data = getMethod.getResponseBody();
+            if (data == null) {
+                return 0;
             }
 
-            // Add thumbnail to cache
-            if (thumbnail != null) {
+            Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
+            if (bitmap != null) {
+                Bitmap thumbnail = ThumbnailUtils.extractThumbnail(bitmap, pxW, pxH);
+
                 // Handle PNG
                 if (PNG_MIMETYPE.equalsIgnoreCase(file.getMimeType())) {
                     thumbnail = handlePNG(thumbnail, pxW, pxH);
@@ -1289,12 +1381,9 @@ public final class ThumbnailsCacheManager {
                 Log_OC.d(TAG, "add thumbnail to cache: " + file.getFileName());
                 addBitmapToCache(imageKey, thumbnail);
             }
-        } catch (Exception e) {
-            Log_OC.d(TAG, e.getMessage(), e);
+            return data.length;
         } finally {
-            if (getMethod != null) {
-                getMethod.releaseConnection();
-            }
+            getMethod.releaseConnection();
         }
     }
 }
@@ -23,13 +23,18 @@
  */
 package com.owncloud.android.datamodel;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.RemoteException;
 
 import com.nextcloud.client.account.CurrentAccountProvider;
 import com.nextcloud.client.account.User;
+import com.owncloud.android.MainApp;
 import com.owncloud.android.db.OCUpload;
 import com.owncloud.android.db.ProviderMeta.ProviderTableMeta;
 import com.owncloud.android.db.UploadResult;
@@ -42,6 +47,7 @@ import com.owncloud.android.operations.UploadFileOperation;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.List;
 import java.util.Locale;
 import java.util.Observable;
 
@@ -81,6 +87,61 @@ public class UploadsStorageManager extends Observable {
     public long storeUpload(OCUpload ocUpload) {
         Log_OC.v(TAG, "Inserting " + ocUpload.getLocalPath() + " with status=" + ocUpload.getUploadStatus());
 
+        Uri result = getDB().insert(ProviderTableMeta.CONTENT_URI_UPLOADS, getContentValues(ocUpload));
+
+        Log_OC.d(TAG, "storeUpload returns with: " + result + " for file: " + ocUpload.getLocalPath());
+        if (result == null) {
+            Log_OC.e(TAG, "Failed to insert item " + ocUpload.getLocalPath() + " into upload db.");
+            return -1;
+        } else {
+            long new_id = Long.parseLong(result.getPathSegments().get(1));
+            ocUpload.setUploadId(new_id);
+            notifyObserversNow();
+            return new_id;
+        }
+    }
+
+    /**
+     * Stores upload objects in DB in one transaction, notifying observers once.
+     *
+     * @param ocUploads Upload objects to store
+     * @return upload ids in the order of the given uploads, -1 for uploads that could not be stored.
+     */
+    public long[] storeUploads(List<OCUpload> ocUploads) {
+        long[] ids = new long[ocUploads.size()];
+        Arrays.fill(ids, -1);
+        if (ocUploads.isEmpty()) {
+            return ids;
+        }
+
+        Log_OC.v(TAG, "Inserting " + ocUploads.size() + " uploads");
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(ocUploads.size());
+        for (OCUpload ocUpload : ocUploads) {
+            operations.add(ContentProviderOperation.newInsert(ProviderTableMeta.CONTENT_URI_UPLOADS)
+                               .withValues(getContentValues(ocUpload))
+                               .build());
+        }
+
+        try {
+            ContentProviderResult[] results = getDB().applyBatch(MainApp.getAuthority(), operations);
+            for (int i = 0; i < results.length; i++) {
+                if (results[i].uri == null) {
+                    Log_OC.e(TAG, "Failed to insert item " + ocUploads.get(i).getLocalPath() + " into upload db.");
+                } else {
+                    ids[i] = Long.parseLong(results[i].uri.getPathSegments().get(1));
+                    ocUploads.get(i).setUploadId(ids[i]);
+                }
+            }
+        } catch (OperationApplicationException | RemoteException e) {
+            Log_OC.e(TAG, "Failed to insert " + ocUploads.size() + " items into upload db.", e);
+        }
+
+        notifyObserversNow();
+        return ids;
+    }
+
+    private ContentValues getContentValues(OCUpload ocUpload) {
         ContentValues cv = new ContentValues();
         cv.put(ProviderTableMeta.UPLOADS_LOCAL_PATH, ocUpload.getLocalPath());
         cv.put(ProviderTableMeta.UPLOADS_REMOTE_PATH, ocUpload.getRemotePath());
@@ -95,18 +156,7 @@ public class UploadsStorageManager extends Observable {
         cv.put(ProviderTableMeta.UPLOADS_IS_WHILE_CHARGING_ONLY, ocUpload.isWhileChargingOnly() ? 1 : 0);
         cv.put(ProviderTableMeta.UPLOADS_IS_WIFI_ONLY, ocUpload.isUseWifiOnly() ? 1 : 0);
         cv.put(ProviderTableMeta.UPLOADS_FOLDER_UNLOCK_TOKEN, ocUpload.getFolderUnlockToken());
-        Uri result = getDB().insert(ProviderTableMeta.CONTENT_URI_UPLOADS, cv);
-
-        Log_OC.d(TAG, "storeUpload returns with: " + result + " for file: " + ocUpload.getLocalPath());
-        if (result == null) {
-            Log_OC.e(TAG, "Failed to insert item " + ocUpload.getLocalPath() + " into upload db.");
-            return -1;
-        } else {
-            long new_id = Long.parseLong(result.getPathSegments().get(1));
-            ocUpload.setUploadId(new_id);
-            notifyObserversNow();
-            return new_id;
-        }
+        return cv;
     }
 
     /**
@@ -35,7 +35,7 @@ import java.util.List;
  */
 public class ProviderMeta {
     public static final String DB_NAME = "filelist";
-    public static final int DB_VERSION = 63;
+    public static final int DB_VERSION = 66;
 
     private ProviderMeta() {
         // No instance
@@ -43,6 +43,7 @@ public class ProviderMeta {
 
     static public class ProviderTableMeta implements BaseColumns {
         public static final String FILE_TABLE_NAME = "filelist";
+        public static final String FILE_SEARCH_TABLE_NAME = "filelist_fts";
         public static final String OCSHARES_TABLE_NAME = "ocshares";
         public static final String CAPABILITIES_TABLE_NAME = "capabilities";
         public static final String UPLOADS_TABLE_NAME = "list_of_uploads";
@@ -62,6 +63,10 @@ public class ProviderMeta {
                 + MainApp.getAuthority() + "/file");
         public static final Uri CONTENT_URI_DIR = Uri.parse(CONTENT_PREFIX
                 + MainApp.getAuthority() + "/dir");
+        public static final Uri CONTENT_URI_FILE_SEARCH = Uri.parse(CONTENT_PREFIX
+                + MainApp.getAuthority() + "/file_search");
+        public static final Uri CONTENT_URI_GALLERY = Uri.parse(CONTENT_PREFIX
+                + MainApp.getAuthority() + "/gallery");
         public static final Uri CONTENT_URI_SHARE = Uri.parse(CONTENT_PREFIX
                 + MainApp.getAuthority() + "/shares");
         public static final Uri CONTENT_URI_CAPABILITIES = Uri.parse(CONTENT_PREFIX
@@ -0,0 +1,180 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.files.services;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Runs downloads on a bounded number of worker threads.
+ * <p>
+ * Downloads are started in the order they were enqueued, grouped by folder, except that downloads of files in the
+ * priority folder, usually the one the user is looking at, overtake all others. Queued downloads of an account or of
+ * a folder subtree can be dropped before they start.
+ */
+final class DownloadWorkerPool extends WorkerPool<DownloadWorkerPool.Download> {
+
+    static final class Download extends WorkerPool.Task {
+        private final String accountName;
+        private final String remotePath;
+
+        private Download(String accountName, String remotePath, Runnable runnable) {
+            super(runnable);
+            this.accountName = accountName;
+            this.remotePath = remotePath;
+        }
+    }
+
+    /**
+     * Queued downloads per folder, folders in the order their first download was enqueued.
+     */
+    private final Map<String, Deque<Download>> pending = new LinkedHashMap<>();
+    private int pendingCount;
+    private String priorityFolder;
+
+    DownloadWorkerPool(int maxWorkers, ThreadFactory threadFactory, OnIdleListener onIdleListener) {
+        this(maxWorkers, Executors.newFixedThreadPool(maxWorkers, threadFactory), onIdleListener);
+    }
+
+    @VisibleForTesting
+    DownloadWorkerPool(int maxWorkers, ExecutorService executor, OnIdleListener onIdleListener) {
+        super(maxWorkers, executor, onIdleListener);
+    }
+
+    /**
+     * Adds a download to the queue; it is started as soon as a worker is free.
+     *
+     * @param remotePath path of the downloaded file, used for priority and removal
+     */
+    void enqueue(String accountName, String remotePath, Runnable download) {
+        submit(new Download(accountName, remotePath, download));
+    }
+
+    /**
+     * Lets queued downloads of files directly in the given folder start before all others.
+     *
+     * @param folderPath remote path of the folder, ending with a separator; null to remove the priority
+     */
+    synchronized void setPriorityFolder(String accountName, @Nullable String folderPath) {
+        priorityFolder = folderPath == null ? null : accountName + folderPath;
+    }
+
+    /**
+     * Drops queued downloads of an account. Running downloads are not interrupted, they have to be cancelled on their
+     * own.
+     *
+     * @param remotePath only downloads of this file or, if it is a folder path ending with a separator, of files below
+     *                   it are dropped; null to drop all downloads of the account
+     * @return number of dropped downloads
+     */
+    int remove(String accountName, @Nullable String remotePath) {
+        int removed = 0;
+        synchronized (this) {
+            Iterator<Deque<Download>> folders = pending.values().iterator();
+            while (folders.hasNext()) {
+                Deque<Download> downloads = folders.next();
+                Iterator<Download> iterator = downloads.iterator();
+                while (iterator.hasNext()) {
+                    Download download = iterator.next();
+                    if (download.accountName.equals(accountName) && isBelow(download.remotePath, remotePath)) {
+                        iterator.remove();
+                        removed++;
+                    }
+                }
+                if (downloads.isEmpty()) {
+                    folders.remove();
+                }
+            }
+            pendingCount -= removed;
+        }
+        if (removed > 0) {
+            onPendingRemoved();
+        }
+        return removed;
+    }
+
+    synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    @Override
+    void addPending(Download download) {
+        String folder = getFolderKey(download.accountName, download.remotePath);
+        Deque<Download> downloads = pending.get(folder);
+        if (downloads == null) {
+            downloads = new ArrayDeque<>();
+            pending.put(folder, downloads);
+        }
+        downloads.add(download);
+        pendingCount++;
+    }
+
+    @Override
+    boolean hasPending() {
+        return pendingCount > 0;
+    }
+
+    @Override
+    void clearPending() {
+        pending.clear();
+        pendingCount = 0;
+    }
+
+    @Nullable
+    @Override
+    Download pollNext() {
+        if (pendingCount == 0) {
+            return null;
+        }
+        Deque<Download> downloads = priorityFolder == null ? null : pending.get(priorityFolder);
+        String folder = priorityFolder;
+        if (downloads == null) {
+            Map.Entry<String, Deque<Download>> first = pending.entrySet().iterator().next();
+            folder = first.getKey();
+            downloads = first.getValue();
+        }
+        Download download = downloads.poll();
+        if (downloads.isEmpty()) {
+            pending.remove(folder);
+        }
+        pendingCount--;
+        return download;
+    }
+
+    private static String getFolderKey(String accountName, String remotePath) {
+        int end = remotePath.lastIndexOf('/', remotePath.length() - 2);
+        return accountName + remotePath.substring(0, end + 1);
+    }
+
+    private static boolean isBelow(String remotePath, @Nullable String ancestorPath) {
+        if (ancestorPath == null || remotePath.equals(ancestorPath)) {
+            return true;
+        }
+        return ancestorPath.endsWith("/") && remotePath.startsWith(ancestorPath);
+    }
+}
@@ -27,24 +27,27 @@ import android.app.Notification;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
+import android.content.Context;
 import android.content.Intent;
 import android.graphics.BitmapFactory;
 import android.os.Binder;
 import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
-import android.os.Message;
+import android.os.Parcelable;
 import android.os.Process;
+import android.os.SystemClock;
 import android.util.Pair;
 
 import com.nextcloud.client.account.User;
 import com.nextcloud.client.account.UserAccountManager;
 import com.nextcloud.client.files.downloader.DownloadTask;
+import com.nextcloud.client.preferences.AppPreferences;
 import com.nextcloud.java.util.Optional;
 import com.owncloud.android.R;
 import com.owncloud.android.authentication.AuthenticatorActivity;
 import com.owncloud.android.datamodel.FileDataStorageManager;
+import com.owncloud.android.datamodel.LocalFolderSizeCache;
 import com.owncloud.android.datamodel.OCFile;
 import com.owncloud.android.datamodel.UploadsStorageManager;
 import com.owncloud.android.lib.common.OwnCloudAccount;
@@ -72,24 +75,34 @@ import com.owncloud.android.utils.theme.ThemeColorUtils;
 
 import java.io.File;
 import java.security.SecureRandom;
-import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 
+import androidx.annotation.NonNull;
 import androidx.core.app.NotificationCompat;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import dagger.android.AndroidInjection;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
-public class FileDownloader extends Service
-        implements OnDatatransferProgressListener, OnAccountsUpdateListener {
+/**
+ * Service downloading the files requested with {@link #EXTRA_FILE} or {@link #EXTRA_FILES}.
+ *
+ * Up to {@link AppPreferences#getMaxConcurrentDownloads()} downloads run in parallel on a {@link DownloadWorkerPool}.
+ * Files of the folder the user is looking at, see {@link FileDownloaderBinder#setPriorityFolder(User, OCFile)}, are
+ * downloaded before the rest of the queue.
+ */
+public class FileDownloader extends Service implements OnAccountsUpdateListener {
 
     public static final String EXTRA_USER = "USER";
     public static final String EXTRA_FILE = "FILE";
+    public static final String EXTRA_FILES = "FILES";
 
     private static final String DOWNLOAD_ADDED_MESSAGE = "DOWNLOAD_ADDED";
     private static final String DOWNLOAD_FINISH_MESSAGE = "DOWNLOAD_FINISH";
@@ -101,33 +114,61 @@ public class FileDownloader extends Service
 
     private static final int FOREGROUND_SERVICE_ID = 412;
 
+    /**
+     * Files sent with a single {@link Intent}, keeps the parcel well below the binder transaction limit.
+     */
+    private static final int MAX_FILES_PER_INTENT = 100;
+
+    /**
+     * Minimum time between two updates of the progress notification, the system drops more frequent updates anyway.
+     */
+    private static final long PROGRESS_NOTIFICATION_INTERVAL_MS = 1000;
+
+    /**
+     * Delay before the service stops once all downloads are done, lets a new request reuse the running service.
+     */
+    private static final long STOP_DELAY_MS = 2000;
+
     private static final String TAG = FileDownloader.class.getSimpleName();
 
-    private Looper mServiceLooper;
-    private ServiceHandler mServiceHandler;
+    private Handler mMainHandler;
+    private DownloadWorkerPool mWorkerPool;
+    private int mLastStartId;
     private IBinder mBinder;
-    private OwnCloudClient mDownloadClient;
-    private Optional<User> currentUser = Optional.empty();
-    private FileDataStorageManager mStorageManager;
 
     private IndexedForest<DownloadFileOperation> mPendingDownloads = new IndexedForest<>();
 
-    private DownloadFileOperation mCurrentDownload;
+    /**
+     * {@link DownloadFileOperation} objects of ongoing downloads, indexed by their key in {@link #mPendingDownloads}.
+     */
+    private final Map<String, DownloadFileOperation> mCurrentDownloads = new ConcurrentHashMap<>();
+
+    /**
+     * Uploads in conflict to be removed once the download overwriting them succeeded, indexed like
+     * {@link #mCurrentDownloads}.
+     */
+    private final Map<String, Long> mConflictUploadIds = new ConcurrentHashMap<>();
 
     private NotificationManager mNotificationManager;
+
+    /**
+     * Guards the progress notification, which aggregates all downloads requested since the service was last idle.
+     */
+    private final Object mNotificationLock = new Object();
     private NotificationCompat.Builder mNotificationBuilder;
+    private final Map<DownloadFileOperation, long[]> mDownloadProgress = new HashMap<>();
+    private int mRequestedDownloads;
+    private int mFinishedDownloads;
     private int mLastPercent;
+    private long mLastNotificationTime;
 
     private Notification mNotification;
 
-    private long conflictUploadId;
-
-    public boolean mStartedDownload = false;
-
     @Inject UserAccountManager accountManager;
     @Inject UploadsStorageManager uploadsStorageManager;
     @Inject LocalBroadcastManager localBroadcastManager;
     @Inject ThemeColorUtils themeColorUtils;
+    @Inject AppPreferences preferences;
 
     public static String getDownloadAddedMessage() {
         return FileDownloader.class.getName() + DOWNLOAD_ADDED_MESSAGE;
@@ -137,6 +178,27 @@ public class FileDownloader extends Service
         return FileDownloader.class.getName() + DOWNLOAD_FINISH_MESSAGE;
     }
 
+    /**
+     * Requests the download of several files, with as few {@link Intent}s as possible.
+     *
+     * @param context Caller {@link Context}
+     * @param user    User the files belong to
+     * @param files   Files to download
+     */
+    public static void downloadFiles(Context context, User user, List<OCFile> files) {
+        for (int start = 0; start < files.size(); start += MAX_FILES_PER_INTENT) {
+            List<OCFile> chunk = files.subList(start, Math.min(start + MAX_FILES_PER_INTENT, files.size()));
+            Intent intent = new Intent(context, FileDownloader.class);
+            intent.putExtra(EXTRA_USER, user);
+            intent.putExtra(EXTRA_FILES, chunk.toArray(new OCFile[0]));
+            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
+                context.startForegroundService(intent);
+            } else {
+                context.startService(intent);
+            }
+        }
+    }
+
     /**
      * Service initialization
      */
@@ -146,11 +208,11 @@ public class FileDownloader extends Service
         AndroidInjection.inject(this);
         Log_OC.d(TAG, "Creating service");
         mNotificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
-        HandlerThread thread = new HandlerThread("FileDownloaderThread", Process.THREAD_PRIORITY_BACKGROUND);
-        thread.start();
-        mServiceLooper = thread.getLooper();
-        mServiceHandler = new ServiceHandler(mServiceLooper, this);
+        mMainHandler = new Handler(Looper.getMainLooper());
         mBinder = new FileDownloaderBinder();
+        mWorkerPool = new DownloadWorkerPool(preferences.getMaxConcurrentDownloads(),
+                                             new DownloadThreadFactory(),
+                                             () -> mMainHandler.post(this::onIdle));
 
         NotificationCompat.Builder builder = new NotificationCompat.Builder(this).setContentTitle(
             getApplicationContext().getResources().getString(R.string.app_name))
@@ -178,9 +240,8 @@ public class FileDownloader extends Service
     public void onDestroy() {
         Log_OC.v(TAG, "Destroying service");
         mBinder = null;
-        mServiceHandler = null;
-        mServiceLooper.quit();
-        mServiceLooper = null;
+        mWorkerPool.shutdown();
+        mMainHandler.removeCallbacksAndMessages(null);
         mNotificationManager = null;
 
         // remove AccountsUpdatedListener
@@ -201,13 +262,26 @@ public class FileDownloader extends Service
         Log_OC.d(TAG, "Starting command with id " + startId);
 
         startForeground(FOREGROUND_SERVICE_ID, mNotification);
+        mLastStartId = startId;
 
-        if (intent == null || !intent.hasExtra(EXTRA_USER) || !intent.hasExtra(EXTRA_FILE)) {
+        if (intent == null || !intent.hasExtra(EXTRA_USER) ||
+            !(intent.hasExtra(EXTRA_FILE) || intent.hasExtra(EXTRA_FILES))) {
             Log_OC.e(TAG, "Not enough information provided in intent");
+            stopIfIdle();
             return START_NOT_STICKY;
         } else {
             final User user = intent.getParcelableExtra(EXTRA_USER);
-            final OCFile file = intent.getParcelableExtra(EXTRA_FILE);
+            final List<OCFile> files = new ArrayList<>();
+            if (intent.hasExtra(EXTRA_FILES)) {
+                Parcelable[] parcelables = intent.getParcelableArrayExtra(EXTRA_FILES);
+                if (parcelables != null) {
+                    for (Parcelable parcelable : parcelables) {
+                        files.add((OCFile) parcelable);
+                    }
+                }
+            } else {
+                files.add(intent.getParcelableExtra(EXTRA_FILE));
+            }
             final String behaviour = intent.getStringExtra(OCFileListFragment.DOWNLOAD_BEHAVIOUR);
 
             DownloadType downloadType = DownloadType.DOWNLOAD;
@@ -216,43 +290,78 @@ public class FileDownloader extends Service
             }
             String activityName = intent.getStringExtra(SendShareDialog.ACTIVITY_NAME);
             String packageName = intent.getStringExtra(SendShareDialog.PACKAGE_NAME);
-            conflictUploadId = intent.getLongExtra(ConflictsResolveActivity.EXTRA_CONFLICT_UPLOAD_ID, -1);
-            AbstractList<String> requestedDownloads = new Vector<String>();
+            long conflictUploadId = intent.getLongExtra(ConflictsResolveActivity.EXTRA_CONFLICT_UPLOAD_ID, -1);
             try {
-                DownloadFileOperation newDownload = new DownloadFileOperation(user,
-                                                                              file,
-                                                                              behaviour,
-                                                                              activityName,
-                                                                              packageName,
-                                                                              getBaseContext(),
-                                                                              downloadType);
-                newDownload.addDatatransferProgressListener(this);
-                newDownload.addDatatransferProgressListener((FileDownloaderBinder) mBinder);
-                Pair<String, String> putResult = mPendingDownloads.putIfAbsent(user.getAccountName(),
-                                                                               file.getRemotePath(),
-                                                                               newDownload);
-                if (putResult != null) {
-                    String downloadKey = putResult.first;
-                    requestedDownloads.add(downloadKey);
-                    sendBroadcastNewDownload(newDownload, putResult.second);
-                }   // else, file already in the queue of downloads; don't repeat the request
-
+                for (OCFile file : files) {
+                    DownloadFileOperation newDownload = new DownloadFileOperation(user,
+                                                                                  file,
+                                                                                  behaviour,
+                                                                                  activityName,
+                                                                                  packageName,
+                                                                                  getBaseContext(),
+                                                                                  downloadType);
+                    newDownload.addDatatransferProgressListener(
+                        (progressRate, totalTransferredSoFar, totalToTransfer, fileName) ->
+                            onTransferProgress(newDownload,
+                                               progressRate,
+                                               totalTransferredSoFar,
+                                               totalToTransfer,
+                                               fileName));
+                    Pair<String, String> putResult = mPendingDownloads.putIfAbsent(user.getAccountName(),
+                                                                                   file.getRemotePath(),
+                                                                                   newDownload);
+                    if (putResult != null) {
+                        String downloadKey = putResult.first;
+                        if (conflictUploadId > 0) {
+                            mConflictUploadIds.put(downloadKey, conflictUploadId);
+                        }
+                        synchronized (mNotificationLock) {
+                            mRequestedDownloads++;
+                        }
+                        sendBroadcastNewDownload(newDownload, putResult.second);
+                        mWorkerPool.enqueue(user.getAccountName(),
+                                            file.getRemotePath(),
+                                            () -> downloadFile(downloadKey));
+                    }   // else, file already in the queue of downloads; don't repeat the request
+                }
             } catch (IllegalArgumentException e) {
                 Log_OC.e(TAG, "Not enough information provided in intent: " + e.getMessage());
-                return START_NOT_STICKY;
-            }
-
-            if (requestedDownloads.size() > 0) {
-                Message msg = mServiceHandler.obtainMessage();
-                msg.arg1 = startId;
-                msg.obj = requestedDownloads;
-                mServiceHandler.sendMessage(msg);
             }
         }
 
+        stopIfIdle();
         return START_NOT_STICKY;
     }
 
+    /**
+     * Called on the main thread once the last download is done.
+     */
+    private void onIdle() {
+        mMainHandler.postDelayed(this::stopIfIdle, STOP_DELAY_MS);
+    }
+
+    /**
+     * Stops the service once all downloads handed to the worker pool are done. Runs on the main thread, as {@link
+     * #onStartCommand(Intent, int, int)} does, so no download can be enqueued in between.
+     */
+    private void stopIfIdle() {
+        if (mWorkerPool != null && mWorkerPool.isIdle()) {
+            Log_OC.d(TAG, "Stopping after command with id " + mLastStartId);
+            synchronized (mNotificationLock) {
+                mNotificationBuilder = null;
+                mDownloadProgress.clear();
+                mRequestedDownloads = 0;
+                mFinishedDownloads = 0;
+            }
+            if (mNotificationManager != null) {
+                mNotificationManager.cancel(R.string.downloader_download_in_progress_ticker);
+                mNotificationManager.cancel(FOREGROUND_SERVICE_ID);
+            }
+            stopForeground(true);
+            stopSelf(mLastStartId);
+        }
+    }
+
     /**
      * Provides a binder object that clients can use to perform operations on the queue of downloads,
      * excepting the addition of new files.
@@ -276,9 +385,11 @@ public class FileDownloader extends Service
 
     @Override
     public void onAccountsUpdated(Account[] accounts) {
-         //review the current download and cancel it if its account doesn't exist
-        if (mCurrentDownload != null && !accountManager.exists(mCurrentDownload.getUser().toPlatformAccount())) {
-            mCurrentDownload.cancel();
+        // review the current downloads and cancel them if their account doesn't exist
+        for (DownloadFileOperation currentDownload : mCurrentDownloads.values()) {
+            if (!accountManager.exists(currentDownload.getUser().toPlatformAccount())) {
+                currentDownload.cancel();
+            }
         }
         // The rest of downloads are cancelled when they try to start
     }
@@ -289,34 +400,34 @@ public class FileDownloader extends Service
      * <p/>
      * It provides by itself the available operations.
      */
-    public class FileDownloaderBinder extends Binder implements OnDatatransferProgressListener {
+    public class FileDownloaderBinder extends Binder {
 
         /**
          * Map of listeners that will be reported about progress of downloads from a
          * {@link FileDownloaderBinder}
          * instance.
          */
-        private Map<Long, OnDatatransferProgressListener> mBoundListeners =
-                new HashMap<Long, OnDatatransferProgressListener>();
+        private Map<Long, OnDatatransferProgressListener> mBoundListeners = new ConcurrentHashMap<>();
 
 
         /**
-         * Cancels a pending or current download of a remote file.
+         * Cancels a pending or current download of a remote file, or of all files below a folder.
          *
          * @param account ownCloud account where the remote file is stored.
-         * @param file    A file in the queue of pending downloads
+         * @param file    A file in the queue of pending downloads, or a folder containing some
          */
         public void cancel(Account account, OCFile file) {
             Pair<DownloadFileOperation, String> removeResult =
                 mPendingDownloads.remove(account.name, file.getRemotePath());
+            notifyDownloadsDropped(mWorkerPool.remove(account.name, file.getRemotePath()));
             DownloadFileOperation download = removeResult.first;
             if (download != null) {
                 download.cancel();
-            } else {
-                if (mCurrentDownload != null && currentUser.isPresent() &&
-                    mCurrentDownload.getRemotePath().startsWith(file.getRemotePath()) &&
-                        account.name.equals(currentUser.get().getAccountName())) {
-                    mCurrentDownload.cancel();
+            }
+            for (DownloadFileOperation currentDownload : mCurrentDownloads.values()) {
+                if (currentDownload.getRemotePath().startsWith(file.getRemotePath()) &&
+                    currentDownload.getUser().nameEquals(account.name)) {
+                    currentDownload.cancel();
                 }
             }
         }
@@ -325,8 +436,10 @@ public class FileDownloader extends Service
          * Cancels all the downloads for an account
          */
         public void cancel(String accountName) {
-            if (mCurrentDownload != null && mCurrentDownload.getUser().nameEquals(accountName)) {
-                mCurrentDownload.cancel();
+            for (DownloadFileOperation currentDownload : mCurrentDownloads.values()) {
+                if (currentDownload.getUser().nameEquals(accountName)) {
+                    currentDownload.cancel();
+                }
             }
             // Cancel pending downloads
             cancelPendingDownloads(accountName);
@@ -352,6 +465,22 @@ public class FileDownloader extends Service
         }
 
 
+        /**
+         * Lets queued downloads of files in the given folder start before all others, e.g. because the user is
+         * looking at it.
+         *
+         * @param user   user the folder belongs to.
+         * @param folder folder whose files are downloaded first; null to download in the order requested.
+         */
+        public void setPriorityFolder(User user, OCFile folder) {
+            if (user == null) {
+                return;
+            }
+            String folderPath = folder != null && folder.isFolder() ? folder.getRemotePath() : null;
+            mWorkerPool.setPriorityFolder(user.getAccountName(), folderPath);
+        }
+
+
         /**
          * Adds a listener interested in the progress of the download for a concrete file.
          *
@@ -382,11 +511,9 @@ public class FileDownloader extends Service
             }
         }
 
-        @Override
-        public void onTransferProgress(long progressRate, long totalTransferredSoFar,
-                                       long totalToTransfer, String fileName) {
-            OnDatatransferProgressListener boundListener =
-                    mBoundListeners.get(mCurrentDownload.getFile().getFileId());
+        private void onTransferProgress(DownloadFileOperation download, long progressRate, long totalTransferredSoFar,
+                                        long totalToTransfer, String fileName) {
+            OnDatatransferProgressListener boundListener = mBoundListeners.get(download.getFile().getFileId());
             if (boundListener != null) {
                 boundListener.onTransferProgress(progressRate, totalTransferredSoFar,
                                                  totalToTransfer, fileName);
@@ -395,85 +522,56 @@ public class FileDownloader extends Service
 
     }
 
-    /**
-     * Download worker. Performs the pending downloads in the order they were requested.
 
-     * Created with the Looper of a new thread, started in {@link FileUploader#onCreate()}.
+    /**
+     * Creates the threads of the download {@link DownloadWorkerPool}, with background priority.
      */
-    private static class ServiceHandler extends Handler {
-        // don't make it a final class, and don't remove the static ; lint will warn about a
-        // possible memory leak
-        FileDownloader mService;
-
-        public ServiceHandler(Looper looper, FileDownloader service) {
-            super(looper);
-            if (service == null) {
-                throw new IllegalArgumentException("Received invalid NULL in parameter 'service'");
-            }
-            mService = service;
-        }
+    private static class DownloadThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
 
         @Override
-        public void handleMessage(Message msg) {
-            @SuppressWarnings("unchecked")
-            AbstractList<String> requestedDownloads = (AbstractList<String>) msg.obj;
-            if (msg.obj != null) {
-                Iterator<String> it = requestedDownloads.iterator();
-                while (it.hasNext()) {
-                    String next = it.next();
-                    mService.downloadFile(next);
-                }
-            }
-            mService.mStartedDownload=false;
-
-            (new Handler()).postDelayed(() -> {
-                if(!mService.mStartedDownload){
-                    mService.mNotificationManager.cancel(R.string.downloader_download_in_progress_ticker);
-                }
-                Log_OC.d(TAG, "Stopping after command with id " + msg.arg1);
-                mService.mNotificationManager.cancel(FOREGROUND_SERVICE_ID);
-                mService.stopForeground(true);
-                mService.stopSelf(msg.arg1);
-            }, 2000);
+        public Thread newThread(@NonNull Runnable runnable) {
+            return new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "FileDownloaderWorker-" + threadCount.incrementAndGet());
         }
     }
 
 
     /**
-     * Core download method: requests a file to download and stores it.
+     * Core download method: requests a file to download and stores it. Called from several worker threads at the same
+     * time.
      *
      * @param downloadKey Key to access the download to perform, contained in mPendingDownloads
      */
     private void downloadFile(String downloadKey) {
+        DownloadFileOperation currentDownload = mPendingDownloads.get(downloadKey);
 
-        mStartedDownload = true;
-        mCurrentDownload = mPendingDownloads.get(downloadKey);
-
-        if (mCurrentDownload != null) {
+        if (currentDownload != null) {
             // Detect if the account exists
-            if (accountManager.exists(mCurrentDownload.getUser().toPlatformAccount())) {
-                notifyDownloadStart(mCurrentDownload);
+            if (accountManager.exists(currentDownload.getUser().toPlatformAccount())) {
+                mCurrentDownloads.put(downloadKey, currentDownload);
+                notifyDownloadStart(currentDownload);
                 RemoteOperationResult downloadResult = null;
                 try {
                     /// prepare client object to send the request to the ownCloud server
-                    Account currentDownloadAccount = mCurrentDownload.getUser().toPlatformAccount();
-                    Optional<User> currentDownloadUser = accountManager.getUser(currentDownloadAccount.name);
-                    if (!currentUser.equals(currentDownloadUser)) {
-                        currentUser = currentDownloadUser;
-                        mStorageManager = new FileDataStorageManager(currentUser.get(), getContentResolver());
-                    }   // else, reuse storage manager from previous operation
+                    Optional<User> currentDownloadUser =
+                        accountManager.getUser(currentDownload.getUser().getAccountName());
+                    FileDataStorageManager storageManager =
+                        new FileDataStorageManager(currentDownloadUser.get(), getContentResolver());
 
                     // always get client from client manager, to get fresh credentials in case
                     // of update
                     OwnCloudAccount ocAccount = currentDownloadUser.get().toOwnCloudAccount();
-                    mDownloadClient = OwnCloudClientManagerFactory.getDefaultSingleton().
+                    OwnCloudClient downloadClient = OwnCloudClientManagerFactory.getDefaultSingleton().
                             getClientFor(ocAccount, this);
 
 
                     /// perform the download
-                    downloadResult = mCurrentDownload.execute(mDownloadClient);
-                    if (downloadResult.isSuccess() && mCurrentDownload.getDownloadType() == DownloadType.DOWNLOAD) {
-                        saveDownloadedFile();
+                    downloadResult = currentDownload.execute(downloadClient);
+                    if (downloadResult.isSuccess() && currentDownload.getDownloadType() == DownloadType.DOWNLOAD) {
+                        saveDownloadedFile(currentDownload, storageManager);
                     }
 
                 } catch (Exception e) {
@@ -482,18 +580,21 @@ public class FileDownloader extends Service
 
                 } finally {
                     Pair<DownloadFileOperation, String> removeResult = mPendingDownloads.removePayload(
-                        mCurrentDownload.getUser().getAccountName(), mCurrentDownload.getRemotePath());
+                        currentDownload.getUser().getAccountName(), currentDownload.getRemotePath());
+                    mCurrentDownloads.remove(downloadKey);
+                    Long conflictUploadId = mConflictUploadIds.remove(downloadKey);
 
                     if (downloadResult == null) {
                         downloadResult = new RemoteOperationResult(new RuntimeException("Error downloading…"));
                     }
 
                     /// notify result
-                    notifyDownloadResult(mCurrentDownload, downloadResult);
-                    sendBroadcastDownloadFinished(mCurrentDownload, downloadResult, removeResult.second);
+                    notifyDownloadFinished(currentDownload);
+                    notifyDownloadResult(currentDownload, downloadResult, conflictUploadId);
+                    sendBroadcastDownloadFinished(currentDownload, downloadResult, removeResult.second);
                 }
             } else {
-                cancelPendingDownloads(mCurrentDownload.getUser().getAccountName());
+                cancelPendingDownloads(currentDownload.getUser().getAccountName());
             }
         }
     }
@@ -505,16 +606,16 @@ public class FileDownloader extends Service
      * TODO move to DownloadFileOperation
      *  unify with code from {@link DocumentsStorageProvider} and {@link DownloadTask}.
      */
-    private void saveDownloadedFile() {
-        OCFile file = mStorageManager.getFileById(mCurrentDownload.getFile().getFileId());
+    private void saveDownloadedFile(DownloadFileOperation download, FileDataStorageManager storageManager) {
+        OCFile file = storageManager.getFileById(download.getFile().getFileId());
 
         if (file == null) {
             // try to get file via path, needed for overwriting existing files on conflict dialog
-            file = mStorageManager.getFileByDecryptedRemotePath(mCurrentDownload.getFile().getRemotePath());
+            file = storageManager.getFileByDecryptedRemotePath(download.getFile().getRemotePath());
         }
 
         if (file == null) {
-            Log_OC.e(this, "Could not save " + mCurrentDownload.getFile().getRemotePath());
+            Log_OC.e(this, "Could not save " + download.getFile().getRemotePath());
             return;
         }
 
@@ -522,110 +623,187 @@ public class FileDownloader extends Service
         file.setLastSyncDateForProperties(syncDate);
         file.setLastSyncDateForData(syncDate);
         file.setUpdateThumbnailNeeded(true);
-        file.setModificationTimestamp(mCurrentDownload.getModificationTimestamp());
-        file.setModificationTimestampAtLastSyncForData(mCurrentDownload.getModificationTimestamp());
-        file.setEtag(mCurrentDownload.getEtag());
-        file.setMimeType(mCurrentDownload.getMimeType());
-        file.setStoragePath(mCurrentDownload.getSavePath());
-        file.setFileLength(new File(mCurrentDownload.getSavePath()).length());
-        file.setRemoteId(mCurrentDownload.getFile().getRemoteId());
-        mStorageManager.saveFile(file);
-        if (MimeTypeUtil.isMedia(mCurrentDownload.getMimeType())) {
+        file.setModificationTimestamp(download.getModificationTimestamp());
+        file.setModificationTimestampAtLastSyncForData(download.getModificationTimestamp());
+        file.setEtag(download.getEtag());
+        file.setMimeType(download.getMimeType());
+        file.setStoragePath(download.getSavePath());
+        file.setFileLength(new File(download.getSavePath()).length());
+        file.setRemoteId(download.getFile().getRemoteId());
+        storageManager.saveFile(file);
+        LocalFolderSizeCache.getInstance().invalidate(file.getStoragePath());
+        if (MimeTypeUtil.isMedia(download.getMimeType())) {
             FileDataStorageManager.triggerMediaScan(file.getStoragePath(), file);
         }
-        mStorageManager.saveConflict(file, null);
+        storageManager.saveConflict(file, null);
     }
 
     /**
-     * Creates a status notification to show the download progress
+     * Creates the status notification showing the download progress, unless it is already shown for other downloads.
      *
      * @param download Download operation starting.
      */
     private void notifyDownloadStart(DownloadFileOperation download) {
-        /// create status notification with a progress bar
-        mLastPercent = 0;
-        mNotificationBuilder = NotificationUtils.newNotificationBuilder(this, themeColorUtils);
-        mNotificationBuilder
-            .setSmallIcon(R.drawable.notification_icon)
-            .setTicker(getString(R.string.downloader_download_in_progress_ticker))
-            .setContentTitle(getString(R.string.downloader_download_in_progress_ticker))
-            .setOngoing(true)
-            .setProgress(100, 0, download.getSize() < 0)
-            .setContentText(
-                String.format(getString(R.string.downloader_download_in_progress_content), 0,
-                              new File(download.getSavePath()).getName())
-                           );
+        synchronized (mNotificationLock) {
+            mDownloadProgress.put(download, new long[]{0, download.getSize()});
+            if (mNotificationBuilder != null) {
+                updateProgressNotification(download.getSavePath(), false);
+                return;
+            }
 
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
-            mNotificationBuilder.setChannelId(NotificationUtils.NOTIFICATION_CHANNEL_DOWNLOAD);
-        }
+            /// create status notification with a progress bar
+            mLastPercent = 0;
+            mNotificationBuilder = NotificationUtils.newNotificationBuilder(this, themeColorUtils);
+            mNotificationBuilder
+                .setSmallIcon(R.drawable.notification_icon)
+                .setTicker(getString(R.string.downloader_download_in_progress_ticker))
+                .setContentTitle(getString(R.string.downloader_download_in_progress_ticker))
+                .setOngoing(true)
+                .setProgress(100, 0, download.getSize() < 0)
+                .setContentText(
+                    String.format(getString(R.string.downloader_download_in_progress_content), 0,
+                                  new File(download.getSavePath()).getName())
+                               );
+
+            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
+                mNotificationBuilder.setChannelId(NotificationUtils.NOTIFICATION_CHANNEL_DOWNLOAD);
+            }
 
-        /// includes a pending intent in the notification showing the details view of the file
-        Intent showDetailsIntent = null;
-        if (PreviewImageFragment.canBePreviewed(download.getFile())) {
-            showDetailsIntent = new Intent(this, PreviewImageActivity.class);
-        } else {
-            showDetailsIntent = new Intent(this, FileDisplayActivity.class);
+            /// includes a pending intent in the notification showing the details view of the file
+            Intent showDetailsIntent = null;
+            if (PreviewImageFragment.canBePreviewed(download.getFile())) {
+                showDetailsIntent = new Intent(this, PreviewImageActivity.class);
+            } else {
+                showDetailsIntent = new Intent(this, FileDisplayActivity.class);
+            }
+            showDetailsIntent.putExtra(FileActivity.EXTRA_FILE, download.getFile());
+            showDetailsIntent.putExtra(FileActivity.EXTRA_USER, download.getUser());
+            showDetailsIntent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
+
+            mNotificationBuilder.setContentIntent(PendingIntent.getActivity(this, (int) System.currentTimeMillis(),
+                                                                            showDetailsIntent,
+                                                                            PendingIntent.FLAG_IMMUTABLE));
+
+            mLastNotificationTime = SystemClock.elapsedRealtime();
+            if (mNotificationManager == null) {
+                mNotificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+            }
+            if (mNotificationManager != null) {
+                mNotificationManager.notify(R.string.downloader_download_in_progress_ticker,
+                                            mNotificationBuilder.build());
+            }
         }
-        showDetailsIntent.putExtra(FileActivity.EXTRA_FILE, download.getFile());
-        showDetailsIntent.putExtra(FileActivity.EXTRA_USER, download.getUser());
-        showDetailsIntent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
+    }
 
-        mNotificationBuilder.setContentIntent(PendingIntent.getActivity(this, (int) System.currentTimeMillis(),
-                                                                        showDetailsIntent, PendingIntent.FLAG_IMMUTABLE));
 
+    /**
+     * Callback method to update the progress bar in the status notification and to inform bound listeners.
+     */
+    private void onTransferProgress(DownloadFileOperation download, long progressRate, long totalTransferredSoFar,
+                                    long totalToTransfer, String filePath) {
+        synchronized (mNotificationLock) {
+            mDownloadProgress.put(download, new long[]{totalTransferredSoFar, totalToTransfer});
+            updateProgressNotification(filePath, false);
+        }
 
-        if (mNotificationManager == null) {
-            mNotificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+        FileDownloaderBinder binder = (FileDownloaderBinder) mBinder;
+        if (binder != null) {
+            binder.onTransferProgress(download, progressRate, totalTransferredSoFar, totalToTransfer, filePath);
         }
-        if (mNotificationManager != null) {
-            mNotificationManager.notify(R.string.downloader_download_in_progress_ticker, mNotificationBuilder.build());
+    }
+
+    /**
+     * Removes a finished download from the aggregated progress notification.
+     */
+    private void notifyDownloadFinished(DownloadFileOperation download) {
+        synchronized (mNotificationLock) {
+            mDownloadProgress.remove(download);
+            mFinishedDownloads++;
+            updateProgressNotification(download.getSavePath(), false);
         }
     }
 
+    /**
+     * Removes downloads dropped from the queue before they started from the aggregated progress notification, so that
+     * the count of files does not wait for them.
+     */
+    private void notifyDownloadsDropped(int count) {
+        if (count > 0) {
+            synchronized (mNotificationLock) {
+                mRequestedDownloads = Math.max(mFinishedDownloads, mRequestedDownloads - count);
+            }
+        }
+    }
 
     /**
-     * Callback method to update the progress bar in the status notification.
+     * Shows the progress of a single download by its transferred bytes, and of several downloads by the number of
+     * finished files. Updates are skipped if the last one is too recent, unless forced. Must hold
+     * {@link #mNotificationLock}.
      */
-    @Override
-    public void onTransferProgress(long progressRate, long totalTransferredSoFar,
-                                   long totalToTransfer, String filePath) {
-        int percent = (int) (100.0 * ((double) totalTransferredSoFar) / ((double) totalToTransfer));
-        if (percent != mLastPercent) {
-            mNotificationBuilder.setProgress(100, percent, totalToTransfer < 0);
-            String fileName = filePath.substring(filePath.lastIndexOf(FileUtils.PATH_SEPARATOR) + 1);
-            String text = String.format(getString(R.string.downloader_download_in_progress_content), percent, fileName);
-            mNotificationBuilder.setContentText(text);
+    private void updateProgressNotification(String filePath, boolean force) {
+        if (mNotificationBuilder == null) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (!force && now - mLastNotificationTime < PROGRESS_NOTIFICATION_INTERVAL_MS) {
+            return;
+        }
 
-            if (mNotificationManager == null) {
-                mNotificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+        int percent;
+        String text;
+        if (mRequestedDownloads <= 1) {
+            long transferred = 0;
+            long total = 0;
+            for (long[] progress : mDownloadProgress.values()) {
+                transferred += progress[0];
+                total += progress[1];
             }
+            percent = total > 0 ? (int) (100.0 * ((double) transferred) / ((double) total)) : 0;
+            String fileName = filePath.substring(filePath.lastIndexOf(FileUtils.PATH_SEPARATOR) + 1);
+            text = String.format(getString(R.string.downloader_download_in_progress_content), percent, fileName);
+        } else {
+            percent = (int) (100.0 * mFinishedDownloads / mRequestedDownloads);
+            text = String.format(getString(R.string.downloader_download_in_progress_files),
+                                 Math.min(mFinishedDownloads + 1, mRequestedDownloads),
+                                 mRequestedDownloads);
+        }
 
-            if (mNotificationManager != null) {
-                mNotificationManager.notify(R.string.downloader_download_in_progress_ticker,
-                        mNotificationBuilder.build());
-            }
+        if (percent == mLastPercent && !force && mRequestedDownloads <= 1) {
+            return;
         }
         mLastPercent = percent;
+        mLastNotificationTime = now;
+        mNotificationBuilder.setProgress(100, percent, false);
+        mNotificationBuilder.setContentText(text);
+
+        if (mNotificationManager == null) {
+            mNotificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+        }
+        if (mNotificationManager != null) {
+            mNotificationManager.notify(R.string.downloader_download_in_progress_ticker,
+                                        mNotificationBuilder.build());
+        }
     }
 
 
     /**
      * Updates the status notification with the result of a download operation.
      *
-     * @param downloadResult Result of the download operation.
-     * @param download       Finished download operation
+     * @param download         Finished download operation
+     * @param downloadResult   Result of the download operation.
+     * @param conflictUploadId Upload in conflict replaced by the download, null if none
      */
     @SuppressFBWarnings("DMI")
     private void notifyDownloadResult(DownloadFileOperation download,
-                                      RemoteOperationResult downloadResult) {
+                                      RemoteOperationResult downloadResult,
+                                      Long conflictUploadId) {
         if (mNotificationManager == null) {
             mNotificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
         }
 
         if (!downloadResult.isCancelled()) {
             if (downloadResult.isSuccess()) {
-                if (conflictUploadId > 0) {
+                if (conflictUploadId != null) {
                     uploadsStorageManager.removeUpload(conflictUploadId);
                 }
                 // Dont show notification except an error has occured.
@@ -638,40 +816,41 @@ public class FileDownloader extends Service
             tickerId = needsToUpdateCredentials ?
                     R.string.downloader_download_failed_credentials_error : tickerId;
 
-            mNotificationBuilder
+            NotificationCompat.Builder notificationBuilder = NotificationUtils.newNotificationBuilder(this,
+                                                                                                     themeColorUtils);
+            notificationBuilder
+                    .setSmallIcon(R.drawable.notification_icon)
                     .setTicker(getString(tickerId))
                     .setContentTitle(getString(tickerId))
                     .setAutoCancel(true)
                     .setOngoing(false)
                     .setProgress(0, 0, false);
 
+            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
+                notificationBuilder.setChannelId(NotificationUtils.NOTIFICATION_CHANNEL_DOWNLOAD);
+            }
+
             if (needsToUpdateCredentials) {
-                configureUpdateCredentialsNotification(download.getUser());
+                configureUpdateCredentialsNotification(notificationBuilder, download.getUser());
 
             } else {
                 // TODO put something smart in showDetailsIntent
                 Intent showDetailsIntent = new Intent();
-                mNotificationBuilder.setContentIntent(PendingIntent.getActivity(this, (int) System.currentTimeMillis(),
-                                                                                showDetailsIntent, PendingIntent.FLAG_IMMUTABLE));
+                notificationBuilder.setContentIntent(PendingIntent.getActivity(this, (int) System.currentTimeMillis(),
+                                                                               showDetailsIntent,
+                                                                               PendingIntent.FLAG_IMMUTABLE));
             }
 
-            mNotificationBuilder.setContentText(ErrorMessageAdapter.getErrorCauseMessage(downloadResult,
+            notificationBuilder.setContentText(ErrorMessageAdapter.getErrorCauseMessage(downloadResult,
                     download, getResources()));
 
             if (mNotificationManager != null) {
-                mNotificationManager.notify((new SecureRandom()).nextInt(), mNotificationBuilder.build());
-
-                // Remove success notification
-                if (downloadResult.isSuccess()) {
-                    // Sleep 2 seconds, so show the notification before remove it
-                    NotificationUtils.cancelWithDelay(mNotificationManager,
-                                                      R.string.downloader_download_succeeded_ticker, 2000);
-                }
+                mNotificationManager.notify((new SecureRandom()).nextInt(), notificationBuilder.build());
             }
         }
     }
 
-    private void configureUpdateCredentialsNotification(User user) {
+    private void configureUpdateCredentialsNotification(NotificationCompat.Builder notificationBuilder, User user) {
         // let the user update credentials with one click
         Intent updateAccountCredentials = new Intent(this, AuthenticatorActivity.class);
         updateAccountCredentials.putExtra(AuthenticatorActivity.EXTRA_ACCOUNT, user.toPlatformAccount());
@@ -682,12 +861,12 @@ public class FileDownloader extends Service
         updateAccountCredentials.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
         updateAccountCredentials.addFlags(Intent.FLAG_ACTIVITY_EXCLUDE_FROM_RECENTS);
         updateAccountCredentials.addFlags(Intent.FLAG_FROM_BACKGROUND);
-        mNotificationBuilder.setContentIntent(
+        notificationBuilder.setContentIntent(
             PendingIntent.getActivity(this,
                                       (int) System.currentTimeMillis(),
                                       updateAccountCredentials,
                                       PendingIntent.FLAG_ONE_SHOT | PendingIntent.FLAG_IMMUTABLE)
-                                             );
+                                            );
     }
 
 
@@ -737,5 +916,6 @@ public class FileDownloader extends Service
 
     private void cancelPendingDownloads(String accountName) {
         mPendingDownloads.remove(accountName);
+        notifyDownloadsDropped(mWorkerPool.remove(accountName, null));
     }
 }
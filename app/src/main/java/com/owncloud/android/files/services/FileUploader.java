@@ -54,6 +54,7 @@ import com.nextcloud.client.device.BatteryStatus;
 import com.nextcloud.client.device.PowerManagementService;
 import com.nextcloud.client.network.Connectivity;
 import com.nextcloud.client.network.ConnectivityService;
+import com.nextcloud.client.preferences.AppPreferences;
 import com.nextcloud.java.util.Optional;
 import com.owncloud.android.MainApp;
 import com.owncloud.android.R;
@@ -78,6 +79,7 @@ import com.owncloud.android.ui.activity.ConflictsResolveActivity;
 import com.owncloud.android.ui.activity.UploadListActivity;
 import com.owncloud.android.ui.notifications.NotificationUtils;
 import com.owncloud.android.utils.ErrorMessageAdapter;
+import com.owncloud.android.utils.FileStorageUtils;
 import com.owncloud.android.utils.theme.ThemeColorUtils;
 
 import java.io.File;
@@ -86,6 +88,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -106,9 +111,12 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
  *
  * Every file passed to this service is uploaded. No filtering is performed. However, Intent keys (e.g., KEY_WIFI_ONLY)
  * are obeyed.
+ *
+ * Up to {@link AppPreferences#getMaxConcurrentUploads()} uploads run in parallel, at most
+ * {@link AppPreferences#getMaxConcurrentUploadsPerAccount()} of them for the same account. With a single worker, uploads
+ * are performed one after the other on the thread of {@link ServiceHandler}.
  */
-public class FileUploader extends Service
-    implements OnDatatransferProgressListener, OnAccountsUpdateListener, UploadFileOperation.OnRenameListener {
+public class FileUploader extends Service implements OnAccountsUpdateListener {
 
     private static final String TAG = FileUploader.class.getSimpleName();
 
@@ -191,10 +199,10 @@ public class FileUploader extends Service
     private Notification mNotification;
     private Looper mServiceLooper;
     private ServiceHandler mServiceHandler;
+    private Handler mMainHandler;
+    private UploadWorkerPool mWorkerPool;
+    private int mLastStartId;
     private IBinder mBinder;
-    private OwnCloudClient mUploadClient;
-    private Account mCurrentAccount;
-    private FileDataStorageManager mStorageManager;
 
     @Inject UserAccountManager accountManager;
     @Inject UploadsStorageManager mUploadsStorageManager;
@@ -202,24 +210,29 @@ public class FileUploader extends Service
     @Inject PowerManagementService powerManagementService;
     @Inject LocalBroadcastManager localBroadcastManager;
     @Inject ThemeColorUtils themeColorUtils;
+    @Inject AppPreferences preferences;
 
     private IndexedForest<UploadFileOperation> mPendingUploads = new IndexedForest<>();
 
     /**
-     * {@link UploadFileOperation} object of ongoing upload. Can be null. Note: There can only be one concurrent
-     * upload!
+     * {@link UploadFileOperation} objects of ongoing uploads, indexed by their key in {@link #mPendingUploads}.
      */
-    private UploadFileOperation mCurrentUpload;
+    private final Map<String, UploadFileOperation> mCurrentUploads = new ConcurrentHashMap<>();
 
     private NotificationManager mNotificationManager;
+
+    /**
+     * Guards the progress notification, which aggregates all ongoing uploads.
+     */
+    private final Object mNotificationLock = new Object();
     private NotificationCompat.Builder mNotificationBuilder;
+    private final Map<UploadFileOperation, long[]> mUploadProgress = new HashMap<>();
     private int mLastPercent;
 
 
-    @Override
-    public void onRenameUpload() {
-        mUploadsStorageManager.updateDatabaseUploadStart(mCurrentUpload);
-        sendBroadcastUploadStarted(mCurrentUpload);
+    private void onRenameUpload(UploadFileOperation upload) {
+        mUploadsStorageManager.updateDatabaseUploadStart(upload);
+        sendBroadcastUploadStarted(upload);
     }
 
     /**
@@ -235,8 +248,17 @@ public class FileUploader extends Service
         thread.start();
         mServiceLooper = thread.getLooper();
         mServiceHandler = new ServiceHandler(mServiceLooper, this);
+        mMainHandler = new Handler(Looper.getMainLooper());
         mBinder = new FileUploaderBinder();
 
+        int maxConcurrentUploads = preferences.getMaxConcurrentUploads();
+        if (maxConcurrentUploads > 1) {
+            mWorkerPool = new UploadWorkerPool(maxConcurrentUploads,
+                                               preferences.getMaxConcurrentUploadsPerAccount(),
+                                               new UploadThreadFactory(),
+                                               () -> mMainHandler.post(this::stopIfIdle));
+        }
+
         NotificationCompat.Builder builder = new NotificationCompat.Builder(this).setContentTitle(
             getApplicationContext().getResources().getString(R.string.app_name))
             .setContentText(getApplicationContext().getResources().getString(R.string.foreground_service_upload))
@@ -279,6 +301,10 @@ public class FileUploader extends Service
         mServiceHandler = null;
         mServiceLooper.quit();
         mServiceLooper = null;
+        if (mWorkerPool != null) {
+            mWorkerPool.shutdown();
+        }
+        mMainHandler.removeCallbacksAndMessages(null);
         if (mNotificationManager != null) {
             mNotificationManager.cancel(FOREGROUND_SERVICE_ID);
         }
@@ -345,15 +371,73 @@ public class FileUploader extends Service
         }
 
         if (requestedUploads.size() > 0) {
-            Message msg = mServiceHandler.obtainMessage();
-            msg.arg1 = startId;
-            msg.obj = requestedUploads;
-            mServiceHandler.sendMessage(msg);
+            if (mWorkerPool != null) {
+                mLastStartId = startId;
+                FileDataStorageManager storageManager = new FileDataStorageManager(user, getContentResolver());
+                for (String requestedUpload : requestedUploads) {
+                    mWorkerPool.enqueue(user.getAccountName(),
+                                        () -> getSerialKey(requestedUpload, storageManager),
+                                        () -> uploadFile(requestedUpload));
+                }
+            } else {
+                Message msg = mServiceHandler.obtainMessage();
+                msg.arg1 = startId;
+                msg.obj = requestedUploads;
+                mServiceHandler.sendMessage(msg);
+            }
             sendBroadcastUploadsAdded();
         }
         return Service.START_NOT_STICKY;
     }
 
+    /**
+     * Uploads into an end-to-end encrypted folder lock that folder while they run, so only one of them may run at a
+     * time. Queries the database, so called on the worker thread starting the upload.
+     *
+     * @return key of the encrypted parent folder of the upload, null if the upload does not go into an encrypted
+     * folder
+     */
+    @Nullable
+    private String getSerialKey(String uploadKey, FileDataStorageManager storageManager) {
+        UploadFileOperation upload = mPendingUploads.get(uploadKey);
+        if (upload == null) {
+            return null;
+        }
+        String parentPath = new File(upload.getRemotePath()).getParent();
+        if (parentPath == null) {
+            return null;
+        }
+        parentPath = parentPath.endsWith(OCFile.PATH_SEPARATOR) ? parentPath : parentPath + OCFile.PATH_SEPARATOR;
+
+        // folders still to be created by the upload are encrypted if their nearest existing ancestor is
+        OCFile ancestor = storageManager.getFileByPath(parentPath);
+        String ancestorPath = parentPath;
+        while (ancestor == null && !OCFile.ROOT_PATH.equals(ancestorPath)) {
+            String path = new File(ancestorPath).getParent();
+            ancestorPath = path == null || path.endsWith(OCFile.PATH_SEPARATOR) ? OCFile.ROOT_PATH :
+                path + OCFile.PATH_SEPARATOR;
+            ancestor = storageManager.getFileByPath(ancestorPath);
+        }
+        if (ancestor != null && FileStorageUtils.checkEncryptionStatus(ancestor, storageManager)) {
+            return upload.getUser().getAccountName() + parentPath;
+        }
+        return null;
+    }
+
+    /**
+     * Stops the service once all uploads handed to the worker pool are done. Runs on the main thread, as {@link
+     * #onStartCommand(Intent, int, int)} does, so no upload can be enqueued in between.
+     */
+    private void stopIfIdle() {
+        if (mWorkerPool != null && mWorkerPool.isIdle()) {
+            Log_OC.d(TAG, "Stopping command after id " + mLastStartId);
+            clearUploadProgress();
+            mNotificationManager.cancel(FOREGROUND_SERVICE_ID);
+            stopForeground(true);
+            stopSelf(mLastStartId);
+        }
+    }
+
     /**
      * Gather and start new uploads.
      *
@@ -423,6 +507,8 @@ public class FileUploader extends Service
         boolean isCreateRemoteFolder = intent.getBooleanExtra(KEY_CREATE_REMOTE_FOLDER, false);
         int createdBy = intent.getIntExtra(KEY_CREATED_BY, UploadFileOperation.CREATED_BY_USER);
         boolean disableRetries = intent.getBooleanExtra(KEY_DISABLE_RETRIES, true);
+        List<UploadFileOperation> newUploads = new ArrayList<>(files.length);
+        List<OCUpload> newOCUploads = new ArrayList<>(files.length);
         try {
             for (OCFile file : files) {
                 startNewUpload(
@@ -435,9 +521,17 @@ public class FileUploader extends Service
                     isCreateRemoteFolder,
                     createdBy,
                     file,
-                    disableRetries
+                    disableRetries,
+                    newUploads,
+                    newOCUploads
                               );
             }
+
+            // Save uploads in database
+            long[] ids = mUploadsStorageManager.storeUploads(newOCUploads);
+            for (int i = 0; i < ids.length; i++) {
+                newUploads.get(i).setOCUploadId(ids[i]);
+            }
         } catch (IllegalArgumentException e) {
             Log_OC.e(TAG, "Not enough information provided in intent: " + e.getMessage());
             return START_NOT_STICKY;
@@ -452,7 +546,8 @@ public class FileUploader extends Service
     }
 
     /**
-     * Start a new {@link UploadFileOperation}.
+     * Start a new {@link UploadFileOperation}. The operation and its upload are added to the given lists to be saved
+     * in database together with the other uploads of the request.
      */
     @SuppressLint("SdCardPath")
     private void startNewUpload(
@@ -465,7 +560,9 @@ public class FileUploader extends Service
         boolean isCreateRemoteFolder,
         int createdBy,
         OCFile file,
-        boolean disableRetries
+        boolean disableRetries,
+        List<UploadFileOperation> newUploads,
+        List<OCUpload> newOCUploads
                                ) {
         OCUpload ocUpload = new OCUpload(file, user);
         ocUpload.setFileSize(file.getFileLength());
@@ -496,10 +593,7 @@ public class FileUploader extends Service
         if (isCreateRemoteFolder) {
             newUpload.setRemoteFolderToBeCreated();
         }
-        newUpload.addDataTransferProgressListener(this);
-        newUpload.addDataTransferProgressListener((FileUploaderBinder) mBinder);
-
-        newUpload.addRenameUploadListener(this);
+        addListeners(newUpload);
 
         Pair<String, String> putResult = mPendingUploads.putIfAbsent(
             user.getAccountName(),
@@ -509,13 +603,20 @@ public class FileUploader extends Service
 
         if (putResult != null) {
             requestedUploads.add(putResult.first);
-
-            // Save upload in database
-            long id = mUploadsStorageManager.storeUpload(ocUpload);
-            newUpload.setOCUploadId(id);
+            newUploads.add(newUpload);
+            newOCUploads.add(ocUpload);
         }
     }
 
+    private void addListeners(UploadFileOperation upload) {
+        FileUploaderBinder binder = (FileUploaderBinder) mBinder;
+        upload.addDataTransferProgressListener((progressRate, totalTransferredSoFar, totalToTransfer, fileName) -> {
+            onTransferProgress(upload, totalTransferredSoFar, totalToTransfer, fileName);
+            binder.onTransferProgress(upload, progressRate, totalTransferredSoFar, totalToTransfer, fileName);
+        });
+        upload.addRenameUploadListener(() -> onRenameUpload(upload));
+    }
+
     /**
      * Retries a list of uploads.
      */
@@ -543,10 +644,7 @@ public class FileUploader extends Service
             new FileDataStorageManager(user, getContentResolver())
         );
 
-        newUpload.addDataTransferProgressListener(this);
-        newUpload.addDataTransferProgressListener((FileUploaderBinder) mBinder);
-
-        newUpload.addRenameUploadListener(this);
+        addListeners(newUpload);
 
         Pair<String, String> putResult = mPendingUploads.putIfAbsent(
             user.getAccountName(),
@@ -585,99 +683,91 @@ public class FileUploader extends Service
 
     @Override
     public void onAccountsUpdated(Account[] accounts) {
-        // Review current upload, and cancel it if its account doesn't exist
-        if (mCurrentUpload != null && !accountManager.exists(mCurrentUpload.getUser().toPlatformAccount())) {
-            mCurrentUpload.cancel(ResultCode.ACCOUNT_NOT_FOUND);
+        // Review current uploads, and cancel them if their account doesn't exist
+        for (UploadFileOperation currentUpload : mCurrentUploads.values()) {
+            if (!accountManager.exists(currentUpload.getUser().toPlatformAccount())) {
+                currentUpload.cancel(ResultCode.ACCOUNT_NOT_FOUND);
+            }
         }
         // The rest of uploads are cancelled when they try to start
     }
 
     /**
-     * Core upload method: sends the file(s) to upload
+     * Core upload method: sends the file(s) to upload. Called from several worker threads at the same time when
+     * uploading in parallel.
      *
      * @param uploadKey Key to access the upload to perform, contained in mPendingUploads
      */
     public void uploadFile(String uploadKey) {
-        mCurrentUpload = mPendingUploads.get(uploadKey);
+        UploadFileOperation currentUpload = mPendingUploads.get(uploadKey);
+
+        if (currentUpload != null) {
+            User user = currentUpload.getUser();
 
-        if (mCurrentUpload != null) {
             /// Check account existence
-            if (!accountManager.exists(mCurrentUpload.getUser().toPlatformAccount())) {
-                Log_OC.w(TAG, "Account " + mCurrentUpload.getUser().getAccountName() +
+            if (!accountManager.exists(user.toPlatformAccount())) {
+                Log_OC.w(TAG, "Account " + user.getAccountName() +
                     " does not exist anymore -> cancelling all its uploads");
-                cancelPendingUploads(mCurrentUpload.getUser().getAccountName());
+                cancelPendingUploads(user.getAccountName());
                 return;
             }
 
+            mCurrentUploads.put(uploadKey, currentUpload);
+
             /// OK, let's upload
-            mUploadsStorageManager.updateDatabaseUploadStart(mCurrentUpload);
+            mUploadsStorageManager.updateDatabaseUploadStart(currentUpload);
 
-            notifyUploadStart(mCurrentUpload);
+            notifyUploadStart(currentUpload);
 
-            sendBroadcastUploadStarted(mCurrentUpload);
+            sendBroadcastUploadStarted(currentUpload);
 
             RemoteOperationResult uploadResult = null;
+            Account account = user.toPlatformAccount();
+            FileDataStorageManager storageManager = new FileDataStorageManager(user, getContentResolver());
 
             try {
-                /// prepare client object to send the request to the ownCloud server
-                if (mCurrentAccount == null || !mCurrentAccount.equals(mCurrentUpload.getUser().toPlatformAccount())) {
-                    mCurrentAccount = mCurrentUpload.getUser().toPlatformAccount();
-                    mStorageManager = new FileDataStorageManager(getCurrentUser().get(), getContentResolver());
-                }   // else, reuse storage manager from previous operation
                 // always get client from client manager, to get fresh credentials in case of update
-                OwnCloudAccount ocAccount = new OwnCloudAccount(mCurrentAccount, this);
-                mUploadClient = OwnCloudClientManagerFactory.getDefaultSingleton().getClientFor(ocAccount, this);
-                uploadResult = mCurrentUpload.execute(mUploadClient);
+                OwnCloudAccount ocAccount = new OwnCloudAccount(account, this);
+                OwnCloudClient uploadClient = OwnCloudClientManagerFactory.getDefaultSingleton()
+                    .getClientFor(ocAccount, this);
+                uploadResult = currentUpload.execute(uploadClient);
             } catch (Exception e) {
                 Log_OC.e(TAG, "Error uploading", e);
                 uploadResult = new RemoteOperationResult(e);
             } finally {
                 Pair<UploadFileOperation, String> removeResult;
-                if (mCurrentUpload.wasRenamed()) {
+                if (currentUpload.wasRenamed()) {
                     removeResult = mPendingUploads.removePayload(
-                        mCurrentAccount.name,
-                        mCurrentUpload.getOldFile().getRemotePath()
+                        account.name,
+                        currentUpload.getOldFile().getRemotePath()
                     );
-                    // TODO: grant that name is also updated for mCurrentUpload.getOCUploadId
+                    // TODO: grant that name is also updated for currentUpload.getOCUploadId
 
                 } else {
-                    removeResult = mPendingUploads.removePayload(mCurrentAccount.name,
-                                                                 mCurrentUpload.getDecryptedRemotePath());
+                    removeResult = mPendingUploads.removePayload(account.name,
+                                                                 currentUpload.getDecryptedRemotePath());
                 }
 
-                mUploadsStorageManager.updateDatabaseUploadResult(uploadResult, mCurrentUpload);
+                mUploadsStorageManager.updateDatabaseUploadResult(uploadResult, currentUpload);
+
+                mCurrentUploads.remove(uploadKey);
 
                 /// notify result
-                notifyUploadResult(mCurrentUpload, uploadResult);
+                notifyUploadFinished(currentUpload);
+                notifyUploadResult(currentUpload, uploadResult);
 
-                sendBroadcastUploadFinished(mCurrentUpload, uploadResult, removeResult.second);
+                sendBroadcastUploadFinished(currentUpload, uploadResult, removeResult.second);
             }
 
             // generate new Thumbnail
-            Optional<User> user = getCurrentUser();
-            if (user.isPresent()) {
-                final ThumbnailsCacheManager.ThumbnailGenerationTask task =
-                    new ThumbnailsCacheManager.ThumbnailGenerationTask(mStorageManager, user.get());
+            final ThumbnailsCacheManager.ThumbnailGenerationTask task =
+                new ThumbnailsCacheManager.ThumbnailGenerationTask(storageManager, user);
 
-                File file = new File(mCurrentUpload.getOriginalStoragePath());
-                String remoteId = mCurrentUpload.getFile().getRemoteId();
-
-                task.execute(new ThumbnailsCacheManager.ThumbnailGenerationTaskObject(file, remoteId));
-            }
-        }
-    }
+            File file = new File(currentUpload.getOriginalStoragePath());
+            String remoteId = currentUpload.getFile().getRemoteId();
 
-    /**
-     * Convert current account to user. This is a temporary workaround until
-     * service is migrated to new user model.
-     *
-     * @return Optional {@link User}
-     */
-    private Optional<User> getCurrentUser() {
-        if (mCurrentAccount == null) {
-            return Optional.empty();
-        } else {
-            return accountManager.getUser(mCurrentAccount.name);
+            task.executeOnExecutor(ThumbnailsCacheManager.THUMBNAIL_SCHEDULER,
+                new ThumbnailsCacheManager.ThumbnailGenerationTaskObject(file, remoteId));
         }
     }
 
@@ -687,67 +777,117 @@ public class FileUploader extends Service
      * @param upload Upload operation starting.
      */
     private void notifyUploadStart(UploadFileOperation upload) {
-        // / create status notification with a progress bar
-        mLastPercent = 0;
-        mNotificationBuilder = NotificationUtils.newNotificationBuilder(this, themeColorUtils);
-        mNotificationBuilder
-            .setOngoing(true)
-            .setSmallIcon(R.drawable.notification_icon)
-            .setTicker(getString(R.string.uploader_upload_in_progress_ticker))
-            .setContentTitle(getString(R.string.uploader_upload_in_progress_ticker))
-            .setProgress(100, 0, false)
-            .setContentText(
-                String.format(getString(R.string.uploader_upload_in_progress_content), 0, upload.getFileName())
-                           );
+        synchronized (mNotificationLock) {
+            mUploadProgress.put(upload, new long[]{0, upload.getFile().getFileLength()});
+            int percent = getUploadPercent();
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            mNotificationBuilder.setChannelId(NotificationUtils.NOTIFICATION_CHANNEL_UPLOAD);
-        }
-
-        /// includes a pending intent in the notification showing the details
-        Intent intent = UploadListActivity.createIntent(upload.getFile(),
-                                                        upload.getUser(),
-                                                        Intent.FLAG_ACTIVITY_CLEAR_TOP,
-                                                        this);
-        mNotificationBuilder.setContentIntent(PendingIntent.getActivity(this,
-                                                                        (int) System.currentTimeMillis(),
-                                                                        intent,
-                                                                        PendingIntent.FLAG_IMMUTABLE)
-                                             );
-
-        if (!upload.isInstantPicture() && !upload.isInstantVideo()) {
-            if (mNotificationManager == null) {
-                mNotificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+            // / create status notification with a progress bar
+            mLastPercent = percent;
+            mNotificationBuilder = NotificationUtils.newNotificationBuilder(this, themeColorUtils);
+            mNotificationBuilder
+                .setOngoing(true)
+                .setSmallIcon(R.drawable.notification_icon)
+                .setTicker(getString(R.string.uploader_upload_in_progress_ticker))
+                .setContentTitle(getString(R.string.uploader_upload_in_progress_ticker))
+                .setProgress(100, percent, false)
+                .setContentText(
+                    String.format(getString(R.string.uploader_upload_in_progress_content),
+                                  percent,
+                                  upload.getFileName())
+                               );
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                mNotificationBuilder.setChannelId(NotificationUtils.NOTIFICATION_CHANNEL_UPLOAD);
             }
 
-            mNotificationManager.notify(FOREGROUND_SERVICE_ID, mNotificationBuilder.build());
-        }   // else wait until the upload really start (onTransferProgress is called), so that if it's discarded
-        // due to lack of Wifi, no notification is shown
-        // TODO generalize for automated uploads
+            /// includes a pending intent in the notification showing the details
+            Intent intent = UploadListActivity.createIntent(upload.getFile(),
+                                                            upload.getUser(),
+                                                            Intent.FLAG_ACTIVITY_CLEAR_TOP,
+                                                            this);
+            mNotificationBuilder.setContentIntent(PendingIntent.getActivity(this,
+                                                                            (int) System.currentTimeMillis(),
+                                                                            intent,
+                                                                            PendingIntent.FLAG_IMMUTABLE)
+                                                 );
+
+            if (!upload.isInstantPicture() && !upload.isInstantVideo()) {
+                if (mNotificationManager == null) {
+                    mNotificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+                }
+
+                mNotificationManager.notify(FOREGROUND_SERVICE_ID, mNotificationBuilder.build());
+            }   // else wait until the upload really start (onTransferProgress is called), so that if it's discarded
+            // due to lack of Wifi, no notification is shown
+            // TODO generalize for automated uploads
+        }
     }
 
     /**
-     * Callback method to update the progress bar in the status notification
+     * Callback method to update the progress bar in the status notification. The progress shown is the one of all
+     * ongoing uploads together.
      */
-    @Override
-    public void onTransferProgress(
-        long progressRate,
+    private void onTransferProgress(
+        UploadFileOperation upload,
         long totalTransferredSoFar,
         long totalToTransfer,
         String filePath
     ) {
-        int percent = (int) (100.0 * ((double) totalTransferredSoFar) / ((double) totalToTransfer));
-        if (percent != mLastPercent) {
-            mNotificationBuilder.setProgress(100, percent, false);
-            String fileName = filePath.substring(filePath.lastIndexOf(FileUtils.PATH_SEPARATOR) + 1);
-            String text = String.format(getString(R.string.uploader_upload_in_progress_content), percent, fileName);
-            mNotificationBuilder.setContentText(text);
-            if (mNotificationManager == null) {
-                mNotificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+        synchronized (mNotificationLock) {
+            mUploadProgress.put(upload, new long[]{totalTransferredSoFar, totalToTransfer});
+            if (mNotificationBuilder == null) {
+                return;
+            }
+
+            int percent = getUploadPercent();
+            if (percent != mLastPercent) {
+                mNotificationBuilder.setProgress(100, percent, false);
+                String fileName = filePath.substring(filePath.lastIndexOf(FileUtils.PATH_SEPARATOR) + 1);
+                String text = String.format(getString(R.string.uploader_upload_in_progress_content), percent, fileName);
+                mNotificationBuilder.setContentText(text);
+                if (mNotificationManager == null) {
+                    mNotificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+                }
+                mNotificationManager.notify(FOREGROUND_SERVICE_ID, mNotificationBuilder.build());
             }
-            mNotificationManager.notify(FOREGROUND_SERVICE_ID, mNotificationBuilder.build());
+            mLastPercent = percent;
+        }
+    }
+
+    /**
+     * Progress of all uploads started since the service was last idle, finished ones included, so that the progress
+     * never goes back when an upload finishes.
+     */
+    private int getUploadPercent() {
+        long transferred = 0;
+        long total = 0;
+        for (long[] progress : mUploadProgress.values()) {
+            transferred += progress[0];
+            total += progress[1];
+        }
+        return total > 0 ? (int) (100.0 * ((double) transferred) / ((double) total)) : 0;
+    }
+
+    /**
+     * Counts a finished upload as fully transferred in the aggregated progress notification, until the batch of
+     * uploads is done.
+     */
+    private void notifyUploadFinished(UploadFileOperation upload) {
+        synchronized (mNotificationLock) {
+            long[] progress = mUploadProgress.get(upload);
+            if (progress != null) {
+                progress[0] = progress[1];
+            }
+        }
+    }
+
+    /**
+     * Forgets the progress of the finished batch of uploads.
+     */
+    private void clearUploadProgress() {
+        synchronized (mNotificationLock) {
+            mUploadProgress.clear();
         }
-        mLastPercent = percent;
     }
 
     /**
@@ -785,7 +925,10 @@ public class FileUploader extends Service
                 tickerId = R.string.uploader_upload_failed_sync_conflict_error;
             }
 
-            mNotificationBuilder
+            NotificationCompat.Builder notificationBuilder = NotificationUtils.newNotificationBuilder(this,
+                                                                                                     themeColorUtils);
+            notificationBuilder
+                .setSmallIcon(R.drawable.notification_icon)
                 .setTicker(getString(tickerId))
                 .setContentTitle(getString(tickerId))
                 .setAutoCancel(true)
@@ -808,7 +951,7 @@ public class FileUploader extends Service
                 updateAccountCredentials.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
                 updateAccountCredentials.addFlags(Intent.FLAG_ACTIVITY_EXCLUDE_FROM_RECENTS);
                 updateAccountCredentials.addFlags(Intent.FLAG_FROM_BACKGROUND);
-                mNotificationBuilder.setContentIntent(PendingIntent.getActivity(
+                notificationBuilder.setContentIntent(PendingIntent.getActivity(
                     this,
                     (int) System.currentTimeMillis(),
                     updateAccountCredentials,
@@ -829,16 +972,20 @@ public class FileUploader extends Service
                                                              this);
                 }
 
-                mNotificationBuilder.setContentIntent(PendingIntent.getActivity(this,
-                                                                                (int) System.currentTimeMillis(),
-                                                                                intent,
-                                                                                PendingIntent.FLAG_IMMUTABLE)
-                                                     );
+                notificationBuilder.setContentIntent(PendingIntent.getActivity(this,
+                                                                               (int) System.currentTimeMillis(),
+                                                                               intent,
+                                                                               PendingIntent.FLAG_IMMUTABLE)
+                                                    );
+            }
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                notificationBuilder.setChannelId(NotificationUtils.NOTIFICATION_CHANNEL_UPLOAD);
             }
 
-            mNotificationBuilder.setContentText(content);
+            notificationBuilder.setContentText(content);
             if (!uploadResult.isSuccess()) {
-                mNotificationManager.notify((new SecureRandom()).nextInt(), mNotificationBuilder.build());
+                mNotificationManager.notify((new SecureRandom()).nextInt(), notificationBuilder.build());
             }
         }
     }
@@ -1123,12 +1270,12 @@ public class FileUploader extends Service
      *
      * It provides by itself the available operations.
      */
-    public class FileUploaderBinder extends Binder implements OnDatatransferProgressListener {
+    public class FileUploaderBinder extends Binder {
 
         /**
          * Map of listeners that will be reported about progress of uploads from a {@link FileUploaderBinder} instance
          */
-        private Map<String, OnDatatransferProgressListener> mBoundListeners = new HashMap<>();
+        private Map<String, OnDatatransferProgressListener> mBoundListeners = new ConcurrentHashMap<>();
 
         /**
          * Cancels a pending or current upload of a remote file.
@@ -1158,14 +1305,19 @@ public class FileUploader extends Service
          */
         private void cancel(String accountName, String remotePath, @Nullable ResultCode resultCode) {
             Pair<UploadFileOperation, String> removeResult = mPendingUploads.remove(accountName, remotePath);
-            UploadFileOperation upload = removeResult.first;
-            if (upload == null && mCurrentUpload != null && mCurrentAccount != null &&
-                mCurrentUpload.getRemotePath().startsWith(remotePath) && accountName.equals(mCurrentAccount.name)) {
-
-                upload = mCurrentUpload;
+            List<UploadFileOperation> uploads = new ArrayList<>();
+            if (removeResult.first != null) {
+                uploads.add(removeResult.first);
+            } else {
+                for (UploadFileOperation currentUpload : mCurrentUploads.values()) {
+                    if (currentUpload.getRemotePath().startsWith(remotePath) &&
+                        currentUpload.getUser().nameEquals(accountName)) {
+                        uploads.add(currentUpload);
+                    }
+                }
             }
 
-            if (upload != null) {
+            for (UploadFileOperation upload : uploads) {
                 upload.cancel(resultCode);
                 // need to update now table in mUploadsStorageManager,
                 // since the operation will not get to be run by FileUploader#uploadFile
@@ -1184,15 +1336,15 @@ public class FileUploader extends Service
          * @param user Nextcloud user
          */
         public void cancel(User user) {
-            if (mCurrentUpload != null && mCurrentUpload.getUser().nameEquals(user)) {
-                mCurrentUpload.cancel(ResultCode.CANCELLED);
-            }
+            cancel(user.getAccountName());
             cancelPendingUploads(user.getAccountName());
         }
 
         public void cancel(String accountName) {
-            if (mCurrentUpload != null && mCurrentUpload.getUser().nameEquals(accountName)) {
-                mCurrentUpload.cancel(ResultCode.CANCELLED);
+            for (UploadFileOperation currentUpload : mCurrentUploads.values()) {
+                if (currentUpload.getUser().nameEquals(accountName)) {
+                    currentUpload.cancel(ResultCode.CANCELLED);
+                }
             }
         }
 
@@ -1221,11 +1373,17 @@ public class FileUploader extends Service
         }
 
         public boolean isUploadingNow(OCUpload upload) {
-            return upload != null &&
-                mCurrentAccount != null &&
-                mCurrentUpload != null &&
-                upload.getAccountName().equals(mCurrentAccount.name) &&
-                upload.getRemotePath().equals(mCurrentUpload.getRemotePath());
+            if (upload == null) {
+                return false;
+            }
+
+            for (UploadFileOperation currentUpload : mCurrentUploads.values()) {
+                if (currentUpload.getUser().nameEquals(upload.getAccountName()) &&
+                    upload.getRemotePath().equals(currentUpload.getRemotePath())) {
+                    return true;
+                }
+            }
+            return false;
         }
 
         /**
@@ -1308,14 +1466,14 @@ public class FileUploader extends Service
             }
         }
 
-        @Override
-        public void onTransferProgress(
+        private void onTransferProgress(
+            UploadFileOperation upload,
             long progressRate,
             long totalTransferredSoFar,
             long totalToTransfer,
             String fileName
         ) {
-            String key = buildRemoteName(mCurrentUpload.getUser().getAccountName(), mCurrentUpload.getFile().getRemotePath());
+            String key = buildRemoteName(upload.getUser().getAccountName(), upload.getFile().getRemotePath());
             OnDatatransferProgressListener boundListener = mBoundListeners.get(key);
 
             if (boundListener != null) {
@@ -1326,18 +1484,18 @@ public class FileUploader extends Service
             if (context != null) {
                 ResultCode cancelReason = null;
                 Connectivity connectivity = connectivityService.getConnectivity();
-                if (mCurrentUpload.isWifiRequired() && !connectivity.isWifi()) {
+                if (upload.isWifiRequired() && !connectivity.isWifi()) {
                     cancelReason = ResultCode.DELAYED_FOR_WIFI;
-                } else if (mCurrentUpload.isChargingRequired() && !powerManagementService.getBattery().isCharging()) {
+                } else if (upload.isChargingRequired() && !powerManagementService.getBattery().isCharging()) {
                     cancelReason = ResultCode.DELAYED_FOR_CHARGING;
-                } else if (!mCurrentUpload.isIgnoringPowerSaveMode() && powerManagementService.isPowerSavingEnabled()) {
+                } else if (!upload.isIgnoringPowerSaveMode() && powerManagementService.isPowerSavingEnabled()) {
                     cancelReason = ResultCode.DELAYED_IN_POWER_SAVE_MODE;
                 }
 
                 if (cancelReason != null) {
                     cancel(
-                        mCurrentUpload.getUser().getAccountName(),
-                        mCurrentUpload.getFile().getRemotePath(),
+                        upload.getUser().getAccountName(),
+                        upload.getFile().getRemotePath(),
                         cancelReason
                     );
                 }
@@ -1360,6 +1518,22 @@ public class FileUploader extends Service
     }
 
 
+    /**
+     * Creates the threads of the upload {@link UploadWorkerPool}, with the same priority as the thread of {@link
+     * ServiceHandler}.
+     */
+    private static class UploadThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            return new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "FileUploaderWorker-" + threadCount.incrementAndGet());
+        }
+    }
+
     /**
      * Upload worker. Performs the pending uploads in the order they were requested.
      *
@@ -1388,6 +1562,7 @@ public class FileUploader extends Service
                 }
             }
             Log_OC.d(TAG, "Stopping command after id " + msg.arg1);
+            mService.clearUploadProgress();
             mService.mNotificationManager.cancel(FOREGROUND_SERVICE_ID);
             mService.stopForeground(true);
             mService.stopSelf(msg.arg1);
@@ -38,6 +38,8 @@ import java.util.concurrent.ConcurrentMap;
  *  A map provides the indexation based in hashing.
  *
  *  A tree is created per account.
+ *
+ *  Changes to the trees are synchronized, as uploads may be added and finish on different threads at the same time.
  */
 public class IndexedForest<V> {
 
@@ -48,7 +50,7 @@ public class IndexedForest<V> {
         private String mKey;
         private Node<V> mParent;
         private Set<Node<V>> mChildren = new HashSet<>();    // TODO be careful with hash()
-        private V mPayload;
+        private volatile V mPayload;
 
         // payload is optional
         public Node(String key, V payload) {
@@ -98,7 +100,7 @@ public class IndexedForest<V> {
     }
 
 
-    public /* synchronized */ Pair<String, String> putIfAbsent(String accountName, String remotePath, V value) {
+    public synchronized Pair<String, String> putIfAbsent(String accountName, String remotePath, V value) {
         String targetKey = buildKey(accountName, remotePath);
 
         Node<V> valuedNode = new Node(targetKey, value);
@@ -147,7 +149,7 @@ public class IndexedForest<V> {
     }
 
 
-    public Pair<V, String> removePayload(String accountName, String remotePath) {
+    public synchronized Pair<V, String> removePayload(String accountName, String remotePath) {
         String targetKey = buildKey(accountName, remotePath);
         Node<V> target = mMap.get(targetKey);
         if (target != null) {
@@ -160,7 +162,7 @@ public class IndexedForest<V> {
     }
 
 
-    public /* synchronized */ Pair<V, String> remove(String accountName, String remotePath) {
+    public synchronized Pair<V, String> remove(String accountName, String remotePath) {
         String targetKey = buildKey(accountName, remotePath);
         Node<V> firstRemoved = mMap.remove(targetKey);
         String unlinkedFrom = null;
@@ -226,7 +228,7 @@ public class IndexedForest<V> {
      * Remove the elements that contains account as a part of its key
      * @param accountName
      */
-    public void remove(String accountName){
+    public synchronized void remove(String accountName){
         Iterator<String> it = mMap.keySet().iterator();
         while (it.hasNext()) {
             String key = it.next();
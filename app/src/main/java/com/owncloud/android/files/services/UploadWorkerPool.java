@@ -0,0 +1,212 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.files.services;
+
+import com.owncloud.android.lib.common.utils.Log_OC;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Runs uploads on a bounded number of worker threads.
+ * <p>
+ * Uploads are started in the order they were enqueued, except that an upload is held back while its account already
+ * has the maximum number of uploads per account running, or while an upload with the same serial key is running;
+ * other uploads may overtake it meanwhile.
+ * <p>
+ * Serial keys may take database queries to find, so they are resolved on the worker thread once an upload starts. An
+ * upload whose key turns out to be taken goes back to the queue, without keeping its worker busy.
+ */
+final class UploadWorkerPool extends WorkerPool<UploadWorkerPool.Upload> {
+
+    private static final String TAG = UploadWorkerPool.class.getSimpleName();
+
+    /**
+     * Finds the serial key of an upload; called on a worker thread.
+     */
+    interface SerialKeyResolver {
+        /**
+         * @return uploads with the same key never run at the same time; null if the upload can run alongside any
+         * other
+         */
+        @Nullable
+        String resolve();
+    }
+
+    static final class Upload extends WorkerPool.Task {
+        private final String accountName;
+        @Nullable private final SerialKeyResolver serialKeyResolver;
+
+        // guarded by the pool
+        @Nullable private String serialKey;
+        private boolean serialKeyResolved;
+        private boolean holdsSerialKey;
+
+        private Upload(String accountName, @Nullable SerialKeyResolver serialKeyResolver, Runnable runnable) {
+            super(runnable);
+            this.accountName = accountName;
+            this.serialKeyResolver = serialKeyResolver;
+            this.serialKeyResolved = serialKeyResolver == null;
+        }
+    }
+
+    private final int maxWorkersPerAccount;
+
+    private final Deque<Upload> pending = new ArrayDeque<>();
+    private final Map<String, Integer> runningPerAccount = new HashMap<>();
+    private final Set<String> runningSerialKeys = new HashSet<>();
+
+    UploadWorkerPool(int maxWorkers, int maxWorkersPerAccount, ThreadFactory threadFactory,
+                     OnIdleListener onIdleListener) {
+        this(maxWorkers, maxWorkersPerAccount, Executors.newFixedThreadPool(maxWorkers, threadFactory), onIdleListener);
+    }
+
+    @VisibleForTesting
+    UploadWorkerPool(int maxWorkers, int maxWorkersPerAccount, ExecutorService executor,
+                     OnIdleListener onIdleListener) {
+        super(maxWorkers, executor, onIdleListener);
+        if (maxWorkersPerAccount < 1) {
+            throw new IllegalArgumentException("Pool needs at least one worker per account");
+        }
+        this.maxWorkersPerAccount = Math.min(maxWorkers, maxWorkersPerAccount);
+    }
+
+    /**
+     * Adds an upload to the queue; it is started as soon as a worker and the account limit allow it.
+     *
+     * @param serialKeyResolver finds the serial key of the upload: uploads with the same key never run at the same
+     *                          time, e.g. uploads into the same end-to-end encrypted folder, which has to be locked
+     *                          by each of them; null if the upload can run alongside any other
+     */
+    void enqueue(String accountName, @Nullable SerialKeyResolver serialKeyResolver, Runnable upload) {
+        submit(new Upload(accountName, serialKeyResolver, upload));
+    }
+
+    @VisibleForTesting
+    synchronized int getRunningCount(String accountName) {
+        return getRunning(accountName);
+    }
+
+    @Override
+    void addPending(Upload upload) {
+        pending.add(upload);
+    }
+
+    @Override
+    boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    @Override
+    void clearPending() {
+        pending.clear();
+    }
+
+    @Nullable
+    @Override
+    Upload pollNext() {
+        Iterator<Upload> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            Upload upload = iterator.next();
+            boolean serialKeyRunning = upload.serialKey != null && runningSerialKeys.contains(upload.serialKey);
+            if (getRunning(upload.accountName) < maxWorkersPerAccount && !serialKeyRunning) {
+                iterator.remove();
+                return upload;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    void onStarted(Upload upload) {
+        runningPerAccount.put(upload.accountName, getRunning(upload.accountName) + 1);
+        holdSerialKey(upload);
+    }
+
+    @Override
+    void execute(Upload upload) {
+        if (!isSerialKeyResolved(upload)) {
+            String serialKey = resolveSerialKey(upload);
+            synchronized (this) {
+                upload.serialKey = serialKey;
+                upload.serialKeyResolved = true;
+                if (serialKey != null && runningSerialKeys.contains(serialKey)) {
+                    // started along with another upload with the same key; retried once that one is done
+                    if (!isShutdown()) {
+                        pending.addFirst(upload);
+                    }
+                    return;
+                }
+                holdSerialKey(upload);
+            }
+        }
+        super.execute(upload);
+    }
+
+    @Override
+    void onFinished(Upload upload) {
+        int accountRunning = getRunning(upload.accountName) - 1;
+        if (accountRunning > 0) {
+            runningPerAccount.put(upload.accountName, accountRunning);
+        } else {
+            runningPerAccount.remove(upload.accountName);
+        }
+        if (upload.holdsSerialKey) {
+            runningSerialKeys.remove(upload.serialKey);
+            upload.holdsSerialKey = false;
+        }
+    }
+
+    private synchronized boolean isSerialKeyResolved(Upload upload) {
+        return upload.serialKeyResolved;
+    }
+
+    @Nullable
+    private static String resolveSerialKey(Upload upload) {
+        try {
+            return upload.serialKeyResolver.resolve();
+        } catch (RuntimeException e) {
+            Log_OC.e(TAG, "Could not find serial key of upload, running it alongside others", e);
+            return null;
+        }
+    }
+
+    private void holdSerialKey(Upload upload) {
+        if (upload.serialKey != null) {
+            runningSerialKeys.add(upload.serialKey);
+            upload.holdsSerialKey = true;
+        }
+    }
+
+    private int getRunning(String accountName) {
+        Integer count = runningPerAccount.get(accountName);
+        return count == null ? 0 : count;
+    }
+}
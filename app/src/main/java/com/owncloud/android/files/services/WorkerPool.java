@@ -0,0 +1,186 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.files.services;
+
+import com.owncloud.android.lib.common.utils.Log_OC;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Runs transfers on a bounded number of worker threads.
+ * <p>
+ * Subclasses keep the queue of pending transfers and decide which one starts next; the pool keeps track of running
+ * transfers and starts pending ones whenever a worker is free. Queue methods are called with the pool locked.
+ *
+ * @param <T> queued transfer
+ */
+abstract class WorkerPool<T extends WorkerPool.Task> {
+
+    private static final String TAG = WorkerPool.class.getSimpleName();
+
+    /**
+     * Notified on a worker thread each time the last running transfer finished and nothing is left in the queue.
+     */
+    interface OnIdleListener {
+        void onIdle();
+    }
+
+    static class Task {
+        final Runnable runnable;
+
+        Task(Runnable runnable) {
+            this.runnable = runnable;
+        }
+    }
+
+    private final int maxWorkers;
+    private final ExecutorService executor;
+    private final OnIdleListener onIdleListener;
+    private int running;
+    private boolean shutdown;
+
+    WorkerPool(int maxWorkers, ExecutorService executor, OnIdleListener onIdleListener) {
+        if (maxWorkers < 1) {
+            throw new IllegalArgumentException("Pool needs at least one worker");
+        }
+        this.maxWorkers = maxWorkers;
+        this.executor = executor;
+        this.onIdleListener = onIdleListener;
+    }
+
+    /**
+     * Adds a transfer to the queue; it is started as soon as a worker is free and the queue lets it.
+     */
+    final void submit(T task) {
+        synchronized (this) {
+            if (shutdown) {
+                Log_OC.w(TAG, "Transfer submitted after shutdown, ignored");
+                return;
+            }
+            addPending(task);
+            startPending();
+        }
+    }
+
+    synchronized boolean isIdle() {
+        return running == 0 && !hasPending();
+    }
+
+    synchronized int getRunningCount() {
+        return running;
+    }
+
+    /**
+     * Drops all queued transfers. Running transfers are not interrupted, they have to be cancelled on their own.
+     */
+    void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            clearPending();
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * To be called after queued transfers were dropped, as the queue may be empty now.
+     */
+    final void onPendingRemoved() {
+        if (isIdle() && onIdleListener != null) {
+            onIdleListener.onIdle();
+        }
+    }
+
+    abstract void addPending(T task);
+
+    abstract boolean hasPending();
+
+    abstract void clearPending();
+
+    /**
+     * Removes the next transfer to start from the queue.
+     *
+     * @return null if no queued transfer may start now
+     */
+    @Nullable
+    abstract T pollNext();
+
+    void onStarted(T task) {
+        // nothing to track by default
+    }
+
+    void onFinished(T task) {
+        // nothing to track by default
+    }
+
+    /**
+     * Runs a started transfer on a worker thread, without the pool locked.
+     */
+    void execute(T task) {
+        task.runnable.run();
+    }
+
+    /**
+     * To be called with the pool locked.
+     */
+    final boolean isShutdown() {
+        return shutdown;
+    }
+
+    private void startPending() {
+        while (running < maxWorkers) {
+            T task = pollNext();
+            if (task == null) {
+                return;
+            }
+            running++;
+            onStarted(task);
+            try {
+                executor.execute(() -> run(task));
+            } catch (RejectedExecutionException e) {
+                Log_OC.e(TAG, "Could not start transfer", e);
+                running--;
+                onFinished(task);
+            }
+        }
+    }
+
+    private void run(T task) {
+        try {
+            execute(task);
+        } catch (RuntimeException e) {
+            Log_OC.e(TAG, "Unexpected error in transfer worker", e);
+        } finally {
+            boolean idle;
+            synchronized (this) {
+                running--;
+                onFinished(task);
+                if (!shutdown) {
+                    startPending();
+                }
+                idle = running == 0 && !hasPending();
+            }
+            if (idle && onIdleListener != null) {
+                onIdleListener.onIdle();
+            }
+        }
+    }
+}
@@ -26,6 +26,7 @@ import android.text.TextUtils;
 import android.webkit.MimeTypeMap;
 
 import com.nextcloud.client.account.User;
+import com.nextcloud.client.preferences.AppPreferencesImpl;
 import com.owncloud.android.datamodel.DecryptedFolderMetadata;
 import com.owncloud.android.datamodel.FileDataStorageManager;
 import com.owncloud.android.datamodel.OCFile;
@@ -35,13 +36,12 @@ import com.owncloud.android.lib.common.operations.OperationCancelledException;
 import com.owncloud.android.lib.common.operations.RemoteOperation;
 import com.owncloud.android.lib.common.operations.RemoteOperationResult;
 import com.owncloud.android.lib.common.utils.Log_OC;
-import com.owncloud.android.lib.resources.files.DownloadFileRemoteOperation;
 import com.owncloud.android.utils.EncryptionUtils;
 import com.owncloud.android.utils.FileExportUtils;
 import com.owncloud.android.utils.FileStorageUtils;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
@@ -52,6 +52,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public class DownloadFileOperation extends RemoteOperation {
     private static final String TAG = DownloadFileOperation.class.getSimpleName();
+    private static final String DECRYPTED_SUFFIX = ".decrypted";
 
     private User user;
     private OCFile file;
@@ -64,7 +65,7 @@ public class DownloadFileOperation extends RemoteOperation {
     private Context context;
     private Set<OnDatatransferProgressListener> dataTransferListeners = new HashSet<>();
     private long modificationTimestamp;
-    private DownloadFileRemoteOperation downloadOperation;
+    private ResumableDownloadFileRemoteOperation downloadOperation;
 
     private final AtomicBoolean cancellationRequested = new AtomicBoolean(false);
 
@@ -163,12 +164,17 @@ public class DownloadFileOperation extends RemoteOperation {
         File newFile = null;
         boolean moved;
 
-        /// download will be performed to a temporal file, then moved to the final location
+        /// download will be performed to a temporal file, then moved to the final location; a temporal file left by
+        /// an interrupted download of the same version is resumed
         File tmpFile = new File(getTmpPath());
 
         String tmpFolder = getTmpFolder();
 
-        downloadOperation = new DownloadFileRemoteOperation(file.getRemotePath(), tmpFolder);
+        if (isSegmentedDownload()) {
+            downloadOperation = new SegmentedDownloadFileRemoteOperation(file.getRemotePath(), tmpFolder);
+        } else {
+            downloadOperation = new ResumableDownloadFileRemoteOperation(file.getRemotePath(), tmpFolder);
+        }
 
         if (downloadType == DownloadType.DOWNLOAD) {
             Iterator<OnDatatransferProgressListener> listener = dataTransferListeners.iterator();
@@ -212,11 +218,13 @@ public class DownloadFileOperation extends RemoteOperation {
                 byte[] authenticationTag = EncryptionUtils.decodeStringToBase64Bytes(metadata.getFiles()
                         .get(file.getEncryptedFileName()).getAuthenticationTag());
 
+                File decryptedFile = new File(tmpFile.getAbsolutePath() + DECRYPTED_SUFFIX);
                 try {
-                    byte[] decryptedBytes = EncryptionUtils.decryptFile(tmpFile, key, iv, authenticationTag);
+                    EncryptionUtils.decryptFile(tmpFile, decryptedFile, key, iv, authenticationTag);
 
-                    try (FileOutputStream fileOutputStream = new FileOutputStream(tmpFile)) {
-                        fileOutputStream.write(decryptedBytes);
+                    if (!tmpFile.delete() || !decryptedFile.renameTo(tmpFile)) {
+                        throw new IOException("Could not replace " + tmpFile.getAbsolutePath() +
+                                                  " with decrypted file");
                     }
                 } catch (Exception e) {
                     return new RemoteOperationResult(e);
@@ -246,6 +254,14 @@ public class DownloadFileOperation extends RemoteOperation {
         return result;
     }
 
+    /**
+     * Large files are fetched over several connections if the user opted in.
+     */
+    private boolean isSegmentedDownload() {
+        return file.getFileLength() >= SegmentedDownloadFileRemoteOperation.MIN_FILE_SIZE &&
+            AppPreferencesImpl.fromContext(context).isSegmentedDownloadEnabled();
+    }
+
     public void cancel() {
         cancellationRequested.set(true);   // atomic set; there is no need of synchronizing it
         if (downloadOperation != null) {
@@ -32,6 +32,7 @@ import com.owncloud.android.datamodel.ArbitraryDataProvider;
 import com.owncloud.android.datamodel.DecryptedFolderMetadata;
 import com.owncloud.android.datamodel.FileDataStorageManager;
 import com.owncloud.android.datamodel.OCFile;
+import com.owncloud.android.datamodel.ThumbnailPrefetcher;
 import com.owncloud.android.lib.common.DirectEditing;
 import com.owncloud.android.lib.common.OwnCloudClient;
 import com.owncloud.android.lib.common.OwnCloudClientFactory;
@@ -215,6 +216,16 @@ public class RefreshFolderOperation extends RemoteOperation {
         return mChildren;
     }
 
+    /**
+     * Tells if the ETag of the synchronized folder changed, if called after synchronization is complete. The ETag of a
+     * folder changes with any change below it, so nothing below an unchanged folder needs to be synchronized.
+     *
+     * @return 'true' if the contents of the folder were fetched from the server.
+     */
+    public boolean isRemoteFolderChanged() {
+        return mRemoteFolderChanged;
+    }
+
     /**
      * Performs the synchronization.
      *
@@ -244,6 +255,10 @@ public class RefreshFolderOperation extends RemoteOperation {
             if (result.isSuccess()) {
                 // request for the synchronization of KEPT-IN-SYNC file contents
                 startContentSynchronizations(mFilesToSyncContents);
+
+                if (!mSyncFullAccount) {
+                    ThumbnailPrefetcher.prefetchFolder(mLocalFolder, mChildren, user, mContext);
+                }
             } else {
                 mLocalFolder.setEtag("");
             }
@@ -0,0 +1,349 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.operations;
+
+import com.owncloud.android.lib.common.OwnCloudClient;
+import com.owncloud.android.lib.common.network.OnDatatransferProgressListener;
+import com.owncloud.android.lib.common.network.WebdavUtils;
+import com.owncloud.android.lib.common.operations.OperationCancelledException;
+import com.owncloud.android.lib.common.operations.RemoteOperation;
+import com.owncloud.android.lib.common.operations.RemoteOperationResult;
+import com.owncloud.android.lib.common.utils.Log_OC;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.GetMethod;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Downloads a file into a temporary file, resuming a previous attempt that was interrupted.
+ * <p>
+ * The ETag of the content in the temporary file is kept next to it. A new attempt asks only for the missing bytes
+ * with {@code Range} and {@code If-Range}; if the file changed on the server meanwhile, the server sends the whole new
+ * content and the partial file is replaced. The partial file is kept when the connection drops, and deleted when the
+ * download is cancelled.
+ */
+public class ResumableDownloadFileRemoteOperation extends RemoteOperation {
+
+    private static final String TAG = ResumableDownloadFileRemoteOperation.class.getSimpleName();
+
+    @VisibleForTesting
+    static final String ETAG_SUFFIX = ".etag";
+    static final String HEADER_ETAG = "ETag";
+    static final String HEADER_RANGE = "Range";
+    static final String HEADER_IF_RANGE = "If-Range";
+    static final String HEADER_CONTENT_RANGE = "Content-Range";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    static final String WEAK_ETAG_PREFIX = "W/";
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String remotePath;
+    private final String tmpFolder;
+    private final Set<OnDatatransferProgressListener> dataTransferListeners = new HashSet<>();
+    private final AtomicBoolean cancellationRequested = new AtomicBoolean(false);
+    private GetMethod getMethod;
+    private long modificationTimestamp;
+    private String etag = "";
+    private long resumedFrom;
+
+    public ResumableDownloadFileRemoteOperation(String remotePath, String tmpFolder) {
+        this.remotePath = remotePath;
+        this.tmpFolder = tmpFolder;
+    }
+
+    @Override
+    protected RemoteOperationResult run(OwnCloudClient client) {
+        return download(client, client.getFilesDavUri(remotePath));
+    }
+
+    @VisibleForTesting
+    RemoteOperationResult download(HttpClient client, String uri) {
+        File tmpFile = new File(getTmpPath());
+        File etagFile = new File(getTmpPath() + ETAG_SUFFIX);
+        File parent = tmpFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            Log_OC.e(TAG, "Unable to create temporary folder " + parent.getAbsolutePath());
+        }
+
+        RemoteOperationResult result;
+        try {
+            result = download(client, uri, tmpFile, etagFile, true);
+        } catch (OperationCancelledException e) {
+            discard(tmpFile, etagFile);
+            result = new RemoteOperationResult(e);
+        } catch (IOException e) {
+            if (cancellationRequested.get()) {
+                discard(tmpFile, etagFile);
+                result = new RemoteOperationResult(new OperationCancelledException());
+            } else {
+                // keep the partial file for the next attempt
+                result = new RemoteOperationResult(e);
+            }
+        }
+
+        if (!result.isSuccess()) {
+            Log_OC.e(TAG, "Download of " + remotePath + " failed: " + result.getLogMessage());
+        }
+        return result;
+    }
+
+    private RemoteOperationResult download(HttpClient client,
+                                           String uri,
+                                           File tmpFile,
+                                           File etagFile,
+                                           boolean mayResume) throws IOException, OperationCancelledException {
+        String partialEtag = readEtag(etagFile);
+        long offset = 0;
+        if (mayResume && partialEtag != null && tmpFile.length() > 0) {
+            offset = tmpFile.length();
+        } else {
+            discard(tmpFile, etagFile);
+        }
+
+        synchronized (cancellationRequested) {
+            if (cancellationRequested.get()) {
+                throw new OperationCancelledException();
+            }
+            getMethod = new GetMethod(uri);
+        }
+
+        try {
+            if (offset > 0) {
+                getMethod.addRequestHeader(HEADER_RANGE, "bytes=" + offset + "-");
+                getMethod.addRequestHeader(HEADER_IF_RANGE, partialEtag);
+            }
+
+            int status = client.executeMethod(getMethod);
+            String responseEtag = getHeader(getMethod, HEADER_ETAG);
+
+            boolean append;
+            if (status == HttpStatus.SC_PARTIAL_CONTENT && offset > 0 &&
+                getRangeStart(getHeader(getMethod, HEADER_CONTENT_RANGE)) == offset &&
+                partialEtag.equals(responseEtag)) {
+                append = true;
+                resumedFrom = offset;
+                Log_OC.d(TAG, "Resuming download of " + remotePath + " at " + offset);
+            } else if (status == HttpStatus.SC_OK) {
+                // new download, or the file changed since the partial file was written
+                append = false;
+                offset = 0;
+                resumedFrom = 0;
+                discard(tmpFile, etagFile);
+                if (responseEtag != null && !responseEtag.startsWith(WEAK_ETAG_PREFIX)) {
+                    writeEtag(etagFile, responseEtag);
+                }
+            } else if (mayResume && offset > 0) {
+                // e.g. partial file longer than the file on the server
+                exhaustResponse();
+                getMethod.releaseConnection();
+                return download(client, uri, tmpFile, etagFile, false);
+            } else {
+                exhaustResponse();
+                return new RemoteOperationResult(false, getMethod);
+            }
+
+            long contentLength = getMethod.getResponseContentLength();
+            long transferred = writeResponse(tmpFile, append, offset, contentLength);
+
+            if (contentLength >= 0 && transferred != contentLength) {
+                throw new IOException("Download of " + remotePath + " interrupted after " + (offset + transferred) +
+                                          " of " + (offset + contentLength) + " bytes");
+            }
+
+            readVersion(getMethod);
+            if (etagFile.exists() && !etagFile.delete()) {
+                Log_OC.w(TAG, "Deletion of " + etagFile.getAbsolutePath() + " failed");
+            }
+
+            return new RemoteOperationResult(true, getMethod);
+        } finally {
+            getMethod.releaseConnection();
+        }
+    }
+
+    private long writeResponse(File tmpFile, boolean append, long offset, long contentLength)
+        throws IOException, OperationCancelledException {
+        long total = contentLength >= 0 ? offset + contentLength : -1;
+        long transferred = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        try (InputStream inputStream = new BufferedInputStream(getMethod.getResponseBodyAsStream());
+             OutputStream outputStream = new FileOutputStream(tmpFile, append)) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                synchronized (cancellationRequested) {
+                    if (cancellationRequested.get()) {
+                        getMethod.abort();
+                        throw new OperationCancelledException();
+                    }
+                }
+                outputStream.write(buffer, 0, read);
+                transferred += read;
+                notifyTransferProgress(read, offset + transferred, total, tmpFile.getName());
+            }
+        }
+
+        return transferred;
+    }
+
+    /**
+     * @param contentRange value of a Content-Range header, e.g. {@code bytes 100-199/200}
+     * @return first byte of the range, -1 if unknown
+     */
+    @VisibleForTesting
+    static long getRangeStart(@Nullable String contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+        String range = contentRange.trim();
+        int start = range.indexOf(' ');
+        int end = range.indexOf('-');
+        if (start < 0 || end <= start) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(range.substring(start + 1, end).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Nullable
+    static String getHeader(HttpMethod method, String name) {
+        Header header = method.getResponseHeader(name);
+        return header != null ? header.getValue() : null;
+    }
+
+    /**
+     * Takes modification time and ETag of the downloaded version from the response.
+     */
+    void readVersion(HttpMethod method) {
+        String lastModified = getHeader(method, HEADER_LAST_MODIFIED);
+        if (lastModified != null) {
+            Date date = WebdavUtils.parseResponseDate(lastModified);
+            modificationTimestamp = date != null ? date.getTime() : 0;
+        }
+        String normalizedEtag = WebdavUtils.getEtagFromResponse(method);
+        etag = normalizedEtag != null ? normalizedEtag : "";
+    }
+
+    void notifyTransferProgress(long progressRate, long transferred, long total, String fileName) {
+        synchronized (dataTransferListeners) {
+            for (OnDatatransferProgressListener listener : dataTransferListeners) {
+                listener.onTransferProgress(progressRate, transferred, total, fileName);
+            }
+        }
+    }
+
+    boolean isCancellationRequested() {
+        return cancellationRequested.get();
+    }
+
+    private void exhaustResponse() {
+        try {
+            InputStream inputStream = getMethod.getResponseBodyAsStream();
+            if (inputStream != null) {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            Log_OC.d(TAG, "Closing response of " + remotePath + " failed", e);
+        }
+    }
+
+    @Nullable
+    private static String readEtag(File etagFile) {
+        if (!etagFile.exists()) {
+            return null;
+        }
+        try (InputStream inputStream = new FileInputStream(etagFile)) {
+            byte[] bytes = new byte[(int) etagFile.length()];
+            int length = inputStream.read(bytes);
+            String etag = length > 0 ? new String(bytes, 0, length, StandardCharsets.UTF_8).trim() : "";
+            return etag.isEmpty() ? null : etag;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeEtag(File etagFile, String etag) throws IOException {
+        try (OutputStream outputStream = new FileOutputStream(etagFile)) {
+            outputStream.write(etag.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    static void discard(File tmpFile, File etagFile) {
+        if (tmpFile.exists() && !tmpFile.delete()) {
+            Log_OC.w(TAG, "Deletion of " + tmpFile.getAbsolutePath() + " failed");
+        }
+        if (etagFile.exists() && !etagFile.delete()) {
+            Log_OC.w(TAG, "Deletion of " + etagFile.getAbsolutePath() + " failed");
+        }
+    }
+
+    public void cancel() {
+        synchronized (cancellationRequested) {
+            cancellationRequested.set(true);
+            if (getMethod != null) {
+                getMethod.abort();
+            }
+        }
+    }
+
+    public void addDatatransferProgressListener(OnDatatransferProgressListener listener) {
+        synchronized (dataTransferListeners) {
+            dataTransferListeners.add(listener);
+        }
+    }
+
+    public String getTmpPath() {
+        return tmpFolder + remotePath;
+    }
+
+    public long getModificationTimestamp() {
+        return modificationTimestamp;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @return number of bytes taken from the partial file of a previous attempt, 0 if downloaded from the start
+     */
+    public long getResumedFrom() {
+        return resumedFrom;
+    }
+}
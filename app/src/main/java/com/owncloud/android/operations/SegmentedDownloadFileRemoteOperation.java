@@ -0,0 +1,381 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.operations;
+
+import com.owncloud.android.lib.common.operations.OperationCancelledException;
+import com.owncloud.android.lib.common.operations.RemoteOperationResult;
+import com.owncloud.android.lib.common.utils.Log_OC;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.HeadMethod;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Downloads a large file over several connections at once.
+ * <p>
+ * The file is split into byte ranges which are fetched concurrently and written at their position into a temporary
+ * file of the final length. Every range must come from the version announced by a preceding {@code HEAD} request,
+ * i.e. carry its ETag and match its length. A server without range support, a file changing meanwhile or a partial
+ * file left by a previous attempt fall back to a single stream as done by {@link
+ * ResumableDownloadFileRemoteOperation}.
+ */
+public class SegmentedDownloadFileRemoteOperation extends ResumableDownloadFileRemoteOperation {
+
+    private static final String TAG = SegmentedDownloadFileRemoteOperation.class.getSimpleName();
+
+    /**
+     * Smaller files are downloaded as a single stream, the extra requests would not pay off.
+     */
+    public static final long MIN_FILE_SIZE = 16 * 1024 * 1024;
+    static final int MAX_SEGMENTS = 4;
+    static final long MIN_SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final String HEADER_ACCEPT_RANGES = "Accept-Ranges";
+    private static final String BYTES = "bytes";
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final ExecutorService SEGMENT_EXECUTOR = createSegmentExecutor();
+
+    private final int maxSegments;
+    private final long minSegmentSize;
+    private final List<HttpMethod> activeMethods = new ArrayList<>();
+    private boolean segmentsAborted;
+
+    public SegmentedDownloadFileRemoteOperation(String remotePath, String tmpFolder) {
+        this(remotePath, tmpFolder, MAX_SEGMENTS, MIN_SEGMENT_SIZE);
+    }
+
+    @VisibleForTesting
+    SegmentedDownloadFileRemoteOperation(String remotePath, String tmpFolder, int maxSegments, long minSegmentSize) {
+        super(remotePath, tmpFolder);
+        this.maxSegments = maxSegments;
+        this.minSegmentSize = minSegmentSize;
+    }
+
+    private static ExecutorService createSegmentExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_SEGMENTS,
+                                                             MAX_SEGMENTS,
+                                                             KEEP_ALIVE_SECONDS,
+                                                             TimeUnit.SECONDS,
+                                                             new LinkedBlockingQueue<>(),
+                                                             runnable -> {
+                                                                 Thread thread = new Thread(runnable, TAG);
+                                                                 thread.setPriority(Thread.MIN_PRIORITY);
+                                                                 return thread;
+                                                             });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    RemoteOperationResult download(HttpClient client, String uri) {
+        if (isCancellationRequested()) {
+            return new RemoteOperationResult(new OperationCancelledException());
+        }
+
+        File tmpFile = new File(getTmpPath());
+        if (tmpFile.exists()) {
+            // continue the previous attempt instead of starting over
+            return super.download(client, uri);
+        }
+
+        // segments share the connection pool of the client, leave a connection for other requests
+        int connections = client.getHttpConnectionManager().getParams().getDefaultMaxConnectionsPerHost() - 1;
+        int segmentsLimit = Math.min(maxSegments, connections);
+        if (segmentsLimit < 2) {
+            return super.download(client, uri);
+        }
+
+        HeadMethod headMethod = new HeadMethod(uri);
+        long length;
+        String expectedEtag;
+        try {
+            int status = client.executeMethod(headMethod);
+            length = headMethod.getResponseContentLength();
+            expectedEtag = getHeader(headMethod, HEADER_ETAG);
+            if (status != HttpStatus.SC_OK ||
+                !BYTES.equals(getHeader(headMethod, HEADER_ACCEPT_RANGES)) ||
+                expectedEtag == null ||
+                expectedEtag.startsWith(WEAK_ETAG_PREFIX)) {
+                Log_OC.d(TAG, "No range support for " + uri + ", downloading as single stream");
+                return super.download(client, uri);
+            }
+        } catch (IOException e) {
+            return new RemoteOperationResult(e);
+        } finally {
+            headMethod.releaseConnection();
+        }
+
+        List<Segment> segments = getSegments(length, segmentsLimit, minSegmentSize);
+        if (segments.size() < 2) {
+            return super.download(client, uri);
+        }
+
+        File parent = tmpFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            Log_OC.e(TAG, "Unable to create temporary folder " + parent.getAbsolutePath());
+        }
+
+        try {
+            downloadSegments(client, uri, tmpFile, segments, length, expectedEtag);
+            readVersion(headMethod);
+            return new RemoteOperationResult(true, headMethod);
+        } catch (SegmentMismatchException e) {
+            Log_OC.d(TAG, e.getMessage() + ", downloading as single stream");
+            discard(tmpFile);
+            return super.download(client, uri);
+        } catch (OperationCancelledException e) {
+            discard(tmpFile);
+            return new RemoteOperationResult(e);
+        } catch (IOException e) {
+            // positions written so far are unknown, the file cannot be resumed
+            discard(tmpFile);
+            if (isCancellationRequested()) {
+                return new RemoteOperationResult(new OperationCancelledException());
+            }
+            Log_OC.e(TAG, "Segmented download of " + uri + " failed", e);
+            return new RemoteOperationResult(e);
+        }
+    }
+
+    private void downloadSegments(HttpClient client,
+                                  String uri,
+                                  File tmpFile,
+                                  List<Segment> segments,
+                                  long length,
+                                  String expectedEtag) throws IOException, OperationCancelledException {
+        AtomicLong transferred = new AtomicLong();
+
+        try (RandomAccessFile file = new RandomAccessFile(tmpFile, "rw")) {
+            file.setLength(length);
+            FileChannel channel = file.getChannel();
+
+            CompletionService<Long> completionService = new ExecutorCompletionService<>(SEGMENT_EXECUTOR);
+            List<Future<Long>> futures = new ArrayList<>(segments.size());
+            for (Segment segment : segments) {
+                futures.add(completionService.submit(() -> downloadSegment(client,
+                                                                           uri,
+                                                                           channel,
+                                                                           segment,
+                                                                           length,
+                                                                           expectedEtag,
+                                                                           transferred,
+                                                                           tmpFile.getName())));
+            }
+
+            try {
+                for (int i = 0; i < segments.size(); i++) {
+                    completionService.take().get();
+                }
+            } catch (ExecutionException e) {
+                abortSegments(futures);
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof OperationCancelledException) {
+                    throw (OperationCancelledException) cause;
+                }
+                throw new IOException(cause);
+            } catch (InterruptedException e) {
+                abortSegments(futures);
+                Thread.currentThread().interrupt();
+                throw new OperationCancelledException();
+            }
+
+            if (channel.size() != length || transferred.get() != length) {
+                throw new IOException("Downloaded " + transferred.get() + " of " + length + " bytes");
+            }
+        }
+    }
+
+    private long downloadSegment(HttpClient client,
+                                 String uri,
+                                 FileChannel channel,
+                                 Segment segment,
+                                 long length,
+                                 String expectedEtag,
+                                 AtomicLong transferred,
+                                 String fileName) throws IOException, OperationCancelledException {
+        GetMethod getMethod = new GetMethod(uri);
+        synchronized (activeMethods) {
+            if (isCancellationRequested()) {
+                throw new OperationCancelledException();
+            } else if (segmentsAborted) {
+                throw new IOException("Range " + segment + " aborted");
+            }
+            activeMethods.add(getMethod);
+        }
+
+        try {
+            getMethod.addRequestHeader(HEADER_RANGE, "bytes=" + segment.start + "-" + segment.end);
+            getMethod.addRequestHeader(HEADER_IF_RANGE, expectedEtag);
+
+            int status = client.executeMethod(getMethod);
+            if (status != HttpStatus.SC_PARTIAL_CONTENT ||
+                getRangeStart(getHeader(getMethod, HEADER_CONTENT_RANGE)) != segment.start ||
+                !expectedEtag.equals(getHeader(getMethod, HEADER_ETAG))) {
+                throw new SegmentMismatchException("Unexpected response " + status + " for range " + segment);
+            }
+
+            long position = segment.start;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (InputStream inputStream = getMethod.getResponseBodyAsStream()) {
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    if (isCancellationRequested()) {
+                        throw new OperationCancelledException();
+                    }
+                    if (position + read > segment.end + 1) {
+                        throw new SegmentMismatchException("Range " + segment + " exceeded");
+                    }
+                    ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+                    while (byteBuffer.hasRemaining()) {
+                        position += channel.write(byteBuffer, position);
+                    }
+                    notifyTransferProgress(read, transferred.addAndGet(read), length, fileName);
+                }
+            }
+
+            if (position != segment.end + 1) {
+                throw new IOException("Range " + segment + " interrupted at " + position);
+            }
+            return position - segment.start;
+        } finally {
+            getMethod.releaseConnection();
+            synchronized (activeMethods) {
+                activeMethods.remove(getMethod);
+            }
+        }
+    }
+
+    /**
+     * Stops all ranges after one failed and waits for them, so none writes to the file or holds a connection
+     * afterwards.
+     */
+    private void abortSegments(List<Future<Long>> futures) {
+        synchronized (activeMethods) {
+            segmentsAborted = true;
+        }
+        for (Future<Long> future : futures) {
+            future.cancel(false);
+        }
+        abortActiveMethods();
+
+        for (Future<Long> future : futures) {
+            try {
+                if (!future.isCancelled()) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                // failure of an aborted range
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void cancel() {
+        super.cancel();
+        abortActiveMethods();
+    }
+
+    private void abortActiveMethods() {
+        synchronized (activeMethods) {
+            for (HttpMethod method : activeMethods) {
+                method.abort();
+            }
+        }
+    }
+
+    /**
+     * Splits a file into at most the given number of ranges which are not smaller than the given size, except for
+     * files smaller than that.
+     */
+    @VisibleForTesting
+    static List<Segment> getSegments(long length, int maxSegments, long minSegmentSize) {
+        List<Segment> segments = new ArrayList<>();
+        if (length <= 0) {
+            return segments;
+        }
+
+        int count = (int) Math.max(1, Math.min(maxSegments, length / minSegmentSize));
+        long segmentSize = (length + count - 1) / count;
+        for (long start = 0; start < length; start += segmentSize) {
+            segments.add(new Segment(start, Math.min(start + segmentSize, length) - 1));
+        }
+        return segments;
+    }
+
+    private static void discard(File tmpFile) {
+        discard(tmpFile, new File(tmpFile.getAbsolutePath() + ETAG_SUFFIX));
+    }
+
+    /**
+     * Byte range, both ends inclusive.
+     */
+    @VisibleForTesting
+    static final class Segment {
+        final long start;
+        final long end;
+
+        Segment(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public String toString() {
+            return start + "-" + end;
+        }
+    }
+
+    /**
+     * The server answered a range with other content than announced, e.g. because the file changed.
+     */
+    private static final class SegmentMismatchException extends IOException {
+        private static final long serialVersionUID = 5407315129866021587L;
+
+        SegmentMismatchException(String message) {
+            super(message);
+        }
+    }
+}
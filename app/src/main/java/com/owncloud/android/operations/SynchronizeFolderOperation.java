@@ -445,20 +445,14 @@ public class SynchronizeFolderOperation extends SyncOperation {
 
 
     private void startDirectDownloads() throws OperationCancelledException {
-        for (OCFile file : mFilesForDirectDownload) {
-            synchronized(mCancellationRequested) {
-                if (mCancellationRequested.get()) {
-                    throw new OperationCancelledException();
-                }
-                Intent i = new Intent(mContext, FileDownloader.class);
-                i.putExtra(FileDownloader.EXTRA_USER, user);
-                i.putExtra(FileDownloader.EXTRA_FILE, file);
-                if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
-                    mContext.startForegroundService(i);
-                } else {
-                    mContext.startService(i);
-                }
+        if (mFilesForDirectDownload.isEmpty()) {
+            return;
+        }
+        synchronized(mCancellationRequested) {
+            if (mCancellationRequested.get()) {
+                throw new OperationCancelledException();
             }
+            FileDownloader.downloadFiles(mContext, user, mFilesForDirectDownload);
         }
     }
 
@@ -520,8 +520,6 @@ public class UploadFileOperation extends SyncOperation {
             // IV, always generate new one
             byte[] iv = EncryptionUtils.randomBytes(EncryptionUtils.ivLength);
 
-            EncryptionUtils.EncryptedFile encryptedFile = EncryptionUtils.encryptFile(mFile, key, iv);
-
             // new random file name, check if it exists in metadata
             String encryptedFileName = UUID.randomUUID().toString().replaceAll("-", "");
 
@@ -530,9 +528,10 @@ public class UploadFileOperation extends SyncOperation {
             }
 
             File encryptedTempFile = File.createTempFile("encFile", encryptedFileName);
-            FileOutputStream fileOutputStream = new FileOutputStream(encryptedTempFile);
-            fileOutputStream.write(encryptedFile.encryptedBytes);
-            fileOutputStream.close();
+            String authenticationTag = EncryptionUtils.encryptFile(new File(mFile.getStoragePath()),
+                                                                   encryptedTempFile,
+                                                                   key,
+                                                                   iv);
 
             /***** E2E *****/
 
@@ -630,7 +629,7 @@ public class UploadFileOperation extends SyncOperation {
 
                 decryptedFile.setEncrypted(data);
                 decryptedFile.setInitializationVector(EncryptionUtils.encodeBytesToBase64String(iv));
-                decryptedFile.setAuthenticationTag(encryptedFile.authenticationTag);
+                decryptedFile.setAuthenticationTag(authenticationTag);
 
                 metadata.getFiles().put(encryptedFileName, decryptedFile);
 
@@ -1371,7 +1370,8 @@ public class UploadFileOperation extends SyncOperation {
         // generate new Thumbnail
         final ThumbnailsCacheManager.ThumbnailGenerationTask task =
                 new ThumbnailsCacheManager.ThumbnailGenerationTask(getStorageManager(), user);
-        task.execute(new ThumbnailsCacheManager.ThumbnailGenerationTaskObject(file, file.getRemoteId()));
+        task.executeOnExecutor(ThumbnailsCacheManager.THUMBNAIL_SCHEDULER,
+            new ThumbnailsCacheManager.ThumbnailGenerationTaskObject(file, file.getRemoteId()));
     }
 
     private void updateOCFile(OCFile file, RemoteFile remoteFile) {
@@ -81,9 +81,7 @@ import org.nextcloud.providers.cursors.RootCursor;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Executor;
@@ -467,8 +465,10 @@ public class DocumentsStorageProvider extends DocumentsProvider {
             return result;
         }
 
-        for (Document d : findFiles(new Document(storageManager, ROOT_PATH), query)) {
-            result.addFile(d);
+        for (OCFile file : storageManager.searchFiles(query, FileContentProvider.DEFAULT_SEARCH_LIMIT)) {
+            if (!file.isFolder()) {
+                result.addFile(new Document(storageManager, file));
+            }
         }
 
         return result;
@@ -700,19 +700,6 @@ public class DocumentsStorageProvider extends DocumentsProvider {
         }
     }
 
-    private List<Document> findFiles(Document root, String query) {
-        FileDataStorageManager storageManager = root.getStorageManager();
-        List<Document> result = new ArrayList<>();
-        for (OCFile f : storageManager.getFolderContent(root.getFile(), false)) {
-            if (f.isFolder()) {
-                result.addAll(findFiles(new Document(storageManager, f), query));
-            } else if (f.getFileName().contains(query)) {
-                result.add(new Document(storageManager, f));
-            }
-        }
-        return result;
-    }
-
     private Uri toNotifyUri(Document document) {
         return DocumentsContract.buildDocumentUri(
             getContext().getString(R.string.document_provider_authority),
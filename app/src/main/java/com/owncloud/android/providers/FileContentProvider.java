@@ -58,8 +58,10 @@ import com.owncloud.android.utils.MimeType;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
@@ -89,6 +91,8 @@ public class FileContentProvider extends ContentProvider {
     private static final int ARBITRARY_DATA = 9;
     private static final int VIRTUAL = 10;
     private static final int FILESYSTEM = 11;
+    private static final int FILE_SEARCH = 12;
+    private static final int GALLERY = 13;
     private static final String TAG = FileContentProvider.class.getSimpleName();
     // todo avoid string concatenation and use string formatting instead later.
     private static final String ERROR = "ERROR ";
@@ -98,6 +102,31 @@ public class FileContentProvider extends ContentProvider {
     private static final String ALTER_TABLE = "ALTER TABLE ";
     private static final String ADD_COLUMN = " ADD COLUMN ";
     private static final String UPGRADE_VERSION_MSG = "OUT of the ADD in onUpgrade; oldVersion == %d, newVersion == %d";
+    private static final String CREATE_INDEX = "CREATE INDEX IF NOT EXISTS ";
+    private static final String FILE_ACCOUNT_PATH_INDEX = "filelist_account_path_index";
+    private static final String FILE_PARENT_INDEX = "filelist_parent_index";
+    private static final String FILE_ACCOUNT_MODIFIED_TYPE_INDEX = "filelist_account_modified_type_index";
+    private static final String FILE_STORAGE_PATH_INDEX = "filelist_storage_path_index";
+    private static final String FILESYSTEM_FOLDER_PATH_INDEX = "filesystem_folder_path_index";
+    private static final String CREATE_TRIGGER = "CREATE TRIGGER IF NOT EXISTS ";
+    private static final String FILE_SEARCH_BEFORE_UPDATE_TRIGGER = "filelist_fts_before_update";
+    private static final String FILE_SEARCH_BEFORE_DELETE_TRIGGER = "filelist_fts_before_delete";
+    private static final String FILE_SEARCH_AFTER_UPDATE_TRIGGER = "filelist_fts_after_update";
+    private static final String FILE_SEARCH_AFTER_INSERT_TRIGGER = "filelist_fts_after_insert";
+    /**
+     * Query parameter of {@link ProviderTableMeta#CONTENT_URI_FILE_SEARCH} and
+     * {@link ProviderTableMeta#CONTENT_URI_GALLERY} limiting the number of results.
+     */
+    public static final String LIMIT_PARAMETER = "limit";
+    public static final int DEFAULT_SEARCH_LIMIT = 500;
+    /**
+     * Column of {@link ProviderTableMeta#CONTENT_URI_GALLERY} results: first millisecond of the month the file was
+     * modified in, local time.
+     */
+    public static final String GALLERY_MONTH = "gallery_month";
+    public static final int DEFAULT_GALLERY_PAGE_SIZE = 300;
+    @VisibleForTesting
+    static final String GALLERY_ORDER = ProviderTableMeta.FILE_MODIFIED + " DESC, " + ProviderTableMeta._ID + " DESC";
     private static final int SINGLE_PATH_SEGMENT = 1;
     public static final int ARBITRARY_DATA_TABLE_INTRODUCTION_VERSION = 20;
     public static final int MINIMUM_PATH_SEGMENTS_SIZE = 1;
@@ -488,6 +517,8 @@ public class FileContentProvider extends ContentProvider {
         mUriMatcher.addURI(authority, "arbitrary_data", ARBITRARY_DATA);
         mUriMatcher.addURI(authority, "virtual", VIRTUAL);
         mUriMatcher.addURI(authority, "filesystem", FILESYSTEM);
+        mUriMatcher.addURI(authority, "file_search", FILE_SEARCH);
+        mUriMatcher.addURI(authority, "gallery", GALLERY);
 
         return true;
     }
@@ -531,6 +562,40 @@ public class FileContentProvider extends ContentProvider {
         // verify only for those requests that are not internal
         final int uriMatch = mUriMatcher.match(uri);
 
+        applyQueryPragmas(db);
+
+        if (uriMatch == FILE_SEARCH) {
+            if (selectionArgs == null || selectionArgs.length != 2) {
+                throw new IllegalArgumentException("File search needs account name and query: " + uri);
+            }
+            String limit = uri.getQueryParameter(LIMIT_PARAMETER);
+            Cursor c = searchFiles(db,
+                                   projectionArray,
+                                   selectionArgs[0],
+                                   selectionArgs[1],
+                                   limit == null ? DEFAULT_SEARCH_LIMIT : Integer.parseInt(limit));
+            c.setNotificationUri(mContext.getContentResolver(), ProviderTableMeta.CONTENT_URI_FILE);
+            return c;
+        }
+
+        if (uriMatch == GALLERY) {
+            if (selectionArgs == null || selectionArgs.length != 6) {
+                throw new IllegalArgumentException("Gallery needs account, path, media types and page start: " + uri);
+            }
+            String limit = uri.getQueryParameter(LIMIT_PARAMETER);
+            Cursor c = queryGalleryPage(db,
+                                        projectionArray,
+                                        selectionArgs[0],
+                                        selectionArgs[1],
+                                        Boolean.parseBoolean(selectionArgs[2]),
+                                        Boolean.parseBoolean(selectionArgs[3]),
+                                        Long.parseLong(selectionArgs[4]),
+                                        Long.parseLong(selectionArgs[5]),
+                                        limit == null ? DEFAULT_GALLERY_PAGE_SIZE : Integer.parseInt(limit));
+            c.setNotificationUri(mContext.getContentResolver(), ProviderTableMeta.CONTENT_URI_FILE);
+            return c;
+        }
+
         SQLiteQueryBuilder sqlQuery = new SQLiteQueryBuilder();
 
 
@@ -616,9 +681,6 @@ public class FileContentProvider extends ContentProvider {
             order = sortOrder;
         }
 
-        // DB case_sensitive
-        db.execSQL("PRAGMA case_sensitive_like = true");
-
         // only file list is accessible via content provider, so only this has to be protected with projectionMap
         if ((uriMatch == ROOT_DIRECTORY || uriMatch == SINGLE_FILE ||
             uriMatch == DIRECTORY) && projectionArray != null) {
@@ -718,7 +780,8 @@ public class FileContentProvider extends ContentProvider {
         return exists;
     }
 
-    private void createFilesTable(SQLiteDatabase db) {
+    @VisibleForTesting
+    static void createFilesTable(SQLiteDatabase db) {
         db.execSQL("CREATE TABLE " + ProviderTableMeta.FILE_TABLE_NAME + "("
                        + ProviderTableMeta._ID + " INTEGER PRIMARY KEY, "
                        + ProviderTableMeta.FILE_NAME + TEXT
@@ -763,6 +826,210 @@ public class FileContentProvider extends ContentProvider {
                        + ProviderTableMeta.FILE_LOCK_TIMEOUT + INTEGER
                        + ProviderTableMeta.FILE_LOCK_TOKEN + " TEXT );"
         );
+
+        createFilesTableIndexes(db);
+        createFilesSearchTable(db);
+    }
+
+    /**
+     * Secondary indexes backing the lookups issued by {@link com.owncloud.android.datamodel.FileDataStorageManager}:
+     * path lookups and descendant scans per account, folder listings by parent, gallery queries by date and mime
+     * type, and reverse lookups by local storage path.
+     */
+    @VisibleForTesting
+    static void createFilesTableIndexes(SQLiteDatabase db) {
+        db.execSQL(CREATE_INDEX + FILE_ACCOUNT_PATH_INDEX + " ON " + ProviderTableMeta.FILE_TABLE_NAME + "("
+                       + ProviderTableMeta.FILE_ACCOUNT_OWNER + ", "
+                       + ProviderTableMeta.FILE_PATH + ")");
+        db.execSQL(CREATE_INDEX + FILE_PARENT_INDEX + " ON " + ProviderTableMeta.FILE_TABLE_NAME + "("
+                       + ProviderTableMeta.FILE_PARENT + ")");
+        db.execSQL(CREATE_INDEX + FILE_ACCOUNT_MODIFIED_TYPE_INDEX + " ON " + ProviderTableMeta.FILE_TABLE_NAME + "("
+                       + ProviderTableMeta.FILE_ACCOUNT_OWNER + ", "
+                       + ProviderTableMeta.FILE_MODIFIED + ", "
+                       + ProviderTableMeta.FILE_CONTENT_TYPE + ")");
+        db.execSQL(CREATE_INDEX + FILE_STORAGE_PATH_INDEX + " ON " + ProviderTableMeta.FILE_TABLE_NAME + "("
+                       + ProviderTableMeta.FILE_STORAGE_PATH + ")");
+    }
+
+    /**
+     * Full text index over names and decrypted paths of the files table, for searching files without the server.
+     * <p>
+     * The index keeps no copy of the text: it reads it from the files table, and triggers keep it current on every
+     * insert, delete and rename.
+     */
+    @VisibleForTesting
+    static void createFilesSearchTable(SQLiteDatabase db) {
+        String fts = ProviderTableMeta.FILE_SEARCH_TABLE_NAME;
+        String columns = ProviderTableMeta.FILE_NAME + ", " + ProviderTableMeta.FILE_PATH_DECRYPTED;
+        String oldRow = "DELETE FROM " + fts + " WHERE docid = old." + ProviderTableMeta._ID + "; END";
+        String newRow = "INSERT INTO " + fts + "(docid, " + columns + ") VALUES (new." + ProviderTableMeta._ID +
+            ", new." + ProviderTableMeta.FILE_NAME + ", new." + ProviderTableMeta.FILE_PATH_DECRYPTED + "); END";
+        String renamed = " WHEN old." + ProviderTableMeta.FILE_NAME + " IS NOT new." + ProviderTableMeta.FILE_NAME +
+            " OR old." + ProviderTableMeta.FILE_PATH_DECRYPTED + " IS NOT new." + ProviderTableMeta.FILE_PATH_DECRYPTED;
+
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + fts + " USING fts4(content=\"" +
+                       ProviderTableMeta.FILE_TABLE_NAME + "\", " + columns + ", tokenize=unicode61)");
+        // external content: old rows have to be removed while the files table still holds them
+        db.execSQL(CREATE_TRIGGER + FILE_SEARCH_BEFORE_UPDATE_TRIGGER + " BEFORE UPDATE ON " +
+                       ProviderTableMeta.FILE_TABLE_NAME + renamed + " BEGIN " + oldRow);
+        db.execSQL(CREATE_TRIGGER + FILE_SEARCH_BEFORE_DELETE_TRIGGER + " BEFORE DELETE ON " +
+                       ProviderTableMeta.FILE_TABLE_NAME + " BEGIN " + oldRow);
+        db.execSQL(CREATE_TRIGGER + FILE_SEARCH_AFTER_UPDATE_TRIGGER + " AFTER UPDATE ON " +
+                       ProviderTableMeta.FILE_TABLE_NAME + renamed + " BEGIN " + newRow);
+        db.execSQL(CREATE_TRIGGER + FILE_SEARCH_AFTER_INSERT_TRIGGER + " AFTER INSERT ON " +
+                       ProviderTableMeta.FILE_TABLE_NAME + " BEGIN " + newRow);
+    }
+
+    /**
+     * Finds files of an account by the words of their names and paths, e.g. "holi pho" finds
+     * "/Photos/Holidays 2022.jpg". Every word of the query has to start a word of the name or the path.
+     * <p>
+     * Files whose name starts with the query come first, then files whose name contains it, then files found by their
+     * path; shorter paths first within each group.
+     *
+     * @param accountName account the files belong to
+     * @param query       text entered by the user
+     * @param limit       maximum number of files returned
+     * @return files table rows of the found files; empty if the query contains no words
+     */
+    @VisibleForTesting
+    static Cursor searchFiles(SQLiteDatabase db, String[] projection, String accountName, String query, int limit) {
+        String match = toMatchExpression(query);
+        if (match.isEmpty()) {
+            // nothing to search for, but the columns are still expected
+            return db.query(ProviderTableMeta.FILE_TABLE_NAME, projection, "0", null, null, null, null);
+        }
+
+        String name = query.trim().toLowerCase(Locale.ROOT)
+            .replace("\\", "\\\\")
+            .replace("%", "\\%")
+            .replace("_", "\\_");
+        String lowerName = "lower(" + ProviderTableMeta.FILE_NAME + ")";
+        String order = "CASE WHEN " + lowerName + " LIKE ? ESCAPE '\\' THEN 0 WHEN " + lowerName +
+            " LIKE ? ESCAPE '\\' THEN 1 ELSE 2 END, length(" + ProviderTableMeta.FILE_PATH_DECRYPTED + ")";
+
+        // unary plus: look the matches up by id instead of scanning all files of the account
+        String selection = "+" + ProviderTableMeta.FILE_ACCOUNT_OWNER + "=? AND " + ProviderTableMeta._ID +
+            " IN (SELECT docid FROM " + ProviderTableMeta.FILE_SEARCH_TABLE_NAME + " WHERE " +
+            ProviderTableMeta.FILE_SEARCH_TABLE_NAME + " MATCH ?)";
+
+        SQLiteQueryBuilder sqlQuery = new SQLiteQueryBuilder();
+        sqlQuery.setTables(ProviderTableMeta.FILE_TABLE_NAME);
+        sqlQuery.setStrict(true);
+        // arguments are bound in order of appearance: selection first, then order
+        return sqlQuery.query(db,
+                              projection,
+                              selection,
+                              new String[]{accountName, match, name + "%", "%" + name + "%"},
+                              null,
+                              null,
+                              order,
+                              String.valueOf(limit));
+    }
+
+    /**
+     * Connection settings all queries run with. LIKE is case sensitive, so that it can use the indexes on paths and
+     * mime types.
+     */
+    @VisibleForTesting
+    static void applyQueryPragmas(SQLiteDatabase db) {
+        db.execSQL("PRAGMA case_sensitive_like = true");
+    }
+
+    /**
+     * Selection of {@link #queryGalleryPage}; arguments are the account, the modification time and id of the last
+     * file of the page before, and the length and value of the folder path prefix.
+     */
+    @VisibleForTesting
+    static String gallerySelection(boolean images, boolean videos) {
+        String type = ProviderTableMeta.FILE_CONTENT_TYPE + " LIKE ";
+        String mediaTypes;
+        if (images && videos) {
+            mediaTypes = "(" + type + "'image/%' OR " + type + "'video/%')";
+        } else if (images) {
+            mediaTypes = type + "'image/%'";
+        } else if (videos) {
+            mediaTypes = type + "'video/%'";
+        } else {
+            mediaTypes = "0";
+        }
+
+        // the range on the modification time walks the index, the id only breaks ties within the same millisecond
+        return ProviderTableMeta.FILE_ACCOUNT_OWNER + "=? AND " +
+            ProviderTableMeta.FILE_MODIFIED + "<=? AND (" +
+            ProviderTableMeta.FILE_MODIFIED + "<? OR " + ProviderTableMeta._ID + "<?) AND " +
+            mediaTypes + " AND substr(" + ProviderTableMeta.FILE_PATH + ", 1, ?)=?";
+    }
+
+    /**
+     * Reads a page of images and videos of an account, newest first. Pages are continued from the last file of the
+     * page before, by modification time and id, so that reading a page costs the same no matter how many pages were
+     * read before.
+     *
+     * @param accountName    account the files belong to
+     * @param remotePath     folder the files have to be in, e.g. "/" for all files
+     * @param images         'true' to include images
+     * @param videos         'true' to include videos
+     * @param beforeModified modification time of the last file of the page before, {@link Long#MAX_VALUE} for the
+     *                       first page
+     * @param beforeId       id of the last file of the page before, {@link Long#MAX_VALUE} for the first page
+     * @param limit          maximum number of files returned
+     * @return files table rows of the page, with the month of each file in {@link #GALLERY_MONTH}
+     */
+    @VisibleForTesting
+    static Cursor queryGalleryPage(SQLiteDatabase db,
+                                   @Nullable String[] projection,
+                                   String accountName,
+                                   String remotePath,
+                                   boolean images,
+                                   boolean videos,
+                                   long beforeModified,
+                                   long beforeId,
+                                   int limit) {
+        List<String> columns = new ArrayList<>(projection == null ?
+                                                   ProviderTableMeta.FILE_ALL_COLUMNS : Arrays.asList(projection));
+        columns.add("strftime('%s', " + ProviderTableMeta.FILE_MODIFIED + " / 1000, 'unixepoch', 'localtime', " +
+                        "'start of month', 'utc') * 1000 AS " + GALLERY_MONTH);
+
+        SQLiteQueryBuilder sqlQuery = new SQLiteQueryBuilder();
+        sqlQuery.setTables(ProviderTableMeta.FILE_TABLE_NAME);
+        sqlQuery.setStrict(true);
+        return sqlQuery.query(db,
+                              columns.toArray(new String[0]),
+                              gallerySelection(images, videos),
+                              new String[]{
+                                  accountName,
+                                  String.valueOf(beforeModified),
+                                  String.valueOf(beforeModified),
+                                  String.valueOf(beforeId),
+                                  // SQLite counts characters, not UTF-16 units
+                                  String.valueOf(remotePath.codePointCount(0, remotePath.length())),
+                                  remotePath
+                              },
+                              null,
+                              null,
+                              GALLERY_ORDER,
+                              String.valueOf(limit));
+    }
+
+    /**
+     * Turns the text entered by the user into a full text query matching all its words as prefixes. Words are split
+     * like the index does, so that punctuation and query syntax in names can not break the query.
+     *
+     * @return full text query, empty if the text contains no words
+     */
+    @VisibleForTesting
+    static String toMatchExpression(String query) {
+        StringBuilder match = new StringBuilder();
+        for (String word : query.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                match.append(word).append('*');
+            }
+        }
+        return match.toString();
     }
 
     private void createOCSharesTable(SQLiteDatabase db) {
@@ -929,6 +1196,18 @@ public class FileContentProvider extends ContentProvider {
                        + ProviderTableMeta.FILESYSTEM_CRC32 + " STRING, "
                        + ProviderTableMeta.FILESYSTEM_FILE_MODIFIED + " LONG );"
         );
+
+        createFileSystemTableIndexes(db);
+    }
+
+    /**
+     * Index backing the lookups of known files of a synced folder by
+     * {@link com.owncloud.android.datamodel.FilesystemDataProvider}.
+     */
+    private static void createFileSystemTableIndexes(SQLiteDatabase db) {
+        db.execSQL(CREATE_INDEX + FILESYSTEM_FOLDER_PATH_INDEX + " ON " + ProviderTableMeta.FILESYSTEM_TABLE_NAME + "("
+                       + ProviderTableMeta.FILESYSTEM_SYNCED_FOLDER_ID + ", "
+                       + ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH + ")");
     }
 
     /**
@@ -1061,6 +1340,8 @@ public class FileContentProvider extends ContentProvider {
             case ARBITRARY_DATA:
             case VIRTUAL:
             case FILESYSTEM:
+            case FILE_SEARCH:
+            case GALLERY:
                 String callingPackage = mContext.getPackageManager().getNameForUid(Binder.getCallingUid());
                 return callingPackage == null || !callingPackage.equals(mContext.getPackageName());
 
@@ -2499,6 +2780,60 @@ public class FileContentProvider extends ContentProvider {
             if (!upgraded) {
                 Log_OC.i(SQL, String.format(Locale.ENGLISH, UPGRADE_VERSION_MSG, oldVersion, newVersion));
             }
+
+            if (oldVersion < 64 && newVersion >= 64) {
+                Log_OC.i(SQL, "Entering in the #64 add indexes to files table");
+                db.beginTransaction();
+                try {
+                    createFilesTableIndexes(db);
+
+                    upgraded = true;
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+
+            if (!upgraded) {
+                Log_OC.i(SQL, String.format(Locale.ENGLISH, UPGRADE_VERSION_MSG, oldVersion, newVersion));
+            }
+
+            if (oldVersion < 65 && newVersion >= 65) {
+                Log_OC.i(SQL, "Entering in the #65 add index to filesystem table");
+                db.beginTransaction();
+                try {
+                    createFileSystemTableIndexes(db);
+
+                    upgraded = true;
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+
+            if (!upgraded) {
+                Log_OC.i(SQL, String.format(Locale.ENGLISH, UPGRADE_VERSION_MSG, oldVersion, newVersion));
+            }
+
+            if (oldVersion < 66 && newVersion >= 66) {
+                Log_OC.i(SQL, "Entering in the #66 add full text search of file names");
+                db.beginTransaction();
+                try {
+                    createFilesSearchTable(db);
+                    // index the files already known
+                    db.execSQL("INSERT INTO " + ProviderTableMeta.FILE_SEARCH_TABLE_NAME + "(" +
+                                   ProviderTableMeta.FILE_SEARCH_TABLE_NAME + ") VALUES('rebuild')");
+
+                    upgraded = true;
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+
+            if (!upgraded) {
+                Log_OC.i(SQL, String.format(Locale.ENGLISH, UPGRADE_VERSION_MSG, oldVersion, newVersion));
+            }
         }
     }
 }
@@ -57,6 +57,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import androidx.annotation.PluralsRes;
 import androidx.core.app.NotificationCompat;
@@ -95,7 +97,10 @@ public class FileSyncAdapter extends AbstractOwnCloudSyncAdapter {
     private long mCurrentSyncTime;
 
     /** Flag made 'true' when a request to cancel the synchronization is received */
-    private boolean mCancellation;
+    private volatile boolean mCancellation;
+
+    /** Guards the counters and results below, updated by the folders synchronized in parallel */
+    private final Object mResultsLock = new Object();
 
     /** Counter for failed operations in the synchronization process */
     private int mFailedResultsCounter;
@@ -195,7 +200,7 @@ public class FileSyncAdapter extends AbstractOwnCloudSyncAdapter {
             updateOCVersion();
             mCurrentSyncTime = System.currentTimeMillis();
             if (!mCancellation) {
-                synchronizeFolder(getStorageManager().getFileByPath(OCFile.ROOT_PATH));
+                synchronizeTree(getStorageManager().getFileByPath(OCFile.ROOT_PATH));
 
             } else {
                 Log_OC.d(TAG, "Leaving synchronization before synchronizing the root folder " +
@@ -235,7 +240,7 @@ public class FileSyncAdapter extends AbstractOwnCloudSyncAdapter {
      * locally saved.
      *
      * See {@link #onPerformSync(Account, Bundle, String, ContentProviderClient, SyncResult)}
-     * and {@link #synchronizeFolder(OCFile)}.
+     * and {@link #synchronizeTree(OCFile)}.
      */
     @Override
     public void onSyncCanceled() {
@@ -257,22 +262,106 @@ public class FileSyncAdapter extends AbstractOwnCloudSyncAdapter {
     }
 
 
+    /**
+     * Synchronizes all the folders below the given one, several of them at the same time.
+     *
+     * Folders whose ETag did not change are not entered: the ETag of a folder changes with any change below it, and
+     * {@link RefreshFolderOperation} only synchronizes the contents of kept-in-sync files in folders it fetched.
+     * Hence the stored ETag of a folder with child folders is cleared while they are walked and only set again once
+     * all of them were synchronized; an interrupted or partly failed walk fetches the folder again next time.
+     *
+     * @param root Folder to start with.
+     */
+    private void synchronizeTree(OCFile root) {
+        Map<String, String> pendingEtags = new ConcurrentHashMap<>();
+        Set<String> failedFolders = ConcurrentHashMap.newKeySet();
+        FolderTreeWalker<OCFile> walker = new FolderTreeWalker<>(FolderTreeWalker.DEFAULT_PARALLELISM);
+        int synchronizedFolders = walker.walk(root, new FolderTreeWalker.FolderVisitor<OCFile>() {
+            @Override
+            public List<OCFile> visitFolder(OCFile folder) {
+                List<OCFile> childFolders;
+                try {
+                    childFolders = synchronizeFolder(folder, failedFolders);
+                } catch (RuntimeException e) {
+                    failedFolders.add(folder.getRemotePath());
+                    throw e;
+                }
+                if (!childFolders.isEmpty()) {
+                    String etag = replaceEtag(folder.getRemotePath(), "");
+                    if (etag != null) {
+                        pendingEtags.put(folder.getRemotePath(), etag);
+                    }
+                }
+                return childFolders;
+            }
+
+            @Override
+            public void onSubtreeDone(OCFile folder) {
+                String etag = pendingEtags.remove(folder.getRemotePath());
+                if (etag != null && !hasFailedBelow(folder.getRemotePath(), failedFolders)) {
+                    replaceEtag(folder.getRemotePath(), etag);
+                }
+            }
+        }, this::isSynchronizationStopped);
+
+        Log_OC.d(TAG, "Synchronized " + synchronizedFolders + " folders of " + getAccount().name);
+        if (mCancellation) {
+            Log_OC.d(TAG, "Leaving synchronization before finishing the tree due to cancellation request");
+        }
+    }
+
+    /**
+     * Replaces the stored ETag of a folder.
+     *
+     * @return the replaced ETag; null if the folder is not stored
+     */
+    private String replaceEtag(String remotePath, String etag) {
+        OCFile folder = getStorageManager().getFileByPath(remotePath);
+        if (folder == null) {
+            return null;
+        }
+        String replacedEtag = folder.getEtag();
+        folder.setEtag(etag);
+        getStorageManager().saveFile(folder);
+        return replacedEtag;
+    }
+
+    private static boolean hasFailedBelow(String folderPath, Set<String> failedFolders) {
+        for (String failedFolder : failedFolders) {
+            if (failedFolder.startsWith(folderPath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells if no more folders should be synchronized, because of a cancellation request or too many failures.
+     */
+    private boolean isSynchronizationStopped() {
+        if (mCancellation) {
+            return true;
+        }
+        synchronized (mResultsLock) {
+            return mFailedResultsCounter > MAX_FAILED_RESULTS || isFinisher(mLastFailedResult);
+        }
+    }
+
     /**
      *  Synchronizes the list of files contained in a folder identified with its remote path.
      *
      *  Fetches the list and properties of the files contained in the given folder, including their
      *  properties, and updates the local database with them.
      *
-     *  Enters in the child folders to synchronize their contents also, following a recursive
-     *  depth first strategy.
+     *  Called from several threads at the same time by {@link #synchronizeTree(OCFile)}.
      *
      *  @param folder                   Folder to synchronize.
+     *  @param failedFolders            Collects the remote paths of folders that could not be synchronized.
+     *  @return                         Child folders to synchronize next; empty if the folder did not change or
+     *                                  failed.
      */
-    private void synchronizeFolder(OCFile folder) {
-
-        if (mFailedResultsCounter > MAX_FAILED_RESULTS || isFinisher(mLastFailedResult)) {
-            return;
-        }
+    private List<OCFile> synchronizeFolder(OCFile folder, Set<String> failedFolders) {
+        List<OCFile> childFolders = new ArrayList<>();
 
         // folder synchronization
         RefreshFolderOperation synchFolderOp = new RefreshFolderOperation(folder,
@@ -290,38 +379,47 @@ public class FileSyncAdapter extends AbstractOwnCloudSyncAdapter {
         // check the result of synchronizing the folder
         if (result.isSuccess() || result.getCode() == ResultCode.SYNC_CONFLICT) {
 
-            if (result.getCode() == ResultCode.SYNC_CONFLICT) {
-                mConflictsFound += synchFolderOp.getConflictsFound();
-                mFailsInFavouritesFound += synchFolderOp.getFailsInKeptInSyncFound();
-            }
-            if (synchFolderOp.getForgottenLocalFiles().size() > 0) {
-                mForgottenLocalFiles.putAll(synchFolderOp.getForgottenLocalFiles());
+            synchronized (mResultsLock) {
+                if (result.getCode() == ResultCode.SYNC_CONFLICT) {
+                    mConflictsFound += synchFolderOp.getConflictsFound();
+                    mFailsInFavouritesFound += synchFolderOp.getFailsInKeptInSyncFound();
+                }
+                if (synchFolderOp.getForgottenLocalFiles().size() > 0) {
+                    mForgottenLocalFiles.putAll(synchFolderOp.getForgottenLocalFiles());
+                }
             }
-            if (result.isSuccess()) {
+            if (result.isSuccess() && synchFolderOp.isRemoteFolderChanged()) {
                 // synchronize children folders
-                List<OCFile> children = synchFolderOp.getChildren();
-                // beware of the 'hidden' recursion here!
-                syncChildren(children);
+                for (OCFile child : synchFolderOp.getChildren()) {
+                    if (child.isFolder()) {
+                        childFolders.add(child);
+                    }
+                }
             }
 
         } else if (result.getCode() != ResultCode.FILE_NOT_FOUND) {
-            // in failures, the statistics for the global result are updated
-            if (ResultCode.UNAUTHORIZED == result.getCode()) {
-                mSyncResult.stats.numAuthExceptions++;
-
-            } else if (result.getException() instanceof DavException) {
-                mSyncResult.stats.numParseExceptions++;
+            failedFolders.add(folder.getRemotePath());
 
-            } else if (result.getException() instanceof IOException) {
-                mSyncResult.stats.numIoExceptions++;
+            // in failures, the statistics for the global result are updated
+            synchronized (mResultsLock) {
+                if (ResultCode.UNAUTHORIZED == result.getCode()) {
+                    mSyncResult.stats.numAuthExceptions++;
+
+                } else if (result.getException() instanceof DavException) {
+                    mSyncResult.stats.numParseExceptions++;
+
+                } else if (result.getException() instanceof IOException) {
+                    mSyncResult.stats.numIoExceptions++;
+                }
+                mFailedResultsCounter++;
+                mLastFailedResult = result;
             }
-            mFailedResultsCounter++;
-            mLastFailedResult = result;
 
         } // else, ResultCode.FILE_NOT_FOUND is ignored, remote folder was
           // removed from other thread or other client during the synchronization,
           // before this thread fetched its contents
 
+        return childFolders;
     }
 
     /**
@@ -343,32 +441,6 @@ public class FileSyncAdapter extends AbstractOwnCloudSyncAdapter {
         return false;
     }
 
-    /**
-     * Triggers the synchronization of any folder contained in the list of received files.
-     *
-     * No consideration of etag here because it MUST walk down anyway, in case that kept-in-sync files
-     * have local changes.
-     *
-     * @param files         Files to recursively synchronize.
-     */
-    private void syncChildren(List<OCFile> files) {
-        int i;
-        OCFile newFile;
-        for (i=0; i < files.size() && !mCancellation; i++) {
-            newFile = files.get(i);
-            if (newFile.isFolder()) {
-                synchronizeFolder(newFile);
-            }
-        }
-
-        if (mCancellation && i <files.size()) {
-            Log_OC.d(TAG,
-                     "Leaving synchronization before synchronizing " + files.get(i).getRemotePath() +
-                            " due to cancellation request");
-        }
-    }
-
-
     /**
      * Sends a message to any application component interested in the progress of the
      * synchronization.
@@ -0,0 +1,162 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.syncadapter;
+
+import com.owncloud.android.lib.common.utils.Log_OC;
+
+import java.util.List;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Walks a folder tree synchronizing several folders at the same time.
+ * <p>
+ * Each folder is handed to a {@link FolderVisitor}, which synchronizes it and returns the child folders to walk into.
+ * A visitor prunes a subtree by returning no children, e.g. when the ETag of the folder did not change. Folders are
+ * spread over a {@link ForkJoinPool}: each worker walks its own part of the tree depth first and steals folders from
+ * the others when it runs out of work, so deep and wide trees keep all workers busy.
+ * <p>
+ * Cancellation is checked before each folder is visited: folders already synchronized stay so, no new folder is
+ * started once {@link Cancellation#isCancelled()} returns true.
+ *
+ * @param <F> type of the folders
+ */
+public final class FolderTreeWalker<F> {
+
+    private static final String TAG = FolderTreeWalker.class.getSimpleName();
+
+    /**
+     * Folders synchronized at the same time by default; below the 5 connections per host of the client.
+     */
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    /**
+     * Synchronizes single folders. Called from several threads at the same time.
+     */
+    public interface FolderVisitor<F> {
+
+        /**
+         * Synchronizes a folder.
+         *
+         * @param folder folder to synchronize
+         * @return child folders to walk into; null or empty to skip the subtree
+         */
+        List<F> visitFolder(F folder);
+
+        /**
+         * Called once the folder and all the folders below it were visited, children before parents. Not called if
+         * the walk was cancelled in between.
+         *
+         * @param folder folder whose subtree is done
+         */
+        void onSubtreeDone(F folder);
+    }
+
+    public interface Cancellation {
+        boolean isCancelled();
+    }
+
+    private final int parallelism;
+
+    public FolderTreeWalker(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Walker needs at least one worker");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Walks the tree below a folder, blocking until all folders are visited or the walk is cancelled.
+     *
+     * @param root         folder the walk starts with
+     * @param visitor      synchronizes the folders
+     * @param cancellation checked before each folder
+     * @return number of visited folders
+     */
+    public int walk(F root, FolderVisitor<F> visitor, Cancellation cancellation) {
+        AtomicInteger visited = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new FolderTask<>(null, root, visitor, cancellation, visited));
+        } finally {
+            pool.shutdown();
+        }
+        return visited.get();
+    }
+
+    /**
+     * Visits a folder and forks a task per child folder. Completes once all child tasks completed, without blocking a
+     * worker while waiting for them.
+     */
+    private static final class FolderTask<F> extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient F folder;
+        private final transient FolderVisitor<F> visitor;
+        private final transient Cancellation cancellation;
+        private final AtomicInteger visited;
+        private boolean synced;
+
+        private FolderTask(FolderTask<F> parent,
+                           F folder,
+                           FolderVisitor<F> visitor,
+                           Cancellation cancellation,
+                           AtomicInteger visited) {
+            super(parent);
+            this.folder = folder;
+            this.visitor = visitor;
+            this.cancellation = cancellation;
+            this.visited = visited;
+        }
+
+        @Override
+        public void compute() {
+            if (!cancellation.isCancelled()) {
+                List<F> children = null;
+                try {
+                    children = visitor.visitFolder(folder);
+                    synced = true;
+                } catch (RuntimeException e) {
+                    Log_OC.e(TAG, "Unexpected error synchronizing " + folder, e);
+                }
+                visited.incrementAndGet();
+
+                if (children != null && !children.isEmpty()) {
+                    setPendingCount(children.size());
+                    for (F child : children) {
+                        new FolderTask<>(this, child, visitor, cancellation, visited).fork();
+                    }
+                }
+            }
+            tryComplete();
+        }
+
+        @Override
+        public void onCompletion(CountedCompleter<?> caller) {
+            if (synced && !cancellation.isCancelled()) {
+                try {
+                    visitor.onSubtreeDone(folder);
+                } catch (RuntimeException e) {
+                    Log_OC.e(TAG, "Unexpected error finishing " + folder, e);
+                }
+            }
+        }
+    }
+}
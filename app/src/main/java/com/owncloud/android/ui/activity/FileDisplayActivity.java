@@ -1625,6 +1625,7 @@ public class FileDisplayActivity extends FileActivity
             if (component.equals(new ComponentName(FileDisplayActivity.this, FileDownloader.class))) {
                 Log_OC.d(TAG, "Download service connected");
                 mDownloaderBinder = (FileDownloaderBinder) service;
+                mDownloaderBinder.setPriorityFolder(getUser().orElse(null), getCurrentDir());
                 if (mWaitingToPreview != null && getStorageManager() != null) {
                     // update the file
                     mWaitingToPreview = getStorageManager().getFileById(mWaitingToPreview.getFileId());
@@ -2015,6 +2016,11 @@ public class FileDisplayActivity extends FileActivity
                             long currentSyncTime = System.currentTimeMillis();
                             mSyncInProgress = true;
 
+                            // files of the synchronized folder are downloaded before others
+                            if (mDownloaderBinder != null) {
+                                mDownloaderBinder.setPriorityFolder(getUser().orElse(null), folder);
+                            }
+
                             // perform folder synchronization
                             RemoteOperation synchFolderOp = new RefreshFolderOperation(folder,
                                                                                        currentSyncTime,
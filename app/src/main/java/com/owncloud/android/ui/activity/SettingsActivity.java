@@ -113,6 +113,9 @@ public class SettingsActivity extends ThemedPreferenceActivity
 
     public final static String PREFERENCE_USE_FINGERPRINT = "use_fingerprint";
     public static final String PREFERENCE_SHOW_MEDIA_SCAN_NOTIFICATIONS = "show_media_scan_notifications";
+    public static final String PREFERENCE_MAX_CONCURRENT_DOWNLOADS = "max_concurrent_downloads";
+    public static final String PREFERENCE_MAX_CONCURRENT_UPLOADS = "max_concurrent_uploads";
+    public static final String PREFERENCE_MAX_CONCURRENT_UPLOADS_PER_ACCOUNT = "max_concurrent_uploads_per_account";
 
     private static final int ACTION_REQUEST_PASSCODE = 5;
     private static final int ACTION_CONFIRM_PASSCODE = 6;
@@ -530,6 +533,10 @@ public class SettingsActivity extends ThemedPreferenceActivity
 
         setupShowMediaScanNotifications(preferenceCategoryDetails, fShowMediaScanNotifications);
 
+        setupMaxConcurrentDownloadsPreference();
+
+        setupMaxConcurrentUploadsPreferences();
+
         if (!fPassCodeEnabled && !fDeviceCredentialsEnabled && !fShowHiddenFilesEnabled && fSyncedFolderLightEnabled
             && fShowMediaScanNotifications) {
             preferenceScreen.removePreference(preferenceCategoryDetails);
@@ -546,6 +553,57 @@ public class SettingsActivity extends ThemedPreferenceActivity
         }
     }
 
+    private void setupMaxConcurrentDownloadsPreference() {
+        ListPreference maxConcurrentDownloads = (ListPreference) findPreference(PREFERENCE_MAX_CONCURRENT_DOWNLOADS);
+        setupWorkerCountPreference(maxConcurrentDownloads,
+                                   AppPreferences.MAX_CONCURRENT_DOWNLOADS,
+                                   preferences.getMaxConcurrentDownloads());
+        maxConcurrentDownloads.setOnPreferenceChangeListener((preference, newValue) -> {
+            preferences.setMaxConcurrentDownloads(Integer.parseInt((String) newValue));
+            return true;
+        });
+    }
+
+    private void setupMaxConcurrentUploadsPreferences() {
+        ListPreference maxConcurrentUploads = (ListPreference) findPreference(PREFERENCE_MAX_CONCURRENT_UPLOADS);
+        ListPreference maxConcurrentUploadsPerAccount =
+            (ListPreference) findPreference(PREFERENCE_MAX_CONCURRENT_UPLOADS_PER_ACCOUNT);
+
+        setupWorkerCountPreference(maxConcurrentUploads,
+                                   AppPreferences.MAX_CONCURRENT_UPLOADS,
+                                   preferences.getMaxConcurrentUploads());
+        setupWorkerCountPreference(maxConcurrentUploadsPerAccount,
+                                   preferences.getMaxConcurrentUploads(),
+                                   preferences.getMaxConcurrentUploadsPerAccount());
+
+        maxConcurrentUploads.setOnPreferenceChangeListener((preference, newValue) -> {
+            preferences.setMaxConcurrentUploads(Integer.parseInt((String) newValue));
+            // uploads of an account are limited by all uploads
+            setupWorkerCountPreference(maxConcurrentUploadsPerAccount,
+                                       preferences.getMaxConcurrentUploads(),
+                                       preferences.getMaxConcurrentUploadsPerAccount());
+            return true;
+        });
+        maxConcurrentUploadsPerAccount.setOnPreferenceChangeListener((preference, newValue) -> {
+            preferences.setMaxConcurrentUploadsPerAccount(Integer.parseInt((String) newValue));
+            return true;
+        });
+    }
+
+    /**
+     * Offers 1 to max workers. Worker counts are stored as int by {@link AppPreferences}, so the list is not
+     * persisted by itself and its listener has to store the chosen value.
+     */
+    private void setupWorkerCountPreference(ListPreference preference, int max, int value) {
+        String[] values = new String[max];
+        for (int i = 0; i < max; i++) {
+            values[i] = String.valueOf(i + 1);
+        }
+        preference.setEntries(values);
+        preference.setEntryValues(values);
+        preference.setValue(String.valueOf(value));
+    }
+
     private void setupHiddenFilesPreference(PreferenceCategory preferenceCategoryDetails,
                                             boolean fShowHiddenFilesEnabled) {
         showHiddenFiles = (ThemeableSwitchPreference) findPreference("show_hidden_files");
@@ -34,6 +34,7 @@ import com.nextcloud.client.account.User;
 import com.owncloud.android.MainApp;
 import com.owncloud.android.R;
 import com.owncloud.android.datamodel.FileDataStorageManager;
+import com.owncloud.android.datamodel.LocalFolderSizeCache;
 import com.owncloud.android.lib.common.utils.Log_OC;
 import com.owncloud.android.utils.FileStorageUtils;
 
@@ -419,7 +420,8 @@ public class StorageMigration {
                 throw new MigrationException(R.string.file_migration_failed_dir_already_exists);
             }
 
-            if (dstFile.getFreeSpace() < FileStorageUtils.getFolderSize(new File(srcFile, MainApp.getDataFolder()))) {
+            File dataFolder = new File(srcFile, MainApp.getDataFolder());
+            if (dstFile.getFreeSpace() < LocalFolderSizeCache.getInstance().computeSize(dataFolder)) {
                 throw new MigrationException(R.string.file_migration_failed_not_enough_space);
             }
         }
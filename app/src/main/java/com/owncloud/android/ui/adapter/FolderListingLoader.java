@@ -0,0 +1,197 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.ui.adapter;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.owncloud.android.datamodel.OCFile;
+import com.owncloud.android.lib.common.utils.Log_OC;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.recyclerview.widget.DiffUtil;
+
+/**
+ * Lists folders for {@link OCFileListAdapter} in background.
+ * <p>
+ * Loading, filtering and sorting the content of a folder and comparing it with the listing shown before run on a
+ * background thread; only the result is applied on the main thread. Starting a listing cancels the one before, so
+ * that navigating quickly through folders never shows a folder that was already left.
+ */
+final class FolderListingLoader {
+
+    private static final String TAG = FolderListingLoader.class.getSimpleName();
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Loads, filters and sorts the content of a folder. Called on the background thread.
+     */
+    interface Source {
+        List<OCFile> load();
+    }
+
+    /**
+     * Receives a listing on the main thread, unless it was cancelled.
+     */
+    interface Callback {
+
+        /**
+         * @param files listed files
+         * @param diff  changes from the previous listing to the new one; null if there was no previous listing to
+         *              compare with
+         */
+        void onFolderListed(List<OCFile> files, @Nullable DiffUtil.DiffResult diff);
+    }
+
+    private final Executor executor;
+    private final Executor callbackExecutor;
+
+    /**
+     * Incremented by every new listing and every cancellation; a listing is current while it matches.
+     */
+    private final AtomicInteger generation = new AtomicInteger();
+
+    FolderListingLoader() {
+        this(createExecutor(), new Handler(Looper.getMainLooper())::post);
+    }
+
+    @VisibleForTesting
+    FolderListingLoader(Executor executor, Executor callbackExecutor) {
+        this.executor = executor;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    private static Executor createExecutor() {
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(1,
+                                                                       1,
+                                                                       KEEP_ALIVE_SECONDS,
+                                                                       TimeUnit.SECONDS,
+                                                                       new LinkedBlockingQueue<>(),
+                                                                       runnable -> new Thread(runnable, TAG));
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        return threadPoolExecutor;
+    }
+
+    /**
+     * Lists a folder in background, cancelling the listing started before.
+     *
+     * @param source        loads the content of the folder
+     * @param previousFiles files currently shown, if they belong to the same folder; null to skip the comparison
+     * @param callback      receives the listing on the main thread
+     */
+    void load(Source source, @Nullable List<OCFile> previousFiles, Callback callback) {
+        int listing = generation.incrementAndGet();
+        executor.execute(() -> {
+            if (isCancelled(listing)) {
+                return;
+            }
+
+            List<OCFile> files;
+            try {
+                files = source.load();
+            } catch (RuntimeException e) {
+                Log_OC.e(TAG, "Unexpected error listing folder", e);
+                return;
+            }
+            if (isCancelled(listing)) {
+                return;
+            }
+
+            DiffUtil.DiffResult diff = null;
+            if (previousFiles != null) {
+                // sorted listings: moves are rare and expensive to detect
+                diff = DiffUtil.calculateDiff(new DiffCallback(previousFiles, files), false);
+            }
+
+            DiffUtil.DiffResult result = diff;
+            callbackExecutor.execute(() -> {
+                if (!isCancelled(listing)) {
+                    callback.onFolderListed(files, result);
+                }
+            });
+        });
+    }
+
+    /**
+     * Drops the pending listing, if any. Its callback is not called anymore.
+     */
+    void cancel() {
+        generation.incrementAndGet();
+    }
+
+    private boolean isCancelled(int listing) {
+        return generation.get() != listing;
+    }
+
+    /**
+     * Compares two listings by file id, and by the properties shown in the rows.
+     */
+    private static final class DiffCallback extends DiffUtil.Callback {
+        private final List<OCFile> oldFiles;
+        private final List<OCFile> newFiles;
+
+        private DiffCallback(List<OCFile> oldFiles, List<OCFile> newFiles) {
+            this.oldFiles = oldFiles;
+            this.newFiles = newFiles;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldFiles.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newFiles.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldFiles.get(oldItemPosition).getFileId() == newFiles.get(newItemPosition).getFileId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            OCFile oldFile = oldFiles.get(oldItemPosition);
+            OCFile newFile = newFiles.get(newItemPosition);
+            return Objects.equals(oldFile.getDecryptedFileName(), newFile.getDecryptedFileName()) &&
+                Objects.equals(oldFile.getEtag(), newFile.getEtag()) &&
+                Objects.equals(oldFile.getEtagInConflict(), newFile.getEtagInConflict()) &&
+                Objects.equals(oldFile.getStoragePath(), newFile.getStoragePath()) &&
+                oldFile.getFileLength() == newFile.getFileLength() &&
+                oldFile.getModificationTimestamp() == newFile.getModificationTimestamp() &&
+                oldFile.isFavorite() == newFile.isFavorite() &&
+                oldFile.isSharedViaLink() == newFile.isSharedViaLink() &&
+                oldFile.isSharedWithSharee() == newFile.isSharedWithSharee() &&
+                oldFile.isEncrypted() == newFile.isEncrypted() &&
+                oldFile.isLocked() == newFile.isLocked() &&
+                oldFile.getUnreadCommentsCount() == newFile.getUnreadCommentsCount();
+        }
+    }
+}
@@ -40,6 +40,8 @@ import com.owncloud.android.databinding.GridImageBinding
 import com.owncloud.android.datamodel.FileDataStorageManager
 import com.owncloud.android.datamodel.GalleryItems
 import com.owncloud.android.datamodel.OCFile
+import com.owncloud.android.datamodel.ThumbnailsCacheManager
+import com.owncloud.android.providers.FileContentProvider
 import com.owncloud.android.ui.activity.ComponentsGetter
 import com.owncloud.android.ui.fragment.GalleryFragment
 import com.owncloud.android.ui.fragment.GalleryFragmentBottomSheetDialog
@@ -47,13 +49,13 @@ import com.owncloud.android.ui.fragment.SearchType
 import com.owncloud.android.ui.interfaces.OCFileListFragmentInterface
 import com.owncloud.android.utils.DisplayUtils
 import com.owncloud.android.utils.FileSortOrder
-import com.owncloud.android.utils.FileStorageUtils
-import com.owncloud.android.utils.MimeTypeUtil
 import com.owncloud.android.utils.theme.ThemeColorUtils
 import com.owncloud.android.utils.theme.ThemeDrawableUtils
 import me.zhanghai.android.fastscroll.PopupTextProvider
-import java.util.Calendar
-import java.util.Date
+import java.util.concurrent.Executor
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
 
 @Suppress("LongParameterList")
 class GalleryAdapter(
@@ -69,6 +71,13 @@ class GalleryAdapter(
     private val ocFileListDelegate: OCFileListDelegate
     private var storageManager: FileDataStorageManager
 
+    private var remotePath: String? = null
+    private var mediaState: GalleryFragmentBottomSheetDialog.MediaState? = null
+    private var pageGeneration = 0
+    private var pageLoading = false
+    private var hasMorePages = false
+    private val mainHandler by lazy { Handler(Looper.getMainLooper()) }
+
     init {
         storageManager = transferServiceGetter.storageManager
 
@@ -124,6 +133,12 @@ class GalleryAdapter(
         }
     }
 
+    override fun onViewRecycled(holder: SectionedViewHolder) {
+        if (holder is GalleryItemViewHolder) {
+            ThumbnailsCacheManager.cancelThumbnailWork(holder.thumbnail)
+        }
+    }
+
     override fun getItemCount(section: Int): Int {
         return files[section].files.size
     }
@@ -161,71 +176,78 @@ class GalleryAdapter(
         TODO("Not yet implemented")
     }
 
-    @SuppressLint("NotifyDataSetChanged")
+    /**
+     * Shows the images and videos stored for a folder, newest first. Only the first page is read; further pages are
+     * read by [loadMoreGalleryItems]. Showing the same folder again keeps as many files as were shown before, so that
+     * a refresh does not scroll back to the top.
+     */
     fun showAllGalleryItems(
         remotePath: String,
         mediaState: GalleryFragmentBottomSheetDialog.MediaState,
         photoFragment: GalleryFragment
     ) {
+        val refresh = remotePath == this.remotePath && mediaState == this.mediaState
+        this.remotePath = remotePath
+        this.mediaState = mediaState
+
+        val limit = if (refresh) maxOf(getFilesCount(), PAGE_SIZE) else PAGE_SIZE
+        loadPage(null, limit) { page ->
+            files = page
+            if (files.isEmpty() && photoFragment.isAdded) {
+                photoFragment.setEmptyListMessage(SearchType.GALLERY_SEARCH)
+            }
+        }
+    }
 
-        val items = storageManager.allGalleryItems
-
-        val filteredList = items.filter { it != null && it.remotePath.startsWith(remotePath) }
+    /**
+     * Reads the next page of stored images and videos, if there is one.
+     *
+     * @return false if all stored files are shown already
+     */
+    fun loadMoreGalleryItems(): Boolean {
+        if (pageLoading) {
+            return true
+        }
+        val lastFile = files.lastOrNull()?.files?.lastOrNull()
+        if (!hasMorePages || lastFile == null) {
+            return false
+        }
 
-        setMediaFilter(
-            filteredList,
-            mediaState,
-            photoFragment
-        )
+        loadPage(lastFile, PAGE_SIZE) { page -> files = appendPage(files, page) }
+        return true
     }
 
-    // Set Image/Video List According to Selection of Hide/Show Image/Video
     @SuppressLint("NotifyDataSetChanged")
-    private fun setMediaFilter(
-        items: List<OCFile>,
-        mediaState: GalleryFragmentBottomSheetDialog.MediaState,
-        photoFragment: GalleryFragment
-    ) {
-
-        val finalSortedList: List<OCFile> = when (mediaState) {
-            GalleryFragmentBottomSheetDialog.MediaState.MEDIA_STATE_PHOTOS_ONLY -> {
-                items.filter { MimeTypeUtil.isImage(it.mimeType) }.distinct()
-            }
-            GalleryFragmentBottomSheetDialog.MediaState.MEDIA_STATE_VIDEOS_ONLY -> {
-                items.filter { MimeTypeUtil.isVideo(it.mimeType) }.distinct()
+    private fun loadPage(after: OCFile?, limit: Int, onLoaded: (List<GalleryItems>) -> Unit) {
+        val generation = ++pageGeneration
+        pageLoading = true
+
+        val path = remotePath ?: OCFile.ROOT_PATH
+        val images = mediaState != GalleryFragmentBottomSheetDialog.MediaState.MEDIA_STATE_VIDEOS_ONLY
+        val videos = mediaState != GalleryFragmentBottomSheetDialog.MediaState.MEDIA_STATE_PHOTOS_ONLY
+        pageExecutor.execute {
+            val page = storageManager.getGalleryPage(path, images, videos, after, limit)
+            mainHandler.post {
+                // a newer page was requested meanwhile, e.g. for another folder
+                if (generation == pageGeneration) {
+                    pageLoading = false
+                    hasMorePages = page.fold(0) { acc, item -> acc + item.files.size } >= limit
+                    onLoaded(page)
+                    notifyDataSetChanged()
+                }
             }
-            else -> items
         }
-
-        if (finalSortedList.isEmpty()) {
-            photoFragment.setEmptyListMessage(SearchType.GALLERY_SEARCH)
-        }
-
-        files = finalSortedList
-            .groupBy { firstOfMonth(it.modificationTimestamp) }
-            .map { GalleryItems(it.key, FileStorageUtils.sortOcFolderDescDateModifiedWithoutFavoritesFirst(it.value)) }
-            .sortedBy { it.date }.reversed()
-
-        Handler(Looper.getMainLooper()).post { notifyDataSetChanged() }
     }
 
     @SuppressLint("NotifyDataSetChanged")
     fun clear() {
+        pageGeneration++
+        pageLoading = false
+        hasMorePages = false
         files = emptyList()
         Handler(Looper.getMainLooper()).post { notifyDataSetChanged() }
     }
 
-    private fun firstOfMonth(timestamp: Long): Long {
-        val cal = Calendar.getInstance()
-        cal.time = Date(timestamp)
-        cal.set(Calendar.DAY_OF_MONTH, cal.getActualMinimum(Calendar.DAY_OF_MONTH))
-        cal.set(Calendar.HOUR_OF_DAY, 0)
-        cal.set(Calendar.MINUTE, 0)
-        cal.set(Calendar.SECOND, 0)
-
-        return cal.timeInMillis
-    }
-
     fun isEmpty(): Boolean {
         return files.isEmpty()
     }
@@ -306,4 +328,32 @@ class GalleryAdapter(
     fun addFiles(items: List<GalleryItems>) {
         files = items
     }
+
+    companion object {
+        @VisibleForTesting
+        const val PAGE_SIZE = FileContentProvider.DEFAULT_GALLERY_PAGE_SIZE
+
+        private const val KEEP_ALIVE_SECONDS = 30L
+
+        private val pageExecutor: Executor by lazy {
+            ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, LinkedBlockingQueue()) { runnable ->
+                Thread(runnable, "GalleryPageLoader")
+            }.apply { allowCoreThreadTimeOut(true) }
+        }
+
+        /**
+         * Appends a page to the files shown so far. Both are sorted newest first, so only the last month shown and
+         * the first month of the page can be the same.
+         */
+        @VisibleForTesting
+        fun appendPage(items: List<GalleryItems>, page: List<GalleryItems>): List<GalleryItems> {
+            val last = items.lastOrNull()
+            val first = page.firstOrNull()
+            return if (last == null || first == null || last.date != first.date) {
+                items + page
+            } else {
+                items.dropLast(1) + GalleryItems(last.date, last.files + first.files) + page.drop(1)
+            }
+        }
+    }
 }
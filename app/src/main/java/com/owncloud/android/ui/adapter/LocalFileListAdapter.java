@@ -273,7 +273,8 @@ public class LocalFileListAdapter extends RecyclerView.Adapter<RecyclerView.View
                                     task
                                 );
                         thumbnailView.setImageDrawable(asyncDrawable);
-                        task.execute(new ThumbnailsCacheManager.ThumbnailGenerationTaskObject(file, null));
+                        task.executeOnExecutor(ThumbnailsCacheManager.THUMBNAIL_SCHEDULER,
+                            new ThumbnailsCacheManager.ThumbnailGenerationTaskObject(file, null));
                         Log_OC.v(TAG, "Executing task to generate a new thumbnail");
 
                     } // else, already being generated, don't restart it
@@ -383,9 +384,11 @@ public class LocalFileListAdapter extends RecyclerView.Adapter<RecyclerView.View
         final Handler uiHandler = new Handler(Looper.getMainLooper());
         Executors.newSingleThreadExecutor().execute(() -> {
             preferences.setSortOrder(FileSortOrder.Type.localFileListView, sortOrder);
-            mFiles = sortOrder.sortLocalFiles(mFiles);
+            // sorted on a copy, the shown list is only replaced on the main thread
+            final List<File> sortedFiles = sortOrder.sortLocalFiles(new ArrayList<>(mFiles));
 
             uiHandler.post(() -> {
+                mFiles = sortedFiles;
                 notifyDataSetChanged();
                 localFileListFragmentInterface.setLoading(false);
             });
@@ -53,6 +53,7 @@ import com.owncloud.android.databinding.ListHeaderBinding;
 import com.owncloud.android.databinding.ListItemBinding;
 import com.owncloud.android.datamodel.DecryptedFolderMetadata;
 import com.owncloud.android.datamodel.FileDataStorageManager;
+import com.owncloud.android.datamodel.LocalFolderSizeCache;
 import com.owncloud.android.datamodel.OCFile;
 import com.owncloud.android.datamodel.ThumbnailsCacheManager;
 import com.owncloud.android.datamodel.VirtualFolderType;
@@ -86,6 +87,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
@@ -93,6 +95,8 @@ import java.util.Set;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import me.zhanghai.android.fastscroll.PopupTextProvider;
@@ -126,9 +130,15 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
     private static final int VIEWTYPE_IMAGE = 2;
     private static final int VIEWTYPE_HEADER = 3;
 
+    /**
+     * Rebinds a row in place, without change animation.
+     */
+    private static final Object PAYLOAD_REFRESH = new Object();
+
     private boolean onlyOnDevice;
     private final OCFileListDelegate ocFileListDelegate;
     private FileSortOrder sortOrder;
+    private final FolderListingLoader folderListingLoader = new FolderListingLoader();
 
     private final SimpleDateFormat dateFormat = new SimpleDateFormat("MMMM yyyy", Locale.getDefault());
     private final ThemeColorUtils themeColorUtils;
@@ -207,6 +217,18 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
         ocFileListDelegate.addToCheckedFiles(mFiles);
     }
 
+    /**
+     * Refreshes the row of a local folder once its size was computed.
+     */
+    private void onLocalFolderSize(File folder, long size) {
+        for (OCFile file : mFiles) {
+            if (file.getStoragePath() != null && folder.equals(new File(file.getStoragePath()))) {
+                notifyItemChanged(getItemPosition(file));
+                return;
+            }
+        }
+    }
+
     public int getItemPosition(@NonNull OCFile file) {
         int position = mFiles.indexOf(file);
 
@@ -430,12 +452,17 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
             File localFile = new File(storagePath);
             long localSize;
             if (localFile.isDirectory()) {
-                localSize = FileStorageUtils.getFolderSize(localFile);
+                localSize = LocalFolderSizeCache.getInstance().getSize(localFile, this::onLocalFolderSize);
             } else {
                 localSize = localFile.length();
             }
 
-            holder.getFileSize().setText(DisplayUtils.bytesToHumanReadable(localSize));
+            if (localSize == LocalFolderSizeCache.UNKNOWN_SIZE) {
+                // updated once computed in background
+                holder.getFileSize().setText(R.string.folder_size_placeholder);
+            } else {
+                holder.getFileSize().setText(DisplayUtils.bytesToHumanReadable(localSize));
+            }
             holder.getFileSize().setVisibility(View.VISIBLE);
             holder.getFileSizeSeparator().setVisibility(View.VISIBLE);
         } else {
@@ -507,6 +534,13 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
         }
     }
 
+    @Override
+    public void onViewRecycled(@NonNull RecyclerView.ViewHolder holder) {
+        if (holder instanceof ListGridImageViewHolder) {
+            ThumbnailsCacheManager.cancelThumbnailWork(((ListGridImageViewHolder) holder).getThumbnail());
+        }
+    }
+
     private String getFooterText() {
         int filesCount = 0;
         int foldersCount = 0;
@@ -612,43 +646,129 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
      * @param updatedStorageManager Optional updated storage manager; used to replace
      * @param limitToMimeType       show only files of this mimeType
      */
-    @SuppressLint("NotifyDataSetChanged")
+    @Override
     public void swapDirectory(
         @NonNull User account,
         @NonNull OCFile directory,
         @NonNull FileDataStorageManager updatedStorageManager,
         boolean onlyOnDevice, @NonNull String limitToMimeType
                              ) {
-        this.onlyOnDevice = onlyOnDevice;
+        swapDirectory(account, directory, updatedStorageManager, onlyOnDevice, limitToMimeType, null);
+    }
 
+    /**
+     * Change the adapted directory for a new one. The content is listed in background; until then, the previous
+     * content stays visible. Refreshing the current directory only updates the rows that changed.
+     *
+     * @param directory             New folder to adapt.
+     * @param updatedStorageManager Optional updated storage manager; used to replace
+     * @param limitToMimeType       show only files of this mimeType
+     * @param onListed              run on the main thread once the new content is shown; not run if the listing is
+     *                              replaced by a newer one before
+     */
+    @SuppressLint("NotifyDataSetChanged")
+    public void swapDirectory(
+        @NonNull User account,
+        @NonNull OCFile directory,
+        @NonNull FileDataStorageManager updatedStorageManager,
+        boolean onlyOnDevice, @NonNull String limitToMimeType,
+        @Nullable Runnable onListed
+                             ) {
         if (!updatedStorageManager.equals(mStorageManager)) {
             mStorageManager = updatedStorageManager;
             ocFileListDelegate.setShowShareAvatar(CapabilityUtils.getCapability(account, activity).getVersion().isShareesOnDavSupported());
             this.user = account;
         }
-        if (mStorageManager != null) {
-            mFiles = mStorageManager.getFolderContent(directory, onlyOnDevice);
+        if (mStorageManager == null) {
+            folderListingLoader.cancel();
+            this.onlyOnDevice = onlyOnDevice;
+            mFiles.clear();
+            mFilesAll.clear();
+            searchType = null;
+            notifyDataSetChanged();
+            return;
+        }
 
-            if (!preferences.isShowHiddenFilesEnabled()) {
-                mFiles = filterHiddenFiles(mFiles);
+        final FileDataStorageManager storageManager = mStorageManager;
+        final boolean showHiddenFiles = preferences.isShowHiddenFilesEnabled();
+        final FileSortOrder directorySortOrder = preferences.getSortOrderByFolder(directory);
+
+        // rows are only compared when the same folder is refreshed; other folders have nothing in common
+        final List<OCFile> shownFiles = mFiles;
+        final int shownCount = mFiles.size();
+        final boolean sameDirectory = searchType == null && this.onlyOnDevice == onlyOnDevice &&
+            directory.equals(currentDirectory);
+        final List<OCFile> previousFiles = sameDirectory ? new ArrayList<>(mFiles) : null;
+
+        folderListingLoader.load(() -> {
+            List<OCFile> files = storageManager.getFolderContent(directory, onlyOnDevice);
+            if (!showHiddenFiles) {
+                files = filterHiddenFiles(files);
             }
             if (!limitToMimeType.isEmpty()) {
-                mFiles = filterByMimeType(mFiles, limitToMimeType);
+                files = filterByMimeType(files, limitToMimeType);
             }
-            sortOrder = preferences.getSortOrderByFolder(directory);
-            mFiles = sortOrder.sortCloudFiles(mFiles);
+            return directorySortOrder.sortCloudFiles(files);
+        }, previousFiles, (files, diff) -> {
+            boolean showedHeader = shouldShowHeader();
+            // the comparison is only valid if the rows did not change meanwhile
+            boolean unchanged = mFiles == shownFiles && mFiles.size() == shownCount;
+
+            this.onlyOnDevice = onlyOnDevice;
+            sortOrder = directorySortOrder;
+            mFiles = files;
             mFilesAll.clear();
-            mFilesAll.addAll(mFiles);
-
+            mFilesAll.addAll(files);
             currentDirectory = directory;
-        } else {
-            mFiles.clear();
-            mFilesAll.clear();
-        }
+            searchType = null;
+
+            if (diff == null || !unchanged || showedHeader != shouldShowHeader()) {
+                notifyDataSetChanged();
+            } else {
+                dispatchListingUpdates(diff, showedHeader ? 1 : 0);
+            }
 
-        searchType = null;
+            if (onListed != null) {
+                onListed.run();
+            }
+        });
+    }
 
-        notifyDataSetChanged();
+    /**
+     * Applies the changes of a refreshed listing, so that only inserted, removed and changed rows are animated.
+     *
+     * @param diff   changes between the previous and the new listing
+     * @param offset position of the first file, after the header
+     */
+    private void dispatchListingUpdates(DiffUtil.DiffResult diff, int offset) {
+        diff.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                notifyItemRangeInserted(position + offset, count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                notifyItemRangeRemoved(position + offset, count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                notifyItemMoved(fromPosition + offset, toPosition + offset);
+            }
+
+            @Override
+            public void onChanged(int position, int count, @Nullable Object payload) {
+                notifyItemRangeChanged(position + offset, count, payload);
+            }
+        });
+
+        if (offset > 0) {
+            // rich workspace
+            notifyItemChanged(0);
+        }
+        // transfer states are not part of the files: rebind the other rows and the footer in place, without animation
+        notifyItemRangeChanged(offset, mFiles.size() + 1, PAYLOAD_REFRESH);
     }
 
     public void setData(List<Object> objects,
@@ -656,6 +776,9 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
                         FileDataStorageManager storageManager,
                         @Nullable OCFile folder,
                         boolean clear) {
+        // search results replace the listing of the folder
+        folderListingLoader.cancel();
+
         if (storageManager != null && mStorageManager == null) {
             mStorageManager = storageManager;
             ocFileListDelegate.setShowShareAvatar(mStorageManager
@@ -718,6 +841,22 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
         new Handler(Looper.getMainLooper()).post(this::notifyDataSetChanged);
     }
 
+    /**
+     * Shows files found in the local database, e.g. while the server cannot be searched. The files are kept in the
+     * order they were found, best matches first.
+     */
+    public void setSearchResults(List<OCFile> files, SearchType searchType) {
+        folderListingLoader.cancel();
+
+        mFiles = new ArrayList<>(files);
+        this.searchType = searchType;
+
+        mFilesAll.clear();
+        mFilesAll.addAll(mFiles);
+
+        new Handler(Looper.getMainLooper()).post(this::notifyDataSetChanged);
+    }
+
     private void parseShares(List<Object> objects) {
         List<OCShare> shares = new ArrayList<>();
 
@@ -905,11 +1044,12 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
      * @param files Collection of files to filter
      * @return Non-hidden files
      */
-    private List<OCFile> filterHiddenFiles(List<OCFile> files) {
+    private static List<OCFile> filterHiddenFiles(List<OCFile> files) {
         List<OCFile> ret = new ArrayList<>();
+        Set<OCFile> added = new HashSet<>();
 
         for (OCFile file : files) {
-            if (!file.isHidden() && !ret.contains(file)) {
+            if (!file.isHidden() && added.add(file)) {
                 ret.add(file);
             }
         }
@@ -917,7 +1057,7 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
         return ret;
     }
 
-    private List<OCFile> filterByMimeType(List<OCFile> files, String mimeType) {
+    private static List<OCFile> filterByMimeType(List<OCFile> files, String mimeType) {
         List<OCFile> ret = new ArrayList<>();
 
         for (OCFile file : files) {
@@ -933,6 +1073,14 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
         ocFileListDelegate.cancelAllPendingTasks();
     }
 
+    /**
+     * Drops the folder listing running in background, if any; neither the content nor its onListed callback are
+     * applied anymore.
+     */
+    public void cancelListing() {
+        folderListingLoader.cancel();
+    }
+
     public void setGridView(boolean bool) {
         gridView = bool;
     }
@@ -47,8 +47,6 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 import androidx.annotation.NonNull;
 
@@ -72,7 +70,6 @@ public class SyncedFolderAdapter extends SectionedRecyclerViewAdapter<SectionedV
     private boolean hideItems;
     private final ThemeColorUtils themeColorUtils;
     private final ThemeDrawableUtils themeDrawableUtils;
-    private final Executor thumbnailThreadPool;
 
     public SyncedFolderAdapter(Context context,
                                Clock clock,
@@ -92,7 +89,6 @@ public class SyncedFolderAdapter extends SectionedRecyclerViewAdapter<SectionedV
         this.hideItems = true;
         this.themeColorUtils = themeColorUtils;
         this.themeDrawableUtils = themeDrawableUtils;
-        this.thumbnailThreadPool = Executors.newCachedThreadPool();
 
         shouldShowHeadersForEmptySections(true);
         shouldShowFooters(true);
@@ -358,7 +354,7 @@ public class SyncedFolderAdapter extends SectionedRecyclerViewAdapter<SectionedV
                     );
             holder.binding.thumbnail.setImageDrawable(asyncDrawable);
 
-            task.executeOnExecutor(thumbnailThreadPool, file);
+            task.executeOnExecutor(ThumbnailsCacheManager.THUMBNAIL_SCHEDULER, file);
 
             // set proper tag
             holder.binding.thumbnail.setTag(file.hashCode());
@@ -257,7 +257,8 @@ public class TrashbinListAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
                                             thumbnail, task);
                             thumbnailView.setImageDrawable(asyncDrawable);
                             asyncTasks.add(task);
-                            task.execute(new ThumbnailsCacheManager.ThumbnailGenerationTaskObject(file,
+                            task.executeOnExecutor(ThumbnailsCacheManager.THUMBNAIL_SCHEDULER,
+                                new ThumbnailsCacheManager.ThumbnailGenerationTaskObject(file,
                                     file.getRemoteId()));
                         } catch (IllegalArgumentException e) {
                             Log_OC.d(TAG, "ThumbnailGenerationTask : " + e.getMessage());
@@ -444,7 +444,8 @@ public class UploadListAdapter extends SectionedRecyclerViewAdapter<SectionedVie
                                 task
                             );
                     itemViewHolder.binding.thumbnail.setImageDrawable(asyncDrawable);
-                    task.execute(new ThumbnailsCacheManager.ThumbnailGenerationTaskObject(
+                    task.executeOnExecutor(ThumbnailsCacheManager.THUMBNAIL_SCHEDULER,
+                        new ThumbnailsCacheManager.ThumbnailGenerationTaskObject(
                             fakeFileToCheatThumbnailsCacheManagerInterface, null));
                 }
             }
@@ -479,7 +480,8 @@ public class UploadListAdapter extends SectionedRecyclerViewAdapter<SectionedVie
                                                                           task);
 
                     itemViewHolder.binding.thumbnail.setImageDrawable(asyncDrawable);
-                    task.execute(new ThumbnailsCacheManager.ThumbnailGenerationTaskObject(file, null));
+                    task.executeOnExecutor(ThumbnailsCacheManager.THUMBNAIL_SCHEDULER,
+                        new ThumbnailsCacheManager.ThumbnailGenerationTaskObject(file, null));
                     Log_OC.v(TAG, "Executing task to generate a new thumbnail");
                 }
             }
@@ -142,7 +142,8 @@ public class UploaderAdapter extends SimpleAdapter {
                                 task
                         );
                         fileIcon.setImageDrawable(asyncDrawable);
-                        task.execute(new ThumbnailsCacheManager.ThumbnailGenerationTaskObject(file, file.getRemoteId()));
+                        task.executeOnExecutor(ThumbnailsCacheManager.THUMBNAIL_SCHEDULER,
+                            new ThumbnailsCacheManager.ThumbnailGenerationTaskObject(file, file.getRemoteId()));
                     }
                 }
             } else {
@@ -96,7 +96,10 @@ public class GallerySearchTask extends AsyncTask<Void, Void, GallerySearchTask.R
                              " - " + new Date(endDate * 1000L) +
                              " with limit: " + limit);
 
+                long searchStart = System.currentTimeMillis();
                 RemoteOperationResult result = searchRemoteOperation.execute(user, photoFragment.getContext());
+                Log_OC.d(this, "Gallery search page received in " + (System.currentTimeMillis() - searchStart) +
+                    " ms");
 
                 if (result.isSuccess()) {
                     boolean emptySearch = parseMedia(startDate, endDate, result.getData());
@@ -142,6 +145,8 @@ public class GallerySearchTask extends AsyncTask<Void, Void, GallerySearchTask.R
     }
 
     private boolean parseMedia(long startDate, long endDate, List<Object> remoteFiles) {
+        long start = System.currentTimeMillis();
+
         // retrieve all between startDate and endDate
         Map<String, OCFile> localFilesMap = RefreshFolderOperation.prefillLocalFilesMap(null,
                                                                                         storageManager.getGalleryItems(startDate * 1000L,
@@ -160,30 +165,28 @@ public class GallerySearchTask extends AsyncTask<Void, Void, GallerySearchTask.R
                 filesToAdd.add(ocFile);
             } else if (!localFile.getEtag().equals(ocFile.getEtag())) {
                 // update file
+                ocFile.setFileId(localFile.getFileId());
                 ocFile.setLastSyncDateForData(System.currentTimeMillis());
                 filesToUpdate.add(ocFile);
             }
         }
-
-        // add new files
-        for (OCFile file : filesToAdd) {
-            storageManager.saveFile(file);
-        }
-
-        // update existing files
-        for (OCFile file : filesToUpdate) {
-            storageManager.saveFile(file);
-        }
-
-        // existing files to remove
-        for (OCFile file : localFilesMap.values()) {
-            storageManager.removeFile(file, true, true);
+        long compared = System.currentTimeMillis();
+
+        // add new files, update existing ones and remove the ones gone from the server in a single batch
+        List<OCFile> filesToSave = new ArrayList<>(filesToAdd.size() + filesToUpdate.size());
+        filesToSave.addAll(filesToAdd);
+        filesToSave.addAll(filesToUpdate);
+        if (!filesToSave.isEmpty() || !localFilesMap.isEmpty()) {
+            storageManager.saveFiles(filesToSave, localFilesMap.values());
         }
+        long saved = System.currentTimeMillis();
 
         Log_OC.d(this, "Gallery search result:" +
             " new: " + filesToAdd.size() +
             " updated: " + filesToUpdate.size() +
-            " deleted: " + localFilesMap.size());
+            " deleted: " + localFilesMap.size() +
+            " compared in " + (compared - start) + " ms," +
+            " saved in " + (saved - compared) + " ms");
 
         return didNotFindNewResults(filesToAdd, filesToUpdate, localFilesMap.values());
     }
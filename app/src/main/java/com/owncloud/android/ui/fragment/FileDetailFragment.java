@@ -618,7 +618,7 @@ public class FileDetailFragment extends FileFragment implements OnClickListener,
 
                     toolbarActivity.setPreviewImageDrawable(asyncDrawable);
                     previewLoaded = true;
-                    task.execute(getFile());
+                    task.executeOnExecutor(ThumbnailsCacheManager.THUMBNAIL_SCHEDULER, getFile());
                 }
             }
         } else {
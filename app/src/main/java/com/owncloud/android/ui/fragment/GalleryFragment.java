@@ -307,13 +307,18 @@ public class GalleryFragment extends OCFileListFragment implements GalleryFragme
             GridLayoutManager gridLayoutManager = (GridLayoutManager) recyclerView.getLayoutManager();
 
             // scroll down
-            if (dy > 0 && !photoSearchQueryRunning) {
+            if (dy > 0) {
                 int visibleItemCount = gridLayoutManager.getChildCount();
                 int totalItemCount = gridLayoutManager.getItemCount();
                 int lastVisibleItem = gridLayoutManager.findLastCompletelyVisibleItemPosition();
 
                 if ((totalItemCount - visibleItemCount) <= (lastVisibleItem + MAX_ITEMS_PER_ROW)
                     && (totalItemCount - visibleItemCount) > 0) {
+                    // show the next page of stored photos first, search the server only once all of them are shown
+                    if (mAdapter.loadMoreGalleryItems() || photoSearchQueryRunning) {
+                        return;
+                    }
+
                     // Almost reached the end, continue to load new photos
                     OCFile lastFile = mAdapter.getItem(lastVisibleItem - 1);
 
@@ -339,6 +339,15 @@ public class OCFileListFragment extends ExtendedListFragment implements
         super.onDetach();
     }
 
+    @Override
+    public void onDestroyView() {
+        if (mAdapter != null) {
+            // a listing finishing later must not touch the destroyed views
+            mAdapter.cancelListing();
+        }
+        super.onDestroyView();
+    }
+
     @Override
     public void onPause() {
         super.onPause();
@@ -1319,27 +1328,34 @@ public class OCFileListFragment extends ExtendedListFragment implements
                     });
                 }
 
+                OCFile previousDirectory = mFile;
+                final OCFile listedDirectory = directory;
+
                 mAdapter.swapDirectory(
                     accountManager.getUser(),
                     directory,
                     storageManager,
                     onlyOnDevice,
-                    mLimitToMimeType
+                    mLimitToMimeType,
+                    () -> {
+                        // content is listed in background
+                        updateLayout();
+
+                        if (file != null) {
+                            int position = mAdapter.getItemPosition(file);
+                            if (position != -1) {
+                                getRecyclerView().scrollToPosition(position);
+                            }
+                        } else if (previousDirectory == null || !previousDirectory.equals(listedDirectory)) {
+                            getRecyclerView().scrollToPosition(0);
+                        }
+                    }
                                       );
 
-                OCFile previousDirectory = mFile;
                 mFile = directory;
 
-                updateLayout();
-
                 if (file != null) {
                     mAdapter.setHighlightedItem(file);
-                    int position = mAdapter.getItemPosition(file);
-                    if (position != -1) {
-                        getRecyclerView().scrollToPosition(position);
-                    }
-                } else if (previousDirectory == null || !previousDirectory.equals(directory)) {
-                    getRecyclerView().scrollToPosition(0);
                 }
             }
         } else if (isSearchEventSet(searchEvent)) {
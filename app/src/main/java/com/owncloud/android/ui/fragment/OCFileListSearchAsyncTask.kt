@@ -27,6 +27,8 @@ import com.nextcloud.client.account.User
 import com.owncloud.android.datamodel.FileDataStorageManager
 import com.owncloud.android.lib.common.operations.RemoteOperation
 import com.owncloud.android.lib.common.operations.RemoteOperationResult
+import com.owncloud.android.lib.resources.files.SearchRemoteOperation
+import com.owncloud.android.providers.FileContentProvider
 import com.owncloud.android.ui.events.SearchEvent
 import java.lang.ref.WeakReference
 
@@ -75,6 +77,20 @@ class OCFileListSearchAsyncTask(
                     true
                 )
             }
+        } else if (event.searchType == SearchRemoteOperation.SearchType.FILE_SEARCH && !isCancelled &&
+            fragment.searchFragment
+        ) {
+            // server not reachable: search the names of the files known locally
+            val files = fileDataStorageManager?.searchFiles(event.searchQuery, FileContentProvider.DEFAULT_SEARCH_LIMIT)
+            if (files != null) {
+                fragment.searchEvent = event
+                if (files.isEmpty()) {
+                    fragment.setEmptyView(event)
+                } else {
+                    fragment.adapter.setSearchResults(files, event.searchType)
+                }
+                return java.lang.Boolean.TRUE
+            }
         }
         return remoteOperationResult.isSuccess
     }
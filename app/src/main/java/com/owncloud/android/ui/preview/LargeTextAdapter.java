@@ -0,0 +1,136 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.ui.preview;
+
+import android.graphics.Typeface;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.TextUtils;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.StyleSpan;
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
+
+import com.owncloud.android.databinding.LargeTextLineBinding;
+import com.owncloud.android.lib.common.utils.Log_OC;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Shows the lines of a {@link LargeTextFile}, reading only the lines on screen.
+ */
+class LargeTextAdapter extends RecyclerView.Adapter<LargeTextAdapter.ViewHolder> {
+    private static final String TAG = LargeTextAdapter.class.getSimpleName();
+
+    private final LargeTextFile file;
+    @ColorInt private final int highlightColor;
+    private int lineCount;
+    private Pattern query;
+
+    LargeTextAdapter(LargeTextFile file, @ColorInt int highlightColor) {
+        this.file = file;
+        this.highlightColor = highlightColor;
+    }
+
+    /**
+     * Shows the lines indexed so far.
+     */
+    void setLineCount(int lineCount) {
+        int oldLineCount = this.lineCount;
+        if (lineCount > oldLineCount) {
+            this.lineCount = lineCount;
+            notifyItemRangeInserted(oldLineCount, lineCount - oldLineCount);
+        }
+    }
+
+    /**
+     * Highlights a text in every line, ignoring case.
+     */
+    void setQuery(String query) {
+        if (TextUtils.isEmpty(query)) {
+            this.query = null;
+        } else {
+            this.query = Pattern.compile(query, Pattern.CASE_INSENSITIVE | Pattern.LITERAL);
+        }
+        notifyItemRangeChanged(0, lineCount);
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        return new ViewHolder(LargeTextLineBinding.inflate(LayoutInflater.from(parent.getContext()), parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        String line;
+        try {
+            line = file.getLine(position);
+        } catch (IOException e) {
+            Log_OC.e(TAG, "Could not read line " + position, e);
+            line = "";
+        }
+
+        if (query == null) {
+            holder.binding.line.setText(line);
+        } else {
+            holder.binding.line.setText(highlight(line));
+        }
+    }
+
+    private CharSequence highlight(String line) {
+        Matcher matcher = query.matcher(line);
+        if (!matcher.find()) {
+            return line;
+        }
+
+        SpannableString text = new SpannableString(line);
+        do {
+            text.setSpan(new ForegroundColorSpan(highlightColor),
+                         matcher.start(),
+                         matcher.end(),
+                         Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            text.setSpan(new StyleSpan(Typeface.BOLD),
+                         matcher.start(),
+                         matcher.end(),
+                         Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        } while (matcher.find());
+        return text;
+    }
+
+    @Override
+    public int getItemCount() {
+        return lineCount;
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        private final LargeTextLineBinding binding;
+
+        ViewHolder(@NonNull LargeTextLineBinding binding) {
+            super(binding.getRoot());
+            this.binding = binding;
+        }
+    }
+}
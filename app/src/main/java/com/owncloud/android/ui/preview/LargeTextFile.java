@@ -0,0 +1,303 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.ui.preview;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Text file too large to be read into memory at once, read line by line for {@link PreviewTextFileFragment}.
+ * <p>
+ * The file is memory-mapped in windows and {@link #index(Cancellation, ProgressListener)} records where lines start,
+ * for every {@link #LINES_PER_BLOCK}th line only. A line is read by decoding its block, the last blocks read are kept.
+ * Lines longer than {@link #MAX_LINE_BYTES} are split, so that a single huge line can neither exhaust the memory.
+ * UTF-8 lines are split between characters; other multi-byte character sets have no byte telling where a character
+ * starts, so their lines are split at the limit, whatever the byte.
+ * <p>
+ * Lines are split at line feed bytes, so only character sets encoding it as a single byte are supported, see
+ * {@link #isSupported(Charset)}.
+ */
+final class LargeTextFile implements Closeable {
+
+    @VisibleForTesting
+    static final int LINES_PER_BLOCK = 64;
+
+    @VisibleForTesting
+    static final int MAX_LINE_BYTES = 4096;
+
+    /**
+     * Hard limit of a line: a UTF-8 line is split at the next character, at most 3 continuation bytes later.
+     */
+    private static final int MAX_SPLIT_LINE_BYTES = MAX_LINE_BYTES + 3;
+
+    private static final int WINDOW_SIZE = 8 * 1024 * 1024;
+    private static final int CACHED_BLOCKS = 32;
+    private static final int INITIAL_BLOCKS = 1024;
+    private static final byte LINE_FEED = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    /**
+     * Tells a background pass to stop.
+     */
+    interface Cancellation {
+        boolean isCancelled();
+    }
+
+    /**
+     * Receives the number of lines indexed so far, on the indexing thread.
+     */
+    interface ProgressListener {
+        void onLinesIndexed(int lineCount);
+    }
+
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final long size;
+    private final Charset charset;
+    private final boolean utf8;
+
+    /**
+     * Offsets of the first line of every block; written by the indexing thread only, published by {@link #lineCount}.
+     */
+    private volatile long[] blockOffsets = new long[INITIAL_BLOCKS];
+    private volatile int lineCount;
+    private volatile boolean indexed;
+
+    private final Map<Integer, List<String>> blocks = new LinkedHashMap<Integer, List<String>>(CACHED_BLOCKS, 0.75f,
+                                                                                                  true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<String>> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
+    };
+
+    LargeTextFile(File file, Charset charset) throws IOException {
+        this.randomAccessFile = new RandomAccessFile(file, "r");
+        this.channel = randomAccessFile.getChannel();
+        this.size = channel.size();
+        this.charset = charset;
+        this.utf8 = StandardCharsets.UTF_8.equals(charset);
+    }
+
+    /**
+     * @return 'true' if files in the given character set can be split into lines by this class
+     */
+    static boolean isSupported(Charset charset) {
+        String name = charset.name();
+        return !name.startsWith("UTF-16") && !name.startsWith("UTF-32");
+    }
+
+    /**
+     * Finds where the lines of the file start. Lines are readable as soon as they are indexed.
+     *
+     * @param cancellation stops the pass
+     * @param listener     notified after every window of the file
+     */
+    void index(Cancellation cancellation, ProgressListener listener) throws IOException {
+        long lineStart = 0;
+        int lines = 0;
+
+        for (long windowStart = 0; windowStart < size && !cancellation.isCancelled(); windowStart += WINDOW_SIZE) {
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY,
+                                                  windowStart,
+                                                  Math.min(WINDOW_SIZE, size - windowStart));
+            int windowSize = window.limit();
+            for (int i = 0; i < windowSize; i++) {
+                long position = windowStart + i;
+                byte b = window.get(i);
+                long nextLineStart = -1;
+                if (b == LINE_FEED) {
+                    nextLineStart = position + 1;
+                } else if (isLineTooLong(position - lineStart, b)) {
+                    nextLineStart = position;
+                }
+
+                if (nextLineStart != -1) {
+                    lines++;
+                    lineStart = nextLineStart;
+                    if (lines % LINES_PER_BLOCK == 0) {
+                        addBlock(lines / LINES_PER_BLOCK, lineStart);
+                    }
+                }
+            }
+            // publishes the block offsets written before
+            lineCount = lines;
+            listener.onLinesIndexed(lines);
+        }
+
+        if (!cancellation.isCancelled()) {
+            if (lineStart < size) {
+                // last line without line feed
+                lines++;
+            }
+            lineCount = lines;
+            indexed = true;
+            listener.onLinesIndexed(lines);
+        }
+    }
+
+    /**
+     * Lines are split once they reach the maximum length; UTF-8 lines not within a sequence, unless it is invalid.
+     */
+    private boolean isLineTooLong(long lineLength, byte b) {
+        if (lineLength >= MAX_SPLIT_LINE_BYTES) {
+            return true;
+        }
+        return lineLength >= MAX_LINE_BYTES && (!utf8 || (b & 0xC0) != 0x80);
+    }
+
+    private void addBlock(int block, long offset) {
+        long[] offsets = blockOffsets;
+        if (block >= offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[block] = offset;
+        blockOffsets = offsets;
+    }
+
+    /**
+     * @return number of lines indexed so far
+     */
+    int getLineCount() {
+        return lineCount;
+    }
+
+    boolean isIndexed() {
+        return indexed;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * Reads a line, without line break.
+     *
+     * @param line index of a line below {@link #getLineCount()}
+     */
+    String getLine(int line) throws IOException {
+        if (line < 0 || line >= lineCount) {
+            throw new IndexOutOfBoundsException("Line " + line + " of " + lineCount);
+        }
+        int block = line / LINES_PER_BLOCK;
+        return getBlock(block).get(line - block * LINES_PER_BLOCK);
+    }
+
+    private List<String> getBlock(int block) throws IOException {
+        // read before the block: once set, the line count does not change anymore
+        boolean complete = indexed;
+        synchronized (blocks) {
+            List<String> lines = blocks.get(block);
+            if (lines == null) {
+                lines = readBlock(block);
+                // the last block may still grow while the file is indexed
+                if (complete || lines.size() == LINES_PER_BLOCK) {
+                    blocks.put(block, lines);
+                }
+            }
+            return lines;
+        }
+    }
+
+    /**
+     * Splits a block into lines in the same way {@link #index(Cancellation, ProgressListener)} does.
+     */
+    private List<String> readBlock(int block) throws IOException {
+        int firstLine = block * LINES_PER_BLOCK;
+        int blockLines = Math.min(LINES_PER_BLOCK, lineCount - firstLine);
+        long start = blockOffsets[block];
+        // a block never spans more than this
+        long length = Math.min((long) LINES_PER_BLOCK * (MAX_SPLIT_LINE_BYTES + 1), size - start);
+
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        List<String> lines = new ArrayList<>(blockLines);
+        int lineStart = 0;
+        int limit = buffer.limit();
+        byte[] bytes = new byte[MAX_SPLIT_LINE_BYTES];
+        for (int i = 0; i < limit && lines.size() < blockLines; i++) {
+            byte b = buffer.get(i);
+            if (b == LINE_FEED) {
+                lines.add(decode(buffer, lineStart, i, bytes));
+                lineStart = i + 1;
+            } else if (isLineTooLong(i - lineStart, b)) {
+                lines.add(decode(buffer, lineStart, i, bytes));
+                lineStart = i;
+            }
+        }
+        if (lines.size() < blockLines) {
+            // last line without line feed
+            lines.add(decode(buffer, lineStart, limit, bytes));
+        }
+        return lines;
+    }
+
+    private String decode(ByteBuffer buffer, int start, int end, byte[] bytes) {
+        int length = end - start;
+        if (length > 0 && buffer.get(end - 1) == CARRIAGE_RETURN) {
+            length--;
+        }
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, 0, length, charset);
+    }
+
+    /**
+     * Finds the next line containing a text, ignoring case, among the lines indexed so far.
+     *
+     * @param query        text to find
+     * @param fromLine     first line to look at
+     * @param cancellation stops the search
+     * @return index of the line, -1 if no line was found or the search was cancelled
+     */
+    int findNext(String query, int fromLine, Cancellation cancellation) throws IOException {
+        Pattern pattern = Pattern.compile(query, Pattern.CASE_INSENSITIVE | Pattern.LITERAL);
+        int lines = lineCount;
+        for (int line = Math.max(fromLine, 0); line < lines; line++) {
+            if (line % LINES_PER_BLOCK == 0 && cancellation.isCancelled()) {
+                return -1;
+            }
+            if (pattern.matcher(getLine(line)).find()) {
+                return line;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        randomAccessFile.close();
+    }
+}
@@ -247,7 +247,7 @@ public class PreviewImageFragment extends FileFragment implements Injectable {
                 binding.shimmer.setVisibility(View.VISIBLE);
                 binding.shimmerThumbnail.setImageBitmap(thumbnail);
                 binding.image.setVisibility(View.GONE);
-                bitmap = thumbnail;
+                // thumbnail is shared with the thumbnail memory cache and must not be recycled
             } else {
                 thumbnail = ThumbnailsCacheManager.mDefaultImg;
             }
@@ -286,7 +286,7 @@ public class PreviewImageFragment extends FileFragment implements Injectable {
                                 task
                             );
                         binding.image.setImageDrawable(asyncDrawable);
-                        task.execute(getFile());
+                        task.executeOnExecutor(ThumbnailsCacheManager.THUMBNAIL_SCHEDULER, getFile());
                     }
                 }
             } else {
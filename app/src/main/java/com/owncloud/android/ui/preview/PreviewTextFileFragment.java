@@ -25,6 +25,7 @@ package com.owncloud.android.ui.preview;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
@@ -38,28 +39,40 @@ import com.owncloud.android.R;
 import com.owncloud.android.datamodel.OCFile;
 import com.owncloud.android.files.FileMenuFilter;
 import com.owncloud.android.lib.common.utils.Log_OC;
+import com.owncloud.android.ui.activity.FileDisplayActivity;
 import com.owncloud.android.ui.dialog.ConfirmationDialogFragment;
 import com.owncloud.android.ui.dialog.RemoveFilesDialogFragment;
 import com.owncloud.android.utils.DisplayUtils;
 import com.owncloud.android.utils.MimeTypeUtil;
 
 import org.mozilla.universalchardet.ReaderFactory;
+import org.mozilla.universalchardet.UniversalDetector;
 
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.lang.ref.WeakReference;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.widget.SearchView;
 import androidx.core.view.MenuItemCompat;
+import androidx.recyclerview.widget.LinearLayoutManager;
 
 public class PreviewTextFileFragment extends PreviewTextFragment {
     private static final String EXTRA_FILE = "FILE";
@@ -69,9 +82,28 @@ public class PreviewTextFileFragment extends PreviewTextFragment {
 
     private static final String TAG = PreviewTextFileFragment.class.getSimpleName();
 
+    /**
+     * Files larger than this are shown line by line with {@link LargeTextFile}, without markdown rendering.
+     */
+    private static final long LARGE_FILE_THRESHOLD = 1024 * 1024;
+    private static final int CHARSET_SAMPLE_SIZE = 64 * 1024;
+    private static final int SEARCH_DELAY = 500;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
     private TextLoadAsyncTask textLoadAsyncTask;
     private User user;
 
+    /**
+     * Runs the indexing of a large file and the searches within it, so that a search does not wait for the index.
+     */
+    private ExecutorService largeTextExecutor;
+    private final Handler largeTextHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger largeTextGeneration = new AtomicInteger();
+    private final AtomicInteger searchGeneration = new AtomicInteger();
+    private LargeTextFile largeTextFile;
+    private LargeTextAdapter largeTextAdapter;
+    private int lastMatch = -1;
+
     @Inject UserAccountManager accountManager;
 
     public static PreviewTextFileFragment create(User user, OCFile file, boolean openSearch, String searchQuery) {
@@ -151,11 +183,234 @@ public class PreviewTextFileFragment extends PreviewTextFragment {
 
     @Override
     void loadAndShowTextPreview() {
+        File file = new File(getFile().getStoragePath());
+        if (file.length() > LARGE_FILE_THRESHOLD) {
+            loadAndShowLargeTextPreview(file);
+        } else {
+            loadAndShowSmallTextPreview();
+        }
+    }
+
+    private void loadAndShowSmallTextPreview() {
         textLoadAsyncTask = new TextLoadAsyncTask(new WeakReference<>(binding.textPreview),
                                                   new WeakReference<>(binding.emptyListProgress));
         textLoadAsyncTask.execute(getFile().getStoragePath());
     }
 
+    /**
+     * Indexes the lines of a large file in background and shows them while they are indexed.
+     */
+    private void loadAndShowLargeTextPreview(File file) {
+        int generation = largeTextGeneration.incrementAndGet();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2,
+                                                             2,
+                                                             KEEP_ALIVE_SECONDS,
+                                                             TimeUnit.SECONDS,
+                                                             new LinkedBlockingQueue<>(),
+                                                             runnable -> new Thread(runnable, TAG));
+        executor.allowCoreThreadTimeOut(true);
+        largeTextExecutor = executor;
+
+        executor.execute(() -> {
+            Charset charset = detectCharset(file);
+            if (!LargeTextFile.isSupported(charset)) {
+                largeTextHandler.post(() -> {
+                    if (!isLargeTextCancelled(generation)) {
+                        loadAndShowSmallTextPreview();
+                    }
+                });
+                return;
+            }
+
+            LargeTextFile textFile;
+            try {
+                textFile = new LargeTextFile(file, charset);
+            } catch (IOException e) {
+                Log_OC.e(TAG, e.getMessage(), e);
+                finish();
+                return;
+            }
+            largeTextHandler.post(() -> showLargeText(textFile, generation));
+
+            long start = System.currentTimeMillis();
+            try {
+                textFile.index(() -> isLargeTextCancelled(generation),
+                               lineCount -> largeTextHandler.post(() -> {
+                                   if (!isLargeTextCancelled(generation) && largeTextAdapter != null) {
+                                       largeTextAdapter.setLineCount(lineCount);
+                                   }
+                               }));
+                Log_OC.d(TAG, "Indexed " + textFile.getLineCount() + " lines of " + textFile.getSize() + " bytes in "
+                    + (System.currentTimeMillis() - start) + " ms");
+            } catch (IOException e) {
+                if (!isLargeTextCancelled(generation)) {
+                    Log_OC.e(TAG, e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    private boolean isLargeTextCancelled(int generation) {
+        return largeTextGeneration.get() != generation;
+    }
+
+    /**
+     * Guesses the character set from the beginning of the file only.
+     */
+    private static Charset detectCharset(File file) {
+        UniversalDetector detector = new UniversalDetector(null);
+        byte[] buffer = new byte[4096];
+        int total = 0;
+        try (InputStream inputStream = new FileInputStream(file)) {
+            int read;
+            while (total < CHARSET_SAMPLE_SIZE && !detector.isDone() && (read = inputStream.read(buffer)) > 0) {
+                detector.handleData(buffer, 0, read);
+                total += read;
+            }
+        } catch (IOException e) {
+            Log_OC.e(TAG, e.getMessage(), e);
+        }
+        detector.dataEnd();
+
+        String encoding = detector.getDetectedCharset();
+        if (encoding != null) {
+            try {
+                return Charset.forName(encoding);
+            } catch (IllegalArgumentException e) {
+                Log_OC.w(TAG, "Unsupported character set " + encoding);
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private void showLargeText(LargeTextFile textFile, int generation) {
+        if (isLargeTextCancelled(generation) || binding == null) {
+            closeLargeText(textFile);
+            return;
+        }
+
+        largeTextFile = textFile;
+        largeTextAdapter = new LargeTextAdapter(textFile, getResources().getColor(R.color.primary));
+        lastMatch = -1;
+        binding.largeTextPreview.setAdapter(largeTextAdapter);
+        binding.textScrollView.setVisibility(View.GONE);
+        binding.largeTextPreview.setVisibility(View.VISIBLE);
+        binding.emptyListProgress.setVisibility(View.GONE);
+
+        if (searchView != null) {
+            searchView.setOnQueryTextListener(this);
+
+            if (searchOpen) {
+                searchView.setQuery(searchQuery, true);
+            }
+        }
+    }
+
+    @Override
+    public boolean onQueryTextSubmit(String query) {
+        if (largeTextAdapter == null) {
+            return super.onQueryTextSubmit(query);
+        }
+
+        handler.removeCallbacksAndMessages(null);
+        searchLargeText(query, lastMatch + 1);
+        if (searchView != null) {
+            searchView.clearFocus();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean onQueryTextChange(String newText) {
+        if (largeTextAdapter == null) {
+            return super.onQueryTextChange(newText);
+        }
+
+        handler.removeCallbacksAndMessages(null);
+        handler.postDelayed(() -> {
+            LinearLayoutManager layoutManager = binding == null ? null :
+                (LinearLayoutManager) binding.largeTextPreview.getLayoutManager();
+            int firstVisibleLine = layoutManager == null ? 0 : layoutManager.findFirstVisibleItemPosition();
+            searchLargeText(newText, firstVisibleLine);
+        }, SEARCH_DELAY);
+        return true;
+    }
+
+    /**
+     * Highlights a text and scrolls to the next line containing it, searching in background.
+     *
+     * @param fromLine first line to search, the search continues from the beginning of the file if nothing is found
+     */
+    private void searchLargeText(String query, int fromLine) {
+        if (largeTextAdapter == null || largeTextFile == null) {
+            return;
+        }
+
+        if (getActivity() instanceof FileDisplayActivity) {
+            ((FileDisplayActivity) getActivity()).setSearchQuery(query);
+        }
+        largeTextAdapter.setQuery(query);
+
+        int search = searchGeneration.incrementAndGet();
+        int generation = largeTextGeneration.get();
+        if (query == null || query.isEmpty()) {
+            lastMatch = -1;
+            return;
+        }
+
+        LargeTextFile textFile = largeTextFile;
+        LargeTextFile.Cancellation cancellation = () -> searchGeneration.get() != search ||
+            isLargeTextCancelled(generation);
+        largeTextExecutor.execute(() -> {
+            int line;
+            try {
+                line = textFile.findNext(query, fromLine, cancellation);
+                if (line == -1 && fromLine > 0) {
+                    line = textFile.findNext(query, 0, cancellation);
+                }
+            } catch (IOException e) {
+                if (!cancellation.isCancelled()) {
+                    Log_OC.e(TAG, e.getMessage(), e);
+                }
+                return;
+            }
+
+            int match = line;
+            largeTextHandler.post(() -> {
+                if (cancellation.isCancelled() || binding == null || match == -1) {
+                    return;
+                }
+                lastMatch = match;
+                LinearLayoutManager layoutManager = (LinearLayoutManager) binding.largeTextPreview.getLayoutManager();
+                if (layoutManager != null) {
+                    layoutManager.scrollToPositionWithOffset(match, 0);
+                }
+            });
+        });
+    }
+
+    private void stopLargeTextPreview() {
+        largeTextGeneration.incrementAndGet();
+        largeTextHandler.removeCallbacksAndMessages(null);
+        if (largeTextExecutor != null) {
+            largeTextExecutor.shutdownNow();
+            largeTextExecutor = null;
+        }
+        if (largeTextFile != null) {
+            closeLargeText(largeTextFile);
+            largeTextFile = null;
+        }
+        largeTextAdapter = null;
+    }
+
+    private static void closeLargeText(LargeTextFile textFile) {
+        try {
+            textFile.close();
+        } catch (IOException e) {
+            Log_OC.e(TAG, e.getMessage(), e);
+        }
+    }
+
     /**
      * Reads the file to preview and shows its contents. Too critical to be anonymous.
      */
@@ -390,6 +645,7 @@ public class PreviewTextFileFragment extends PreviewTextFragment {
         if (textLoadAsyncTask != null) {
             textLoadAsyncTask.cancel(true);
         }
+        stopLargeTextPreview();
     }
 
 }
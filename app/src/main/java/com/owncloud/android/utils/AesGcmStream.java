@@ -0,0 +1,309 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * AES-GCM (NIST SP 800-38D) over streams, with memory bounded by {@link #BUFFER_SIZE}.
+ * <p>
+ * The platform "AES/GCM/NoPadding" cipher buffers the complete message until {@link Cipher#doFinal()}, even when used
+ * through {@link javax.crypto.CipherInputStream} or {@link javax.crypto.CipherOutputStream}. Here the counter mode
+ * key stream is produced with "AES/ECB/NoPadding" and the authentication tag is computed incrementally, so files of
+ * any size can be processed.
+ * <p>
+ * The format is the one used for end-to-end encrypted files: cipher text followed by the 16 byte authentication tag,
+ * without additional authenticated data. Output is byte compatible with the platform cipher.
+ */
+public final class AesGcmStream {
+
+    public static final int TAG_LENGTH = 16;
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int BLOCK_SIZE = 16;
+    private static final String AES = "AES";
+    private static final String AES_ECB = "AES/ECB/NoPadding";
+
+    private static final long[] LAST4 = {
+        0x0000, 0x1c20, 0x3840, 0x2460, 0x7080, 0x6ca0, 0x48c0, 0x54e0,
+        0xe100, 0xfd20, 0xd940, 0xc560, 0x9180, 0x8da0, 0xa9c0, 0xb5e0
+    };
+
+    private final Cipher aes;
+    private final boolean encrypt;
+
+    // 4 bit multiplication tables of the hash subkey H
+    private final long[] hh = new long[16];
+    private final long[] hl = new long[16];
+
+    // GHASH state
+    private long yHi;
+    private long yLo;
+
+    private final byte[] preCounterBlock;
+    private final byte[] counter;
+    private final byte[] counterBlocks = new byte[BUFFER_SIZE];
+    private final byte[] keyStream = new byte[BUFFER_SIZE];
+    private final byte[] output = new byte[BUFFER_SIZE];
+    private long processedBytes;
+
+    private AesGcmStream(byte[] key, byte[] iv, boolean encrypt) throws GeneralSecurityException {
+        if (iv == null || iv.length == 0) {
+            throw new IllegalArgumentException("IV must not be empty");
+        }
+
+        this.encrypt = encrypt;
+        aes = Cipher.getInstance(AES_ECB);
+        aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, AES));
+
+        byte[] hashSubKey = aes.doFinal(new byte[BLOCK_SIZE]);
+        initTables(readLong(hashSubKey, 0), readLong(hashSubKey, 8));
+
+        preCounterBlock = new byte[BLOCK_SIZE];
+        if (iv.length == 12) {
+            System.arraycopy(iv, 0, preCounterBlock, 0, iv.length);
+            preCounterBlock[BLOCK_SIZE - 1] = 1;
+        } else {
+            ghash(iv, 0, iv.length);
+            yLo ^= (long) iv.length * 8;
+            multiplyH();
+            writeLong(yHi, preCounterBlock, 0);
+            writeLong(yLo, preCounterBlock, 8);
+            yHi = 0;
+            yLo = 0;
+        }
+
+        counter = preCounterBlock.clone();
+    }
+
+    /**
+     * Encrypts the whole input stream, writing cipher text and authentication tag to the output stream. Streams are
+     * not closed.
+     *
+     * @return the authentication tag, also appended to the output
+     */
+    public static byte[] encrypt(InputStream in, OutputStream out, byte[] key, byte[] iv)
+        throws IOException, GeneralSecurityException {
+        AesGcmStream gcm = new AesGcmStream(key, iv, true);
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        int read;
+        while ((read = readFully(in, buffer, 0, BUFFER_SIZE)) == BUFFER_SIZE) {
+            gcm.update(buffer, read, out);
+        }
+        gcm.update(buffer, read, out);
+
+        byte[] tag = gcm.tag();
+        out.write(tag);
+        return tag;
+    }
+
+    /**
+     * Decrypts the whole input stream, consisting of cipher text followed by the authentication tag, and writes the
+     * plain text to the output stream. Streams are not closed.
+     * <p>
+     * Plain text is written before the tag at the end of the stream can be verified; callers must discard the output
+     * if an {@link AEADBadTagException} is thrown.
+     *
+     * @return the authentication tag read from the end of the input
+     * @throws AEADBadTagException if the input is not authentic
+     */
+    public static byte[] decrypt(InputStream in, OutputStream out, byte[] key, byte[] iv)
+        throws IOException, GeneralSecurityException {
+        AesGcmStream gcm = new AesGcmStream(key, iv, false);
+
+        // the last TAG_LENGTH bytes read so far are always held back as they might be the tag
+        byte[] buffer = new byte[BUFFER_SIZE + TAG_LENGTH];
+        int filled = 0;
+        while (true) {
+            filled += readFully(in, buffer, filled, buffer.length - filled);
+            if (filled < buffer.length) {
+                break;
+            }
+            gcm.update(buffer, BUFFER_SIZE, out);
+            System.arraycopy(buffer, BUFFER_SIZE, buffer, 0, TAG_LENGTH);
+            filled = TAG_LENGTH;
+        }
+
+        if (filled < TAG_LENGTH) {
+            throw new AEADBadTagException("Input too short to contain an authentication tag");
+        }
+
+        int remaining = filled - TAG_LENGTH;
+        gcm.update(buffer, remaining, out);
+
+        byte[] tag = new byte[TAG_LENGTH];
+        System.arraycopy(buffer, remaining, tag, 0, TAG_LENGTH);
+        if (!MessageDigest.isEqual(tag, gcm.tag())) {
+            throw new AEADBadTagException("Tag mismatch");
+        }
+        return tag;
+    }
+
+    /**
+     * Processes the first length bytes of the input buffer. All calls but the last one must pass a multiple of the
+     * block size.
+     */
+    private void update(byte[] input, int length, OutputStream out) throws IOException, GeneralSecurityException {
+        if (length == 0) {
+            return;
+        }
+
+        int blocks = (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        for (int i = 0; i < blocks; i++) {
+            incrementCounter();
+            System.arraycopy(counter, 0, counterBlocks, i * BLOCK_SIZE, BLOCK_SIZE);
+        }
+        aes.update(counterBlocks, 0, blocks * BLOCK_SIZE, keyStream, 0);
+
+        for (int i = 0; i < length; i++) {
+            output[i] = (byte) (input[i] ^ keyStream[i]);
+        }
+
+        ghash(encrypt ? output : input, 0, length);
+        out.write(output, 0, length);
+        processedBytes += length;
+    }
+
+    private byte[] tag() throws GeneralSecurityException {
+        yLo ^= processedBytes * 8;
+        multiplyH();
+
+        byte[] tag = aes.doFinal(preCounterBlock);
+        for (int i = 0; i < 8; i++) {
+            tag[i] ^= (byte) (yHi >>> (56 - 8 * i));
+            tag[i + 8] ^= (byte) (yLo >>> (56 - 8 * i));
+        }
+        return tag;
+    }
+
+    /**
+     * Increments the rightmost 32 bits of the counter block, modulo 2^32.
+     */
+    private void incrementCounter() {
+        for (int i = BLOCK_SIZE - 1; i >= BLOCK_SIZE - 4; i--) {
+            if (++counter[i] != 0) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Absorbs data into the GHASH state; a trailing partial block is padded with zeros.
+     */
+    private void ghash(byte[] data, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i += BLOCK_SIZE) {
+            if (end - i >= BLOCK_SIZE) {
+                yHi ^= readLong(data, i);
+                yLo ^= readLong(data, i + 8);
+            } else {
+                byte[] last = new byte[BLOCK_SIZE];
+                System.arraycopy(data, i, last, 0, end - i);
+                yHi ^= readLong(last, 0);
+                yLo ^= readLong(last, 8);
+            }
+            multiplyH();
+        }
+    }
+
+    private void initTables(long vh, long vl) {
+        hh[8] = vh;
+        hl[8] = vl;
+        for (int i = 4; i > 0; i >>= 1) {
+            long reduction = (vl & 1) != 0 ? 0xe100000000000000L : 0L;
+            vl = (vh << 63) | (vl >>> 1);
+            vh = (vh >>> 1) ^ reduction;
+            hh[i] = vh;
+            hl[i] = vl;
+        }
+        for (int i = 2; i <= 8; i *= 2) {
+            vh = hh[i];
+            vl = hl[i];
+            for (int j = 1; j < i; j++) {
+                hh[i + j] = vh ^ hh[j];
+                hl[i + j] = vl ^ hl[j];
+            }
+        }
+    }
+
+    /**
+     * Y = Y * H in GF(2^128), processing Y four bits at a time.
+     */
+    private void multiplyH() {
+        long zh = 0;
+        long zl = 0;
+        for (int i = 15; i >= 0; i--) {
+            int b = (int) ((i < 8 ? yHi >>> (56 - 8 * i) : yLo >>> (120 - 8 * i)) & 0xff);
+            int low = b & 0x0f;
+            int high = b >>> 4;
+
+            if (i == 15) {
+                zh = hh[low];
+                zl = hl[low];
+            } else {
+                int rem = (int) (zl & 0x0f);
+                zl = (zh << 60) | (zl >>> 4);
+                zh = (zh >>> 4) ^ (LAST4[rem] << 48) ^ hh[low];
+                zl ^= hl[low];
+            }
+
+            int rem = (int) (zl & 0x0f);
+            zl = (zh << 60) | (zl >>> 4);
+            zh = (zh >>> 4) ^ (LAST4[rem] << 48) ^ hh[high];
+            zl ^= hl[high];
+        }
+        yHi = zh;
+        yLo = zl;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = in.read(buffer, offset + total, length - total);
+            if (read == -1) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static long readLong(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (data[offset + i] & 0xff);
+        }
+        return value;
+    }
+
+    private static void writeLong(long value, byte[] data, int offset) {
+        for (int i = 0; i < 8; i++) {
+            data[offset + i] = (byte) (value >>> (56 - 8 * i));
+        }
+    }
+}
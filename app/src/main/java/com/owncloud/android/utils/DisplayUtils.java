@@ -38,7 +38,6 @@ import android.graphics.Point;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.PictureDrawable;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.text.Spannable;
 import android.text.SpannableStringBuilder;
 import android.text.TextUtils;
@@ -888,12 +887,7 @@ public final class DisplayUtils {
                 } else {
                     // generate new thumbnail
                     if (ThumbnailsCacheManager.cancelPotentialThumbnailWork(file, thumbnailView)) {
-                        for (ThumbnailsCacheManager.ThumbnailGenerationTask task : asyncTasks) {
-                            if (file.getRemoteId() != null && task.getImageKey() != null &&
-                                file.getRemoteId().equals(task.getImageKey())) {
-                                return;
-                            }
-                        }
+                        // a load of the same thumbnail for another view is shared by the scheduler
                         try {
                             final ThumbnailsCacheManager.ThumbnailGenerationTask task =
                                 new ThumbnailsCacheManager.ThumbnailGenerationTask(thumbnailView,
@@ -942,7 +936,7 @@ public final class DisplayUtils {
 
                             thumbnailView.setImageDrawable(asyncDrawable);
                             asyncTasks.add(task);
-                            task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR,
+                            task.executeOnExecutor(ThumbnailsCacheManager.THUMBNAIL_SCHEDULER,
                                                    new ThumbnailsCacheManager.ThumbnailGenerationTaskObject(file,
                                                                                                             file.getRemoteId()));
                         } catch (IllegalArgumentException e) {
@@ -46,14 +46,19 @@ import com.owncloud.android.operations.UploadException;
 
 import org.apache.commons.httpclient.HttpStatus;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.Key;
@@ -356,6 +361,60 @@ public final class EncryptionUtils {
         return cipher.doFinal(fileBytes);
     }
 
+    /**
+     * Encrypts a file into another file with bounded memory, see {@link AesGcmStream}. The written file is byte
+     * compatible with {@link EncryptedFile#encryptedBytes} of {@link #encryptFile(File, byte[], byte[])}.
+     *
+     * @param file               file to crypt
+     * @param encryptedFile      target of cipher text and authentication tag
+     * @param encryptionKeyBytes key, either from metadata or {@link EncryptionUtils#generateKey()}
+     * @param iv                 initialization vector, either from metadata or {@link EncryptionUtils#randomBytes(int)}
+     * @return base64 encoded authenticationTag
+     */
+    public static String encryptFile(File file, File encryptedFile, byte[] encryptionKeyBytes, byte[] iv)
+        throws GeneralSecurityException, IOException {
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file));
+             OutputStream outputStream = new FileOutputStream(encryptedFile)) {
+            byte[] authenticationTag = AesGcmStream.encrypt(inputStream, outputStream, encryptionKeyBytes, iv);
+            return encodeBytesToBase64String(authenticationTag);
+        }
+    }
+
+    /**
+     * Decrypts a file into another file with bounded memory, see {@link AesGcmStream}. If the file is not authentic
+     * the partially written target file is deleted.
+     *
+     * @param file               encrypted file
+     * @param decryptedFile      target of the plain text
+     * @param encryptionKeyBytes key from metadata
+     * @param iv                 initialization vector from metadata
+     * @param authenticationTag  authenticationTag from metadata
+     */
+    public static void decryptFile(File file,
+                                   File decryptedFile,
+                                   byte[] encryptionKeyBytes,
+                                   byte[] iv,
+                                   byte[] authenticationTag) throws GeneralSecurityException, IOException {
+        boolean success = false;
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file));
+             OutputStream outputStream = new FileOutputStream(decryptedFile)) {
+            byte[] extractedAuthenticationTag = AesGcmStream.decrypt(inputStream,
+                                                                     outputStream,
+                                                                     encryptionKeyBytes,
+                                                                     iv);
+
+            // check authentication tag
+            if (!Arrays.equals(extractedAuthenticationTag, authenticationTag)) {
+                throw new SecurityException("Tag not correct");
+            }
+            success = true;
+        } finally {
+            if (!success && decryptedFile.exists() && !decryptedFile.delete()) {
+                Log_OC.e(TAG, "Could not delete partially decrypted file " + decryptedFile.getAbsolutePath());
+            }
+        }
+    }
+
     public static class EncryptedFile {
         public byte[] encryptedBytes;
         public String authenticationTag;
@@ -20,6 +20,7 @@
  */
 package com.owncloud.android.utils
 
+import com.owncloud.android.datamodel.LocalFolderSizeCache
 import com.owncloud.android.datamodel.OCFile
 import com.owncloud.android.lib.resources.files.model.ServerFileInterface
 import com.owncloud.android.lib.resources.trashbin.model.TrashbinFile
@@ -52,12 +53,18 @@ class FileSortOrderBySize internal constructor(name: String?, ascending: Boolean
         return files
     }
 
+    /**
+     * Lists the subtrees of local folders that are not cached yet, so it must not be called on the main thread.
+     */
     override fun sortLocalFiles(files: MutableList<File>): List<File> {
+        // sizes are computed before sorting, so the comparator neither walks folders nor sees them change
+        val folderSizeCache = LocalFolderSizeCache.getInstance()
+        val folderSizes = files.filter { it.isDirectory }.associateWith { folderSizeCache.computeSize(it) }
 
         files.sortWith { o1: File, o2: File ->
             when {
-                o1.isDirectory && o2.isDirectory -> sortMultiplier * FileStorageUtils.getFolderSize(o1)
-                    .compareTo(FileStorageUtils.getFolderSize(o2))
+                o1.isDirectory && o2.isDirectory -> sortMultiplier * (folderSizes[o1] ?: 0L)
+                    .compareTo(folderSizes[o2] ?: 0L)
                 o1.isDirectory -> -1
                 o2.isDirectory -> 1
                 else -> sortMultiplier * o1.length().compareTo(o2.length())
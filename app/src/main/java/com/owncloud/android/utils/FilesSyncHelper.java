@@ -39,6 +39,7 @@ import com.nextcloud.client.jobs.BackgroundJobManager;
 import com.nextcloud.client.network.ConnectivityService;
 import com.nextcloud.client.preferences.AppPreferences;
 import com.owncloud.android.MainApp;
+import com.owncloud.android.datamodel.ArbitraryDataProvider;
 import com.owncloud.android.datamodel.FilesystemDataProvider;
 import com.owncloud.android.datamodel.MediaFolderType;
 import com.owncloud.android.datamodel.SyncedFolder;
@@ -57,6 +58,13 @@ import org.lukhnos.nnio.file.attribute.BasicFileAttributes;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import static com.owncloud.android.datamodel.OCFile.PATH_SEPARATOR;
 
@@ -70,6 +78,11 @@ public final class FilesSyncHelper {
 
     public static final int ContentSyncJobId = 315;
 
+    static final long NO_WATERMARK = -1;
+    private static final String WATERMARK_KEY_PREFIX = "auto_upload_watermark_";
+    private static final String MEDIA_IMAGES_SEGMENT = "images";
+    private static final String MEDIA_VIDEO_SEGMENT = "video";
+
     private FilesSyncHelper() {
         // utility class -> private constructor
     }
@@ -82,19 +95,11 @@ public final class FilesSyncHelper {
 
         if (syncedFolder.isEnabled() && (syncedFolder.isExisting() || enabledTimestampMs >= 0)) {
             MediaFolderType mediaType = syncedFolder.getType();
-            if (mediaType == MediaFolderType.IMAGE) {
-                FilesSyncHelper.insertContentIntoDB(MediaStore.Images.Media.INTERNAL_CONTENT_URI
-                    , syncedFolder);
-                FilesSyncHelper.insertContentIntoDB(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-                                                    syncedFolder);
-            } else if (mediaType == MediaFolderType.VIDEO) {
-                FilesSyncHelper.insertContentIntoDB(MediaStore.Video.Media.INTERNAL_CONTENT_URI,
-                                                    syncedFolder);
-                FilesSyncHelper.insertContentIntoDB(MediaStore.Video.Media.EXTERNAL_CONTENT_URI,
-                                                    syncedFolder);
+            if (mediaType == MediaFolderType.IMAGE || mediaType == MediaFolderType.VIDEO) {
+                insertMediaIntoDB(syncedFolder, NO_WATERMARK);
             } else {
-                try {
-                    FilesystemDataProvider filesystemDataProvider = new FilesystemDataProvider(contentResolver);
+                FilesystemDataProvider filesystemDataProvider = new FilesystemDataProvider(contentResolver);
+                try (FilesystemDataProvider.Batch batch = filesystemDataProvider.startBatch(syncedFolder)) {
                     Path path = Paths.get(syncedFolder.getLocalPath());
 
                     Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
@@ -102,9 +107,9 @@ public final class FilesSyncHelper {
                         public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
                             File file = path.toFile();
                             if (syncedFolder.isExisting() || attrs.lastModifiedTime().toMillis() >= enabledTimestampMs) {
-                                filesystemDataProvider.storeOrUpdateFileValue(path.toAbsolutePath().toString(),
-                                                                              attrs.lastModifiedTime().toMillis(),
-                                                                              file.isDirectory(), syncedFolder);
+                                batch.storeOrUpdateFileValue(path.toAbsolutePath().toString(),
+                                                             attrs.lastModifiedTime().toMillis(),
+                                                             file.isDirectory());
                             }
 
                             return FileVisitResult.CONTINUE;
@@ -136,20 +141,133 @@ public final class FilesSyncHelper {
         }
     }
 
-    private static void insertContentIntoDB(Uri uri, SyncedFolder syncedFolder) {
+    /**
+     * Stores media added or changed since the last run into the filesystem table, instead of scanning all synced
+     * folders like {@link #insertAllDBEntries(AppPreferences, Clock, boolean)}.
+     * <p>
+     * Only image and video folders matching the changed content are queried, and only for media added or modified
+     * since the watermark of the folder; folders without a watermark yet are scanned completely. Custom folders are
+     * not observed by MediaStore and are left to the periodic full scan.
+     *
+     * @param changedContentUris MediaStore content uris reported as changed, all media types are queried if empty
+     */
+    public static void insertChangedDBEntries(AppPreferences preferences,
+                                              Clock clock,
+                                              @Nullable String[] changedContentUris) {
+        final Context context = MainApp.getAppContext();
+        final ContentResolver contentResolver = context.getContentResolver();
+        SyncedFolderProvider syncedFolderProvider = new SyncedFolderProvider(contentResolver, preferences, clock);
+        ArbitraryDataProvider arbitraryDataProvider = new ArbitraryDataProvider(contentResolver);
+        Set<MediaFolderType> changedTypes = getChangedMediaTypes(changedContentUris);
+
+        for (SyncedFolder syncedFolder : syncedFolderProvider.getSyncedFolders()) {
+            if (!syncedFolder.isEnabled() || !changedTypes.contains(syncedFolder.getType())) {
+                continue;
+            }
+
+            long watermark = arbitraryDataProvider.getLongValue(syncedFolder.getAccount(),
+                                                                getWatermarkKey(syncedFolder));
+            if (watermark == NO_WATERMARK) {
+                insertAllDBEntriesForSyncedFolder(syncedFolder);
+            } else {
+                insertMediaIntoDB(syncedFolder, watermark);
+            }
+        }
+    }
+
+    /**
+     * @param contentUris MediaStore content uris, e.g. content://media/external/images/media/42
+     * @return media folder types the uris belong to, images and videos if unknown
+     */
+    @VisibleForTesting
+    static Set<MediaFolderType> getChangedMediaTypes(@Nullable String[] contentUris) {
+        Set<MediaFolderType> types = EnumSet.noneOf(MediaFolderType.class);
+        if (contentUris != null) {
+            for (String contentUri : contentUris) {
+                List<String> segments = Arrays.asList(contentUri.split(PATH_SEPARATOR));
+                if (segments.contains(MEDIA_IMAGES_SEGMENT)) {
+                    types.add(MediaFolderType.IMAGE);
+                } else if (segments.contains(MEDIA_VIDEO_SEGMENT)) {
+                    types.add(MediaFolderType.VIDEO);
+                } else {
+                    types.add(MediaFolderType.IMAGE);
+                    types.add(MediaFolderType.VIDEO);
+                }
+            }
+        }
+        if (types.isEmpty()) {
+            types.add(MediaFolderType.IMAGE);
+            types.add(MediaFolderType.VIDEO);
+        }
+        return types;
+    }
+
+    /**
+     * MediaStore timestamps are in seconds, so media stored in the second of the watermark are queried again by the
+     * next run; storing them twice is harmless. Timestamps in the future, e.g. of media copied from a device with a
+     * wrong clock, do not move the watermark past the current time.
+     *
+     * @return watermark after seeing a media item with the given timestamps, all in seconds
+     */
+    @VisibleForTesting
+    static long advanceWatermark(long watermark, long dateAdded, long dateModified, long nowSeconds) {
+        long latest = Math.min(Math.max(dateAdded, dateModified), nowSeconds);
+        return Math.max(watermark, latest);
+    }
+
+    private static String getWatermarkKey(SyncedFolder syncedFolder) {
+        return WATERMARK_KEY_PREFIX + syncedFolder.getId();
+    }
+
+    private static void insertMediaIntoDB(SyncedFolder syncedFolder, long sinceSeconds) {
+        long watermark = sinceSeconds;
+        if (syncedFolder.getType() == MediaFolderType.IMAGE) {
+            watermark = Math.max(watermark, insertContentIntoDB(MediaStore.Images.Media.INTERNAL_CONTENT_URI,
+                                                                syncedFolder,
+                                                                sinceSeconds));
+            watermark = Math.max(watermark, insertContentIntoDB(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+                                                                syncedFolder,
+                                                                sinceSeconds));
+        } else {
+            watermark = Math.max(watermark, insertContentIntoDB(MediaStore.Video.Media.INTERNAL_CONTENT_URI,
+                                                                syncedFolder,
+                                                                sinceSeconds));
+            watermark = Math.max(watermark, insertContentIntoDB(MediaStore.Video.Media.EXTERNAL_CONTENT_URI,
+                                                                syncedFolder,
+                                                                sinceSeconds));
+        }
+
+        if (watermark != sinceSeconds) {
+            new ArbitraryDataProvider(MainApp.getAppContext().getContentResolver())
+                .storeOrUpdateKeyValue(syncedFolder.getAccount(), getWatermarkKey(syncedFolder), watermark);
+        }
+    }
+
+    /**
+     * @param sinceSeconds only media added or modified since then are stored, all if {@link #NO_WATERMARK}
+     * @return watermark of the stored media in seconds, {@link #NO_WATERMARK} if none was found
+     */
+    private static long insertContentIntoDB(Uri uri, SyncedFolder syncedFolder, long sinceSeconds) {
         final Context context = MainApp.getAppContext();
         final ContentResolver contentResolver = context.getContentResolver();
 
         Cursor cursor;
         int column_index_data;
+        int column_index_date_added;
         int column_index_date_modified;
 
         final FilesystemDataProvider filesystemDataProvider = new FilesystemDataProvider(contentResolver);
 
         String contentPath;
         boolean isFolder;
+        long watermark = NO_WATERMARK;
+        long nowSeconds = System.currentTimeMillis() / 1000;
 
-        String[] projection = {MediaStore.MediaColumns.DATA, MediaStore.MediaColumns.DATE_MODIFIED};
+        String[] projection = {
+            MediaStore.MediaColumns.DATA,
+            MediaStore.MediaColumns.DATE_ADDED,
+            MediaStore.MediaColumns.DATE_MODIFIED
+        };
 
         String path = syncedFolder.getLocalPath();
         if (!path.endsWith(PATH_SEPARATOR)) {
@@ -159,23 +277,41 @@ public final class FilesSyncHelper {
 
         long enabledTimestampMs = syncedFolder.getEnabledTimestampMs();
 
-        cursor = context.getContentResolver().query(uri, projection, MediaStore.MediaColumns.DATA + " LIKE ?",
-                                                    new String[]{path}, null);
+        String selection = MediaStore.MediaColumns.DATA + " LIKE ?";
+        String[] selectionArgs;
+        if (sinceSeconds == NO_WATERMARK) {
+            selectionArgs = new String[]{path};
+        } else {
+            selection = selection + " AND (" + MediaStore.MediaColumns.DATE_ADDED + " >= ? OR " +
+                MediaStore.MediaColumns.DATE_MODIFIED + " >= ?)";
+            String since = String.valueOf(sinceSeconds);
+            selectionArgs = new String[]{path, since, since};
+        }
+
+        cursor = context.getContentResolver().query(uri, projection, selection, selectionArgs, null);
 
         if (cursor != null) {
             column_index_data = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATA);
+            column_index_date_added = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATE_ADDED);
             column_index_date_modified = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATE_MODIFIED);
-            while (cursor.moveToNext()) {
-                contentPath = cursor.getString(column_index_data);
-                isFolder = new File(contentPath).isDirectory();
-                if (syncedFolder.isExisting() || cursor.getLong(column_index_date_modified) >= enabledTimestampMs / 1000.0) {
-                    filesystemDataProvider.storeOrUpdateFileValue(contentPath,
-                                                                  cursor.getLong(column_index_date_modified), isFolder,
-                                                                  syncedFolder);
+            try (FilesystemDataProvider.Batch batch = filesystemDataProvider.startBatch(syncedFolder)) {
+                while (cursor.moveToNext()) {
+                    contentPath = cursor.getString(column_index_data);
+                    isFolder = new File(contentPath).isDirectory();
+                    if (syncedFolder.isExisting() ||
+                        cursor.getLong(column_index_date_modified) >= enabledTimestampMs / 1000.0) {
+                        batch.storeOrUpdateFileValue(contentPath, cursor.getLong(column_index_date_modified), isFolder);
+                    }
+                    watermark = advanceWatermark(watermark,
+                                                 cursor.getLong(column_index_date_added),
+                                                 cursor.getLong(column_index_date_modified),
+                                                 nowSeconds);
                 }
             }
             cursor.close();
         }
+
+        return watermark;
     }
 
     public static void restartJobsIfNeeded(final UploadsStorageManager uploadsStorageManager,
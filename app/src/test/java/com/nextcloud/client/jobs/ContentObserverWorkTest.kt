@@ -31,6 +31,8 @@ import org.junit.Test
 import org.mockito.Mock
 import org.mockito.Mockito
 import org.mockito.MockitoAnnotations
+import org.mockito.kotlin.any
+import org.mockito.kotlin.never
 import org.mockito.kotlin.verify
 import org.mockito.kotlin.whenever
 
@@ -82,6 +84,27 @@ class ContentObserverWorkTest {
         verify(backgroundJobManager).scheduleContentObserverJob()
     }
 
+    @Test
+    fun sync_stores_only_triggered_content() {
+        // GIVEN
+        //      power saving is disabled
+        //      some folders are configured for syncing
+        //      some media changed
+        whenever(powerManagementService.isPowerSavingEnabled).thenReturn(false)
+        whenever(folderProvider.countEnabledSyncedFolders()).thenReturn(1)
+        val uris: List<Uri> = listOf(Mockito.mock(Uri::class.java), Mockito.mock(Uri::class.java))
+        whenever(params.triggeredContentUris).thenReturn(uris)
+
+        // WHEN
+        //      worker is called
+        worker.doWork()
+
+        // THEN
+        //      incremental sync of the changed media is started instead of a full scan
+        verify(backgroundJobManager).startIncrementalFilesSyncJob(uris)
+        verify(backgroundJobManager, never()).startImmediateFilesSyncJob(any(), any())
+    }
+
     @Test
     @Ignore("TODO: needs further refactoring")
     fun sync_is_triggered() {
@@ -0,0 +1,205 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.logger
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+import java.util.Date
+
+class LogFileReaderTest {
+
+    private companion object {
+        const val FILE_SIZE = 1024L
+        const val PAGE_SIZE = 4
+        const val LONG_LINE_LENGTH = 200000
+        const val LINE_COUNT = 20000
+        const val LARGE_LOG_PAGE_SIZE = 500
+    }
+
+    private lateinit var logDir: File
+    private lateinit var handler: FileLogHandler
+    private var reader: LogFileReader? = null
+
+    private fun writeLogFile(name: String, content: String) {
+        File(logDir, name).writeText(content)
+    }
+
+    private fun open(): LogFileReader {
+        return handler.openLogReader().also { reader = it }
+    }
+
+    private fun readAll(reader: LogFileReader, pageSize: Int = PAGE_SIZE): List<String> {
+        val lines = mutableListOf<String>()
+        var position = reader.tail
+        while (position != null) {
+            val page = reader.read(position, pageSize)
+            lines.addAll(page.lines)
+            position = page.next
+        }
+        return lines
+    }
+
+    @Before
+    fun setUp() {
+        logDir = Files.createTempDirectory("log-reader-test-").toFile()
+        handler = FileLogHandler(logDir, "log.txt", FILE_SIZE)
+    }
+
+    @After
+    fun tearDown() {
+        reader?.close()
+        logDir.deleteRecursively()
+    }
+
+    @Test
+    fun `lines are read newest first across rotated files`() {
+        // GIVEN
+        //      rotated log files exist
+        //      some rotated file is missing
+        //      some file is empty
+        //      current file has no final line feed
+        writeLogFile("log.txt.2", "line1\nline2\n")
+        writeLogFile("log.txt.0", "")
+        writeLogFile("log.txt.1", "line3\n\nline4\n")
+        writeLogFile("log.txt", "line5\nline6")
+
+        // WHEN
+        //      logs are read page by page
+        val reader = open()
+        val lines = readAll(reader)
+
+        // THEN
+        //      all lines are read in reverse order
+        //      empty lines are kept
+        //      size of all files is reported
+        assertEquals(listOf("line6", "line5", "line4", "", "line3", "line2", "line1"), lines)
+        assertEquals(handler.loadLogFiles().logSize, reader.size)
+    }
+
+    @Test
+    fun `pages are limited in size`() {
+        // GIVEN
+        //      log file has more lines than a page
+        writeLogFile("log.txt", (1..10).joinToString(separator = "") { "line$it\n" })
+
+        // WHEN
+        //      first page is read
+        val reader = open()
+        val page = reader.read(reader.tail!!, PAGE_SIZE)
+
+        // THEN
+        //      page holds the newest lines
+        assertEquals(listOf("line10", "line9", "line8", "line7"), page.lines)
+        assertEquals(listOf("line6", "line5", "line4", "line3"), reader.read(page.next!!, PAGE_SIZE).lines)
+    }
+
+    @Test
+    fun `long lines are read`() {
+        // GIVEN
+        //      log file has lines longer than read blocks
+        val longLine = "ä".repeat(LONG_LINE_LENGTH)
+        writeLogFile("log.txt", "short\n$longLine\nend\n")
+
+        // WHEN
+        //      logs are read
+        val lines = readAll(open(), pageSize = 1)
+
+        // THEN
+        //      lines are not split
+        assertEquals(listOf("end", longLine, "short"), lines)
+    }
+
+    @Test
+    fun `logs written after opening are not read`() {
+        // GIVEN
+        //      logs are opened
+        writeLogFile("log.txt", "line1\nline2\n")
+        val reader = open()
+
+        // WHEN
+        //      logs are written
+        //      logs are rotated
+        handler.open()
+        handler.write("line3\n")
+        handler.rotateLogs()
+        handler.write("line4\n")
+        handler.close()
+
+        // THEN
+        //      logs are read as they were when opened
+        assertEquals(listOf("line2", "line1"), readAll(reader))
+        assertEquals(listOf("line1", "line2"), reader.lines().toList())
+    }
+
+    @Test
+    fun `no logs`() {
+        // WHEN
+        //      there are no log files
+        val reader = open()
+
+        // THEN
+        //      there is nothing to read
+        assertNull(reader.tail)
+        assertEquals(0L, reader.size)
+        assertEquals(emptyList<String>(), reader.lines().toList())
+    }
+
+    @Test
+    fun `all lines are read oldest first`() {
+        // GIVEN
+        //      rotated log files exist
+        writeLogFile("log.txt.0", "line1\nline2\n")
+        writeLogFile("log.txt", "line3\nline4\n")
+
+        // WHEN
+        //      all lines are read
+        val lines = open().lines().toList()
+
+        // THEN
+        //      lines are in order of writes
+        assertEquals(handler.loadLogFiles().lines, lines)
+    }
+
+    @Test
+    fun `first page of large log holds newest entries`() {
+        // GIVEN
+        //      large log file exists
+        val entries = (1..LINE_COUNT).map {
+            LogEntry(Date(), Level.DEBUG, "tag", "log message number $it").toString()
+        }
+        writeLogFile("log.txt", entries.joinToString(separator = "") { "$it\n" })
+
+        // WHEN
+        //      all logs are loaded and parsed
+        //      first page is read and parsed
+        val all = handler.loadLogFiles().lines.mapNotNull { LogEntry.parse(it) }
+        val reader = open()
+        val page = reader.read(reader.tail!!, LARGE_LOG_PAGE_SIZE).lines.mapNotNull { LogEntry.parse(it) }
+
+        // THEN
+        //      page holds the newest entries
+        assertEquals(LINE_COUNT, all.size)
+        assertEquals(all.takeLast(LARGE_LOG_PAGE_SIZE).reversed(), page)
+    }
+}
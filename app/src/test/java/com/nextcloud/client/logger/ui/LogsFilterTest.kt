@@ -0,0 +1,241 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.logger.ui
+
+import com.nextcloud.client.core.ManualAsyncRunner
+import com.nextcloud.client.logger.Level
+import com.nextcloud.client.logger.LogEntry
+import com.nextcloud.client.logger.LogFileReader
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.whenever
+import java.io.File
+import java.nio.file.Files
+import java.util.Date
+
+class LogsFilterTest {
+
+    private companion object {
+        const val PAGE_COUNT = 3
+        const val ENTRY_COUNT = LogsFilter.PAGE_SIZE * PAGE_COUNT
+        const val DELAY_MS = 123L
+    }
+
+    class OnResult : (LogsFilter.Result) -> Unit {
+        val results = mutableListOf<LogsFilter.Result>()
+        val last: LogsFilter.Result? get() = results.lastOrNull()
+        override fun invoke(result: LogsFilter.Result) {
+            results.add(result)
+        }
+    }
+
+    private lateinit var logDir: File
+    private lateinit var entries: List<LogEntry>
+    private lateinit var reader: LogFileReader
+    private lateinit var time: () -> Long
+    private lateinit var runner: ManualAsyncRunner
+    private lateinit var filter: LogsFilter
+    private var now = 0L
+
+    @Before
+    fun setUp() {
+        logDir = Files.createTempDirectory("logs-filter-test-").toFile()
+        entries = (1..ENTRY_COUNT).map {
+            val tag = if (it % 2 == 0) "even" else "odd"
+            LogEntry(Date(), Level.DEBUG, tag, "entry $it")
+        }
+        val logFile = File(logDir, "log.txt")
+        logFile.writeText(entries.joinToString(separator = "") { "$it\n" })
+        reader = LogFileReader(listOf(logFile))
+
+        now = System.currentTimeMillis()
+        time = mock()
+        whenever(time.invoke()).thenAnswer { now }
+        runner = ManualAsyncRunner()
+        filter = LogsFilter(runner, time)
+    }
+
+    @After
+    fun tearDown() {
+        reader.close()
+        logDir.deleteRecursively()
+    }
+
+    private fun expected(query: String) = entries.filter {
+        it.tag.contains(query, true) || it.message.contains(query, true)
+    }
+
+    @Test
+    fun `logs are filtered asynchronously page by page`() {
+        val result = OnResult()
+
+        // GIVEN
+        //      filtering is scheduled
+        filter.filter(reader, "EVEN", result)
+        assertEquals(1, runner.size)
+        assertNull(result.last)
+
+        // WHEN
+        //      all pages are scanned
+        assertEquals(PAGE_COUNT, runner.runAll())
+
+        // THEN
+        //      newest matches are delivered after first page
+        //      all matches are delivered when scan completes, oldest first
+        assertEquals(2, result.results.size)
+        assertFalse(result.results.first().isComplete)
+        assertEquals(LogsFilter.PAGE_SIZE, result.results.first().scanned)
+        assertTrue(result.last!!.isComplete)
+        assertEquals(ENTRY_COUNT, result.last!!.scanned)
+        assertEquals(expected("even"), result.last!!.matches)
+    }
+
+    @Test
+    fun `narrowing query resumes scan`() {
+        val firstResult = OnResult()
+        val secondResult = OnResult()
+
+        // GIVEN
+        //      first page was scanned for a query
+        filter.filter(reader, "entry 1", firstResult)
+        runner.runOne()
+
+        // WHEN
+        //      narrower query is requested while second page is scanned
+        filter.filter(reader, "entry 12", secondResult)
+        runner.runAll()
+
+        // THEN
+        //      first query result is not delivered any more
+        //      second query needs no more pages than the first one
+        //      second query finds all matches
+        assertEquals(1, firstResult.results.size)
+        assertEquals(expected("entry 12"), secondResult.last!!.matches)
+        assertEquals(ENTRY_COUNT, secondResult.last!!.scanned)
+    }
+
+    @Test
+    fun `narrowing completed query needs no scan`() {
+        val firstResult = OnResult()
+        val secondResult = OnResult()
+
+        // GIVEN
+        //      logs were filtered
+        filter.filter(reader, "entry 7", firstResult)
+        runner.runAll()
+
+        // WHEN
+        //      narrower query is requested
+        filter.filter(reader, "Entry 77", secondResult)
+
+        // THEN
+        //      result is delivered immediately
+        assertTrue(runner.isEmpty)
+        assertTrue(secondResult.last!!.isComplete)
+        assertEquals(expected("entry 77"), secondResult.last!!.matches)
+    }
+
+    @Test
+    fun `other query restarts scan`() {
+        val firstResult = OnResult()
+        val secondResult = OnResult()
+
+        // GIVEN
+        //      logs were filtered
+        filter.filter(reader, "even", firstResult)
+        runner.runAll()
+
+        // WHEN
+        //      unrelated query is requested
+        filter.filter(reader, "odd", secondResult)
+
+        // THEN
+        //      all pages are scanned again
+        assertEquals(PAGE_COUNT, runner.runAll())
+        assertEquals(expected("odd"), secondResult.last!!.matches)
+    }
+
+    @Test
+    fun `pending requests are overwritten by new requests`() {
+        val firstResult = OnResult()
+        val secondResult = OnResult()
+        val thirdResult = OnResult()
+
+        // GIVEN
+        //      first page is being scanned
+        filter.filter(reader, "even", firstResult)
+
+        // WHEN
+        //      few new filtering requests are posted
+        filter.filter(reader, "entry 2", secondResult)
+        filter.filter(reader, "entry 3", thirdResult)
+        runner.runAll()
+
+        // THEN
+        //      second request never runs
+        //      third request runs and completes
+        assertEquals(0, secondResult.results.size)
+        assertEquals(expected("entry 3"), thirdResult.last!!.matches)
+    }
+
+    @Test
+    fun `cancelled filter delivers nothing`() {
+        val result = OnResult()
+
+        // GIVEN
+        //      filtering is running
+        filter.filter(reader, "even", result)
+
+        // WHEN
+        //      filtering is cancelled
+        filter.cancel()
+
+        // THEN
+        //      no task is left
+        //      no result is delivered
+        assertTrue(runner.isEmpty)
+        runner.runAll()
+        assertNull(result.last)
+    }
+
+    @Test
+    fun `filtering is timed`() {
+        val result = OnResult()
+
+        // GIVEN
+        //      filtering is scheduled
+        val startTime = now
+        filter.filter(reader, "even", result)
+
+        // WHEN
+        //      result is delivered with a delay
+        now = startTime + DELAY_MS
+        runner.runAll()
+
+        // THEN
+        //      delay is calculated from current time
+        assertEquals(DELAY_MS, result.last!!.durationMs)
+    }
+}
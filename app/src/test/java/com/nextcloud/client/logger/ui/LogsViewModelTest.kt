@@ -25,13 +25,14 @@ import com.nextcloud.client.core.Clock
 import com.nextcloud.client.core.ManualAsyncRunner
 import com.nextcloud.client.logger.Level
 import com.nextcloud.client.logger.LogEntry
+import com.nextcloud.client.logger.LogFileReader
 import com.nextcloud.client.logger.LogsRepository
 import com.nextcloud.client.logger.OnLogsLoaded
+import com.nextcloud.client.logger.OnLogsOpened
 import org.junit.Assert.assertEquals
 import org.junit.Assert.assertFalse
 import org.junit.Assert.assertNotNull
 import org.junit.Assert.assertNull
-import org.junit.Assert.assertSame
 import org.junit.Assert.assertTrue
 import org.junit.Before
 import org.junit.Rule
@@ -42,6 +43,8 @@ import org.mockito.MockitoAnnotations
 import org.mockito.kotlin.any
 import org.mockito.kotlin.mock
 import org.mockito.kotlin.whenever
+import java.io.File
+import java.nio.file.Files
 import java.util.Date
 
 @RunWith(Suite::class)
@@ -57,8 +60,8 @@ class LogsViewModelTest {
             LogEntry(Date(), Level.DEBUG, "test", "entry 2"),
             LogEntry(Date(), Level.DEBUG, "test", "entry 3")
         )
-        val TEST_LOG_SIZE_KILOBYTES = 42L
-        val TEST_LOG_SIZE_BYTES = TEST_LOG_SIZE_KILOBYTES * 1024L
+        const val PAGE_COUNT = 2
+        const val KILOBYTE = 1024L
         const val TOTAL_ENTRY_COUNT = 3
         const val QUERY_TIME = 4
     }
@@ -66,9 +69,11 @@ class LogsViewModelTest {
     class TestLogRepository : LogsRepository {
         var loadRequestCount = 0
         var onLoadedCallback: OnLogsLoaded? = null
+        var onOpenedCallback: OnLogsOpened? = null
 
         override val lostEntries: Boolean = false
         override fun load(onLoaded: OnLogsLoaded) { this.onLoadedCallback = onLoaded; loadRequestCount++ }
+        override fun open(onOpened: OnLogsOpened) { this.onOpenedCallback = onOpened; loadRequestCount++ }
         override fun deleteAll() { /* no implementation neeeded */
         }
     }
@@ -84,6 +89,12 @@ class LogsViewModelTest {
         @get:Rule
         val rule = InstantTaskExecutorRule()
 
+        protected fun openLog(entries: List<LogEntry>): LogFileReader {
+            val logFile = File(Files.createTempDirectory("logs-view-model-test-").toFile(), "log.txt")
+            logFile.writeText(entries.joinToString(separator = "") { "$it\n" })
+            return LogFileReader(listOf(logFile))
+        }
+
         @Before
         fun setUpFixture() {
             MockitoAnnotations.initMocks(this)
@@ -123,7 +134,7 @@ class LogsViewModelTest {
             //      loading status is true
             //      repository request is posted
             assertTrue(vm.isLoading.value!!)
-            assertNotNull(repository.onLoadedCallback)
+            assertNotNull(repository.onOpenedCallback)
         }
 
         @Test
@@ -131,22 +142,55 @@ class LogsViewModelTest {
             // GIVEN
             //      logs are being loaded
             vm.load()
-            assertNotNull(repository.onLoadedCallback)
+            assertNotNull(repository.onOpenedCallback)
             assertTrue(vm.isLoading.value!!)
 
             // WHEN
-            //      logs loading finishes
-            repository.onLoadedCallback?.invoke(TEST_LOG_ENTRIES, TEST_LOG_SIZE_BYTES)
+            //      logs are opened
+            //      first page is loaded
+            repository.onOpenedCallback?.invoke(openLog(TEST_LOG_ENTRIES))
+            assertTrue(vm.isLoading.value!!)
+            assertEquals(1, runner.runAll())
 
             // THEN
             //      logs are displayed
             //      logs size is displyed
             //      status is displayed
             assertFalse(vm.isLoading.value!!)
-            assertSame(vm.entries.value, TEST_LOG_ENTRIES)
+            assertEquals(TEST_LOG_ENTRIES, vm.entries.value)
             assertNotNull(vm.status.value)
         }
 
+        @Test
+        fun `older logs are loaded page by page`() {
+            // GIVEN
+            //      logs have more entries than a page
+            //      first page is loaded
+            val entries = (1..LogsViewModel.PAGE_SIZE * PAGE_COUNT + 1).map {
+                LogEntry(Date(), Level.DEBUG, "test", "entry $it")
+            }
+            vm.load()
+            repository.onOpenedCallback?.invoke(openLog(entries))
+            runner.runAll()
+            assertEquals(entries.takeLast(LogsViewModel.PAGE_SIZE), vm.entries.value)
+
+            // WHEN
+            //      more entries are requested until all are loaded
+            //      more entries are requested while a page is loading
+            repeat(PAGE_COUNT) {
+                vm.loadMore()
+                vm.loadMore()
+                assertEquals(1, runner.runAll())
+            }
+            vm.loadMore()
+
+            // THEN
+            //      entries are displayed oldest first
+            //      no page is loaded once all entries are shown
+            assertEquals(entries, vm.entries.value)
+            assertTrue(runner.isEmpty)
+        }
+
         @Test
         fun `cannot start loading when loading is in progress`() {
             // GIVEN
@@ -157,22 +201,26 @@ class LogsViewModelTest {
 
             // WHEN
             //      load is requested
-            repository.onLoadedCallback = null
+            repository.onOpenedCallback = null
             vm.load()
 
             // THEN
             //      request is ignored
-            assertNull(repository.onLoadedCallback)
+            assertNull(repository.onOpenedCallback)
             assertEquals(1, repository.loadRequestCount)
         }
     }
 
     class Filtering : Fixture() {
 
+        private lateinit var reader: LogFileReader
+
         @Before
         fun setUp() {
+            reader = openLog(TEST_LOG_ENTRIES)
             vm.load()
-            repository.onLoadedCallback?.invoke(TEST_LOG_ENTRIES, TEST_LOG_SIZE_BYTES)
+            repository.onOpenedCallback?.invoke(reader)
+            runner.runAll()
             assertFalse(vm.isLoading.value!!)
             assertEquals(TEST_LOG_ENTRIES.size, vm.entries.value?.size)
         }
@@ -234,7 +282,7 @@ class LogsViewModelTest {
             val filteredEntry = vm.entries.value?.get(0)!!
             assertTrue(filteredEntry.message.contains(pattern))
 
-            assertEquals("Status should contain size in kB", TEST_LOG_SIZE_KILOBYTES, statusArgs[1])
+            assertEquals("Status should contain size in kB", reader.size / KILOBYTE, statusArgs[1])
             assertEquals("Status should show matched entries count", vm.entries.value?.size, statusArgs[2])
             assertEquals(
                 "Status should contain total entries count",
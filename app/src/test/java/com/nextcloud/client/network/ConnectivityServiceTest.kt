@@ -27,11 +27,13 @@ import android.os.Build
 import com.nextcloud.client.account.Server
 import com.nextcloud.client.account.User
 import com.nextcloud.client.account.UserAccountManager
+import com.nextcloud.client.core.Clock
 import com.nextcloud.client.logger.Logger
 import com.nextcloud.common.PlainClient
 import com.nextcloud.operations.GetMethod
 import com.owncloud.android.lib.resources.status.OwnCloudVersion
 import org.apache.commons.httpclient.HttpStatus
+import org.junit.Assert.assertEquals
 import org.junit.Assert.assertFalse
 import org.junit.Assert.assertSame
 import org.junit.Assert.assertTrue
@@ -50,13 +52,18 @@ import org.mockito.kotlin.times
 import org.mockito.kotlin.verify
 import org.mockito.kotlin.whenever
 import java.net.URI
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 
 @RunWith(Suite::class)
 @Suite.SuiteClasses(
     ConnectivityServiceTest.Disconnected::class,
     ConnectivityServiceTest.IsConnected::class,
     ConnectivityServiceTest.WifiConnectionWalledStatusOnLegacyServer::class,
-    ConnectivityServiceTest.WifiConnectionWalledStatus::class
+    ConnectivityServiceTest.WifiConnectionWalledStatus::class,
+    ConnectivityServiceTest.WalledStatusCache::class
 )
 class ConnectivityServiceTest {
 
@@ -103,6 +110,9 @@ class ConnectivityServiceTest {
         @Mock
         lateinit var logger: Logger
 
+        @Mock
+        lateinit var clock: Clock
+
         val baseServerUri = URI.create(SERVER_BASE_URL)
         val newServer = Server(baseServerUri, OwnCloudVersion.nextcloud_20)
         val legacyServer = Server(baseServerUri, OwnCloudVersion.nextcloud_16)
@@ -120,6 +130,7 @@ class ConnectivityServiceTest {
                 accountManager,
                 clientFactory,
                 requestBuilder,
+                clock,
                 Build.VERSION_CODES.Q
             )
 
@@ -360,4 +371,168 @@ class ConnectivityServiceTest {
             verify(getRequest, times(1)).execute(client)
         }
     }
+
+    internal class WalledStatusCache : Base() {
+
+        private var now = 0L
+        private val requests = AtomicInteger()
+
+        @Before
+        fun setUp() {
+            whenever(networkInfo.isConnectedOrConnecting).thenReturn(true)
+            whenever(networkInfo.type).thenReturn(ConnectivityManager.TYPE_WIFI)
+            whenever(clock.currentTime).thenAnswer { now }
+            whenever(getRequest.getResponseContentLength()).thenReturn(0)
+            whenever(getRequest.execute(client)).thenAnswer {
+                requests.incrementAndGet()
+                HttpStatus.SC_NO_CONTENT
+            }
+        }
+
+        private fun capabilities(validated: Boolean): NetworkCapabilities {
+            val capabilities = mock<NetworkCapabilities>()
+            whenever(capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED)).thenReturn(validated)
+            return capabilities
+        }
+
+        @Test
+        fun `result is reused within time to live`() {
+            assertFalse(connectivityService.isInternetWalled)
+            now += ConnectivityServiceImpl.WALLED_CHECK_TTL_MILLIS - 1
+            assertFalse(connectivityService.isInternetWalled)
+            assertEquals(1, requests.get())
+        }
+
+        @Test
+        fun `result expires after time to live`() {
+            connectivityService.isInternetWalled
+            now += ConnectivityServiceImpl.WALLED_CHECK_TTL_MILLIS
+            connectivityService.isInternetWalled
+            assertEquals(2, requests.get())
+        }
+
+        @Test
+        fun `walled status is cached as well`() {
+            whenever(getRequest.execute(client)).thenAnswer {
+                requests.incrementAndGet()
+                HttpStatus.SC_OK
+            }
+            assertTrue(connectivityService.isInternetWalled)
+            assertTrue(connectivityService.isInternetWalled)
+            assertEquals(1, requests.get())
+        }
+
+        @Test
+        fun `lost network invalidates result`() {
+            connectivityService.isInternetWalled
+            connectivityService.networkCallback.onLost(network)
+            connectivityService.isInternetWalled
+            assertEquals(2, requests.get())
+        }
+
+        @Test
+        fun `available network invalidates result`() {
+            connectivityService.isInternetWalled
+            connectivityService.networkCallback.onAvailable(mock())
+            connectivityService.isInternetWalled
+            assertEquals(2, requests.get())
+        }
+
+        @Test
+        fun `only change of validation state invalidates result`() {
+            connectivityService.networkCallback.onCapabilitiesChanged(network, capabilities(validated = false))
+            connectivityService.isInternetWalled
+
+            // e.g. signal strength changed
+            connectivityService.networkCallback.onCapabilitiesChanged(network, capabilities(validated = false))
+            connectivityService.isInternetWalled
+            assertEquals(1, requests.get())
+
+            // signed in to captive portal
+            connectivityService.networkCallback.onCapabilitiesChanged(network, capabilities(validated = true))
+            connectivityService.isInternetWalled
+            assertEquals(2, requests.get())
+        }
+
+        @Test
+        fun `result is kept per network`() {
+            connectivityService.isInternetWalled
+            whenever(platformConnectivityManager.activeNetwork).thenReturn(mock())
+            connectivityService.isInternetWalled
+            assertEquals(2, requests.get())
+        }
+
+        @Test
+        fun `result is kept per server`() {
+            connectivityService.isInternetWalled
+            val otherServer = Server(URI.create("https://other.nextcloud.localhost"), OwnCloudVersion.nextcloud_20)
+            whenever(user.server).thenReturn(otherServer)
+            connectivityService.isInternetWalled
+            assertEquals(2, requests.get())
+        }
+
+        @Test
+        fun `concurrent callers share one request`() {
+            val callers = 5
+            val requestStarted = CountDownLatch(1)
+            val releaseRequest = CountDownLatch(1)
+            whenever(getRequest.execute(client)).thenAnswer {
+                requests.incrementAndGet()
+                requestStarted.countDown()
+                releaseRequest.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                HttpStatus.SC_NO_CONTENT
+            }
+            val executor = Executors.newFixedThreadPool(callers)
+
+            try {
+                val first = executor.submit<Boolean> { connectivityService.isInternetWalled }
+                assertTrue(requestStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                val others = (2..callers).map { executor.submit<Boolean> { connectivityService.isInternetWalled } }
+                releaseRequest.countDown()
+
+                assertFalse(first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                others.forEach { assertFalse(it.get(TIMEOUT_SECONDS, TimeUnit.SECONDS)) }
+                assertEquals(1, requests.get())
+            } finally {
+                executor.shutdownNow()
+            }
+        }
+
+        @Test
+        fun `concurrent checks of different servers send their own requests`() {
+            val firstRequestStarted = CountDownLatch(1)
+            val requestsStarted = CountDownLatch(2)
+            val releaseRequests = CountDownLatch(1)
+            whenever(getRequest.execute(client)).thenAnswer {
+                requests.incrementAndGet()
+                firstRequestStarted.countDown()
+                requestsStarted.countDown()
+                releaseRequests.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                HttpStatus.SC_NO_CONTENT
+            }
+            val otherServer = Server(URI.create("https://other.nextcloud.localhost"), OwnCloudVersion.nextcloud_20)
+            val executor = Executors.newFixedThreadPool(2)
+
+            try {
+                val first = executor.submit<Boolean> { connectivityService.isInternetWalled }
+                assertTrue(firstRequestStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                whenever(user.server).thenReturn(otherServer)
+                val second = executor.submit<Boolean> { connectivityService.isInternetWalled }
+                assertTrue(requestsStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                releaseRequests.countDown()
+
+                assertFalse(first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                assertFalse(second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                verify(requestBuilder).invoke("$SERVER_BASE_URL/index.php/204")
+                verify(requestBuilder).invoke("https://other.nextcloud.localhost/index.php/204")
+            } finally {
+                releaseRequests.countDown()
+                executor.shutdownNow()
+            }
+        }
+
+        private companion object {
+            const val TIMEOUT_SECONDS = 5L
+        }
+    }
 }
@@ -0,0 +1,182 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.preferences
+
+import com.nextcloud.client.account.User
+import com.owncloud.android.datamodel.OCFile
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.mock
+
+class FolderPreferenceCacheTest {
+
+    companion object {
+        private const val PREFERENCE = "folder_layout"
+        private const val DEFAULT = "list"
+        private const val ROOT_ID = 1L
+        private const val PHOTOS_ID = 2L
+        private const val ALBUM_ID = 3L
+        private const val TRIP_ID = 4L
+    }
+
+    /**
+     * Arbitrary data and file hierarchy of one account, counting queries.
+     */
+    private class FakeStorage : FolderPreferenceCache.Storage {
+        val data = mutableMapOf<String, String>()
+        val parents = mutableMapOf<Long, Long>()
+        var loads = 0
+        var parentLookups = 0
+
+        override fun loadValues(user: User, keyPrefix: String): Map<String, String> {
+            loads++
+            return data.filterKeys { it.startsWith(keyPrefix) }
+        }
+
+        override fun storeValue(user: User, key: String, value: String) {
+            data[key] = value
+        }
+
+        override fun getParentId(user: User, folderId: Long): Long? {
+            parentLookups++
+            return parents[folderId]
+        }
+    }
+
+    private val user: User = mock {
+        on { accountName } doReturn "user@nextcloud.localhost"
+    }
+
+    private lateinit var storage: FakeStorage
+    private lateinit var sut: FolderPreferenceCache
+
+    private fun folder(id: Long): OCFile {
+        val parent = storage.parents[id] ?: 0
+        return mock {
+            on { fileId } doReturn id
+            on { parentId } doReturn parent
+        }
+    }
+
+    @Before
+    fun setUp() {
+        storage = FakeStorage()
+        // root <- photos <- album <- trip
+        storage.parents[ROOT_ID] = 0
+        storage.parents[PHOTOS_ID] = ROOT_ID
+        storage.parents[ALBUM_ID] = PHOTOS_ID
+        storage.parents[TRIP_ID] = ALBUM_ID
+        sut = FolderPreferenceCache(storage)
+    }
+
+    @Test
+    fun defaultIsReturnedWithoutWalkingWhenNothingIsSet() {
+        assertEquals(DEFAULT, sut.get(user, PREFERENCE, folder(TRIP_ID), DEFAULT))
+        assertEquals(0, storage.parentLookups)
+    }
+
+    @Test
+    fun valueIsInheritedFromNearestAncestor() {
+        storage.data["${PREFERENCE}_$PHOTOS_ID"] = "grid"
+        storage.data["${PREFERENCE}_0"] = "list"
+
+        assertEquals("grid", sut.get(user, PREFERENCE, folder(TRIP_ID), DEFAULT))
+        assertEquals("grid", sut.get(user, PREFERENCE, folder(PHOTOS_ID), DEFAULT))
+        assertEquals("list", sut.get(user, PREFERENCE, folder(ROOT_ID), DEFAULT))
+        assertEquals("list", sut.get(user, PREFERENCE, null, DEFAULT))
+    }
+
+    @Test
+    fun valuesAndHierarchyAreLoadedOnce() {
+        storage.data["${PREFERENCE}_0"] = "grid"
+
+        repeat(10) {
+            assertEquals("grid", sut.get(user, PREFERENCE, folder(TRIP_ID), DEFAULT))
+        }
+
+        assertEquals(1, storage.loads)
+        // parents of album, photos and root; the parent of trip is known from the folder itself
+        assertEquals(3, storage.parentLookups)
+    }
+
+    @Test
+    fun writesAreVisibleImmediately() {
+        storage.data["${PREFERENCE}_0"] = "list"
+        assertEquals("list", sut.get(user, PREFERENCE, folder(TRIP_ID), DEFAULT))
+
+        sut.set(user, PREFERENCE, folder(ALBUM_ID), "grid")
+
+        assertEquals("grid", storage.data["${PREFERENCE}_$ALBUM_ID"])
+        assertEquals("grid", sut.get(user, PREFERENCE, folder(TRIP_ID), DEFAULT))
+        assertEquals("list", sut.get(user, PREFERENCE, folder(PHOTOS_ID), DEFAULT))
+        assertEquals(1, storage.loads)
+    }
+
+    @Test
+    fun emptyValueIsInheritedLikeUnsetValue() {
+        storage.data["${PREFERENCE}_$ALBUM_ID"] = ""
+        storage.data["${PREFERENCE}_$PHOTOS_ID"] = "grid"
+
+        assertEquals("grid", sut.get(user, PREFERENCE, folder(ALBUM_ID), DEFAULT))
+    }
+
+    @Test
+    fun preferencesSharingPrefixAreIgnored() {
+        storage.data["folder_sort_order_FILE_SORT_ORDER"] = "size"
+        storage.data["folder_sort_order_$TRIP_ID"] = "name"
+
+        assertEquals("name", sut.get(user, "folder_sort_order", folder(TRIP_ID), "date"))
+        assertEquals("date", sut.get(user, "folder_sort_order", folder(ALBUM_ID), "date"))
+    }
+
+    @Test
+    fun movedFolderIsFollowedOnceBrowsed() {
+        val otherId = 5L
+        storage.parents[otherId] = ROOT_ID
+        storage.data["${PREFERENCE}_$PHOTOS_ID"] = "grid"
+        assertEquals("grid", sut.get(user, PREFERENCE, folder(TRIP_ID), DEFAULT))
+
+        // album moved from photos to other
+        storage.parents[ALBUM_ID] = otherId
+        assertEquals(DEFAULT, sut.get(user, PREFERENCE, folder(ALBUM_ID), DEFAULT))
+        assertEquals(DEFAULT, sut.get(user, PREFERENCE, folder(TRIP_ID), DEFAULT))
+    }
+
+    @Test
+    fun removedAccountIsLoadedAgain() {
+        storage.data["${PREFERENCE}_$TRIP_ID"] = "grid"
+        assertEquals("grid", sut.get(user, PREFERENCE, folder(TRIP_ID), DEFAULT))
+
+        sut.remove(user)
+        storage.data.clear()
+
+        assertEquals(DEFAULT, sut.get(user, PREFERENCE, folder(TRIP_ID), DEFAULT))
+        assertEquals(2, storage.loads)
+    }
+
+    @Test
+    fun cyclicHierarchyTerminates() {
+        storage.parents[PHOTOS_ID] = TRIP_ID
+        storage.data["${PREFERENCE}_0"] = "grid"
+
+        assertEquals(DEFAULT, sut.get(user, PREFERENCE, folder(TRIP_ID), DEFAULT))
+    }
+}
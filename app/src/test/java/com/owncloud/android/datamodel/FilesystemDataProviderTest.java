@@ -0,0 +1,116 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FilesystemDataProviderTest {
+
+    /**
+     * CRC32 check value of "123456789"
+     */
+    private static final long CHECK_VALUE = 0xCBF43926L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void checksumOfFile() throws IOException {
+        File file = write("check.txt", "123456789".getBytes(StandardCharsets.US_ASCII));
+
+        assertEquals(CHECK_VALUE, FilesystemDataProvider.getFileChecksum(file.getAbsolutePath()));
+    }
+
+    @Test
+    public void checksumOfFileLargerThanBuffer() throws IOException {
+        byte[] content = new byte[300 * 1024 + 17];
+        new Random(1).nextBytes(content);
+        File file = write("large.bin", content);
+        CRC32 expected = new CRC32();
+        expected.update(content);
+
+        assertEquals(expected.getValue(), FilesystemDataProvider.getFileChecksum(file.getAbsolutePath()));
+    }
+
+    @Test
+    public void checksumOfMissingFileIsInvalid() {
+        String path = new File(folder.getRoot(), "missing.jpg").getAbsolutePath();
+
+        assertEquals(-1, FilesystemDataProvider.getFileChecksum(path));
+    }
+
+    @Test
+    public void checksumsAreComputedForAllFiles() throws IOException {
+        int files = FilesystemDataProvider.CHECKSUM_THREADS * 5;
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < files; i++) {
+            paths.add(write(i + ".txt", "123456789".getBytes(StandardCharsets.US_ASCII)).getAbsolutePath());
+        }
+        String missing = new File(folder.getRoot(), "missing.jpg").getAbsolutePath();
+        paths.add(missing);
+
+        Map<String, Long> checksums = FilesystemDataProvider.getFileChecksums(paths);
+
+        assertEquals(files + 1, checksums.size());
+        assertEquals(Long.valueOf(-1), checksums.get(missing));
+        for (String path : paths.subList(0, files)) {
+            assertEquals(Long.valueOf(CHECK_VALUE), checksums.get(path));
+        }
+    }
+
+    @Test
+    public void noChecksumsForNoFiles() {
+        assertTrue(FilesystemDataProvider.getFileChecksums(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    public void contentChange() {
+        // never taken, e.g. stored when found first
+        assertTrue(FilesystemDataProvider.isContentChanged(null, CHECK_VALUE));
+        assertTrue(FilesystemDataProvider.isContentChanged("1", CHECK_VALUE));
+        assertFalse(FilesystemDataProvider.isContentChanged(Long.toString(CHECK_VALUE), CHECK_VALUE));
+        // unreadable file keeps its upload state
+        assertFalse(FilesystemDataProvider.isContentChanged("1", -1));
+    }
+
+    private File write(String name, byte[] content) throws IOException {
+        File file = folder.newFile(name);
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(content);
+        }
+        return file;
+    }
+}
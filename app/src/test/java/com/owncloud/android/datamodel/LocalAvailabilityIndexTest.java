@@ -0,0 +1,147 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel;
+
+import com.nextcloud.client.core.Clock;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LocalAvailabilityIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private long now;
+    private LocalAvailabilityIndex sut;
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        now = 1000;
+        sut = new LocalAvailabilityIndex(new Clock() {
+            @Override
+            public long getCurrentTime() {
+                return now;
+            }
+
+            @Override
+            public Date getCurrentDate() {
+                return new Date(now);
+            }
+
+            @Override
+            public long getMillisSinceBoot() {
+                return now;
+            }
+
+            @Override
+            public TimeZone getTz() {
+                return TimeZone.getDefault();
+            }
+        });
+        root = folder.newFolder("account");
+    }
+
+    private File createFile(String path) throws IOException {
+        File file = new File(root, path);
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        assertTrue(file.createNewFile());
+        return file;
+    }
+
+    @Test
+    public void existingFileIsAvailable() throws IOException {
+        File file = createFile("a.txt");
+
+        assertTrue(sut.exists(file.getAbsolutePath()));
+        assertFalse(sut.exists(new File(root, "b.txt").getAbsolutePath()));
+    }
+
+    @Test
+    public void answerIsKeptUntilReconciled() throws IOException {
+        File file = createFile("a.txt");
+        assertTrue(sut.exists(file.getAbsolutePath()));
+
+        // removed by another app
+        assertTrue(file.delete());
+        now += LocalAvailabilityIndex.RECONCILE_INTERVAL_MS - 1;
+        assertTrue(sut.exists(file.getAbsolutePath()));
+
+        now += 1;
+        assertFalse(sut.exists(file.getAbsolutePath()));
+    }
+
+    @Test
+    public void invalidatedFileIsCheckedAgain() throws IOException {
+        File file = new File(root, "a.txt");
+        assertFalse(sut.exists(file.getAbsolutePath()));
+
+        createFile("a.txt");
+        sut.invalidate(file.getAbsolutePath());
+
+        assertTrue(sut.exists(file.getAbsolutePath()));
+    }
+
+    @Test
+    public void folderPathsWithAndWithoutSeparatorAreTheSame() throws IOException {
+        File photos = createFile("Photos/b.jpg").getParentFile();
+        assertTrue(sut.exists(photos.getAbsolutePath() + File.separator));
+
+        sut.invalidate(photos.getAbsolutePath());
+
+        assertEquals(0, sut.size());
+    }
+
+    @Test
+    public void invalidatedTreeDropsEverythingBelow() throws IOException {
+        File photo = createFile("Photos/2022/c.jpg");
+        File sibling = createFile("Photos2/d.jpg");
+        File other = createFile("a.txt");
+        assertTrue(sut.exists(photo.getAbsolutePath()));
+        assertTrue(sut.exists(photo.getParentFile().getAbsolutePath()));
+        assertTrue(sut.exists(sibling.getAbsolutePath()));
+        assertTrue(sut.exists(other.getAbsolutePath()));
+
+        sut.invalidateTree(new File(root, "Photos").getAbsolutePath() + File.separator);
+
+        // only "Photos2/d.jpg" and "a.txt" are left
+        assertEquals(2, sut.size());
+    }
+
+    @Test
+    public void indexIsBounded() {
+        for (int i = 0; i < LocalAvailabilityIndex.MAX_ENTRIES + 10; i++) {
+            sut.exists(new File(root, "missing" + i).getAbsolutePath());
+        }
+
+        assertTrue(sut.size() <= LocalAvailabilityIndex.MAX_ENTRIES);
+    }
+}
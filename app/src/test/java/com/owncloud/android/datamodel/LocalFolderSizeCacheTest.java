@@ -0,0 +1,176 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LocalFolderSizeCacheTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LocalFolderSizeCache sut;
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        sut = new LocalFolderSizeCache(Runnable::run);
+        root = folder.newFolder("account");
+        createFile(new File(root, "a.txt"), 100);
+        createFile(new File(root, "Photos/b.jpg"), 1000);
+        createFile(new File(root, "Photos/2022/c.jpg"), 10000);
+    }
+
+    private static void createFile(File file, long length) throws IOException {
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(length);
+        }
+    }
+
+    /**
+     * Moves the modification time forward, as adding an entry does; file systems may only store whole seconds.
+     */
+    private static void touch(File file) {
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+    }
+
+    @Test
+    public void sizeIsComputedInBackgroundAndCached() throws InterruptedException {
+        CountDownLatch computed = new CountDownLatch(1);
+        AtomicLong reportedSize = new AtomicLong();
+
+        long size = sut.getSize(root, (folder, folderSize) -> {
+            reportedSize.set(folderSize);
+            computed.countDown();
+        });
+
+        assertEquals(LocalFolderSizeCache.UNKNOWN_SIZE, size);
+        assertTrue(computed.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(11100, reportedSize.get());
+        assertEquals(11100, sut.getSize(root, (folder, folderSize) -> {
+            throw new AssertionError("cached size must not be computed again");
+        }));
+    }
+
+    @Test
+    public void everyRequestGetsTheSize() throws InterruptedException {
+        CountDownLatch sizes = new CountDownLatch(3);
+        AtomicLong total = new AtomicLong();
+
+        for (int i = 0; i < 3; i++) {
+            long size = sut.getSize(root, (folder, folderSize) -> {
+                total.addAndGet(folderSize);
+                sizes.countDown();
+            });
+            // a later request may find the size already cached
+            if (size != LocalFolderSizeCache.UNKNOWN_SIZE) {
+                total.addAndGet(size);
+                sizes.countDown();
+            }
+        }
+
+        assertTrue(sizes.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(3 * 11100, total.get());
+    }
+
+    @Test
+    public void folderWithNewEntryIsComputedAgain() throws IOException {
+        assertEquals(11100, sut.computeSize(root));
+
+        createFile(new File(root, "d.txt"), 5);
+        touch(root);
+
+        assertEquals(11105, sut.computeSize(root));
+    }
+
+    @Test
+    public void invalidatedFileRefreshesItsParents() throws IOException {
+        assertEquals(11100, sut.computeSize(root));
+        assertEquals(11000, sut.computeSize(new File(root, "Photos")));
+
+        // grows in place: no modification time of a folder changes
+        File photo = new File(root, "Photos/2022/c.jpg");
+        createFile(photo, 20000);
+        assertEquals(11100, sut.computeSize(root));
+
+        sut.invalidate(photo.getAbsolutePath());
+
+        assertEquals(21100, sut.computeSize(root));
+        assertEquals(21000, sut.computeSize(new File(root, "Photos")));
+    }
+
+    @Test
+    public void removedFolderIsInvalidated() {
+        File photos = new File(root, "Photos");
+        assertEquals(11100, sut.computeSize(root));
+
+        assertTrue(new File(photos, "2022/c.jpg").delete());
+        assertTrue(new File(photos, "2022").delete());
+        assertTrue(new File(photos, "b.jpg").delete());
+        assertTrue(photos.delete());
+        sut.invalidate(photos.getAbsolutePath());
+
+        assertEquals(100, sut.computeSize(root));
+        assertEquals(0, sut.computeSize(photos));
+    }
+
+    @Test
+    public void siblingsOfInvalidatedFolderAreKept() throws IOException {
+        createFile(new File(root, "Documents/e.pdf"), 7);
+        assertEquals(11107, sut.computeSize(root));
+
+        // grows in place, but is not invalidated: the cached size of its folder is used
+        createFile(new File(root, "Documents/e.pdf"), 70);
+        sut.invalidate(new File(root, "Photos/b.jpg").getAbsolutePath());
+
+        assertEquals(11107, sut.computeSize(root));
+    }
+
+    @Test
+    public void missingFolderIsCachedAsEmpty() throws InterruptedException {
+        File missing = new File(root, "missing");
+        CountDownLatch computed = new CountDownLatch(1);
+
+        assertEquals(LocalFolderSizeCache.UNKNOWN_SIZE, sut.getSize(missing, (folder, folderSize) -> {
+            assertEquals(0, folderSize);
+            computed.countDown();
+        }));
+        assertTrue(computed.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertEquals(0, sut.getSize(missing, (folder, folderSize) -> {
+            throw new AssertionError("size of missing folder must not be computed again");
+        }));
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel
+
+import android.database.Cursor
+import com.owncloud.android.db.ProviderMeta.ProviderTableMeta
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Ignore
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.mockito.kotlin.mock
+
+class OCFileCursorMapperTest {
+
+    companion object {
+        private const val MANY_ROWS = 1000
+        private const val BENCHMARK_ROWS = 100_000
+        private const val WARMUP_ROUNDS = 3
+        private const val SHAREES = "[{\"userId\":\"alice\",\"displayName\":\"Alice\",\"shareType\":\"USER\"}]"
+
+        private val COLUMNS = arrayOf(
+            ProviderTableMeta._ID,
+            ProviderTableMeta.FILE_PARENT,
+            ProviderTableMeta.FILE_NAME,
+            ProviderTableMeta.FILE_ENCRYPTED_NAME,
+            ProviderTableMeta.FILE_CREATION,
+            ProviderTableMeta.FILE_MODIFIED,
+            ProviderTableMeta.FILE_MODIFIED_AT_LAST_SYNC_FOR_DATA,
+            ProviderTableMeta.FILE_CONTENT_LENGTH,
+            ProviderTableMeta.FILE_CONTENT_TYPE,
+            ProviderTableMeta.FILE_STORAGE_PATH,
+            ProviderTableMeta.FILE_PATH,
+            ProviderTableMeta.FILE_PATH_DECRYPTED,
+            ProviderTableMeta.FILE_ACCOUNT_OWNER,
+            ProviderTableMeta.FILE_LAST_SYNC_DATE,
+            ProviderTableMeta.FILE_LAST_SYNC_DATE_FOR_DATA,
+            ProviderTableMeta.FILE_ETAG,
+            ProviderTableMeta.FILE_ETAG_ON_SERVER,
+            ProviderTableMeta.FILE_SHARED_VIA_LINK,
+            ProviderTableMeta.FILE_SHARED_WITH_SHAREE,
+            ProviderTableMeta.FILE_PERMISSIONS,
+            ProviderTableMeta.FILE_REMOTE_ID,
+            ProviderTableMeta.FILE_UPDATE_THUMBNAIL,
+            ProviderTableMeta.FILE_IS_DOWNLOADING,
+            ProviderTableMeta.FILE_ETAG_IN_CONFLICT,
+            ProviderTableMeta.FILE_FAVORITE,
+            ProviderTableMeta.FILE_IS_ENCRYPTED,
+            ProviderTableMeta.FILE_MOUNT_TYPE,
+            ProviderTableMeta.FILE_HAS_PREVIEW,
+            ProviderTableMeta.FILE_UNREAD_COMMENTS_COUNT,
+            ProviderTableMeta.FILE_OWNER_ID,
+            ProviderTableMeta.FILE_OWNER_DISPLAY_NAME,
+            ProviderTableMeta.FILE_NOTE,
+            ProviderTableMeta.FILE_SHAREES,
+            ProviderTableMeta.FILE_RICH_WORKSPACE,
+            ProviderTableMeta.FILE_LOCKED,
+            ProviderTableMeta.FILE_LOCK_TYPE,
+            ProviderTableMeta.FILE_LOCK_OWNER,
+            ProviderTableMeta.FILE_LOCK_OWNER_DISPLAY_NAME,
+            ProviderTableMeta.FILE_LOCK_OWNER_EDITOR,
+            ProviderTableMeta.FILE_LOCK_TIMESTAMP,
+            ProviderTableMeta.FILE_LOCK_TIMEOUT,
+            ProviderTableMeta.FILE_LOCK_TOKEN
+        )
+    }
+
+    @get:Rule
+    val tempDir = TemporaryFolder()
+
+    /**
+     * Minimal in-memory cursor; only the methods used for hydration are implemented.
+     */
+    private class RowsCursor(private val rows: List<Map<String, Any?>>) : Cursor by mock() {
+        private var position = -1
+
+        override fun getCount(): Int = rows.size
+        override fun moveToFirst(): Boolean = moveToPosition(0)
+        override fun moveToNext(): Boolean = moveToPosition(position + 1)
+        override fun moveToPosition(position: Int): Boolean {
+            this.position = position
+            return position in rows.indices
+        }
+
+        override fun getColumnIndexOrThrow(columnName: String): Int {
+            val index = COLUMNS.indexOf(columnName)
+            require(index >= 0) { "Unknown column $columnName" }
+            return index
+        }
+
+        override fun getString(columnIndex: Int): String? = value(columnIndex) as String?
+        override fun getInt(columnIndex: Int): Int = (value(columnIndex) as Number?)?.toInt() ?: 0
+        override fun getLong(columnIndex: Int): Long = (value(columnIndex) as Number?)?.toLong() ?: 0
+
+        private fun value(columnIndex: Int): Any? = rows[position][COLUMNS[columnIndex]]
+    }
+
+    private fun row(index: Int, storagePath: String? = null): Map<String, Any?> = mapOf(
+        ProviderTableMeta._ID to index.toLong(),
+        ProviderTableMeta.FILE_PARENT to 1L,
+        ProviderTableMeta.FILE_PATH to "/folder/file$index.jpg",
+        ProviderTableMeta.FILE_PATH_DECRYPTED to "/folder/file$index.jpg",
+        ProviderTableMeta.FILE_CONTENT_TYPE to "image/jpeg",
+        ProviderTableMeta.FILE_STORAGE_PATH to storagePath,
+        ProviderTableMeta.FILE_CONTENT_LENGTH to 1024L * index,
+        ProviderTableMeta.FILE_MODIFIED to 1_600_000_000_000L + index,
+        ProviderTableMeta.FILE_ETAG to "etag$index",
+        ProviderTableMeta.FILE_REMOTE_ID to "${index}oc",
+        ProviderTableMeta.FILE_FAVORITE to index % 2,
+        ProviderTableMeta.FILE_MOUNT_TYPE to 0,
+        ProviderTableMeta.FILE_LOCK_TYPE to -1,
+        ProviderTableMeta.FILE_SHAREES to if (index % 10 == 0) SHAREES else null
+    )
+
+    @Test
+    fun mapsRowValues() {
+        val cursor = RowsCursor(listOf(row(10)))
+        cursor.moveToFirst()
+
+        val file = OCFileCursorMapper(cursor, tempDir.root.absolutePath).map(cursor)
+
+        assertEquals(10L, file.fileId)
+        assertEquals(1L, file.parentId)
+        assertEquals("/folder/file10.jpg", file.remotePath)
+        assertEquals("image/jpeg", file.mimeType)
+        assertEquals(10240L, file.fileLength)
+        assertEquals("etag10", file.etag)
+        assertEquals("10oc", file.remoteId)
+        assertFalse(file.isFavorite)
+        assertNull(file.lockType)
+        assertEquals(1, file.sharees.size)
+    }
+
+    @Test
+    fun localCopyAtDefaultPathIsResolvedLazily() {
+        val folder = tempDir.newFolder("folder")
+        val cursor = RowsCursor(listOf(row(1), row(2)))
+        val mapper = OCFileCursorMapper(cursor, tempDir.root.absolutePath)
+
+        cursor.moveToFirst()
+        val downloaded = mapper.map(cursor)
+        cursor.moveToNext()
+        val notDownloaded = mapper.map(cursor)
+
+        // file appears after mapping, but before first access
+        assertTrue(folder.resolve("file1.jpg").createNewFile())
+
+        assertEquals(folder.resolve("file1.jpg").absolutePath, downloaded.storagePath)
+        assertTrue(downloaded.isDown)
+        assertNull(notDownloaded.storagePath)
+    }
+
+    @Test
+    fun storedLocalPathIsKept() {
+        val cursor = RowsCursor(listOf(row(1, "/sdcard/file1.jpg")))
+        cursor.moveToFirst()
+
+        val file = OCFileCursorMapper(cursor, tempDir.root.absolutePath).map(cursor)
+
+        assertEquals("/sdcard/file1.jpg", file.storagePath)
+    }
+
+    @Test
+    fun everyRowIsMappedByOneMapper() {
+        val cursor = RowsCursor((1..MANY_ROWS).map { row(it, "/sdcard/file$it.jpg") })
+
+        val files = hydrateAll(cursor)
+
+        assertEquals(MANY_ROWS, files.size)
+        assertEquals((1..MANY_ROWS).map { it.toLong() }, files.map { it.fileId })
+        assertEquals("/sdcard/file$MANY_ROWS.jpg", files.last().storagePath)
+    }
+
+    /**
+     * Hydrates a large cursor after warming up; only logs the time, which depends on the machine.
+     */
+    @Ignore("Benchmark, run on demand")
+    @Test
+    fun hydrationBenchmark() {
+        val cursor = RowsCursor((1..BENCHMARK_ROWS).map { row(it, "/sdcard/file$it.jpg") })
+
+        repeat(WARMUP_ROUNDS) { hydrateAll(cursor) }
+
+        val start = System.nanoTime()
+        val files = hydrateAll(cursor)
+        val elapsedMs = (System.nanoTime() - start) / 1_000_000
+
+        println("Hydrated $BENCHMARK_ROWS rows in $elapsedMs ms")
+        assertEquals(BENCHMARK_ROWS, files.size)
+    }
+
+    private fun hydrateAll(cursor: Cursor): List<OCFile> {
+        val files = ArrayList<OCFile>(cursor.count)
+        if (cursor.moveToFirst()) {
+            val mapper = OCFileCursorMapper(cursor, tempDir.root.absolutePath)
+            do {
+                files.add(mapper.map(cursor))
+            } while (cursor.moveToNext())
+        }
+        return files
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel
+
+import android.content.ComponentCallbacks2
+import android.graphics.Bitmap
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.mock
+
+class ThumbnailMemoryCacheTest {
+
+    companion object {
+        private const val BITMAP_BYTES = 1000
+    }
+
+    private fun bitmap(bytes: Int = BITMAP_BYTES, recycled: Boolean = false): Bitmap = mock {
+        on { allocationByteCount } doReturn bytes
+        on { isRecycled } doReturn recycled
+    }
+
+    @Test
+    fun sizeIsAccountedInBytes() {
+        val sut = ThumbnailMemoryCache(10 * BITMAP_BYTES)
+
+        sut.put("t1", bitmap())
+        sut.put("t2", bitmap(3 * BITMAP_BYTES))
+
+        assertEquals(4 * BITMAP_BYTES, sut.size)
+    }
+
+    @Test
+    fun leastRecentlyUsedIsEvicted() {
+        val sut = ThumbnailMemoryCache(3 * BITMAP_BYTES)
+        val first = bitmap()
+        sut.put("t1", first)
+        sut.put("t2", bitmap())
+        sut.put("t3", bitmap())
+
+        // touch t1, so t2 is the eldest
+        assertSame(first, sut.get("t1"))
+        sut.put("r4", bitmap())
+
+        assertNull(sut.get("t2"))
+        assertSame(first, sut.get("t1"))
+        assertEquals(3 * BITMAP_BYTES, sut.size)
+    }
+
+    @Test
+    fun hitsAndMissesAreCounted() {
+        val sut = ThumbnailMemoryCache(10 * BITMAP_BYTES)
+        sut.put("t1", bitmap())
+
+        sut.get("t1")
+        sut.get("t1")
+        sut.get("r1")
+
+        assertEquals(2, sut.hitCount)
+        assertEquals(1, sut.missCount)
+    }
+
+    @Test
+    fun recycledBitmapIsDropped() {
+        val sut = ThumbnailMemoryCache(10 * BITMAP_BYTES)
+        sut.put("t1", bitmap(recycled = true))
+
+        assertNull(sut.get("t1"))
+        assertEquals(0, sut.size)
+    }
+
+    @Test
+    fun trimMemory() {
+        val sut = ThumbnailMemoryCache(4 * BITMAP_BYTES)
+        repeat(4) { sut.put("t$it", bitmap()) }
+
+        sut.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE)
+        assertEquals(4 * BITMAP_BYTES, sut.size)
+
+        sut.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN)
+        assertEquals(2 * BITMAP_BYTES, sut.size)
+
+        sut.trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND)
+        assertEquals(0, sut.size)
+    }
+
+    @Test
+    fun maxSizeIsAnEighthOfMemoryClass() {
+        assertEquals(32 * 1024 * 1024, ThumbnailMemoryCache.computeMaxSize(256))
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.mock
+import java.io.IOException
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class ThumbnailPrefetcherTest {
+
+    companion object {
+        private const val TIMEOUT_SECONDS = 5L
+        private const val THUMBNAIL_BYTES = 1000L
+    }
+
+    private fun file(
+        id: Int,
+        folder: Boolean = false,
+        preview: Boolean = true,
+        down: Boolean = false,
+        encrypted: Boolean = false,
+        updateNeeded: Boolean = false
+    ): OCFile = mock {
+        on { remoteId } doReturn "id$id"
+        on { remotePath } doReturn "/photos/$id.jpg"
+        on { isFolder } doReturn folder
+        on { isPreviewAvailable } doReturn preview
+        on { isDown } doReturn down
+        on { isEncrypted } doReturn encrypted
+        on { isUpdateThumbnailNeeded } doReturn updateNeeded
+    }
+
+    @Test
+    fun onlyMissingServerThumbnailsOfFirstPositionsAreSelected() {
+        val children = listOf(
+            file(0, folder = true),
+            file(1),
+            file(2, preview = false),
+            file(3, down = true),
+            file(4, encrypted = true),
+            file(5),
+            file(6, updateNeeded = true),
+            file(7)
+        )
+        val cached = setOf("t" + "id5", "t" + "id6")
+
+        val candidates = ThumbnailPrefetcher.selectCandidates(children, 7) { cached.contains(it) }
+
+        assertEquals(listOf("id1", "id6"), candidates.map { it.remoteId })
+    }
+
+    @Test
+    fun allFilesAreFetchedWithinBudget() {
+        val sut = ThumbnailPrefetcher(3, 100 * THUMBNAIL_BYTES)
+        val files = (1..20).map { file(it) }
+        val loaded = Collections.synchronizedSet(HashSet<String>())
+
+        val job = sut.prefetch(files) {
+            loaded.add(it.remoteId)
+            THUMBNAIL_BYTES
+        }
+
+        assertTrue(job.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+        assertEquals(20, loaded.size)
+        assertEquals(20, job.filesFetched)
+        assertEquals(20 * THUMBNAIL_BYTES, job.bytesFetched)
+    }
+
+    @Test
+    fun fetchingStopsWhenBudgetIsSpent() {
+        val workers = 2
+        val sut = ThumbnailPrefetcher(workers, 5 * THUMBNAIL_BYTES)
+        val files = (1..20).map { file(it) }
+
+        val job = sut.prefetch(files) { THUMBNAIL_BYTES }
+
+        assertTrue(job.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+        // each worker may finish the fetch it started before the budget was exhausted
+        assertTrue(job.filesFetched in 5 until 5 + workers)
+    }
+
+    @Test
+    fun failedFetchDoesNotStopPrefetch() {
+        val sut = ThumbnailPrefetcher(1, 100 * THUMBNAIL_BYTES)
+        val files = (1..5).map { file(it) }
+
+        val job = sut.prefetch(files) {
+            if (it.remoteId == "id2") {
+                throw IOException("timeout")
+            }
+            THUMBNAIL_BYTES
+        }
+
+        assertTrue(job.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+        assertEquals(4, job.filesFetched)
+    }
+
+    @Test
+    fun newPrefetchCancelsPrevious() {
+        val sut = ThumbnailPrefetcher(1, 100 * THUMBNAIL_BYTES)
+        val started = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        val firstFolderLoads = AtomicInteger()
+
+        val first = sut.prefetch((1..10).map { file(it) }) {
+            firstFolderLoads.incrementAndGet()
+            started.countDown()
+            release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            THUMBNAIL_BYTES
+        }
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+
+        val second = sut.prefetch((11..13).map { file(it) }) { THUMBNAIL_BYTES }
+        release.countDown()
+
+        assertTrue(first.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+        assertTrue(second.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+        assertEquals(1, firstFolderLoads.get())
+        assertEquals(3, second.filesFetched)
+    }
+}
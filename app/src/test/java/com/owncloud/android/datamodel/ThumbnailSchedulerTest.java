@@ -0,0 +1,191 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ThumbnailSchedulerTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    @Test
+    public void newestTaskRunsFirst() throws InterruptedException {
+        ThumbnailScheduler sut = new ThumbnailScheduler(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+
+        sut.execute(() -> {
+            started.countDown();
+            await(blocker);
+        });
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        for (int i = 1; i <= 3; i++) {
+            final int number = i;
+            sut.execute(() -> {
+                order.add(number);
+                done.countDown();
+            });
+        }
+        assertEquals(3, sut.getQueueSize());
+
+        blocker.countDown();
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(3, 2, 1), order);
+    }
+
+    @Test
+    public void threadCountIsBounded() throws InterruptedException {
+        int threads = 2;
+        ThumbnailScheduler sut = new ThumbnailScheduler(threads);
+        CountDownLatch done = new CountDownLatch(20);
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        for (int i = 0; i < 20; i++) {
+            sut.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                threadNames.add(Thread.currentThread().getName());
+                sleep(5);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(maxRunning.get() <= threads);
+        assertTrue(threadNames.size() <= threads);
+    }
+
+    @Test
+    public void concurrentRequestsForSameKeyShareOneLoad() throws Exception {
+        ThumbnailScheduler sut = new ThumbnailScheduler(1);
+        int callers = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        Object result = new Object();
+
+        try {
+            List<Future<Object>> futures = new ArrayList<>();
+            futures.add(pool.submit(() -> sut.coalesce("t1", () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                await(release);
+                return result;
+            })));
+            assertTrue(loading.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+            for (int i = 1; i < callers; i++) {
+                futures.add(pool.submit(() -> sut.coalesce("t1", () -> {
+                    loads.incrementAndGet();
+                    return new Object();
+                })));
+            }
+            // give the waiters time to join the running load
+            sleep(100);
+            release.countDown();
+
+            for (Future<Object> future : futures) {
+                assertEquals(result, future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+            assertEquals(0, sut.getInFlightCount());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void differentKeysAreLoadedSeparately() throws Exception {
+        ThumbnailScheduler sut = new ThumbnailScheduler(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals("t1", sut.coalesce("t1", () -> {
+            loads.incrementAndGet();
+            return "t1";
+        }));
+        assertEquals("t2", sut.coalesce("t2", () -> {
+            loads.incrementAndGet();
+            return "t2";
+        }));
+        // a finished load is not reused, the caches answer repeated requests
+        assertEquals("t1", sut.coalesce("t1", () -> {
+            loads.incrementAndGet();
+            return "t1";
+        }));
+
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void loaderExceptionIsPropagated() throws Exception {
+        ThumbnailScheduler sut = new ThumbnailScheduler(1);
+
+        try {
+            sut.coalesce("t1", () -> {
+                throw new IOException("no connection");
+            });
+            fail("exception expected");
+        } catch (IOException e) {
+            assertEquals("no connection", e.getMessage());
+        }
+
+        assertEquals(0, sut.getInFlightCount());
+        assertEquals("t1", sut.coalesce("t1", () -> "t1"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.files.services;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class DownloadWorkerPoolTest {
+
+    private static final String ALICE = "alice@server";
+    private static final String BOB = "bob@server";
+
+    private ManualExecutorService executor;
+    private AtomicInteger idleCount;
+    private DownloadWorkerPool sut;
+
+    @Before
+    public void setUp() {
+        executor = new ManualExecutorService();
+        idleCount = new AtomicInteger();
+        sut = new DownloadWorkerPool(1, executor, idleCount::incrementAndGet);
+    }
+
+    @Test
+    public void downloadsAreStartedGroupedByFolder() {
+        List<String> order = new ArrayList<>();
+        for (String path : new String[]{"/Documents/a.txt", "/Photos/b.jpg", "/Documents/c.txt", "/Photos/d.jpg"}) {
+            sut.enqueue(ALICE, path, () -> order.add(path));
+        }
+
+        assertEquals(4, executor.runAll());
+        // first download started right away, the rest waited for it
+        assertEquals(Arrays.asList("/Documents/a.txt", "/Photos/b.jpg", "/Photos/d.jpg", "/Documents/c.txt"), order);
+        assertEquals(1, idleCount.get());
+    }
+
+    @Test
+    public void priorityFolderOvertakesQueue() {
+        List<String> order = new ArrayList<>();
+        sut.enqueue(ALICE, "/first.txt", () -> order.add("/first.txt"));
+        for (String path : new String[]{"/Documents/a.txt", "/Documents/b.txt", "/Photos/c.jpg", "/Photos/d.jpg"}) {
+            sut.enqueue(ALICE, path, () -> order.add(path));
+        }
+        sut.setPriorityFolder(ALICE, "/Photos/");
+
+        assertEquals(5, executor.runAll());
+        assertEquals(Arrays.asList("/first.txt", "/Photos/c.jpg", "/Photos/d.jpg", "/Documents/a.txt",
+                                   "/Documents/b.txt"), order);
+    }
+
+    @Test
+    public void priorityFolderIsPerAccount() {
+        List<String> order = new ArrayList<>();
+        sut.enqueue(ALICE, "/first.txt", () -> order.add("alice /first.txt"));
+        sut.enqueue(BOB, "/Photos/a.jpg", () -> order.add("bob /Photos/a.jpg"));
+        sut.enqueue(ALICE, "/Photos/b.jpg", () -> order.add("alice /Photos/b.jpg"));
+        sut.setPriorityFolder(ALICE, "/Photos/");
+
+        executor.runAll();
+        assertEquals(Arrays.asList("alice /first.txt", "alice /Photos/b.jpg", "bob /Photos/a.jpg"), order);
+    }
+
+    @Test
+    public void queuedDownloadsAreRemovedBySubtreeAndAccount() {
+        AtomicInteger done = new AtomicInteger();
+        sut.enqueue(ALICE, "/first.txt", done::incrementAndGet);
+        sut.enqueue(ALICE, "/Photos/2022/a.jpg", done::incrementAndGet);
+        sut.enqueue(ALICE, "/Photos/b.jpg", done::incrementAndGet);
+        sut.enqueue(ALICE, "/Photoshop/c.psd", done::incrementAndGet);
+        sut.enqueue(BOB, "/Photos/d.jpg", done::incrementAndGet);
+        sut.enqueue(BOB, "/e.txt", done::incrementAndGet);
+
+        assertEquals(5, sut.getPendingCount());
+        assertEquals(2, sut.remove(ALICE, "/Photos/"));
+        assertEquals(2, sut.remove(BOB, null));
+        assertEquals(0, sut.remove(BOB, null));
+        assertEquals(1, sut.getPendingCount());
+
+        assertEquals(2, executor.runAll());
+        assertEquals(2, done.get());
+        assertEquals(1, idleCount.get());
+    }
+
+    @Test
+    public void removingQueuedDownloadsDoesNotNotifyIdleWhileOneIsRunning() {
+        AtomicInteger done = new AtomicInteger();
+        sut.enqueue(ALICE, "/first.txt", done::incrementAndGet);
+        sut.enqueue(ALICE, "/second.txt", done::incrementAndGet);
+
+        assertEquals(1, sut.remove(ALICE, "/second.txt"));
+        assertEquals(0, idleCount.get());
+        assertFalse(sut.isIdle());
+
+        assertEquals(1, executor.runAll());
+        assertEquals(1, done.get());
+        assertEquals(1, idleCount.get());
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.files.services;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Executor keeping submitted tasks until the test runs them, one by one on the test thread, in submission order.
+ */
+class ManualExecutorService extends AbstractExecutorService {
+
+    private final Deque<Runnable> tasks = new ArrayDeque<>();
+    private boolean shutdown;
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+        tasks.add(command);
+    }
+
+    /**
+     * @return number of started tasks not run yet
+     */
+    int size() {
+        return tasks.size();
+    }
+
+    /**
+     * Runs the oldest started task.
+     */
+    void runOne() {
+        tasks.remove().run();
+    }
+
+    /**
+     * Runs started tasks, including the ones they start, until there are none left.
+     *
+     * @return number of run tasks
+     */
+    int runAll() {
+        int count = 0;
+        while (!tasks.isEmpty()) {
+            runOne();
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    @NonNull
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> notRun = new ArrayList<>(tasks);
+        tasks.clear();
+        return notRun;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && tasks.isEmpty();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, @NonNull TimeUnit unit) {
+        return isTerminated();
+    }
+}
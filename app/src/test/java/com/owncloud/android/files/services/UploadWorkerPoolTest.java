@@ -0,0 +1,224 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.files.services;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UploadWorkerPoolTest {
+
+    private static final String ALICE = "alice@server";
+    private static final String ENCRYPTED_FOLDER = ALICE + "/encrypted/";
+    private static final String OTHER_ENCRYPTED_FOLDER = ALICE + "/other encrypted/";
+
+    private static final int BENCHMARK_LATENCY_MS = 50;
+    private static final int BENCHMARK_FILE_SIZE = 64 * 1024;
+    private static final int BENCHMARK_FILES = 24;
+
+    private ManualExecutorService executor;
+    private AtomicInteger idleCount;
+
+    @Before
+    public void setUp() {
+        executor = new ManualExecutorService();
+        idleCount = new AtomicInteger();
+    }
+
+    private UploadWorkerPool createPool(int maxWorkers, int maxWorkersPerAccount) {
+        return new UploadWorkerPool(maxWorkers, maxWorkersPerAccount, executor, idleCount::incrementAndGet);
+    }
+
+    @Test
+    public void limitsAreRespected() {
+        UploadWorkerPool sut = createPool(4, 2);
+        AtomicInteger maxRunning = new AtomicInteger();
+        Map<String, Integer> maxPerAccount = new HashMap<>();
+
+        String[] accounts = {ALICE, "bob@server", "carol@server"};
+        for (int i = 0; i < 30; i++) {
+            String account = accounts[i % accounts.length];
+            sut.enqueue(account, null, () -> {
+                maxRunning.accumulateAndGet(sut.getRunningCount(), Math::max);
+                maxPerAccount.merge(account, sut.getRunningCount(account), Math::max);
+            });
+        }
+
+        // alice, bob, carol and alice again
+        assertEquals(4, executor.size());
+        assertEquals(30, executor.runAll());
+        assertTrue(sut.isIdle());
+        assertEquals(1, idleCount.get());
+        assertEquals(4, maxRunning.get());
+        for (String account : accounts) {
+            assertEquals(2, (int) maxPerAccount.get(account));
+        }
+    }
+
+    @Test
+    public void singleAccountIsCappedEvenWithFreeWorkers() {
+        UploadWorkerPool sut = createPool(6, 3);
+        AtomicInteger maxRunning = new AtomicInteger();
+        for (int i = 0; i < 20; i++) {
+            sut.enqueue(ALICE, null, () -> maxRunning.accumulateAndGet(sut.getRunningCount(), Math::max));
+        }
+
+        assertEquals(3, executor.size());
+        assertEquals(20, executor.runAll());
+        assertEquals(3, maxRunning.get());
+        assertEquals(1, idleCount.get());
+    }
+
+    @Test
+    public void uploadsWithSameSerialKeyRunOneAfterTheOther() {
+        UploadWorkerPool sut = createPool(6, 6);
+        StringBuilder order = new StringBuilder();
+        AtomicInteger resolved = new AtomicInteger();
+        UploadWorkerPool.SerialKeyResolver encryptedFolder = () -> {
+            resolved.incrementAndGet();
+            return ENCRYPTED_FOLDER;
+        };
+        sut.enqueue(ALICE, encryptedFolder, () -> {
+            order.append("e1 ");
+            // e2 starts while e1 is running
+            executor.runOne();
+        });
+        sut.enqueue(ALICE, encryptedFolder, () -> order.append("e2 "));
+        sut.enqueue(ALICE, () -> OTHER_ENCRYPTED_FOLDER, () -> order.append("o1 "));
+        sut.enqueue(ALICE, null, () -> order.append("p1 "));
+
+        // keys are only known once uploads run
+        assertEquals(4, executor.size());
+
+        // e2 went back to the queue and is started again once e1 is done
+        executor.runOne();
+        assertEquals("e1 ", order.toString());
+        assertEquals(3, sut.getRunningCount());
+        assertEquals(3, executor.size());
+
+        assertEquals(3, executor.runAll());
+        assertEquals("e1 o1 p1 e2 ", order.toString());
+        assertEquals(2, resolved.get());
+        assertEquals(1, idleCount.get());
+    }
+
+    @Test
+    public void failingSerialKeyResolverDoesNotDropTheUpload() {
+        UploadWorkerPool sut = createPool(2, 2);
+        AtomicInteger done = new AtomicInteger();
+        sut.enqueue(ALICE, () -> {
+            throw new IllegalStateException("database gone");
+        }, done::incrementAndGet);
+
+        assertEquals(1, executor.runAll());
+        assertEquals(1, done.get());
+        assertEquals(1, idleCount.get());
+    }
+
+    /**
+     * Uploads files to a stand-in for a WebDAV server answering after a fixed latency, with one and with four
+     * workers. Only logs the throughput, timings depend on the machine.
+     */
+    @Ignore("Benchmark, run on demand")
+    @Test
+    public void benchmarkThroughputAgainstWorkers() throws IOException, InterruptedException {
+        AtomicInteger storedFiles = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/remote.php/webdav/", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) != -1) {
+                    // discard
+                }
+                Thread.sleep(BENCHMARK_LATENCY_MS);
+                storedFiles.incrementAndGet();
+                exchange.sendResponseHeaders(201, -1);
+            } catch (InterruptedException e) {
+                exchange.sendResponseHeaders(500, -1);
+            } finally {
+                exchange.close();
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        try {
+            long sequential = uploadAll(server, 1);
+            long parallel = uploadAll(server, 4);
+
+            System.out.println("Uploaded " + BENCHMARK_FILES + " files of " + BENCHMARK_FILE_SIZE + " bytes with " +
+                                   BENCHMARK_LATENCY_MS + " ms latency: 1 worker " + sequential + " ms, 4 workers " +
+                                   parallel + " ms");
+            assertEquals(2 * BENCHMARK_FILES, storedFiles.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static long uploadAll(HttpServer server, int workers) throws InterruptedException {
+        CountDownLatch idle = new CountDownLatch(1);
+        UploadWorkerPool sut = new UploadWorkerPool(workers, workers, Thread::new, idle::countDown);
+        byte[] content = new byte[BENCHMARK_FILE_SIZE];
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < BENCHMARK_FILES; i++) {
+            String remotePath = "/remote.php/webdav/file" + i + ".jpg";
+            sut.enqueue(ALICE, null, () -> put(server, remotePath, content));
+        }
+        assertTrue(idle.await(60, TimeUnit.SECONDS));
+        long elapsed = System.currentTimeMillis() - start;
+        sut.shutdown();
+        return elapsed;
+    }
+
+    private static void put(HttpServer server, String remotePath, byte[] content) {
+        try {
+            URL url = new URL("http", "127.0.0.1", server.getAddress().getPort(), remotePath);
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("PUT");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(content.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(content);
+            }
+            assertEquals(201, connection.getResponseCode());
+            connection.disconnect();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
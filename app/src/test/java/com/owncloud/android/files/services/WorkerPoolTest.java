@@ -0,0 +1,153 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.files.services;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.Nullable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WorkerPoolTest {
+
+    /**
+     * Pool starting transfers in the order they were submitted.
+     */
+    private static final class FifoPool extends WorkerPool<WorkerPool.Task> {
+        private final Deque<Task> pending = new ArrayDeque<>();
+
+        private FifoPool(int maxWorkers, ManualExecutorService executor, OnIdleListener onIdleListener) {
+            super(maxWorkers, executor, onIdleListener);
+        }
+
+        @Override
+        void addPending(Task task) {
+            pending.add(task);
+        }
+
+        @Override
+        boolean hasPending() {
+            return !pending.isEmpty();
+        }
+
+        @Override
+        void clearPending() {
+            pending.clear();
+        }
+
+        @Nullable
+        @Override
+        Task pollNext() {
+            return pending.poll();
+        }
+    }
+
+    private ManualExecutorService executor;
+    private AtomicInteger idleCount;
+    private AtomicInteger done;
+
+    @Before
+    public void setUp() {
+        executor = new ManualExecutorService();
+        idleCount = new AtomicInteger();
+        done = new AtomicInteger();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void poolNeedsWorkers() {
+        new FifoPool(0, executor, idleCount::incrementAndGet);
+    }
+
+    @Test
+    public void workerLimitIsRespected() {
+        FifoPool sut = new FifoPool(3, executor, idleCount::incrementAndGet);
+        AtomicInteger maxRunning = new AtomicInteger();
+        for (int i = 0; i < 20; i++) {
+            sut.submit(new WorkerPool.Task(() -> maxRunning.accumulateAndGet(sut.getRunningCount(), Math::max)));
+        }
+
+        assertEquals(3, executor.size());
+        assertEquals(3, sut.getRunningCount());
+        assertFalse(sut.isIdle());
+
+        assertEquals(20, executor.runAll());
+        assertEquals(3, maxRunning.get());
+        assertTrue(sut.isIdle());
+    }
+
+    @Test
+    public void idleIsNotifiedOnceQueueIsDone() {
+        FifoPool sut = new FifoPool(2, executor, idleCount::incrementAndGet);
+        for (int i = 0; i < 5; i++) {
+            sut.submit(new WorkerPool.Task(done::incrementAndGet));
+        }
+
+        // one transfer done, others still queued or running
+        executor.runOne();
+        assertEquals(0, idleCount.get());
+
+        executor.runAll();
+        assertEquals(5, done.get());
+        assertEquals(1, idleCount.get());
+
+        // pool is reused after being idle
+        sut.submit(new WorkerPool.Task(done::incrementAndGet));
+        assertEquals(1, executor.runAll());
+        assertEquals(2, idleCount.get());
+    }
+
+    @Test
+    public void failingTransferDoesNotStopThePool() {
+        FifoPool sut = new FifoPool(2, executor, idleCount::incrementAndGet);
+        sut.submit(new WorkerPool.Task(() -> {
+            throw new IllegalStateException("broken transfer");
+        }));
+        for (int i = 0; i < 5; i++) {
+            sut.submit(new WorkerPool.Task(done::incrementAndGet));
+        }
+
+        assertEquals(6, executor.runAll());
+        assertEquals(5, done.get());
+        assertEquals(0, sut.getRunningCount());
+        assertEquals(1, idleCount.get());
+    }
+
+    @Test
+    public void queuedTransfersAreDroppedOnShutdown() {
+        FifoPool sut = new FifoPool(1, executor, idleCount::incrementAndGet);
+        for (int i = 0; i < 3; i++) {
+            sut.submit(new WorkerPool.Task(done::incrementAndGet));
+        }
+
+        sut.shutdown();
+        sut.submit(new WorkerPool.Task(done::incrementAndGet));
+
+        // the running transfer completes, queued ones are dropped
+        assertEquals(1, executor.runAll());
+        assertEquals(1, done.get());
+        assertTrue(sut.isIdle());
+    }
+}
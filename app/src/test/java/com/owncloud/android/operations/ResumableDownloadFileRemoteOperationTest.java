@@ -0,0 +1,250 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.operations;
+
+import com.owncloud.android.lib.common.operations.RemoteOperationResult;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResumableDownloadFileRemoteOperationTest {
+
+    private static final String REMOTE_PATH = "/Photos/video.mp4";
+    private static final int SIZE = 256 * 1024;
+    private static final int CUT_AFTER = 100 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String uri;
+    private File tmpFile;
+    private File etagFile;
+
+    /**
+     * Stand-in for the server: answers range requests and can drop the connection after some bytes.
+     */
+    private volatile byte[] content;
+    private volatile String etag;
+    private volatile long cutAfter = -1;
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    private final List<String> ifRanges = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        content = randomContent(1);
+        etag = "\"v1\"";
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        uri = "http://127.0.0.1:" + server.getAddress().getPort() + "/remote.php/webdav" + REMOTE_PATH;
+
+        tmpFile = new File(folder.getRoot(), REMOTE_PATH);
+        etagFile = new File(tmpFile.getAbsolutePath() + ResumableDownloadFileRemoteOperation.ETAG_SUFFIX);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        ranges.add(String.valueOf(range));
+        ifRanges.add(String.valueOf(ifRange));
+
+        byte[] body = content;
+        int start = 0;
+        int status = 200;
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+            if (start >= body.length) {
+                exchange.sendResponseHeaders(416, -1);
+                exchange.close();
+                return;
+            }
+            status = 206;
+            exchange.getResponseHeaders().add("Content-Range",
+                                              "bytes " + start + "-" + (body.length - 1) + "/" + body.length);
+        }
+
+        int length = body.length - start;
+        exchange.getResponseHeaders().add("ETag", etag);
+        exchange.getResponseHeaders().add("Last-Modified", "Tue, 15 Nov 1994 12:45:26 GMT");
+        exchange.sendResponseHeaders(status, length);
+
+        int toWrite = cutAfter >= 0 ? (int) Math.min(cutAfter, length) : length;
+        cutAfter = -1;
+        OutputStream outputStream = exchange.getResponseBody();
+        try {
+            outputStream.write(body, start, toWrite);
+            outputStream.flush();
+            // drops the connection if the body is incomplete
+            exchange.close();
+        } catch (IOException e) {
+            // connection dropped
+        }
+    }
+
+    private ResumableDownloadFileRemoteOperation operation() {
+        return new ResumableDownloadFileRemoteOperation(REMOTE_PATH, folder.getRoot().getAbsolutePath());
+    }
+
+    private static byte[] randomContent(long seed) {
+        byte[] bytes = new byte[SIZE];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void fileIsDownloaded() throws IOException {
+        ResumableDownloadFileRemoteOperation sut = operation();
+
+        RemoteOperationResult result = sut.download(new HttpClient(), uri);
+
+        assertTrue(result.isSuccess());
+        assertArrayEquals(content, Files.readAllBytes(tmpFile.toPath()));
+        assertFalse(etagFile.exists());
+        assertEquals(0, sut.getResumedFrom());
+        assertEquals("v1", sut.getEtag());
+        assertEquals(Collections.singletonList("null"), ranges);
+    }
+
+    @Test
+    public void interruptedDownloadIsResumed() throws IOException {
+        cutAfter = CUT_AFTER;
+        RemoteOperationResult interrupted = operation().download(new HttpClient(), uri);
+
+        assertFalse(interrupted.isSuccess());
+        assertEquals(CUT_AFTER, tmpFile.length());
+        assertTrue(etagFile.exists());
+
+        ResumableDownloadFileRemoteOperation sut = operation();
+        RemoteOperationResult result = sut.download(new HttpClient(), uri);
+
+        assertTrue(result.isSuccess());
+        assertEquals(CUT_AFTER, sut.getResumedFrom());
+        assertArrayEquals(content, Files.readAllBytes(tmpFile.toPath()));
+        assertFalse(etagFile.exists());
+        assertEquals("bytes=" + CUT_AFTER + "-", ranges.get(1));
+        assertEquals("\"v1\"", ifRanges.get(1));
+    }
+
+    @Test
+    public void partialFileIsDiscardedWhenFileChanged() throws IOException {
+        cutAfter = CUT_AFTER;
+        operation().download(new HttpClient(), uri);
+        assertEquals(CUT_AFTER, tmpFile.length());
+
+        content = randomContent(2);
+        etag = "\"v2\"";
+        ResumableDownloadFileRemoteOperation sut = operation();
+        RemoteOperationResult result = sut.download(new HttpClient(), uri);
+
+        assertTrue(result.isSuccess());
+        assertEquals(0, sut.getResumedFrom());
+        assertEquals("v2", sut.getEtag());
+        assertArrayEquals(content, Files.readAllBytes(tmpFile.toPath()));
+    }
+
+    @Test
+    public void partialFileLongerThanRemoteFileIsDiscarded() throws IOException {
+        writePartialFile(new byte[SIZE + 10], "\"v1\"");
+
+        ResumableDownloadFileRemoteOperation sut = operation();
+        RemoteOperationResult result = sut.download(new HttpClient(), uri);
+
+        assertTrue(result.isSuccess());
+        assertEquals(0, sut.getResumedFrom());
+        assertArrayEquals(content, Files.readAllBytes(tmpFile.toPath()));
+        assertEquals(2, ranges.size());
+        assertEquals("null", ranges.get(1));
+    }
+
+    @Test
+    public void partialFileWithoutEtagIsNotResumed() throws IOException {
+        writePartialFile(new byte[CUT_AFTER], null);
+
+        ResumableDownloadFileRemoteOperation sut = operation();
+        RemoteOperationResult result = sut.download(new HttpClient(), uri);
+
+        assertTrue(result.isSuccess());
+        assertEquals(0, sut.getResumedFrom());
+        assertArrayEquals(content, Files.readAllBytes(tmpFile.toPath()));
+        assertEquals(Collections.singletonList("null"), ranges);
+    }
+
+    @Test
+    public void cancelledDownloadDiscardsPartialFile() throws IOException {
+        writePartialFile(new byte[CUT_AFTER], "\"v1\"");
+        ResumableDownloadFileRemoteOperation sut = operation();
+        sut.cancel();
+
+        RemoteOperationResult result = sut.download(new HttpClient(), uri);
+
+        assertTrue(result.isCancelled());
+        assertFalse(tmpFile.exists());
+        assertFalse(etagFile.exists());
+        assertTrue(ranges.isEmpty());
+    }
+
+    @Test
+    public void rangeStartIsParsed() {
+        assertEquals(100, ResumableDownloadFileRemoteOperation.getRangeStart("bytes 100-199/200"));
+        assertEquals(0, ResumableDownloadFileRemoteOperation.getRangeStart("bytes 0-0/1"));
+        assertEquals(-1, ResumableDownloadFileRemoteOperation.getRangeStart("bytes */200"));
+        assertEquals(-1, ResumableDownloadFileRemoteOperation.getRangeStart(null));
+    }
+
+    private void writePartialFile(byte[] bytes, String partialEtag) throws IOException {
+        assertTrue(tmpFile.getParentFile().mkdirs());
+        try (OutputStream outputStream = new FileOutputStream(tmpFile)) {
+            outputStream.write(bytes);
+        }
+        if (partialEtag != null) {
+            try (OutputStream outputStream = new FileOutputStream(etagFile)) {
+                outputStream.write(partialEtag.getBytes());
+            }
+        }
+    }
+}
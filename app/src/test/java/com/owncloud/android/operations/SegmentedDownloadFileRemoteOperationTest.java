@@ -0,0 +1,306 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.operations;
+
+import com.owncloud.android.lib.common.operations.RemoteOperationResult;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentedDownloadFileRemoteOperationTest {
+
+    private static final String REMOTE_PATH = "/Videos/movie.mp4";
+    private static final int SIZE = 1024 * 1024;
+    private static final int SEGMENTS = 4;
+    private static final long MIN_SEGMENT_SIZE = 64 * 1024;
+    private static final int CONNECTIONS = 5;
+
+    /**
+     * The stand-in sends one window per round trip on each connection, as TCP does on a link with high latency.
+     */
+    private static final int WINDOW = 32 * 1024;
+    private static final int BENCHMARK_SIZE = 4 * 1024 * 1024;
+    private static final long BENCHMARK_LATENCY_MILLIS = 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String uri;
+    private File tmpFile;
+
+    private volatile byte[] content;
+    private volatile String etag;
+    private volatile boolean acceptRanges = true;
+    private volatile long latencyMillis;
+    /**
+     * Content served for ranges, set to simulate a file changing after the HEAD request.
+     */
+    private volatile byte[] changedContent;
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        content = randomContent(SIZE, 1);
+        etag = "\"v1\"";
+
+        serverExecutor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(serverExecutor);
+        server.start();
+        uri = "http://127.0.0.1:" + server.getAddress().getPort() + "/remote.php/webdav" + REMOTE_PATH;
+
+        tmpFile = new File(folder.getRoot(), REMOTE_PATH);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        requests.add(exchange.getRequestMethod() + " " + range);
+        sleep(latencyMillis);
+
+        if (acceptRanges) {
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+        }
+        exchange.getResponseHeaders().add("Last-Modified", "Tue, 15 Nov 1994 12:45:26 GMT");
+
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().add("ETag", etag);
+            exchange.getResponseHeaders().add("Content-Length", String.valueOf(content.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+
+        byte[] body = content;
+        String bodyEtag = etag;
+        if (changedContent != null) {
+            body = changedContent;
+            bodyEtag = "\"v2\"";
+        }
+
+        int start = 0;
+        int end = body.length - 1;
+        int status = 200;
+        if (acceptRanges && range != null && (ifRange == null || ifRange.equals(bodyEtag))) {
+            String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            start = Integer.parseInt(bounds[0]);
+            if (!bounds[1].isEmpty()) {
+                end = Math.min(end, Integer.parseInt(bounds[1]));
+            }
+            status = 206;
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + body.length);
+        }
+
+        int length = end - start + 1;
+        exchange.getResponseHeaders().add("ETag", bodyEtag);
+        exchange.sendResponseHeaders(status, length);
+
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            for (int offset = start; offset <= end; offset += WINDOW) {
+                outputStream.write(body, offset, Math.min(WINDOW, end + 1 - offset));
+                outputStream.flush();
+                sleep(latencyMillis);
+            }
+        } catch (IOException e) {
+            // connection dropped
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static HttpClient client() {
+        MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+        connectionManager.getParams().setDefaultMaxConnectionsPerHost(CONNECTIONS);
+        connectionManager.getParams().setMaxTotalConnections(CONNECTIONS);
+        return new HttpClient(connectionManager);
+    }
+
+    private SegmentedDownloadFileRemoteOperation operation() {
+        return new SegmentedDownloadFileRemoteOperation(REMOTE_PATH,
+                                                        folder.getRoot().getAbsolutePath(),
+                                                        SEGMENTS,
+                                                        MIN_SEGMENT_SIZE);
+    }
+
+    private static byte[] randomContent(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private long getRangeRequests() {
+        return requests.stream().filter(request -> request.startsWith("GET bytes=")).count();
+    }
+
+    @Test
+    public void fileIsDownloadedInSegments() throws IOException {
+        SegmentedDownloadFileRemoteOperation sut = operation();
+
+        RemoteOperationResult result = sut.download(client(), uri);
+
+        assertTrue(result.isSuccess());
+        assertArrayEquals(content, Files.readAllBytes(tmpFile.toPath()));
+        assertEquals("v1", sut.getEtag());
+        assertEquals("HEAD null", requests.get(0));
+        assertEquals(SEGMENTS, getRangeRequests());
+        assertTrue(requests.contains("GET bytes=0-262143"));
+        assertTrue(requests.contains("GET bytes=786432-1048575"));
+    }
+
+    @Test
+    public void serverWithoutRangeSupportGetsSingleStream() throws IOException {
+        acceptRanges = false;
+
+        RemoteOperationResult result = operation().download(client(), uri);
+
+        assertTrue(result.isSuccess());
+        assertArrayEquals(content, Files.readAllBytes(tmpFile.toPath()));
+        assertEquals(0, getRangeRequests());
+    }
+
+    @Test
+    public void fileChangedAfterHeadIsDownloadedAsSingleStream() throws IOException {
+        changedContent = randomContent(SIZE, 2);
+
+        SegmentedDownloadFileRemoteOperation sut = operation();
+        RemoteOperationResult result = sut.download(client(), uri);
+
+        assertTrue(result.isSuccess());
+        assertEquals("v2", sut.getEtag());
+        assertArrayEquals(changedContent, Files.readAllBytes(tmpFile.toPath()));
+        assertEquals("GET null", requests.get(requests.size() - 1));
+    }
+
+    @Test
+    public void smallFileIsDownloadedAsSingleStream() throws IOException {
+        content = randomContent((int) MIN_SEGMENT_SIZE, 3);
+
+        RemoteOperationResult result = operation().download(client(), uri);
+
+        assertTrue(result.isSuccess());
+        assertArrayEquals(content, Files.readAllBytes(tmpFile.toPath()));
+        assertEquals(0, getRangeRequests());
+    }
+
+    @Test
+    public void clientWithoutConnectionPoolGetsSingleStream() throws IOException {
+        // the default connection manager allows a single connection only
+        RemoteOperationResult result = operation().download(new HttpClient(), uri);
+
+        assertTrue(result.isSuccess());
+        assertArrayEquals(content, Files.readAllBytes(tmpFile.toPath()));
+        assertFalse(requests.contains("HEAD null"));
+    }
+
+    @Test
+    public void cancelledDownloadLeavesNoFile() {
+        SegmentedDownloadFileRemoteOperation sut = operation();
+        sut.cancel();
+
+        RemoteOperationResult result = sut.download(client(), uri);
+
+        assertTrue(result.isCancelled());
+        assertFalse(tmpFile.exists());
+    }
+
+    @Test
+    public void fileIsSplitIntoSegments() {
+        List<SegmentedDownloadFileRemoteOperation.Segment> segments =
+            SegmentedDownloadFileRemoteOperation.getSegments(10, 3, 1);
+
+        assertEquals("[0-3, 4-7, 8-9]", segments.toString());
+        assertEquals("[0-9]", SegmentedDownloadFileRemoteOperation.getSegments(10, 3, 8).toString());
+        assertEquals("[0-4, 5-9]", SegmentedDownloadFileRemoteOperation.getSegments(10, 3, 5).toString());
+        assertTrue(SegmentedDownloadFileRemoteOperation.getSegments(0, 3, 1).isEmpty());
+    }
+
+    /**
+     * Compares a single stream with a segmented download over a link with injected latency. Only logs the
+     * throughput, timings depend on the machine.
+     */
+    @Ignore("Benchmark, run on demand")
+    @Test
+    public void benchmarkSegmentedDownloadOnHighLatencyLink() throws IOException {
+        content = randomContent(BENCHMARK_SIZE, 4);
+        latencyMillis = BENCHMARK_LATENCY_MILLIS;
+
+        long singleStart = System.currentTimeMillis();
+        RemoteOperationResult single = new ResumableDownloadFileRemoteOperation(REMOTE_PATH,
+                                                                                folder.getRoot().getAbsolutePath())
+            .download(client(), uri);
+        long singleTime = System.currentTimeMillis() - singleStart;
+        assertTrue(single.isSuccess());
+        assertTrue(tmpFile.delete());
+
+        long segmentedStart = System.currentTimeMillis();
+        RemoteOperationResult segmented = operation().download(client(), uri);
+        long segmentedTime = System.currentTimeMillis() - segmentedStart;
+        assertTrue(segmented.isSuccess());
+        assertArrayEquals(content, Files.readAllBytes(tmpFile.toPath()));
+
+        System.out.println("Download of " + BENCHMARK_SIZE + " bytes with " + BENCHMARK_LATENCY_MILLIS +
+                               " ms latency: single stream " + throughput(singleTime) + " KiB/s, " + SEGMENTS +
+                               " segments " + throughput(segmentedTime) + " KiB/s");
+    }
+
+    private static long throughput(long millis) {
+        return BENCHMARK_SIZE / 1024 * 1000 / Math.max(millis, 1);
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.syncadapter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FolderTreeWalkerTest {
+
+    private static final int DEPTH = 3;
+    private static final int FAN_OUT = 6;
+    /**
+     * Folders of a full tree with {@link #DEPTH} levels below the root.
+     */
+    private static final int FOLDERS = 1 + 6 + 36 + 216;
+
+    /**
+     * Synthetic tree: folder paths like "/1/4/", each with {@link #FAN_OUT} subfolders down to {@link #DEPTH}.
+     */
+    private static List<String> children(String folder) {
+        List<String> children = new ArrayList<>();
+        int depth = folder.length() - folder.replace("/", "").length() - 1;
+        if (depth < DEPTH) {
+            for (int i = 0; i < FAN_OUT; i++) {
+                children.add(folder + i + "/");
+            }
+        }
+        return children;
+    }
+
+    private static FolderTreeWalker.FolderVisitor<String> visitor(Set<String> visited, List<String> done) {
+        return new FolderTreeWalker.FolderVisitor<String>() {
+            @Override
+            public List<String> visitFolder(String folder) {
+                assertTrue("folder visited twice: " + folder, visited.add(folder));
+                return children(folder);
+            }
+
+            @Override
+            public void onSubtreeDone(String folder) {
+                done.add(folder);
+            }
+        };
+    }
+
+    @Test
+    public void wholeTreeIsVisited() {
+        Set<String> visited = ConcurrentHashMap.newKeySet();
+        List<String> done = new CopyOnWriteArrayList<>();
+
+        int count = new FolderTreeWalker<String>(4).walk("/", visitor(visited, done), () -> false);
+
+        assertEquals(FOLDERS, count);
+        assertEquals(FOLDERS, visited.size());
+        assertEquals(FOLDERS, done.size());
+    }
+
+    @Test
+    public void subtreesAreDoneAfterTheirChildren() {
+        List<String> done = new CopyOnWriteArrayList<>();
+
+        new FolderTreeWalker<String>(4).walk("/", visitor(ConcurrentHashMap.newKeySet(), done), () -> false);
+
+        for (String folder : done) {
+            for (String child : children(folder)) {
+                assertTrue(child + " done after " + folder, done.indexOf(child) < done.indexOf(folder));
+            }
+        }
+        assertEquals("/", done.get(done.size() - 1));
+    }
+
+    @Test
+    public void prunedSubtreesAreSkipped() {
+        Set<String> visited = ConcurrentHashMap.newKeySet();
+
+        int count = new FolderTreeWalker<String>(4).walk("/", new FolderTreeWalker.FolderVisitor<String>() {
+            @Override
+            public List<String> visitFolder(String folder) {
+                visited.add(folder);
+                // "/0/" did not change
+                return "/0/".equals(folder) ? Collections.emptyList() : children(folder);
+            }
+
+            @Override
+            public void onSubtreeDone(String folder) {
+                // nothing to do
+            }
+        }, () -> false);
+
+        assertEquals(FOLDERS - 6 - 36, count);
+        assertTrue(visited.contains("/0/"));
+        assertFalse(visited.contains("/0/1/"));
+        assertTrue(visited.contains("/1/1/"));
+    }
+
+    @Test
+    public void failingFolderDoesNotStopTheWalk() {
+        Set<String> visited = ConcurrentHashMap.newKeySet();
+        List<String> done = new CopyOnWriteArrayList<>();
+
+        int count = new FolderTreeWalker<String>(2).walk("/", new FolderTreeWalker.FolderVisitor<String>() {
+            @Override
+            public List<String> visitFolder(String folder) {
+                visited.add(folder);
+                if ("/2/".equals(folder)) {
+                    throw new IllegalStateException("broken folder");
+                }
+                return children(folder);
+            }
+
+            @Override
+            public void onSubtreeDone(String folder) {
+                done.add(folder);
+            }
+        }, () -> false);
+
+        assertEquals(FOLDERS - 6 - 36, count);
+        assertFalse(done.contains("/2/"));
+        assertTrue(done.contains("/"));
+    }
+
+    @Test
+    public void cancelledWalkStartsNoNewFolders() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicInteger visits = new AtomicInteger();
+        List<String> done = new CopyOnWriteArrayList<>();
+
+        int count = new FolderTreeWalker<String>(4).walk("/", new FolderTreeWalker.FolderVisitor<String>() {
+            @Override
+            public List<String> visitFolder(String folder) {
+                if (visits.incrementAndGet() == 10) {
+                    cancelled.set(true);
+                }
+                return children(folder);
+            }
+
+            @Override
+            public void onSubtreeDone(String folder) {
+                done.add(folder);
+            }
+        }, cancelled::get);
+
+        // folders already started when the flag was set may finish
+        assertTrue(count >= 10);
+        assertTrue(count < 10 + 4);
+        assertFalse(done.contains("/"));
+    }
+
+    @Test
+    public void parallelismIsBounded() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch allWorkersBusy = new CountDownLatch(3);
+
+        new FolderTreeWalker<String>(3).walk("/", new FolderTreeWalker.FolderVisitor<String>() {
+            @Override
+            public List<String> visitFolder(String folder) {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                if (folder.length() == "/0/".length()) {
+                    // first folders below the root wait until every worker visits one
+                    allWorkersBusy.countDown();
+                    await(allWorkersBusy);
+                }
+                running.decrementAndGet();
+                return children(folder);
+            }
+
+            @Override
+            public void onSubtreeDone(String folder) {
+                // nothing to do
+            }
+        }, () -> false);
+
+        assertEquals(3, maxRunning.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue("workers did not run at the same time", latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
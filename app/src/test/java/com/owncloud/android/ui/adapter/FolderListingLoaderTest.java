@@ -0,0 +1,215 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.ui.adapter;
+
+import com.owncloud.android.datamodel.OCFile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class FolderListingLoaderTest {
+
+    private List<Runnable> background;
+    private List<Runnable> main;
+    private FolderListingLoader sut;
+
+    private List<List<OCFile>> listed;
+    private List<DiffUtil.DiffResult> diffs;
+
+    @Before
+    public void setUp() {
+        background = new ArrayList<>();
+        main = new ArrayList<>();
+        sut = new FolderListingLoader(background::add, main::add);
+        listed = new ArrayList<>();
+        diffs = new ArrayList<>();
+    }
+
+    private static OCFile file(long id) {
+        OCFile file = new OCFile("/folder/file" + id);
+        file.setFileId(id);
+        file.setEtag("etag" + id);
+        return file;
+    }
+
+    private static List<OCFile> files(long... ids) {
+        List<OCFile> files = new ArrayList<>();
+        for (long id : ids) {
+            files.add(file(id));
+        }
+        return files;
+    }
+
+    private void load(List<OCFile> files, @Nullable List<OCFile> previousFiles) {
+        sut.load(() -> files, previousFiles, (result, diff) -> {
+            listed.add(result);
+            diffs.add(diff);
+        });
+    }
+
+    private static void runAll(List<Runnable> tasks) {
+        List<Runnable> pending = new ArrayList<>(tasks);
+        tasks.clear();
+        for (Runnable task : pending) {
+            task.run();
+        }
+    }
+
+    @Test
+    public void listingIsDeliveredOnCallbackExecutor() {
+        List<OCFile> files = files(1, 2, 3);
+        load(files, null);
+
+        runAll(background);
+        assertEquals(0, listed.size());
+
+        runAll(main);
+        assertEquals(1, listed.size());
+        assertSame(files, listed.get(0));
+        assertNull(diffs.get(0));
+    }
+
+    @Test
+    public void newerListingCancelsOlderOne() {
+        List<OCFile> first = files(1);
+        List<OCFile> second = files(2);
+        load(first, null);
+        load(second, null);
+
+        runAll(background);
+        runAll(main);
+
+        assertEquals(1, listed.size());
+        assertSame(second, listed.get(0));
+    }
+
+    @Test
+    public void listingStartedWhileOlderIsDeliveredCancelsIt() {
+        List<OCFile> first = files(1);
+        load(first, null);
+        runAll(background);
+
+        // user navigated on before the first listing reached the main thread
+        load(files(2), null);
+        runAll(main);
+
+        assertEquals(0, listed.size());
+    }
+
+    @Test
+    public void cancelledListingIsNotDelivered() {
+        load(files(1), null);
+        sut.cancel();
+
+        runAll(background);
+        runAll(main);
+
+        assertEquals(0, listed.size());
+    }
+
+    @Test
+    public void failingSourceDeliversNothing() {
+        sut.load(() -> {
+            throw new IllegalStateException("database closed");
+        }, null, (result, diff) -> listed.add(result));
+
+        runAll(background);
+        runAll(main);
+
+        assertEquals(0, listed.size());
+    }
+
+    @Test
+    public void refreshOnlyReportsChangedRows() {
+        List<OCFile> previous = files(1, 2, 3, 4);
+        List<OCFile> current = files(1, 3, 4, 5);
+        current.get(1).setEtag("changed");
+
+        load(current, previous);
+        runAll(background);
+        runAll(main);
+
+        RecordingCallback updates = new RecordingCallback();
+        assertNotNull(diffs.get(0));
+        diffs.get(0).dispatchUpdatesTo(updates);
+
+        // updates are dispatched from the end of the list
+        assertEquals(Arrays.asList("inserted 4+1", "changed 2+1", "removed 1+1"), updates.events);
+    }
+
+    @Test
+    public void refreshOfLargeFolderOnlyReportsChangedRows() {
+        final int count = 20000;
+        List<OCFile> previous = new ArrayList<>();
+        List<OCFile> current = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            previous.add(file(i));
+            if (i % 1000 != 0) {
+                current.add(file(i));
+            }
+        }
+        current.add(file(count));
+
+        load(current, previous);
+        runAll(background);
+        runAll(main);
+
+        RecordingCallback updates = new RecordingCallback();
+        diffs.get(0).dispatchUpdatesTo(updates);
+        // every removed file and the one added at the end
+        assertEquals(count / 1000 + 1, updates.events.size());
+    }
+
+    private static final class RecordingCallback implements ListUpdateCallback {
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onInserted(int position, int count) {
+            events.add("inserted " + position + "+" + count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            events.add("removed " + position + "+" + count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            events.add("moved " + fromPosition + ">" + toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            events.add("changed " + position + "+" + count);
+        }
+    }
+}
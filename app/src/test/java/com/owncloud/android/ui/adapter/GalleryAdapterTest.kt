@@ -101,4 +101,37 @@ class GalleryAdapterTest {
 
         assertEquals(4, sut.getFilesCount())
     }
+
+    @Test
+    fun testAppendPageContinuesLastMonth() {
+        val shown = listOf(
+            GalleryItems(MAY, listOf(OCFile("/1.jpg"))),
+            GalleryItems(APRIL, listOf(OCFile("/2.jpg")))
+        )
+        val page = listOf(
+            GalleryItems(APRIL, listOf(OCFile("/3.jpg"))),
+            GalleryItems(MARCH, listOf(OCFile("/4.jpg")))
+        )
+
+        val result = GalleryAdapter.appendPage(shown, page)
+
+        assertEquals(listOf(MAY, APRIL, MARCH), result.map { it.date })
+        assertEquals(listOf("/2.jpg", "/3.jpg"), result[1].files.map { it.remotePath })
+    }
+
+    @Test
+    fun testAppendPageStartingNewMonth() {
+        val shown = listOf(GalleryItems(MAY, listOf(OCFile("/1.jpg"))))
+        val page = listOf(GalleryItems(APRIL, listOf(OCFile("/2.jpg"))))
+
+        assertEquals(listOf(MAY, APRIL), GalleryAdapter.appendPage(shown, page).map { it.date })
+        assertEquals(shown, GalleryAdapter.appendPage(shown, emptyList()))
+        assertEquals(page, GalleryAdapter.appendPage(emptyList(), page))
+    }
+
+    companion object {
+        private const val MAY = 1651363200000
+        private const val APRIL = 1648771200000
+        private const val MARCH = 1646092800000
+    }
 }
@@ -0,0 +1,233 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.ui.preview;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LargeTextFileTest {
+
+    private static final LargeTextFile.Cancellation NOT_CANCELLED = () -> false;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(String text, Charset charset) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), text.getBytes(charset));
+        return file;
+    }
+
+    private LargeTextFile index(File file, Charset charset) throws IOException {
+        LargeTextFile sut = new LargeTextFile(file, charset);
+        sut.index(NOT_CANCELLED, lineCount -> {
+        });
+        return sut;
+    }
+
+    private static List<String> lines(LargeTextFile file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < file.getLineCount(); i++) {
+            lines.add(file.getLine(i));
+        }
+        return lines;
+    }
+
+    @Test
+    public void linesAreSplitAtLineFeeds() throws IOException {
+        StringBuilder text = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < LargeTextFile.LINES_PER_BLOCK * 3 + 5; i++) {
+            String line = i % 7 == 0 ? "" : "line " + i;
+            expected.add(line);
+            text.append(line).append(i % 2 == 0 ? "\r\n" : "\n");
+        }
+
+        try (LargeTextFile sut = index(write(text.toString(), StandardCharsets.UTF_8), StandardCharsets.UTF_8)) {
+            assertTrue(sut.isIndexed());
+            assertEquals(expected, lines(sut));
+            // read again in a different order, from the cached blocks
+            int lastBlock = LargeTextFile.LINES_PER_BLOCK * 3;
+            assertEquals(expected.get(lastBlock), sut.getLine(lastBlock));
+            assertEquals(expected.get(1), sut.getLine(1));
+        }
+    }
+
+    @Test
+    public void lastLineWithoutLineFeedIsALine() throws IOException {
+        try (LargeTextFile sut = index(write("first\nsecond", StandardCharsets.UTF_8), StandardCharsets.UTF_8)) {
+            assertEquals(2, sut.getLineCount());
+            assertEquals("second", sut.getLine(1));
+        }
+    }
+
+    @Test
+    public void emptyFileHasNoLines() throws IOException {
+        try (LargeTextFile sut = index(write("", StandardCharsets.UTF_8), StandardCharsets.UTF_8)) {
+            assertEquals(0, sut.getLineCount());
+            assertTrue(sut.isIndexed());
+        }
+    }
+
+    @Test
+    public void longLinesAreSplitBetweenCharacters() throws IOException {
+        StringBuilder longLine = new StringBuilder();
+        while (longLine.length() < LargeTextFile.MAX_LINE_BYTES * 3) {
+            longLine.append("aäö€");
+        }
+
+        try (LargeTextFile sut = index(write(longLine + "\nend", StandardCharsets.UTF_8), StandardCharsets.UTF_8)) {
+            List<String> lines = lines(sut);
+
+            assertTrue(lines.size() > 3);
+            assertEquals("end", lines.get(lines.size() - 1));
+            assertEquals(longLine.toString(), String.join("", lines.subList(0, lines.size() - 1)));
+            for (String line : lines) {
+                assertFalse(line.contains("�"));
+                assertTrue(line.getBytes(StandardCharsets.UTF_8).length <= LargeTextFile.MAX_LINE_BYTES + 3);
+            }
+        }
+    }
+
+    @Test
+    public void longLinesOfOtherMultiByteCharsetsAreSplit() throws IOException {
+        Charset charset = Charset.forName("EUC-KR");
+        StringBuilder longLine = new StringBuilder();
+        // two bytes per character, both above 0x80
+        while (longLine.length() < LargeTextFile.MAX_LINE_BYTES * 2) {
+            longLine.append("가");
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < LargeTextFile.LINES_PER_BLOCK + 10; i++) {
+            text.append(longLine).append('\n');
+        }
+
+        try (LargeTextFile sut = index(write(text.toString(), charset), charset)) {
+            List<String> lines = lines(sut);
+
+            // every long line is split into 4 parts of an even number of bytes
+            assertEquals((LargeTextFile.LINES_PER_BLOCK + 10) * 4, lines.size());
+            assertEquals(longLine.toString(), String.join("", lines.subList(0, 4)));
+            for (String line : lines) {
+                assertTrue(line.getBytes(charset).length <= LargeTextFile.MAX_LINE_BYTES);
+            }
+        }
+    }
+
+    @Test
+    public void singleByteCharsetsAreDecoded() throws IOException {
+        Charset charset = Charset.forName("ISO-8859-1");
+        try (LargeTextFile sut = index(write("Grüße\nà bientôt", charset), charset)) {
+            assertEquals("Grüße", sut.getLine(0));
+            assertEquals("à bientôt", sut.getLine(1));
+        }
+    }
+
+    @Test
+    public void wideCharsetsAreNotSupported() {
+        assertTrue(LargeTextFile.isSupported(StandardCharsets.UTF_8));
+        assertTrue(LargeTextFile.isSupported(StandardCharsets.ISO_8859_1));
+        assertFalse(LargeTextFile.isSupported(StandardCharsets.UTF_16LE));
+        assertFalse(LargeTextFile.isSupported(Charset.forName("UTF-32")));
+    }
+
+    @Test
+    public void searchFindsNextLineIgnoringCase() throws IOException {
+        String text = "alpha\nBeta\ngamma\nbeta (2)\ndelta";
+        try (LargeTextFile sut = index(write(text, StandardCharsets.UTF_8), StandardCharsets.UTF_8)) {
+            assertEquals(1, sut.findNext("beta", 0, NOT_CANCELLED));
+            assertEquals(3, sut.findNext("beta", 2, NOT_CANCELLED));
+            assertEquals(-1, sut.findNext("beta", 4, NOT_CANCELLED));
+            // taken literally
+            assertEquals(3, sut.findNext("(2)", 0, NOT_CANCELLED));
+            assertEquals(-1, sut.findNext("a.*a", 0, NOT_CANCELLED));
+        }
+    }
+
+    @Test
+    public void cancelledPassesStop() throws IOException {
+        String text = "a\nb\nneedle\n";
+        try (LargeTextFile sut = new LargeTextFile(write(text, StandardCharsets.UTF_8), StandardCharsets.UTF_8)) {
+            sut.index(() -> true, lineCount -> {
+            });
+            assertFalse(sut.isIndexed());
+            assertEquals(0, sut.getLineCount());
+
+            sut.index(NOT_CANCELLED, lineCount -> {
+            });
+            assertEquals(-1, sut.findNext("needle", 0, () -> true));
+            assertEquals(2, sut.findNext("needle", 0, NOT_CANCELLED));
+        }
+    }
+
+    @Test
+    public void linesAreReadWhileIndexing() throws IOException {
+        String text = "first\nsecond\nthird";
+        try (LargeTextFile sut = new LargeTextFile(write(text, StandardCharsets.UTF_8), StandardCharsets.UTF_8)) {
+            List<String> read = new ArrayList<>();
+            sut.index(NOT_CANCELLED, lineCount -> {
+                try {
+                    // the last block grows between the calls
+                    read.add(sut.getLine(lineCount - 1));
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            });
+
+            assertEquals(Arrays.asList("second", "third"), read);
+            assertEquals("third", sut.getLine(2));
+        }
+    }
+
+    @Test
+    public void fileLargerThanAWindowIsIndexed() throws IOException {
+        File file = folder.newFile();
+        int lineCount = 300000;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                                                                       StandardCharsets.UTF_8))) {
+            for (int i = 0; i < lineCount; i++) {
+                writer.write("2022-05-01 12:00:00 D/Sample: line number " + i + " of the log\n");
+            }
+        }
+
+        try (LargeTextFile sut = index(file, StandardCharsets.UTF_8)) {
+            assertEquals(lineCount, sut.getLineCount());
+            assertEquals(lineCount - 1, sut.findNext("line number " + (lineCount - 1) + " ", 0, NOT_CANCELLED));
+            assertEquals("2022-05-01 12:00:00 D/Sample: line number 123456 of the log", sut.getLine(123456));
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+public class AesGcmStreamTest {
+
+    private static final int[] LENGTHS = {
+        0, 1, 15, 16, 17, 1000,
+        AesGcmStream.BUFFER_SIZE - 1,
+        AesGcmStream.BUFFER_SIZE,
+        AesGcmStream.BUFFER_SIZE + 1,
+        AesGcmStream.BUFFER_SIZE + AesGcmStream.TAG_LENGTH,
+        3 * AesGcmStream.BUFFER_SIZE + 7
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void outputIsCompatibleWithPlatformCipher() throws Exception {
+        for (int ivLength : new int[]{12, EncryptionUtils.ivLength}) {
+            for (int length : LENGTHS) {
+                byte[] key = randomBytes(16);
+                byte[] iv = randomBytes(ivLength);
+                byte[] plain = randomBytes(length);
+
+                Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+                cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(128, iv));
+                byte[] expected = cipher.doFinal(plain);
+
+                ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+                AesGcmStream.encrypt(new ByteArrayInputStream(plain), encrypted, key, iv);
+                assertArrayEquals("iv " + ivLength + ", length " + length, expected, encrypted.toByteArray());
+
+                ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+                AesGcmStream.decrypt(new ByteArrayInputStream(expected), decrypted, key, iv);
+                assertArrayEquals("iv " + ivLength + ", length " + length, plain, decrypted.toByteArray());
+            }
+        }
+    }
+
+    @Test(expected = AEADBadTagException.class)
+    public void modifiedCipherTextIsRejected() throws Exception {
+        byte[] key = randomBytes(16);
+        byte[] iv = randomBytes(EncryptionUtils.ivLength);
+
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        AesGcmStream.encrypt(new ByteArrayInputStream(randomBytes(1000)), encrypted, key, iv);
+        byte[] cipherText = encrypted.toByteArray();
+        cipherText[500] ^= 1;
+
+        AesGcmStream.decrypt(new ByteArrayInputStream(cipherText), new ByteArrayOutputStream(), key, iv);
+    }
+
+    @Test(expected = AEADBadTagException.class)
+    public void truncatedInputIsRejected() throws Exception {
+        AesGcmStream.decrypt(new ByteArrayInputStream(new byte[AesGcmStream.TAG_LENGTH - 1]),
+                             new ByteArrayOutputStream(),
+                             randomBytes(16),
+                             randomBytes(EncryptionUtils.ivLength));
+    }
+
+    @Test
+    public void fileLargerThanHeapRoundTrip() throws Exception {
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        assumeTrue("heap size is not bounded", maxHeap != Long.MAX_VALUE);
+
+        long length = maxHeap + AesGcmStream.BUFFER_SIZE + 3;
+        File plainFile = folder.newFile("plain");
+        File encryptedFile = folder.newFile("encrypted");
+        File decryptedFile = folder.newFile("decrypted");
+
+        byte[] expectedDigest = writeRandomFile(plainFile, length);
+        byte[] key = randomBytes(32);
+        byte[] iv = randomBytes(EncryptionUtils.ivLength);
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(plainFile));
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(encryptedFile))) {
+            AesGcmStream.encrypt(in, out, key, iv);
+        }
+        assertEquals(length + AesGcmStream.TAG_LENGTH, encryptedFile.length());
+
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (InputStream in = new BufferedInputStream(new FileInputStream(encryptedFile));
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(decryptedFile))) {
+            AesGcmStream.decrypt(in, out, key, iv);
+        }
+        try (InputStream in = new DigestInputStream(new FileInputStream(decryptedFile), digest)) {
+            byte[] buffer = new byte[AesGcmStream.BUFFER_SIZE];
+            while (in.read(buffer) != -1) {
+                // digest only
+            }
+        }
+
+        assertEquals(length, decryptedFile.length());
+        assertArrayEquals(expectedDigest, digest.digest());
+    }
+
+    private byte[] writeRandomFile(File file, long length) throws IOException, java.security.NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[AesGcmStream.BUFFER_SIZE];
+        try (OutputStream out = new FileOutputStream(file)) {
+            long written = 0;
+            while (written < length) {
+                random.nextBytes(buffer);
+                int count = (int) Math.min(buffer.length, length - written);
+                out.write(buffer, 0, count);
+                digest.update(buffer, 0, count);
+                written += count;
+            }
+        }
+        return digest.digest();
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2022 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.utils;
+
+import com.owncloud.android.datamodel.MediaFolderType;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+
+public class FilesSyncHelperTest {
+
+    private static final long NOW = 1_650_000_000;
+
+    @Test
+    public void changedImagesOnlyQueryImageFolders() {
+        String[] uris = {
+            "content://media/external/images/media/42",
+            "content://media/external/images/media"
+        };
+
+        assertEquals(EnumSet.of(MediaFolderType.IMAGE), FilesSyncHelper.getChangedMediaTypes(uris));
+    }
+
+    @Test
+    public void changedVideosOnlyQueryVideoFolders() {
+        String[] uris = {"content://media/external_primary/video/media/7"};
+
+        assertEquals(EnumSet.of(MediaFolderType.VIDEO), FilesSyncHelper.getChangedMediaTypes(uris));
+    }
+
+    @Test
+    public void unknownOrMissingUrisQueryAllMedia() {
+        EnumSet<MediaFolderType> allMedia = EnumSet.of(MediaFolderType.IMAGE, MediaFolderType.VIDEO);
+
+        assertEquals(allMedia, FilesSyncHelper.getChangedMediaTypes(null));
+        assertEquals(allMedia, FilesSyncHelper.getChangedMediaTypes(new String[0]));
+        assertEquals(allMedia, FilesSyncHelper.getChangedMediaTypes(new String[]{"content://media/external/file"}));
+    }
+
+    @Test
+    public void watermarkFollowsNewestTimestamp() {
+        long watermark = FilesSyncHelper.NO_WATERMARK;
+
+        watermark = FilesSyncHelper.advanceWatermark(watermark, NOW - 100, NOW - 200, NOW);
+        assertEquals(NOW - 100, watermark);
+
+        // modified after it was added
+        watermark = FilesSyncHelper.advanceWatermark(watermark, NOW - 300, NOW - 50, NOW);
+        assertEquals(NOW - 50, watermark);
+
+        // older media does not move the watermark back
+        watermark = FilesSyncHelper.advanceWatermark(watermark, NOW - 1000, NOW - 1000, NOW);
+        assertEquals(NOW - 50, watermark);
+    }
+
+    @Test
+    public void watermarkDoesNotPassCurrentTime() {
+        long watermark = FilesSyncHelper.advanceWatermark(NOW - 10, NOW - 10, NOW + 3600, NOW);
+
+        assertEquals(NOW, watermark);
+    }
+}